@@ -2,10 +2,17 @@ package com.android.xz.opengldemo;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
+import android.view.View;
 
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.gles.ProgramBinaryStore;
+import com.android.xz.opengldemo.gles.ProgramCache;
 import com.android.xz.opengldemo.view.CameraGLSurfaceView;
 
+import java.io.File;
+
 public class GLCameraActivity extends AppCompatActivity {
 
     private CameraGLSurfaceView mCameraGLSurfaceView;
@@ -13,8 +20,16 @@ public class GLCameraActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // 进程内共用一个磁盘缓存，重复设置是同一实例
+        ProgramCache.getInstance().setBinaryStore(
+                ProgramBinaryStore.getInstance(new File(getCacheDir(), ProgramBinaryStore.DIR_NAME)));
         setContentView(R.layout.activity_camera);
         mCameraGLSurfaceView = findViewById(R.id.cameraView);
+        // 帧统计只在debug包中开启并显示
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            FrameMetrics.setEnabled(true);
+            findViewById(R.id.metricsView).setVisibility(View.VISIBLE);
+        }
     }
 
     @Override
@@ -0,0 +1,1035 @@
+package com.android.xz.opengldemo.camera;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.OrientationEventListener;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import com.android.xz.opengldemo.camera.buffer.DirectFrameDispatcher;
+import com.android.xz.opengldemo.camera.buffer.PreviewBufferRing;
+import com.android.xz.opengldemo.camera.buffer.PreviewFrameDispatcher;
+import com.android.xz.opengldemo.camera.callback.CameraCallback;
+import com.android.xz.opengldemo.camera.callback.PictureBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewDirectBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewPlanesCallback;
+import com.android.xz.opengldemo.camera.capture.CaptureQueue;
+import com.android.xz.opengldemo.camera.capture.PictureRequest;
+import com.android.xz.opengldemo.camera.config.CameraCapabilities;
+import com.android.xz.opengldemo.camera.config.CapabilityStore;
+import com.android.xz.opengldemo.camera.config.PreviewBudget;
+import com.android.xz.opengldemo.camera.config.PreviewConfig;
+import com.android.xz.opengldemo.camera.config.PreviewConfigNegotiator;
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+import com.android.xz.opengldemo.util.ImageUtils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Camera2实现
+ * <p>
+ * 预览画面直接输出到SurfaceTexture；有预览数据回调时额外挂一个YUV_420_888的ImageReader，
+ * {@link PreviewPlanesCallback}直接拿到ImageReader中的平面，不做拷贝。
+ * 只有注册了{@link PreviewBufferCallback}时才把平面拷贝成NV21。
+ *
+ * @author xiaozhi
+ * @since 2024/11/8
+ */
+public class Camera2Manager implements ICameraManager {
+
+    private static final String TAG = Camera2Manager.class.getSimpleName();
+
+    // 协商结果按camera id缓存，多个实例共用
+    private static final PreviewConfigNegotiator sPreviewConfigNegotiator = new PreviewConfigNegotiator();
+
+    // ImageReader最多同时持有的Image个数
+    private static final int MAX_PREVIEW_IMAGES = 3;
+    private static final int MAX_PICTURE_IMAGES = 2;
+
+    private Context mContext;
+    private android.hardware.camera2.CameraManager mCameraManager;
+    private CameraDevice mCameraDevice;
+    private CameraCaptureSession mCaptureSession;
+    private CameraCharacteristics mCharacteristics;
+    private ImageReader mPreviewReader;
+    private ImageReader mPictureReader;
+    private Surface mPreviewSurface;
+    // 由SurfaceTexture创建的Surface需要自己释放
+    private boolean isPreviewSurfaceOwned = false;
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
+
+    private boolean isOpening = false;
+    private boolean isPreviewing = false;
+    private int mDisplayOrientation = -1;
+    private int mOrientation = -1;
+    private int mCameraId = 0;
+    private Size mPreviewSize;
+    private int mPreviewWidth = 1440;
+    private int mPreviewHeight = 1080;
+    private PreviewBudget mPreviewBudget = new PreviewBudget(PreviewBudget.DEFAULT_TARGET_FPS,
+            PreviewBudget.DEFAULT_MAX_PIXELS_PER_SECOND, mPreviewWidth, mPreviewHeight, ImageFormat.YUV_420_888);
+    private Range<Integer> mFpsRange;
+    private String mCameraIdString;
+    private Size mPictureSize;
+    private int mFacing;
+    // CameraCharacteristics进程内不变，打开后预取其他摄像头的，切换时不再查询
+    private String[] mCameraIds;
+    private final Map<String, CameraCharacteristics> mCharacteristicsCache = new HashMap<>();
+    // 磁盘缓存的能力，命中时打开Camera不等待CameraCharacteristics
+    private CameraCapabilities mCapabilities;
+    private PreviewConfig mPreviewConfig;
+    // 最近一次预览的目标，切换摄像头时直接复用
+    private SurfaceTexture mPreviewTexture;
+    private SurfaceHolder mPreviewHolder;
+    // 切换开始时间，预览重新开始后统计耗时
+    private volatile long mSwitchStartTime;
+    private volatile long mLastSwitchCost = -1;
+
+    private CameraCallback mCameraCallback;
+    private List<PreviewBufferCallback> mPreviewBufferCallbacks = new ArrayList<>();
+    private List<PreviewPlanesCallback> mPreviewPlanesCallbacks = new CopyOnWriteArrayList<>();
+    private CaptureQueue mCaptureQueue = new CaptureQueue(this::capture, command -> getCameraHandler().post(command));
+
+    // 只有PreviewBufferCallback需要NV21拷贝
+    private PreviewBufferRing mPreviewBufferRing = new PreviewBufferRing(CameraManager.DEFAULT_PREVIEW_BUFFER_COUNT,
+            PreviewBufferRing.DropPolicy.DROP_OLDEST);
+    private PreviewFrameDispatcher mPreviewFrameDispatcher = new PreviewFrameDispatcher(mPreviewBufferRing);
+    private DirectFrameDispatcher mDirectFrameDispatcher = new DirectFrameDispatcher();
+    private StreamMetrics mPreviewMetrics = FrameMetrics.getInstance().getStream(FrameMetrics.STREAM_PREVIEW_BUFFER);
+    private ConcurrentLinkedQueue<byte[]> mFreeBuffers = new ConcurrentLinkedQueue<>();
+    private final ZoomController mZoomController = new ZoomController();
+    // 只在持有Camera2Manager锁时读写
+    private int mSessionGeneration;
+
+    private final ByteBuffer[] mPlaneBuffers = new ByteBuffer[3];
+    private final int[] mRowStrides = new int[3];
+    private final int[] mPixelStrides = new int[3];
+
+    private OrientationEventListener mOrientationEventListener;
+    private final OrientationTracker mOrientationTracker = new OrientationTracker();
+
+    private CameraDevice.StateCallback mStateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(CameraDevice camera) {
+            synchronized (Camera2Manager.this) {
+                if (!isOpening) {
+                    // 打开过程中已被释放
+                    camera.close();
+                    return;
+                }
+                isOpening = false;
+                mCameraDevice = camera;
+                initCamera();
+                if (mSwitchStartTime > 0) {
+                    // 切换摄像头，在原来的目标上直接开启预览
+                    if (mPreviewTexture != null) {
+                        startPreview(mPreviewTexture);
+                    } else if (mPreviewHolder != null) {
+                        startPreview(mPreviewHolder);
+                    }
+                }
+            }
+            onOpen();
+            mOrientationEventListener.enable();
+            getCameraHandler().post(Camera2Manager.this::prefetchCharacteristics);
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice camera) {
+            Log.w(TAG, "Camera disconnected #" + mCameraId);
+            boolean isOpenFailed;
+            synchronized (Camera2Manager.this) {
+                isOpenFailed = mCameraDevice == null;
+                if (isOpenFailed) {
+                    // onOpened之前断开，设备不会交给我们，需要在这里关闭
+                    isOpening = false;
+                    camera.close();
+                } else if (mCameraDevice != camera) {
+                    // 切换前的旧设备
+                    camera.close();
+                    return;
+                }
+            }
+            if (isOpenFailed) {
+                onOpenError(CameraManager.CAMERA_ERROR_OPEN, "Camera disconnected");
+            }
+            releaseCamera();
+        }
+
+        @Override
+        public void onError(CameraDevice camera, int error) {
+            Log.e(TAG, "Camera error: " + error + " camera id:" + mCameraId);
+            synchronized (Camera2Manager.this) {
+                isOpening = false;
+                if (mCameraDevice == null) {
+                    camera.close();
+                }
+            }
+            onOpenError(CameraManager.CAMERA_ERROR_OPEN, "Camera device error: " + error);
+            releaseCamera();
+        }
+    };
+
+    /**
+     * 每次创建会话使用新的回调并记下代次，stopPreview或重新创建会话后迟到的回调直接关闭会话
+     */
+    private CameraCaptureSession.StateCallback newSessionCallback(final int generation) {
+        return new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(CameraCaptureSession session) {
+                synchronized (Camera2Manager.this) {
+                    if (mCameraDevice == null || mPreviewSurface == null || generation != mSessionGeneration) {
+                        session.close();
+                        return;
+                    }
+                    mCaptureSession = session;
+                    try {
+                        CaptureRequest.Builder builder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                        builder.addTarget(mPreviewSurface);
+                        if (mPreviewReader != null) {
+                            builder.addTarget(mPreviewReader.getSurface());
+                        }
+                        builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+                        if (mFpsRange != null) {
+                            builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, mFpsRange);
+                        }
+                        session.setRepeatingRequest(builder.build(), null, mCameraHandler);
+                    } catch (Exception e) {
+                        onPreviewError(CameraManager.CAMERA_ERROR_PREVIEW, e.getMessage());
+                        return;
+                    }
+                }
+                onPreview(mPreviewWidth, mPreviewHeight);
+            }
+
+            @Override
+            public void onConfigureFailed(CameraCaptureSession session) {
+                synchronized (Camera2Manager.this) {
+                    if (generation != mSessionGeneration) {
+                        return;
+                    }
+                }
+                onPreviewError(CameraManager.CAMERA_ERROR_PREVIEW, "Capture session configure failed.");
+            }
+        };
+    }
+
+    private ImageReader.OnImageAvailableListener mPreviewImageListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            // stopPreview可能在其他线程关闭reader，持锁读取平面，reader已不是当前的就丢弃
+            synchronized (Camera2Manager.this) {
+                if (reader != mPreviewReader) {
+                    return;
+                }
+                onPreviewImage(reader);
+            }
+        }
+
+        private void onPreviewImage(ImageReader reader) {
+            Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            mPreviewMetrics.onFrameArrived(System.nanoTime());
+            try {
+                Image.Plane[] planes = image.getPlanes();
+                for (int i = 0; i < 3; i++) {
+                    mPlaneBuffers[i] = planes[i].getBuffer();
+                    mRowStrides[i] = planes[i].getRowStride();
+                    mPixelStrides[i] = planes[i].getPixelStride();
+                }
+                for (PreviewPlanesCallback previewPlanesCallback : mPreviewPlanesCallbacks) {
+                    previewPlanesCallback.onPreviewPlanes(mPlaneBuffers, mRowStrides, mPixelStrides,
+                            mPreviewWidth, mPreviewHeight);
+                }
+                if (mDirectFrameDispatcher.hasCallbacks()) {
+                    // 直接从平面拷贝到direct缓冲区，不经过byte[]
+                    mDirectFrameDispatcher.dispatchPlanes(mPlaneBuffers, mRowStrides, mPixelStrides,
+                            mPreviewWidth, mPreviewHeight, image.getTimestamp());
+                }
+                if (!mPreviewFrameDispatcher.isEmpty()) {
+                    deliverNv21();
+                }
+            } finally {
+                image.close();
+            }
+        }
+    };
+
+    private ImageReader.OnImageAvailableListener mPictureImageListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            byte[] data;
+            synchronized (Camera2Manager.this) {
+                if (reader != mPictureReader) {
+                    return;
+                }
+                Image image = reader.acquireNextImage();
+                if (image == null) {
+                    return;
+                }
+                try {
+                    ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                    data = new byte[buffer.remaining()];
+                    buffer.get(data);
+                } finally {
+                    image.close();
+                }
+            }
+            mCaptureQueue.onCaptureCompleted(data);
+        }
+    };
+
+    private CameraCaptureSession.CaptureCallback mPictureCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureFailed(CameraCaptureSession session, CaptureRequest request, CaptureFailure failure) {
+            mCaptureQueue.onCaptureFailed("reason: " + failure.getReason());
+        }
+    };
+
+    public Camera2Manager(Context context) {
+        mContext = context;
+        mPreviewBufferRing.setMetrics(mPreviewMetrics);
+        mPreviewFrameDispatcher.setMetrics(mPreviewMetrics);
+        mCameraManager = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        mOrientationEventListener = new OrientationEventListener(context) {
+            @Override
+            public void onOrientationChanged(int orientation) {
+                mOrientationTracker.onOrientationChanged(orientation);
+            }
+        };
+    }
+
+    /**
+     * 打开Camera，Camera2本身是异步打开，结果通过{@link CameraCallback}回调
+     */
+    @SuppressLint("MissingPermission")
+    @Override
+    public synchronized void openCamera() {
+        Log.i(TAG, "Camera open #" + mCameraId);
+        if (mCameraDevice != null || isOpening) {
+            return;
+        }
+        try {
+            String[] cameraIds = getCameraIds();
+            if (mCameraId >= cameraIds.length) {
+                onOpenError(CameraManager.CAMERA_ERROR_NO_ID, "No camera.");
+                return;
+            }
+            getCameraHandler();
+            String cameraId = cameraIds[mCameraId];
+            mCameraIdString = cameraId;
+            mCapabilities = getCapabilityStore().load(getCapabilityKey(cameraId));
+            if (mCapabilities == null || mCapabilities.getPreviewConfig(mPreviewBudget) == null) {
+                mCharacteristics = getCharacteristics(cameraId);
+            } else {
+                // 用缓存配置，CameraCharacteristics在打开后的预取中校验
+                mCharacteristics = mCharacteristicsCache.get(cameraId);
+            }
+            isOpening = true;
+            mCameraManager.openCamera(cameraId, mStateCallback, mCameraHandler);
+        } catch (Exception e) {
+            isOpening = false;
+            onOpenError(CameraManager.CAMERA_ERROR_OPEN, e.getMessage());
+        }
+    }
+
+    @Override
+    public void openCameraAsync() {
+        getCameraHandler().post(this::openCamera);
+    }
+
+    private synchronized String[] getCameraIds() throws CameraAccessException {
+        if (mCameraIds == null) {
+            mCameraIds = mCameraManager.getCameraIdList();
+        }
+        return mCameraIds;
+    }
+
+    private synchronized CameraCharacteristics getCharacteristics(String cameraId) throws CameraAccessException {
+        CameraCharacteristics characteristics = mCharacteristicsCache.get(cameraId);
+        if (characteristics == null) {
+            characteristics = mCameraManager.getCameraCharacteristics(cameraId);
+            mCharacteristicsCache.put(cameraId, characteristics);
+        }
+        return characteristics;
+    }
+
+    /**
+     * 预取所有摄像头的CameraCharacteristics，并校验当前摄像头的能力缓存，在Camera线程中执行
+     */
+    private void prefetchCharacteristics() {
+        try {
+            for (String cameraId : getCameraIds()) {
+                getCharacteristics(cameraId);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "prefetch characteristics failed: " + e.getMessage());
+        }
+        validateCapabilities();
+    }
+
+    private String getCapabilityKey(String cameraId) {
+        return CapabilityStore.createKey(Build.MODEL, Build.FINGERPRINT, "camera2", cameraId);
+    }
+
+    private CapabilityStore getCapabilityStore() {
+        return CapabilityStore.getInstance(new File(mContext.getCacheDir(), CapabilityStore.DIR_NAME));
+    }
+
+    /**
+     * 从CameraCharacteristics读取能力与缓存比较，没有缓存或不一致时保存新的，下次打开生效
+     */
+    private void validateCapabilities() {
+        String cameraId;
+        CameraCapabilities cached;
+        PreviewConfig previewConfig;
+        PreviewBudget budget;
+        CameraCharacteristics characteristics;
+        synchronized (this) {
+            if (mCameraDevice == null) {
+                return;
+            }
+            cameraId = mCameraIdString;
+            cached = mCapabilities;
+            previewConfig = mPreviewConfig;
+            budget = mPreviewBudget;
+            characteristics = mCharacteristicsCache.get(cameraId);
+        }
+        if (characteristics == null) {
+            return;
+        }
+        CapabilityStore store = getCapabilityStore();
+        String key = getCapabilityKey(cameraId);
+        CameraCapabilities capabilities = readCapabilities(characteristics);
+        if (capabilities.isSameCapabilities(cached)) {
+            if (cached.getPreviewConfig(budget) == null) {
+                // 能力没变，只是预算变了
+                store.save(key, capabilities.setPreviewConfig(budget, previewConfig));
+            }
+            return;
+        }
+        PreviewConfig config = previewConfig;
+        if (cached != null) {
+            Log.w(TAG, "capabilities changed, invalidate cache: " + key);
+            store.invalidate(key);
+            sPreviewConfigNegotiator.invalidate(cameraId);
+            // 按新的能力重新协商，当前会话继续使用已设置的配置
+            config = PreviewConfigNegotiator.negotiate(capabilities.getPreviewSizes(),
+                    capabilities.getPreviewFpsRanges(), null, budget);
+        }
+        if (config != null) {
+            capabilities.setPreviewConfig(budget, config);
+        }
+        store.save(key, capabilities);
+    }
+
+    private static CameraCapabilities readCapabilities(CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        Size pictureSize = getLargestPictureSize(map);
+        return new CameraCapabilities()
+                .setSensorOrientation(sensorOrientation == null ? 0 : sensorOrientation)
+                .setFrontFacing(facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT)
+                .setPreviewSizes(getPreviewSizes(map))
+                .setPreviewFpsRanges(getFpsRanges(characteristics))
+                .setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
+    }
+
+    @Override
+    public void startPreviewAsync(SurfaceTexture surfaceTexture) {
+        getCameraHandler().post(() -> startPreview(surfaceTexture));
+    }
+
+    @Override
+    public void releaseCameraAsync() {
+        getCameraHandler().post(this::releaseCamera);
+    }
+
+    private synchronized Handler getCameraHandler() {
+        if (mCameraThread == null) {
+            mCameraThread = new HandlerThread("Camera2Thread");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+        }
+        return mCameraHandler;
+    }
+
+    @Override
+    public synchronized void quit() {
+        if (mCameraThread != null) {
+            // 排在前面的releaseCamera仍会执行
+            mCameraThread.quitSafely();
+            mCameraThread = null;
+            mCameraHandler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return mCameraDevice != null;
+    }
+
+    @Override
+    public synchronized void startPreview(SurfaceHolder holder) {
+        Log.i(TAG, "startPreview...");
+        // mPreviewSurface不为空说明会话已在创建中
+        if (isPreviewing || mPreviewSurface != null || mCameraDevice == null) {
+            return;
+        }
+        mPreviewHolder = holder;
+        mPreviewTexture = null;
+        mPreviewSurface = holder.getSurface();
+        isPreviewSurfaceOwned = false;
+        createCaptureSession();
+    }
+
+    @Override
+    public synchronized void startPreview(SurfaceTexture surfaceTexture) {
+        Log.i(TAG, "startPreview...");
+        if (isPreviewing || mPreviewSurface != null || mCameraDevice == null) {
+            return;
+        }
+        mPreviewTexture = surfaceTexture;
+        mPreviewHolder = null;
+        surfaceTexture.setDefaultBufferSize(mPreviewWidth, mPreviewHeight);
+        mPreviewSurface = new Surface(surfaceTexture);
+        isPreviewSurfaceOwned = true;
+        createCaptureSession();
+    }
+
+    @Override
+    public synchronized void stopPreview() {
+        stopPreview(false);
+    }
+
+    /**
+     * @param keepConsumers 是否保留预览数据使用者及其线程，切换摄像头时保留
+     */
+    private void stopPreview(boolean keepConsumers) {
+        Log.v(TAG, "stopPreview.");
+        mCaptureQueue.cancel();
+        mSessionGeneration++;
+        if (mCaptureSession != null) {
+            try {
+                mCaptureSession.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            mCaptureSession = null;
+        }
+        if (mPreviewReader != null) {
+            mPreviewReader.close();
+            mPreviewReader = null;
+        }
+        if (mPictureReader != null) {
+            mPictureReader.close();
+            mPictureReader = null;
+        }
+        if (mPreviewSurface != null && isPreviewSurfaceOwned) {
+            mPreviewSurface.release();
+        }
+        mPreviewSurface = null;
+        if (!keepConsumers) {
+            mPreviewBufferCallbacks.clear();
+            mPreviewPlanesCallbacks.clear();
+            mPreviewFrameDispatcher.clear();
+            mDirectFrameDispatcher.clear();
+        }
+        mPreviewBufferRing.detach();
+        isPreviewing = false;
+    }
+
+    @Override
+    public synchronized void releaseCamera() {
+        Log.v(TAG, "releaseCamera.");
+        isOpening = false;
+        // 切换过程中打开失败时也要释放保留的使用者
+        boolean isSwitching = mSwitchStartTime > 0;
+        mSwitchStartTime = 0;
+        mPreviewTexture = null;
+        mPreviewHolder = null;
+        if (mCameraDevice != null || isSwitching) {
+            stopPreview();
+            if (mCameraDevice != null) {
+                try {
+                    mCameraDevice.close();
+                } catch (Exception e) {
+                }
+            }
+            mCameraDevice = null;
+            mDisplayOrientation = -1;
+            mOrientationEventListener.disable();
+            onClose();
+        }
+    }
+
+    @Override
+    public void setCameraId(int cameraId) {
+        mCameraId = cameraId;
+    }
+
+    @Override
+    public int getCameraId() {
+        return mCameraId;
+    }
+
+    @Override
+    public Size getPreviewSize() {
+        return mPreviewSize;
+    }
+
+    @Override
+    public void setPreviewSize(Size size) {
+        mPreviewSize = size;
+        mPreviewWidth = size.getWidth();
+        mPreviewHeight = size.getHeight();
+        mPreviewBudget = new PreviewBudget(mPreviewBudget.getTargetFps(), mPreviewBudget.getMaxPixelsPerSecond(),
+                mPreviewWidth, mPreviewHeight, ImageFormat.YUV_420_888);
+    }
+
+    /**
+     * 设置预览预算，下次打开Camera时按预算协商预览尺寸和帧率
+     *
+     * @param budget
+     */
+    public void setPreviewBudget(PreviewBudget budget) {
+        mPreviewBudget = budget;
+    }
+
+    public PreviewBudget getPreviewBudget() {
+        return mPreviewBudget;
+    }
+
+    @Override
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    @Override
+    public int getDisplayOrientation() {
+        return mDisplayOrientation;
+    }
+
+    @Override
+    public void setCameraCallback(CameraCallback cameraCallback) {
+        mCameraCallback = cameraCallback;
+    }
+
+    /**
+     * 添加NV21预览数据回调，Camera2下需要一次平面拷贝，能用{@link #addPreviewPlanesCallback}时优先用它
+     *
+     * @param previewBufferCallback
+     */
+    @Override
+    public synchronized void addPreviewBufferCallback(PreviewBufferCallback previewBufferCallback) {
+        if (previewBufferCallback != null && !mPreviewBufferCallbacks.contains(previewBufferCallback)) {
+            mPreviewBufferCallbacks.add(previewBufferCallback);
+            mPreviewFrameDispatcher.addConsumer(previewBufferCallback, PreviewFrameDispatcher.Mode.LATEST,
+                    PreviewFrameDispatcher.DEFAULT_QUEUE_CAPACITY);
+        }
+    }
+
+    /**
+     * 添加YUV_420_888平面回调，开启预览前设置
+     *
+     * @param previewPlanesCallback
+     */
+    public synchronized void addPreviewPlanesCallback(PreviewPlanesCallback previewPlanesCallback) {
+        if (previewPlanesCallback != null && !mPreviewPlanesCallbacks.contains(previewPlanesCallback)) {
+            mPreviewPlanesCallbacks.add(previewPlanesCallback);
+        }
+    }
+
+    /**
+     * 添加direct ByteBuffer预览数据回调，开启预览前设置；在Camera线程中从平面拷贝一次后回调
+     *
+     * @param previewDirectBufferCallback
+     */
+    @Override
+    public synchronized void addPreviewDirectBufferCallback(PreviewDirectBufferCallback previewDirectBufferCallback) {
+        if (previewDirectBufferCallback != null) {
+            mDirectFrameDispatcher.addCallback(previewDirectBufferCallback);
+        }
+    }
+
+    public synchronized void removePreviewDirectBufferCallback(PreviewDirectBufferCallback previewDirectBufferCallback) {
+        mDirectFrameDispatcher.removeCallback(previewDirectBufferCallback);
+    }
+
+    /**
+     * 拍照，请求进入拍照队列，逐张交给Camera；回调在后台线程中执行
+     *
+     * @param pictureCallback
+     */
+    @Override
+    public void takePicture(PictureBufferCallback pictureCallback) {
+        takePicture(new PictureRequest(pictureCallback));
+    }
+
+    /**
+     * 拍照，可以设置保存文件和旋转方式
+     *
+     * @param request
+     */
+    public void takePicture(PictureRequest request) {
+        mCaptureQueue.submit(request, mOrientationTracker.getRotation());
+    }
+
+    /**
+     * 连拍，按顺序逐张交给Camera
+     *
+     * @param count
+     * @param factory 为每一张创建请求
+     */
+    public void takeBurst(int count, CaptureQueue.RequestFactory factory) {
+        mCaptureQueue.submitBurst(count, factory, mOrientationTracker.getRotation());
+    }
+
+    public CaptureQueue getCaptureQueue() {
+        return mCaptureQueue;
+    }
+
+    /**
+     * 拍照队列中的一次拍照，在Camera线程中执行
+     */
+    private synchronized void capture(PictureRequest request) throws CameraAccessException {
+        if (mCaptureSession == null || mPictureReader == null) {
+            throw new IllegalStateException("preview not started");
+        }
+        CaptureRequest.Builder builder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        builder.addTarget(mPreviewSurface);
+        builder.addTarget(mPictureReader.getSurface());
+        builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        Log.i(TAG, "capture rotation:" + request.getCameraRotation());
+        builder.set(CaptureRequest.JPEG_ORIENTATION, request.getCameraRotation());
+        mCaptureSession.capture(builder.build(), mPictureCaptureCallback, mCameraHandler);
+    }
+
+    /**
+     * 暂未接入Camera缩放，只用GPU裁剪
+     *
+     * @return
+     */
+    @Override
+    public ZoomController getZoomController() {
+        return mZoomController;
+    }
+
+    /**
+     * 切换摄像头
+     * <p>
+     * 只关闭并重新打开CameraDevice：预览目标、预览数据使用者及其线程都保留，
+     * 切换过程不回调onClose，打开后直接在原来的目标上开启预览。
+     */
+    @Override
+    public synchronized void switchCamera() {
+        mCameraId ^= 1;
+        if (mCameraDevice == null) {
+            return;
+        }
+        mSwitchStartTime = SystemClock.elapsedRealtime();
+        stopPreview(true);
+        try {
+            mCameraDevice.close();
+        } catch (Exception e) {
+        }
+        mCameraDevice = null;
+        mDisplayOrientation = -1;
+        openCamera();
+        if (!isOpening) {
+            // 打开失败
+            releaseCamera();
+        }
+    }
+
+    @Override
+    public void switchCameraAsync() {
+        getCameraHandler().post(this::switchCamera);
+    }
+
+    /**
+     * @return 最近一次切换摄像头到预览重新开始的耗时，单位毫秒，没有切换过时为-1
+     */
+    @Override
+    public long getLastSwitchCost() {
+        return mLastSwitchCost;
+    }
+
+    /**
+     * 读取Camera参数并选择预览、拍照尺寸
+     */
+    private void initCamera() {
+        CameraCapabilities capabilities = mCapabilities;
+        PreviewConfig previewConfig = capabilities != null ? capabilities.getPreviewConfig(mPreviewBudget) : null;
+        if (previewConfig != null && mCharacteristics == null) {
+            // 磁盘缓存命中，不查询CameraCharacteristics
+            mOrientation = capabilities.getSensorOrientation();
+            mFacing = capabilities.isFrontFacing()
+                    ? CameraCharacteristics.LENS_FACING_FRONT : CameraCharacteristics.LENS_FACING_BACK;
+            mPictureSize = new Size(capabilities.getPictureWidth(), capabilities.getPictureHeight());
+        } else {
+            StreamConfigurationMap map = mCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            Integer sensorOrientation = mCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            Integer facing = mCharacteristics.get(CameraCharacteristics.LENS_FACING);
+            mOrientation = sensorOrientation == null ? 0 : sensorOrientation;
+            mFacing = facing == null ? CameraCharacteristics.LENS_FACING_BACK : facing;
+            if (previewConfig == null) {
+                previewConfig = negotiatePreviewConfig(map);
+            }
+            mPictureSize = getLargestPictureSize(map);
+        }
+        mPreviewConfig = previewConfig;
+        mDisplayOrientation = computeDisplayOrientation();
+        mOrientationTracker.setCameraInfo(mOrientation, mFacing == CameraCharacteristics.LENS_FACING_FRONT);
+
+        mPreviewWidth = previewConfig.getWidth();
+        mPreviewHeight = previewConfig.getHeight();
+        mPreviewSize = new Size(mPreviewWidth, mPreviewHeight);
+        mFpsRange = previewConfig.getMaxFps() > 0
+                ? new Range<>(previewConfig.getMinFps() / 1000, previewConfig.getMaxFps() / 1000) : null;
+        Log.d(TAG, "preview config: " + previewConfig);
+        Log.d(TAG, "pictureWidth: " + mPictureSize.getWidth() + ", pictureHeight: " + mPictureSize.getHeight());
+    }
+
+    private void createCaptureSession() {
+        List<Surface> outputs = new ArrayList<>();
+        outputs.add(mPreviewSurface);
+        if (!mPreviewPlanesCallbacks.isEmpty() || !mPreviewBufferCallbacks.isEmpty()
+                || mDirectFrameDispatcher.hasCallbacks()) {
+            mPreviewReader = ImageReader.newInstance(mPreviewWidth, mPreviewHeight,
+                    ImageFormat.YUV_420_888, MAX_PREVIEW_IMAGES);
+            mPreviewReader.setOnImageAvailableListener(mPreviewImageListener, mCameraHandler);
+            outputs.add(mPreviewReader.getSurface());
+        }
+        if (!mPreviewBufferCallbacks.isEmpty()) {
+            mFreeBuffers.clear();
+            mPreviewBufferRing.attach(mPreviewWidth * mPreviewHeight * 3 / 2, mFreeBuffers::offer);
+        }
+        mPictureReader = ImageReader.newInstance(mPictureSize.getWidth(), mPictureSize.getHeight(),
+                ImageFormat.JPEG, MAX_PICTURE_IMAGES);
+        mPictureReader.setOnImageAvailableListener(mPictureImageListener, mCameraHandler);
+        outputs.add(mPictureReader.getSurface());
+        try {
+            mCameraDevice.createCaptureSession(outputs, newSessionCallback(++mSessionGeneration), mCameraHandler);
+        } catch (Exception e) {
+            onPreviewError(CameraManager.CAMERA_ERROR_PREVIEW, e.getMessage());
+        }
+    }
+
+    /**
+     * 把当前平面拷贝成NV21交给PreviewBufferCallback，没有空闲缓冲区时丢弃该帧
+     */
+    private void deliverNv21() {
+        byte[] buffer = mFreeBuffers.poll();
+        if (buffer == null) {
+            mPreviewMetrics.onFrameDropped();
+            return;
+        }
+        copyToNv21(mPlaneBuffers, mRowStrides, mPixelStrides, mPreviewWidth, mPreviewHeight, buffer);
+        if (!mPreviewBufferRing.enqueue(buffer)) {
+            return;
+        }
+        byte[] frame;
+        while ((frame = mPreviewBufferRing.poll()) != null) {
+            mPreviewFrameDispatcher.dispatch(frame, mPreviewWidth, mPreviewHeight);
+        }
+    }
+
+    /**
+     * YUV_420_888平面拷贝为NV21
+     */
+    private static void copyToNv21(ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides,
+                                   int width, int height, byte[] out) {
+        ByteBuffer yBuffer = planes[0];
+        int yRowStride = rowStrides[0];
+        for (int row = 0; row < height; row++) {
+            yBuffer.position(row * yRowStride);
+            yBuffer.get(out, row * width, width);
+        }
+        yBuffer.rewind();
+
+        ByteBuffer uBuffer = planes[1];
+        ByteBuffer vBuffer = planes[2];
+        int uvRowStride = rowStrides[2];
+        int uvPixelStride = pixelStrides[2];
+        int ySize = width * height;
+        int uvSize = ySize / 2;
+        if (uvPixelStride == 2 && uvRowStride == width && vBuffer.remaining() >= uvSize - 1
+                && ImageUtils.isVuInterleaved(uBuffer, vBuffer)) {
+            // V平面本身就是VU交错排列，整段拷贝后补上最后一个U
+            vBuffer.get(out, ySize, uvSize - 1);
+            vBuffer.rewind();
+            out[ySize + uvSize - 1] = uBuffer.get(uBuffer.limit() - 1);
+            return;
+        }
+        int index = ySize;
+        for (int row = 0; row < height / 2; row++) {
+            int offset = row * uvRowStride;
+            for (int col = 0; col < width / 2; col++) {
+                out[index++] = vBuffer.get(offset);
+                out[index++] = uBuffer.get(offset);
+                offset += uvPixelStride;
+            }
+        }
+    }
+
+    /**
+     * 按预览预算协商预览尺寸和帧率范围，同一camera id预算不变时直接使用缓存结果
+     *
+     * @param map
+     * @return
+     */
+    private PreviewConfig negotiatePreviewConfig(StreamConfigurationMap map) {
+        List<int[]> sizes = getPreviewSizes(map);
+        PreviewConfig config = sPreviewConfigNegotiator.negotiate(mCameraIdString, sizes,
+                getFpsRanges(mCharacteristics), null, mPreviewBudget);
+        if (config == null) {
+            int[] size = sizes.get(0);
+            config = new PreviewConfig(size[0], size[1], 0, 0, ImageFormat.YUV_420_888, Float.MAX_VALUE);
+        }
+        return config;
+    }
+
+    private static List<int[]> getPreviewSizes(StreamConfigurationMap map) {
+        Size[] outputSizes = map.getOutputSizes(SurfaceTexture.class);
+        List<int[]> sizes = new ArrayList<>(outputSizes.length);
+        for (Size size : outputSizes) {
+            sizes.add(new int[]{size.getWidth(), size.getHeight()});
+        }
+        return sizes;
+    }
+
+    private static List<int[]> getFpsRanges(CameraCharacteristics characteristics) {
+        List<int[]> fpsRanges = null;
+        Range<Integer>[] aeFpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (aeFpsRanges != null) {
+            fpsRanges = new ArrayList<>(aeFpsRanges.length);
+            for (Range<Integer> range : aeFpsRanges) {
+                // 与Camera1一致按x1000处理
+                fpsRanges.add(new int[]{range.getLower() * 1000, range.getUpper() * 1000});
+            }
+        }
+        return fpsRanges;
+    }
+
+    private static Size getLargestPictureSize(StreamConfigurationMap map) {
+        Size[] pictureSizes = map.getOutputSizes(ImageFormat.JPEG);
+        Size pictureSize = pictureSizes[0];
+        for (Size size : pictureSizes) {
+            if ((long) size.getWidth() * size.getHeight() > (long) pictureSize.getWidth() * pictureSize.getHeight()) {
+                pictureSize = size;
+            }
+        }
+        return pictureSize;
+    }
+
+    private int computeDisplayOrientation() {
+        WindowManager windowManager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+        int degrees = 0;
+        switch (windowManager.getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_0:
+                degrees = 0;
+                break;
+            case Surface.ROTATION_90:
+                degrees = 90;
+                break;
+            case Surface.ROTATION_180:
+                degrees = 180;
+                break;
+            case Surface.ROTATION_270:
+                degrees = 270;
+                break;
+        }
+        int result;
+        if (mFacing == CameraCharacteristics.LENS_FACING_FRONT) {
+            result = (mOrientation + degrees) % 360;
+            result = (360 - result) % 360; // compensate the mirror
+        } else {
+            result = (mOrientation - degrees + 360) % 360;
+        }
+        return result;
+    }
+
+    public int getLatestRotation() {
+        return mOrientationTracker.getRotation();
+    }
+
+    /**
+     * 获取方向跟踪，拍照、绘制、分析等直接读取量化后的方向
+     *
+     * @return
+     */
+    @Override
+    public OrientationTracker getOrientationTracker() {
+        return mOrientationTracker;
+    }
+
+    private void onOpen() {
+        if (mCameraCallback != null) {
+            mCameraCallback.onOpen();
+        }
+    }
+
+    private void onOpenError(int error, String msg) {
+        if (mCameraCallback != null) {
+            mCameraCallback.onOpenError(error, msg);
+        }
+    }
+
+    private void onPreview(int width, int height) {
+        isPreviewing = true;
+        long switchStartTime = mSwitchStartTime;
+        if (switchStartTime > 0) {
+            mLastSwitchCost = SystemClock.elapsedRealtime() - switchStartTime;
+            mSwitchStartTime = 0;
+            Log.i(TAG, "switch camera cost: " + mLastSwitchCost + "ms");
+        }
+        if (mCameraCallback != null) {
+            mCameraCallback.onPreview(width, height);
+        }
+    }
+
+    private void onPreviewError(int error, String msg) {
+        if (mCameraCallback != null) {
+            mCameraCallback.onPreviewError(error, msg);
+        }
+    }
+
+    private void onClose() {
+        if (mCameraCallback != null) {
+            mCameraCallback.onClose();
+        }
+    }
+}
@@ -9,6 +9,10 @@ import android.hardware.Camera.Parameters;
 import android.hardware.Camera.PictureCallback;
 import android.hardware.Camera.PreviewCallback;
 import android.hardware.Camera.ShutterCallback;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Size;
 import android.view.OrientationEventListener;
@@ -16,10 +20,26 @@ import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.WindowManager;
 
+import com.android.xz.opengldemo.camera.buffer.DirectFrameDispatcher;
+import com.android.xz.opengldemo.camera.buffer.PreviewBufferRing;
+import com.android.xz.opengldemo.camera.buffer.PreviewFrameDispatcher;
 import com.android.xz.opengldemo.camera.callback.CameraCallback;
 import com.android.xz.opengldemo.camera.callback.PictureBufferCallback;
 import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewDirectBufferCallback;
+import com.android.xz.opengldemo.camera.capture.CaptureQueue;
+import com.android.xz.opengldemo.camera.capture.PictureRequest;
+import com.android.xz.opengldemo.camera.capture.ZslCapture;
+import com.android.xz.opengldemo.camera.capture.ZslFrameHistory;
+import com.android.xz.opengldemo.camera.config.CameraCapabilities;
+import com.android.xz.opengldemo.camera.config.CapabilityStore;
+import com.android.xz.opengldemo.camera.config.PreviewBudget;
+import com.android.xz.opengldemo.camera.config.PreviewConfig;
+import com.android.xz.opengldemo.camera.config.PreviewConfigNegotiator;
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -37,6 +57,24 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
 
     private static final String TAG = CameraManager.class.getSimpleName();
 
+    /**
+     * 默认预览缓冲区个数：使用者处理中和排队各占一个，HAL至少保留一个，再留一个余量
+     */
+    public static final int DEFAULT_PREVIEW_BUFFER_COUNT = 4;
+
+    /**
+     * 零延时拍照默认保留的预览帧数
+     */
+    public static final int DEFAULT_ZSL_FRAME_COUNT = 3;
+
+    // 协商结果按camera id缓存，多个实例共用
+    private static final PreviewConfigNegotiator sPreviewConfigNegotiator = new PreviewConfigNegotiator();
+    // ParametersCache中等待提交的动作类别，缩放和对焦互不覆盖
+    private static final String ACTION_ZOOM = "zoom";
+    private static final String ACTION_FOCUS = "focus";
+    // CameraInfo进程内不变，第一次打开时一次取全，切换时不再查询
+    private static Camera.CameraInfo[] sCameraInfos;
+
     /**
      * 为了实现拍照的快门声音及拍照保存照片需要下面三个回调变量
      * 快门按下的回调，在这里我们可以设置类似播放“咔嚓”声之类的操作。默认的就是咔嚓。
@@ -59,7 +97,7 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
     };
 
     private Camera mCamera;
-    private Parameters mParameters;
+    private ParametersCache mParametersCache;
     private Camera.CameraInfo mCameraInfo = new Camera.CameraInfo();
     private boolean isPreviewing = false;
     private int mDisplayOrientation = -1;
@@ -68,34 +106,54 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
     private Size mPreviewSize;
     private int mPreviewWidth = 1440;
     private int mPreviewHeight = 1080;
-
-    private float mPreviewScale = mPreviewHeight * 1f / mPreviewWidth;
+    private PreviewBudget mPreviewBudget = new PreviewBudget(PreviewBudget.DEFAULT_TARGET_FPS,
+            PreviewBudget.DEFAULT_MAX_PIXELS_PER_SECOND, mPreviewWidth, mPreviewHeight, ImageFormat.NV21);
     private Context mContext;
-    private byte[] mCameraBytes = null;
     private boolean isSupportZoom;
+    private PreviewConfig mPreviewConfig;
+    // 最近一次预览的目标，切换摄像头时直接复用
+    private SurfaceTexture mPreviewTexture;
+    private SurfaceHolder mPreviewHolder;
+    // 切换开始时间，预览重新开始后统计耗时
+    private long mSwitchStartTime;
+    private volatile long mLastSwitchCost = -1;
+    private final ZoomController mZoomController = new ZoomController();
     private CameraCallback mCameraCallback;
     private List<PreviewBufferCallback> mPreviewBufferCallbacks = new ArrayList<>();
-    private PictureBufferCallback mPictureBufferCallback;
+    private int mPreviewBufferCount = DEFAULT_PREVIEW_BUFFER_COUNT;
+    private ZslCapture mZslCapture;
+    private CaptureQueue mCaptureQueue = new CaptureQueue(this::capture, command -> getCameraHandler().post(command));
+    private PreviewBufferRing mPreviewBufferRing = new PreviewBufferRing(DEFAULT_PREVIEW_BUFFER_COUNT,
+            PreviewBufferRing.DropPolicy.DROP_OLDEST);
+    private PreviewFrameDispatcher mPreviewFrameDispatcher = new PreviewFrameDispatcher(mPreviewBufferRing);
+    private DirectFrameDispatcher mDirectFrameDispatcher = new DirectFrameDispatcher();
+    private StreamMetrics mPreviewMetrics = FrameMetrics.getInstance().getStream(FrameMetrics.STREAM_PREVIEW_BUFFER);
 
     private PreviewCallback mPreviewCallback = new PreviewCallback() {
         @Override
         public void onPreviewFrame(byte[] data, Camera camera) {
-            if (!mPreviewBufferCallbacks.isEmpty()) {
-                for (PreviewBufferCallback previewBufferCallback : mPreviewBufferCallbacks) {
-                    previewBufferCallback.onPreviewBufferFrame(data, mPreviewWidth, mPreviewHeight);
-                }
+            mPreviewMetrics.onFrameArrived(System.nanoTime());
+            if (!mPreviewBufferRing.enqueue(data)) {
+                return;
+            }
+            // 回调线程只负责分发，各使用者在自己的线程中处理
+            byte[] frame;
+            while ((frame = mPreviewBufferRing.poll()) != null) {
+                mPreviewFrameDispatcher.dispatch(frame, mPreviewWidth, mPreviewHeight);
             }
-            mCameraBytes = data;
-            camera.addCallbackBuffer(data);
         }
     };
     private PictureCallback mPictureCallback = new PictureCallback() {
         @Override
         public void onPictureTaken(byte[] data, Camera camera) {
-            camera.startPreview();
-            if (mPictureBufferCallback != null) {
-                mPictureBufferCallback.onPictureToken(data);
+            // 拍照后预览会停止，先恢复预览再发出下一张
+            try {
+                camera.startPreview();
+                isPreviewing = true;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "restart preview failed: " + e.getMessage());
             }
+            mCaptureQueue.onCaptureCompleted(data);
         }
     };
     private Camera.ErrorCallback errorCallback = (error, camera) -> {
@@ -116,14 +174,20 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
     };
 
     private OrientationEventListener mOrientationEventListener;
-    private int mLatestRotation = 0;
+    private final OrientationTracker mOrientationTracker = new OrientationTracker();
+
+    // Camera线程，Camera在此线程打开，预览等回调也在此线程执行
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
 
     public CameraManager(Context context) {
         mContext = context;
+        mPreviewBufferRing.setMetrics(mPreviewMetrics);
+        mPreviewFrameDispatcher.setMetrics(mPreviewMetrics);
         mOrientationEventListener = new OrientationEventListener(context) {
             @Override
             public void onOrientationChanged(int orientation) {
-                setPictureRotate(orientation);
+                mOrientationTracker.onOrientationChanged(orientation);
             }
         };
     }
@@ -145,7 +209,21 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
         mPreviewSize = size;
         mPreviewWidth = size.getWidth();
         mPreviewHeight = size.getHeight();
-        mPreviewScale = mPreviewHeight * 1f / mPreviewWidth;
+        mPreviewBudget = new PreviewBudget(mPreviewBudget.getTargetFps(), mPreviewBudget.getMaxPixelsPerSecond(),
+                mPreviewWidth, mPreviewHeight, ImageFormat.NV21);
+    }
+
+    /**
+     * 设置预览预算，下次打开Camera时按预算协商预览尺寸和帧率
+     *
+     * @param budget
+     */
+    public void setPreviewBudget(PreviewBudget budget) {
+        mPreviewBudget = budget;
+    }
+
+    public PreviewBudget getPreviewBudget() {
+        return mPreviewBudget;
     }
 
     @Override
@@ -194,32 +272,195 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
 
     @Override
     public void addPreviewBufferCallback(PreviewBufferCallback previewBufferCallback) {
+        addPreviewBufferCallback(previewBufferCallback, PreviewFrameDispatcher.Mode.LATEST,
+                PreviewFrameDispatcher.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * 添加预览数据回调，回调在独立线程中执行
+     *
+     * @param previewBufferCallback
+     * @param mode                  队列满时的处理方式
+     * @param capacity              队列容量
+     */
+    public synchronized void addPreviewBufferCallback(PreviewBufferCallback previewBufferCallback,
+                                                      PreviewFrameDispatcher.Mode mode, int capacity) {
         if (previewBufferCallback != null && !mPreviewBufferCallbacks.contains(previewBufferCallback)) {
             mPreviewBufferCallbacks.add(previewBufferCallback);
+            mPreviewFrameDispatcher.addConsumer(previewBufferCallback, mode, capacity);
+        }
+    }
+
+    /**
+     * 移除预览数据回调
+     *
+     * @param previewBufferCallback
+     */
+    public synchronized void removePreviewBufferCallback(PreviewBufferCallback previewBufferCallback) {
+        if (mPreviewBufferCallbacks.remove(previewBufferCallback)) {
+            mPreviewFrameDispatcher.removeConsumer(previewBufferCallback);
         }
     }
 
+    @Override
+    public synchronized void addPreviewDirectBufferCallback(PreviewDirectBufferCallback previewDirectBufferCallback) {
+        if (previewDirectBufferCallback != null && mDirectFrameDispatcher.addCallback(previewDirectBufferCallback)) {
+            // 由一个独立的使用者线程把byte[]拷贝到direct缓冲区
+            addPreviewBufferCallback(mDirectFrameDispatcher);
+        }
+    }
+
+    /**
+     * 移除direct ByteBuffer预览数据回调
+     *
+     * @param previewDirectBufferCallback
+     */
+    public synchronized void removePreviewDirectBufferCallback(PreviewDirectBufferCallback previewDirectBufferCallback) {
+        mDirectFrameDispatcher.removeCallback(previewDirectBufferCallback);
+        if (!mDirectFrameDispatcher.hasCallbacks()) {
+            removePreviewBufferCallback(mDirectFrameDispatcher);
+        }
+    }
+
+    /**
+     * 设置预览缓冲区个数，下次开启预览时生效
+     *
+     * @param count
+     */
+    public synchronized void setPreviewBufferCount(int count) {
+        mPreviewBufferRing.setSlotCount(mZslCapture == null ? count
+                : count + mZslCapture.getHistory().getCapacity() + 1);
+        mPreviewBufferCount = count;
+    }
+
+    /**
+     * 开启或关闭零延时拍照，下次开启预览时生效
+     * <p>
+     * 开启后保留最近的frameCount帧预览数据（不拷贝，额外占用frameCount+1个预览缓冲区），
+     * {@link #takePictureZsl}直接从中取帧编码，不停止预览
+     *
+     * @param enabled
+     * @param frameCount 保留的帧数
+     */
+    public synchronized void setZslEnabled(boolean enabled, int frameCount) {
+        if (enabled) {
+            mZslCapture = new ZslCapture(new ZslFrameHistory(mPreviewBufferRing, frameCount));
+            mPreviewBufferRing.setSlotCount(mPreviewBufferCount + frameCount + 1);
+        } else {
+            mZslCapture = null;
+            mPreviewBufferRing.setSlotCount(mPreviewBufferCount);
+        }
+    }
+
+    public void setZslEnabled(boolean enabled) {
+        setZslEnabled(enabled, DEFAULT_ZSL_FRAME_COUNT);
+    }
+
+    public synchronized boolean isZslEnabled() {
+        return mZslCapture != null;
+    }
+
+    /**
+     * 设置预览缓冲区不足时的丢帧策略
+     *
+     * @param dropPolicy
+     */
+    public void setPreviewDropPolicy(PreviewBufferRing.DropPolicy dropPolicy) {
+        mPreviewBufferRing.setDropPolicy(dropPolicy);
+    }
+
+    /**
+     * 获取预览缓冲环，可读取分发、丢帧、归还计数
+     *
+     * @return
+     */
+    public PreviewBufferRing getPreviewBufferRing() {
+        return mPreviewBufferRing;
+    }
+
     @Override
     public void setCameraCallback(CameraCallback cameraCallback) {
         mCameraCallback = cameraCallback;
     }
 
+    /**
+     * 拍照，请求进入拍照队列，拍照过程中再次调用会排队而不是被忽略；回调在后台线程中执行
+     *
+     * @param pictureBufferCallback
+     */
     @Override
     public void takePicture(PictureBufferCallback pictureBufferCallback) {
-        mPictureBufferCallback = pictureBufferCallback;
-        takePicture(null, null, mPictureCallback);
+        takePicture(new PictureRequest(pictureBufferCallback));
+    }
+
+    /**
+     * 拍照，可以设置保存文件和旋转方式
+     *
+     * @param request
+     */
+    public void takePicture(PictureRequest request) {
+        mCaptureQueue.submit(request, getLatestRotation());
+    }
+
+    /**
+     * 连拍，按顺序逐张交给Camera
+     *
+     * @param count
+     * @param factory 为每一张创建请求
+     */
+    public void takeBurst(int count, CaptureQueue.RequestFactory factory) {
+        mCaptureQueue.submitBurst(count, factory, getLatestRotation());
+    }
+
+    public CaptureQueue getCaptureQueue() {
+        return mCaptureQueue;
+    }
+
+    /**
+     * 零延时拍照，取最接近按下时刻的预览帧在后台编码，不停止预览；照片分辨率为预览分辨率。
+     * 未开启零延时拍照或还没有预览帧时按普通拍照处理
+     *
+     * @param pictureBufferCallback
+     */
+    public void takePictureZsl(PictureBufferCallback pictureBufferCallback) {
+        takePictureZsl(new PictureRequest(pictureBufferCallback));
+    }
+
+    public void takePictureZsl(PictureRequest request) {
+        ZslCapture zslCapture;
+        synchronized (this) {
+            zslCapture = isPreviewing ? mZslCapture : null;
+        }
+        if (zslCapture == null || !zslCapture.capture(request, getLatestRotation())) {
+            takePicture(request);
+        }
     }
 
+    /**
+     * 直接调用Camera拍照，不经过拍照队列，调用方需自行恢复预览
+     */
     public void takePicture(ShutterCallback shutterCallback, PictureCallback rawCallback, PictureCallback jpegCallback) {
         if (null != mCamera && isPreviewing) {
             isPreviewing = false;
             Log.i(TAG, "latestRotation:" + getLatestRotation());
-            mParameters.setRotation(getLatestRotation());
-            mCamera.setParameters(mParameters);
+            mParametersCache.edit().setRotation(getLatestRotation()).commit();
             mCamera.takePicture(shutterCallback, rawCallback, jpegCallback);
         }
     }
 
+    /**
+     * 拍照队列中的一次拍照，在Camera线程中执行
+     */
+    private synchronized void capture(PictureRequest request) {
+        if (mCamera == null || !isPreviewing) {
+            throw new IllegalStateException("preview not started");
+        }
+        Log.i(TAG, "capture rotation:" + request.getCameraRotation());
+        mParametersCache.edit().setRotation(request.getCameraRotation()).commit();
+        mCamera.takePicture(null, null, mPictureCallback);
+        isPreviewing = false;
+    }
+
     /**
      * 打开Camera
      */
@@ -227,23 +468,94 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
     public synchronized void openCamera() {
         Log.i(TAG, "Camera open #" + mCameraId);
         if (mCamera == null) {
-            if (mCameraId >= Camera.getNumberOfCameras()) {
+            Camera.CameraInfo[] cameraInfos = getCameraInfos();
+            if (mCameraId >= cameraInfos.length) {
                 onOpenError(CAMERA_ERROR_NO_ID, "No camera.");
                 return;
             }
             try {
+                long start = SystemClock.elapsedRealtime();
+                String capabilityKey = getCapabilityKey();
+                CameraCapabilities capabilities = getCapabilityStore().load(capabilityKey);
                 mCamera = Camera.open(mCameraId);
-                Camera.getCameraInfo(mCameraId, mCameraInfo);
+                mCameraInfo = cameraInfos[mCameraId];
+                mOrientationTracker.setCameraInfo(mCameraInfo.orientation,
+                        mCameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT);
                 mCamera.setErrorCallback(errorCallback);
-                initCamera();
+                try {
+                    initCamera(capabilities);
+                } catch (RuntimeException e) {
+                    if (capabilities == null) {
+                        throw e;
+                    }
+                    // 缓存的配置被拒绝，删除缓存后按实时参数重新配置一次
+                    Log.w(TAG, "cached config rejected, invalidate cache: " + capabilityKey);
+                    getCapabilityStore().invalidate(capabilityKey);
+                    mParametersCache.release();
+                    capabilities = null;
+                    initCamera(null);
+                }
+                validateCapabilities(capabilityKey, capabilities);
+                Log.d(TAG, "Camera open cost: " + (SystemClock.elapsedRealtime() - start) + "ms");
                 onOpen();
                 mOrientationEventListener.enable();
             } catch (Exception e) {
+                if (mCamera != null) {
+                    // 参数配置失败，尺寸和帧率都不可信，不能继续预览
+                    sPreviewConfigNegotiator.invalidate(String.valueOf(mCameraId));
+                    closeCamera();
+                }
                 onOpenError(CAMERA_ERROR_OPEN, e.getMessage());
             }
         }
     }
 
+    @Override
+    public void openCameraAsync() {
+        getCameraHandler().post(this::openCamera);
+    }
+
+    private static synchronized Camera.CameraInfo[] getCameraInfos() {
+        if (sCameraInfos == null) {
+            Camera.CameraInfo[] cameraInfos = new Camera.CameraInfo[Camera.getNumberOfCameras()];
+            for (int i = 0; i < cameraInfos.length; i++) {
+                cameraInfos[i] = new Camera.CameraInfo();
+                Camera.getCameraInfo(i, cameraInfos[i]);
+            }
+            sCameraInfos = cameraInfos;
+        }
+        return sCameraInfos;
+    }
+
+    @Override
+    public void startPreviewAsync(SurfaceTexture surfaceTexture) {
+        getCameraHandler().post(() -> startPreview(surfaceTexture));
+    }
+
+    @Override
+    public void releaseCameraAsync() {
+        getCameraHandler().post(this::releaseCamera);
+    }
+
+    private synchronized Handler getCameraHandler() {
+        if (mCameraThread == null) {
+            mCameraThread = new HandlerThread("CameraThread");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+        }
+        return mCameraHandler;
+    }
+
+    @Override
+    public synchronized void quit() {
+        if (mCameraThread != null) {
+            // 排在前面的releaseCamera仍会执行
+            mCameraThread.quitSafely();
+            mCameraThread = null;
+            mCameraHandler = null;
+        }
+    }
+
     /**
      * 摄像头打开状态
      *
@@ -267,10 +579,12 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
         }
         if (mCamera != null) {
             try {
+                mPreviewHolder = holder;
+                mPreviewTexture = null;
                 mCamera.setPreviewDisplay(holder);
+                addZslConsumer();
                 if (!mPreviewBufferCallbacks.isEmpty()) {
-                    mCamera.addCallbackBuffer(new byte[mPreviewWidth * mPreviewHeight * 3 / 2]);
-                    mCamera.setPreviewCallbackWithBuffer(mPreviewCallback);
+                    attachPreviewBuffers();
                 }
                 mCamera.startPreview();
                 onPreview(mPreviewWidth, mPreviewHeight);
@@ -293,10 +607,12 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
         }
         if (mCamera != null) {
             try {
+                mPreviewTexture = surface;
+                mPreviewHolder = null;
                 mCamera.setPreviewTexture(surface);
+                addZslConsumer();
                 if (!mPreviewBufferCallbacks.isEmpty()) {
-                    mCamera.addCallbackBuffer(new byte[mPreviewWidth * mPreviewHeight * 3 / 2]);
-                    mCamera.setPreviewCallbackWithBuffer(mPreviewCallback);
+                    attachPreviewBuffers();
                 }
                 mCamera.startPreview();
                 onPreview(mPreviewWidth, mPreviewHeight);
@@ -311,16 +627,36 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
      */
     @Override
     public synchronized void stopPreview() {
+        stopPreview(false);
+    }
+
+    /**
+     * @param keepConsumers 是否保留预览数据使用者及其线程，切换摄像头时保留
+     */
+    private void stopPreview(boolean keepConsumers) {
         Log.v(TAG, "stopPreview.");
+        mCaptureQueue.cancel();
         if (isPreviewing && null != mCamera) {
             try {
                 mCamera.setPreviewCallback(null);
                 mCamera.stopPreview();
-                mPreviewBufferCallbacks.clear();
+                if (!keepConsumers) {
+                    mPreviewBufferCallbacks.clear();
+                    mPreviewFrameDispatcher.clear();
+                    mDirectFrameDispatcher.clear();
+                }
+                if (mZslCapture != null) {
+                    // 缓冲环detach之前释放持有的帧
+                    mZslCapture.getHistory().clear();
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
+            Log.i(TAG, "preview frames delivered: " + mPreviewBufferRing.getDeliveredCount()
+                    + ", dropped: " + mPreviewBufferRing.getDroppedCount()
+                    + ", recycled: " + mPreviewBufferRing.getRecycledCount());
         }
+        mPreviewBufferRing.detach();
         isPreviewing = false;
     }
 
@@ -332,81 +668,238 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
         Log.v(TAG, "releaseCamera.");
         if (null != mCamera) {
             stopPreview();
-            try {
-                mCamera.release();
-                mCamera = null;
-                mCameraBytes = null;
-                mDisplayOrientation = -1;
-            } catch (Exception e) {
-            }
+            mOrientationEventListener.disable();
+            closeCamera();
+            mPreviewTexture = null;
+            mPreviewHolder = null;
             onClose();
         }
     }
 
+    /**
+     * 只释放Camera本身，预览停止后调用
+     */
+    private void closeCamera() {
+        mZoomController.setHal(null);
+        mCamera.setZoomChangeListener(null);
+        if (mParametersCache != null) {
+            mParametersCache.release();
+            mParametersCache = null;
+        }
+        try {
+            mCamera.release();
+            mCamera = null;
+            mDisplayOrientation = -1;
+        } catch (Exception e) {
+        }
+    }
+
     /**
      * 配置Camera参数
      */
-    private void initCamera() {
+    private void initCamera(CameraCapabilities capabilities) {
         if (mCamera != null) {
-            mParameters = mCamera.getParameters();
+            // 只在这里getParameters()一次，之后的读写都走缓存；支持列表有磁盘缓存时不再解析
+            mParametersCache = new ParametersCache(mCamera, getCameraHandler(), capabilities);
+            ParametersCache.Editor editor = mParametersCache.edit();
             if (mDisplayOrientation == -1) {
                 setCameraDisplayOrientation(mContext, mCameraId, mCamera);
             }
             // 设置预览方向
             mCamera.setDisplayOrientation(mDisplayOrientation);
             // 设置拍照方向
-            mParameters.setRotation(mOrientation);
+            editor.setRotation(mOrientation);
 
             // 如果摄像头不支持这些参数都会出错的，所以设置的时候一定要判断是否支持
-            List<String> supportedFlashModes = mParameters.getSupportedFlashModes();
+            List<String> supportedFlashModes = mParametersCache.getSupportedFlashModes();
             if (supportedFlashModes != null && supportedFlashModes.contains(Parameters.FLASH_MODE_OFF)) {
-                mParameters.setFlashMode(Parameters.FLASH_MODE_OFF); // 设置闪光模式
+                editor.setFlashMode(Parameters.FLASH_MODE_OFF); // 设置闪光模式
             }
-            List<String> supportedFocusModes = mParameters.getSupportedFocusModes();
+            List<String> supportedFocusModes = mParametersCache.getSupportedFocusModes();
             if (supportedFocusModes != null && supportedFocusModes.contains(Parameters.FOCUS_MODE_AUTO)) {
-                mParameters.setFocusMode(Parameters.FOCUS_MODE_AUTO); // 设置聚焦模式
+                editor.setFocusMode(Parameters.FOCUS_MODE_AUTO); // 设置聚焦模式
             }
-            mParameters.setPreviewFormat(ImageFormat.NV21); // 设置预览图片格式
-            mParameters.setPictureFormat(ImageFormat.JPEG); // 设置拍照图片格式
-            mParameters.setExposureCompensation(0); // 设置曝光强度
+            editor.setPictureFormat(ImageFormat.JPEG); // 设置拍照图片格式
+            editor.setExposureCompensation(0); // 设置曝光强度
 
-            Camera.Size previewSize = getSuitableSize(mParameters.getSupportedPreviewSizes());
-            mPreviewWidth = previewSize.width;
-            mPreviewHeight = previewSize.height;
+            PreviewConfig previewConfig = capabilities != null ? capabilities.getPreviewConfig(mPreviewBudget) : null;
+            if (previewConfig == null) {
+                previewConfig = negotiatePreviewConfig();
+            }
+            mPreviewConfig = previewConfig;
+            mPreviewWidth = previewConfig.getWidth();
+            mPreviewHeight = previewConfig.getHeight();
             mPreviewSize = new Size(mPreviewWidth, mPreviewHeight);
-            mParameters.setPreviewSize(mPreviewWidth, mPreviewHeight);
-            Log.d(TAG, "previewWidth: " + mPreviewWidth + ", previewHeight: " + mPreviewHeight);
+            editor.setPreviewFormat(previewConfig.getFormat()); // 设置预览图片格式
+            editor.setPreviewSize(mPreviewWidth, mPreviewHeight);
+            if (previewConfig.getMaxFps() > 0) {
+                if (mParametersCache.getSupportedPreviewFpsRange() != null) {
+                    editor.setPreviewFpsRange(previewConfig.getMinFps(), previewConfig.getMaxFps());
+                }
+                // 参数合并提交的间隔跟随帧率
+                mParametersCache.setMinApplyInterval(previewConfig.getFrameIntervalMs());
+            }
+            Log.d(TAG, "preview config: " + previewConfig);
 
-            Camera.Size pictureSize = mParameters.getPictureSize();
-            mParameters.setPictureSize(pictureSize.width, pictureSize.height);
+            Camera.Size pictureSize = mParametersCache.getPictureSize();
+            editor.setPictureSize(pictureSize.width, pictureSize.height);
             Log.d(TAG, "pictureWidth: " + pictureSize.width + ", pictureHeight: " + pictureSize.height);
 
-            mCamera.setParameters(mParameters);
-            isSupportZoom = mParameters.isSmoothZoomSupported();
+            editor.commit();
+            isSupportZoom = mParametersCache.isSmoothZoomSupported();
+            if (mParametersCache.isZoomSupported()) {
+                Camera camera = mCamera;
+                camera.setZoomChangeListener((zoomValue, stopped, c) -> mZoomController.onZoomChange(zoomValue, stopped));
+                mZoomController.setHal(new ZoomHal(camera, mParametersCache));
+            } else {
+                mZoomController.setHal(null);
+            }
+        }
+    }
+
+    private String getCapabilityKey() {
+        return CapabilityStore.createKey(Build.MODEL, Build.FINGERPRINT, "camera1", String.valueOf(mCameraId));
+    }
+
+    private CapabilityStore getCapabilityStore() {
+        return CapabilityStore.getInstance(new File(mContext.getCacheDir(), CapabilityStore.DIR_NAME));
+    }
+
+    /**
+     * 在后台重新解析能力并与缓存比较，没有缓存或不一致时保存新的，下次打开生效
+     *
+     * @param key
+     * @param cached
+     */
+    private void validateCapabilities(String key, CameraCapabilities cached) {
+        final ParametersCache parametersCache = mParametersCache;
+        final PreviewBudget budget = mPreviewBudget;
+        final PreviewConfig previewConfig = mPreviewConfig;
+        final Camera.CameraInfo cameraInfo = mCameraInfo;
+        final String cameraId = String.valueOf(mCameraId);
+        if (parametersCache == null) {
+            return;
+        }
+        CapabilityStore store = getCapabilityStore();
+        store.execute(() -> {
+            CameraCapabilities capabilities = parametersCache.readCapabilities()
+                    .setSensorOrientation(cameraInfo.orientation)
+                    .setFrontFacing(cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT);
+            if (capabilities.isSameCapabilities(cached)) {
+                if (cached.getPreviewConfig(budget) == null) {
+                    // 能力没变，只是预算变了
+                    store.save(key, capabilities.setPreviewConfig(budget, previewConfig));
+                }
+                return;
+            }
+            PreviewConfig config = previewConfig;
+            if (cached != null) {
+                Log.w(TAG, "capabilities changed, invalidate cache: " + key);
+                store.invalidate(key);
+                sPreviewConfigNegotiator.invalidate(cameraId);
+                // 按新的能力重新协商，当前会话继续使用已设置的配置
+                config = PreviewConfigNegotiator.negotiate(capabilities.getPreviewSizes(),
+                        capabilities.getPreviewFpsRanges(), capabilities.getPreviewFormats(), budget);
+            }
+            if (config != null) {
+                capabilities.setPreviewConfig(budget, config);
+            }
+            store.save(key, capabilities);
+        });
+    }
+
+    /**
+     * 缩放请求都转到Camera线程执行
+     */
+    private class ZoomHal implements ZoomController.Hal {
+
+        private final Camera mZoomCamera;
+        private final ParametersCache mZoomParameters;
+
+        ZoomHal(Camera camera, ParametersCache parametersCache) {
+            mZoomCamera = camera;
+            mZoomParameters = parametersCache;
+        }
+
+        @Override
+        public List<Integer> getZoomRatios() {
+            return mZoomParameters.getZoomRatios();
+        }
+
+        @Override
+        public boolean isSmoothZoomSupported() {
+            return mZoomParameters.isSmoothZoomSupported();
+        }
+
+        @Override
+        public void setZoom(int index) {
+            // apply()已按帧间隔合并，提交后才认为缩放生效；被拒绝时报告Camera实际停留的级别，GPU裁剪按它补足
+            mZoomParameters.edit().setZoom(index).apply(ACTION_ZOOM, success ->
+                    mZoomController.onZoomChange(success ? index : mZoomParameters.getAppliedZoom(), true));
+        }
+
+        @Override
+        public void startSmoothZoom(int index) {
+            getCameraHandler().post(() -> {
+                try {
+                    mZoomCamera.startSmoothZoom(index);
+                } catch (RuntimeException e) {
+                    // Camera已释放或正在平滑缩放
+                    Log.e(TAG, "startSmoothZoom failed: " + e.getMessage());
+                    mZoomController.onZoomChange(mZoomController.getAppliedIndex(), true);
+                }
+            });
+        }
+
+        @Override
+        public void stopSmoothZoom() {
+            getCameraHandler().post(() -> {
+                try {
+                    mZoomCamera.stopSmoothZoom();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "stopSmoothZoom failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * 开启了零延时拍照时，帧历史作为一个预览数据使用者
+     */
+    private void addZslConsumer() {
+        if (mZslCapture != null) {
+            addPreviewBufferCallback(mZslCapture.getHistory());
         }
     }
 
+    /**
+     * 将预览缓冲环中的缓冲区交给Camera
+     */
+    private void attachPreviewBuffers() {
+        final Camera camera = mCamera;
+        mPreviewBufferRing.attach(mPreviewWidth * mPreviewHeight * 3 / 2, camera::addCallbackBuffer);
+        camera.setPreviewCallbackWithBuffer(mPreviewCallback);
+    }
+
     /**
      * 开启闪光灯
      */
     public void setFlashModeOn() {
-        if (mCamera == null)
+        ParametersCache parametersCache = mParametersCache;
+        if (parametersCache == null)
             return;
 
-        Parameters parameters = mCamera.getParameters();
-        List<String> flashModes = parameters.getSupportedFlashModes();
+        List<String> flashModes = parametersCache.getSupportedFlashModes();
         // Check if camera flash exists
         if (flashModes == null) {
             // Use the screen as a flashlight (next best thing)
             return;
         }
-        String flashMode = parameters.getFlashMode();
+        String flashMode = parametersCache.getFlashMode();
         if (!Parameters.FLASH_MODE_TORCH.equals(flashMode)) {
             // Turn on the flash
             if (flashModes.contains(Parameters.FLASH_MODE_TORCH)) {
-                parameters.setFlashMode(Parameters.FLASH_MODE_TORCH);
-                mCamera.setParameters(parameters);
-            } else {
+                parametersCache.edit().setFlashMode(Parameters.FLASH_MODE_TORCH).apply();
             }
         }
     }
@@ -415,21 +908,20 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
      * 关闭闪光灯
      */
     public void setFlashModeOff() {
-        if (mCamera == null)
+        ParametersCache parametersCache = mParametersCache;
+        if (parametersCache == null)
             return;
 
-        Parameters parameters = mCamera.getParameters();
-        List<String> flashModes = parameters.getSupportedFlashModes();
+        List<String> flashModes = parametersCache.getSupportedFlashModes();
         // Check if camera flash exists
         if (flashModes == null) {
             // Use the screen as a flashlight (next best thing)
             return;
         }
-        if (!Parameters.FLASH_MODE_OFF.equals(flashModes)) {
+        if (!Parameters.FLASH_MODE_OFF.equals(parametersCache.getFlashMode())) {
             // Turn off the flash
             if (flashModes.contains(Parameters.FLASH_MODE_OFF)) {
-                parameters.setFlashMode(Parameters.FLASH_MODE_OFF);
-                mCamera.setParameters(parameters);
+                parametersCache.edit().setFlashMode(Parameters.FLASH_MODE_OFF).apply();
             }
         }
     }
@@ -445,29 +937,66 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
 
     /**
      * 切换摄像头
+     * <p>
+     * 只关闭并重新打开Camera：预览目标、预览数据使用者及其线程、缓冲区（尺寸不变时）都保留，
+     * 切换过程不回调onClose，打开后直接在原来的目标上开启预览。
      */
-    public void switchCamera() {
+    @Override
+    public synchronized void switchCamera() {
+        mSwitchStartTime = SystemClock.elapsedRealtime();
         // 先改变摄像头方向
         mCameraId ^= 1;
-        List<PreviewBufferCallback> previewBufferCallbacks = new ArrayList<>();
-        if (!mPreviewBufferCallbacks.isEmpty()) {
-            previewBufferCallbacks.addAll(mPreviewBufferCallbacks);
-        }
-        releaseCamera();
-        if (!previewBufferCallbacks.isEmpty()) {
-            mPreviewBufferCallbacks.addAll(previewBufferCallbacks);
+        if (mCamera == null) {
+            mSwitchStartTime = 0;
+            return;
         }
+        SurfaceTexture previewTexture = mPreviewTexture;
+        SurfaceHolder previewHolder = mPreviewHolder;
+        stopPreview(true);
+        closeCamera();
         openCamera();
+        if (mCamera == null) {
+            // 打开失败，按完整释放处理
+            mSwitchStartTime = 0;
+            mPreviewBufferCallbacks.clear();
+            mPreviewFrameDispatcher.clear();
+            mDirectFrameDispatcher.clear();
+            mOrientationEventListener.disable();
+            mPreviewTexture = null;
+            mPreviewHolder = null;
+            onClose();
+            return;
+        }
+        // onOpen回调中可能已经开启了预览
+        if (previewTexture != null) {
+            startPreview(previewTexture);
+        } else if (previewHolder != null) {
+            startPreview(previewHolder);
+        }
+    }
+
+    @Override
+    public void switchCameraAsync() {
+        getCameraHandler().post(this::switchCamera);
+    }
+
+    /**
+     * @return 最近一次切换摄像头到预览重新开始的耗时，单位毫秒，没有切换过时为-1
+     */
+    @Override
+    public long getLastSwitchCost() {
+        return mLastSwitchCost;
     }
 
     public void focusOnPoint(int x, int y, int width, int height) {
         Log.v(TAG, "touch point (" + x + ", " + y + ")");
-        if (mCamera == null) {
+        ParametersCache parametersCache = mParametersCache;
+        if (parametersCache == null) {
             return;
         }
-        Parameters parameters = mCamera.getParameters();
+        ParametersCache.Editor editor = parametersCache.edit();
         // 1.先要判断是否支持设置聚焦区域
-        if (parameters.getMaxNumFocusAreas() > 0) {
+        if (parametersCache.getMaxNumFocusAreas() > 0) {
             // 2.以触摸点为中心点，view窄边的1/4为聚焦区域的默认边长
             int length = Math.min(width, height) >> 3; // 1/8的长度
             int left = x - length;
@@ -487,115 +1016,97 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
             Log.d(TAG, "focus area (" + left + ", " + top + ", " + right + ", " + bottom + ")");
             ArrayList<Camera.Area> areas = new ArrayList<>();
             areas.add(new Camera.Area(new Rect(left, top, right, bottom), 600));
-            parameters.setFocusAreas(areas);
-        }
-        try {
-            mCamera.cancelAutoFocus(); // 先要取消掉进程中所有的聚焦功能
-            mCamera.setParameters(parameters);
-            mCamera.autoFocus(this); // 调用聚焦
-        } catch (Exception e) {
-            e.printStackTrace();
+            editor.setFocusAreas(areas);
         }
+        // 连续点击时合并为一次提交，提交后只对最后一次点击对焦
+        editor.apply(ACTION_FOCUS, success -> {
+            if (!success) {
+                // 对焦区域没有生效，不按旧区域对焦
+                return;
+            }
+            try {
+                mCamera.cancelAutoFocus(); // 先要取消掉进程中所有的聚焦功能
+                mCamera.autoFocus(this); // 调用聚焦
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
     }
 
     /**
-     * 获取合适的尺寸
+     * 按预览预算协商预览尺寸、帧率范围和格式，同一camera id预算不变时直接使用缓存结果
      *
-     * @param sizes
      * @return
      */
-    private Camera.Size getSuitableSize(List<Camera.Size> sizes) {
-        int minDelta = Integer.MAX_VALUE; // 最小的差值，初始值应该设置大点保证之后的计算中会被重置
-        int index = 0; // 最小的差值对应的索引坐标
-        for (int i = 0; i < sizes.size(); i++) {
-            Camera.Size size = sizes.get(i);
-            Log.v(TAG, "SupportedSize, width: " + size.width + ", height: " + size.height);
-            // 先判断比例是否相等
-            if (size.width * mPreviewScale == size.height) {
-                int delta = Math.abs(mPreviewWidth - size.width);
-                if (delta == 0) {
-                    return size;
-                }
-                if (minDelta > delta) {
-                    minDelta = delta;
-                    index = i;
-                }
-            }
+    private PreviewConfig negotiatePreviewConfig() {
+        List<Camera.Size> supportedSizes = mParametersCache.getSupportedPreviewSizes();
+        List<int[]> sizes = new ArrayList<>(supportedSizes.size());
+        for (Camera.Size size : supportedSizes) {
+            sizes.add(new int[]{size.width, size.height});
         }
-        return sizes.get(index);
+        PreviewConfig config = sPreviewConfigNegotiator.negotiate(String.valueOf(mCameraId), sizes,
+                mParametersCache.getSupportedPreviewFpsRange(), mParametersCache.getSupportedPreviewFormats(),
+                mPreviewBudget);
+        if (config == null) {
+            // 不支持NV21时沿用默认尺寸和格式
+            Camera.Size size = supportedSizes.get(0);
+            config = new PreviewConfig(size.width, size.height, 0, 0, ImageFormat.NV21, Float.MAX_VALUE);
+        }
+        return config;
     }
 
     public void setZoom(int zoomValue) {
-        if (isSupportZoom) {
-            try {
-                Parameters params = mCamera.getParameters();
-                final int MAX = params.getMaxZoom();
-                if (MAX == 0) return;
-                params.setZoom(zoomValue);
-                mCamera.setParameters(params);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        ParametersCache parametersCache = mParametersCache;
+        if (isSupportZoom && parametersCache != null) {
+            final int MAX = parametersCache.getMaxZoom();
+            if (MAX == 0) return;
+            parametersCache.edit().setZoom(zoomValue).apply();
         }
     }
 
     public int getZoom() {
-        if (isSupportZoom) {
-            try {
-                Parameters params = mCamera.getParameters();
-                return params.getZoom();
-            } catch (Exception e) {
-                Log.e(TAG, e.getMessage());
-                return 0;
-            }
+        ParametersCache parametersCache = mParametersCache;
+        if (isSupportZoom && parametersCache != null) {
+            return parametersCache.getZoom();
         } else {
             return 0;
         }
     }
 
-    public synchronized void handleZoom(boolean isZoomIn) {
-        if (mCamera == null) {
-            return;
-        }
-        Parameters parameters = mCamera.getParameters();
-        if (parameters.isZoomSupported()) {
-            int maxZoom = parameters.getMaxZoom();
-            int zoom = parameters.getZoom();
-            if (isZoomIn && zoom < maxZoom) {
-                zoom++;
-            } else if (zoom > 0) {
-                zoom--;
-            }
-            Log.d(TAG, "handleZoom: zoom: " + zoom);
-            parameters.setZoom(zoom);
-            mCamera.setParameters(parameters);
-        } else {
-            Log.i(TAG, "zoom not supported");
-        }
+    /**
+     * 放大或缩小一级，只修改目标比例，由渲染循环通过{@link ZoomController#onFrame()}提交
+     *
+     * @param isZoomIn
+     */
+    public void handleZoom(boolean isZoomIn) {
+        mZoomController.zoomStep(isZoomIn);
+        Log.d(TAG, "handleZoom: ratio: " + mZoomController.getZoomRatio());
     }
 
-    private void setPictureRotate(int orientation) {
-        if (orientation == OrientationEventListener.ORIENTATION_UNKNOWN) return;
-        orientation = (orientation + 45) / 90 * 90;
-        int rotation;
-        if (mCameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            rotation = (mCameraInfo.orientation - orientation + 360) % 360;
-        } else {  // back-facing camera
-            rotation = (mCameraInfo.orientation + orientation) % 360;
-        }
-        mLatestRotation = rotation;
+    @Override
+    public ZoomController getZoomController() {
+        return mZoomController;
     }
 
     public int getLatestRotation() {
-        return mLatestRotation;
+        return mOrientationTracker.getRotation();
+    }
+
+    /**
+     * 获取方向跟踪，拍照、绘制、分析等直接读取量化后的方向
+     *
+     * @return
+     */
+    @Override
+    public OrientationTracker getOrientationTracker() {
+        return mOrientationTracker;
     }
 
     public void setCameraDisplayOrientation(Context context, int cameraId,
                                             Camera camera) {
         if (context == null)
             return;
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        Camera.getCameraInfo(cameraId, info);
+        Camera.CameraInfo info = getCameraInfos()[cameraId];
         WindowManager windowManager = (WindowManager) context
                 .getSystemService(Context.WINDOW_SERVICE);
         int rotation = windowManager.getDefaultDisplay().getRotation();
@@ -648,6 +1159,11 @@ public class CameraManager implements Camera.AutoFocusCallback, ICameraManager {
 
     private void onPreview(int width, int height) {
         isPreviewing = true;
+        if (mSwitchStartTime > 0) {
+            mLastSwitchCost = SystemClock.elapsedRealtime() - mSwitchStartTime;
+            mSwitchStartTime = 0;
+            Log.i(TAG, "switch camera cost: " + mLastSwitchCost + "ms");
+        }
         if (mCameraCallback != null) {
             mCameraCallback.onPreview(width, height);
         }
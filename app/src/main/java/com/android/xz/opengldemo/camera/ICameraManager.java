@@ -7,6 +7,7 @@ import android.view.SurfaceHolder;
 import com.android.xz.opengldemo.camera.callback.CameraCallback;
 import com.android.xz.opengldemo.camera.callback.PictureBufferCallback;
 import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewDirectBufferCallback;
 
 /**
  * Camera和Camera2通用接口
@@ -21,11 +22,21 @@ public interface ICameraManager {
      */
     void openCamera();
 
+    /**
+     * 在Camera线程中异步打开Camera，不阻塞调用线程，结果通过{@link CameraCallback}回调
+     */
+    void openCameraAsync();
+
     /**
      * 关闭释放Camera
      */
     void releaseCamera();
 
+    /**
+     * 在Camera线程中异步关闭释放Camera，与{@link #openCameraAsync()}按调用顺序执行
+     */
+    void releaseCameraAsync();
+
     /**
      * 开启预览
      *
@@ -40,6 +51,13 @@ public interface ICameraManager {
      */
     void startPreview(SurfaceTexture surfaceTexture);
 
+    /**
+     * 在Camera线程中异步开启预览，Camera尚未打开时忽略
+     *
+     * @param surfaceTexture
+     */
+    void startPreviewAsync(SurfaceTexture surfaceTexture);
+
     /**
      * 停止预览
      */
@@ -108,6 +126,13 @@ public interface ICameraManager {
      */
     void addPreviewBufferCallback(PreviewBufferCallback previewBufferCallback);
 
+    /**
+     * 设置direct ByteBuffer预览数据回调，使用完须调用{@link com.android.xz.opengldemo.camera.buffer.DirectFrame#release()}
+     *
+     * @param previewDirectBufferCallback
+     */
+    void addPreviewDirectBufferCallback(PreviewDirectBufferCallback previewDirectBufferCallback);
+
     /**
      * 拍照接口
      *
@@ -116,7 +141,39 @@ public interface ICameraManager {
     void takePicture(PictureBufferCallback pictureCallback);
 
     /**
-     * 切换摄像头
+     * 获取缩放控制，渲染循环每帧调用{@link ZoomController#onFrame()}提交缩放
+     *
+     * @return
+     */
+    ZoomController getZoomController();
+
+    /**
+     * 获取方向跟踪，量化后的方向变化时才更新，可在任意线程无锁读取
+     *
+     * @return
+     */
+    OrientationTracker getOrientationTracker();
+
+    /**
+     * 切换摄像头，保留预览目标和预览数据回调
      */
     void switchCamera();
+
+    /**
+     * 在Camera线程中异步切换摄像头
+     */
+    void switchCameraAsync();
+
+    /**
+     * 获取最近一次切换摄像头到预览重新开始的耗时
+     *
+     * @return 单位毫秒，没有切换过时为-1
+     */
+    long getLastSwitchCost();
+
+    /**
+     * 退出Camera线程，之前提交的异步操作执行完后线程结束，不再使用时在{@link #releaseCameraAsync()}之后调用。
+     * 之后再调用异步接口会重新创建线程
+     */
+    void quit();
 }
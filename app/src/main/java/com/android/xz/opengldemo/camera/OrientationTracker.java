@@ -0,0 +1,152 @@
+package com.android.xz.opengldemo.camera;
+
+/**
+ * 设备方向跟踪
+ * <p>
+ * 方向传感器按传感器频率回调，这里把角度量化为0/90/180/270，并带回差：
+ * 偏离当前方向超过45度加回差角度才切换，避免在45度附近来回抖动。
+ * 只有量化结果变化时才重新计算拍照旋转角并通知监听，其余回调不分配对象也不加锁；
+ * 使用者直接读取{@link #getDeviceOrientation()}、{@link #getRotation()}。
+ *
+ * @author xiaozhi
+ * @since 2024/11/21
+ */
+public class OrientationTracker {
+
+    /**
+     * 与OrientationEventListener.ORIENTATION_UNKNOWN一致
+     */
+    public static final int ORIENTATION_UNKNOWN = -1;
+
+    /**
+     * 默认回差角度
+     */
+    public static final int DEFAULT_HYSTERESIS = 15;
+
+    /**
+     * 方向变化监听，在传感器回调线程中执行
+     */
+    public interface OnOrientationChangedListener {
+        /**
+         * @param deviceOrientation 量化后的设备方向
+         * @param rotation          对应的拍照旋转角
+         */
+        void onOrientationChanged(int deviceOrientation, int rotation);
+    }
+
+    private final int mHysteresis;
+    private volatile int mDeviceOrientation;
+    private volatile int mRotation;
+    private volatile int mSensorOrientation;
+    private volatile boolean isFront;
+    private volatile OnOrientationChangedListener[] mListeners = new OnOrientationChangedListener[0];
+
+    public OrientationTracker() {
+        this(DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * @param hysteresis 回差角度，0到44
+     */
+    public OrientationTracker(int hysteresis) {
+        if (hysteresis < 0 || hysteresis >= 45) {
+            throw new IllegalArgumentException("hysteresis must be in [0, 45): " + hysteresis);
+        }
+        mHysteresis = hysteresis;
+    }
+
+    /**
+     * 设置当前Camera，打开Camera后调用
+     *
+     * @param sensorOrientation Camera传感器方向
+     * @param isFrontFacing     是否前置
+     */
+    public synchronized void setCameraInfo(int sensorOrientation, boolean isFrontFacing) {
+        mSensorOrientation = sensorOrientation;
+        isFront = isFrontFacing;
+        publish(mDeviceOrientation, true);
+    }
+
+    /**
+     * 传感器原始角度，对应OrientationEventListener.onOrientationChanged
+     *
+     * @param orientation 0到359，或{@link #ORIENTATION_UNKNOWN}
+     * @return 量化方向是否变化
+     */
+    public boolean onOrientationChanged(int orientation) {
+        if (orientation == ORIENTATION_UNKNOWN) {
+            return false;
+        }
+        int current = mDeviceOrientation;
+        // 与当前方向的最小夹角
+        int diff = Math.abs(orientation - current) % 360;
+        if (diff > 180) {
+            diff = 360 - diff;
+        }
+        if (diff <= 45 + mHysteresis) {
+            return false;
+        }
+        int quantized = (orientation + 45) / 90 * 90 % 360;
+        synchronized (this) {
+            return publish(quantized, false);
+        }
+    }
+
+    private boolean publish(int deviceOrientation, boolean force) {
+        if (!force && deviceOrientation == mDeviceOrientation) {
+            return false;
+        }
+        int rotation;
+        if (isFront) {
+            rotation = (mSensorOrientation - deviceOrientation + 360) % 360;
+        } else {  // back-facing camera
+            rotation = (mSensorOrientation + deviceOrientation) % 360;
+        }
+        mDeviceOrientation = deviceOrientation;
+        mRotation = rotation;
+        for (OnOrientationChangedListener listener : mListeners) {
+            listener.onOrientationChanged(deviceOrientation, rotation);
+        }
+        return true;
+    }
+
+    /**
+     * @return 量化后的设备方向，0/90/180/270
+     */
+    public int getDeviceOrientation() {
+        return mDeviceOrientation;
+    }
+
+    /**
+     * @return 拍照旋转角，即Camera图像需要顺时针旋转的角度
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public synchronized void addListener(OnOrientationChangedListener listener) {
+        OnOrientationChangedListener[] listeners = mListeners;
+        for (OnOrientationChangedListener l : listeners) {
+            if (l == listener) {
+                return;
+            }
+        }
+        OnOrientationChangedListener[] newListeners = new OnOrientationChangedListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        mListeners = newListeners;
+    }
+
+    public synchronized void removeListener(OnOrientationChangedListener listener) {
+        OnOrientationChangedListener[] listeners = mListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                OnOrientationChangedListener[] newListeners = new OnOrientationChangedListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                mListeners = newListeners;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.android.xz.opengldemo.camera;
+
+import android.hardware.Camera;
+import android.hardware.Camera.Parameters;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.xz.opengldemo.camera.config.CameraCapabilities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Camera参数缓存
+ * <p>
+ * getParameters()/setParameters()每次都要把整份参数拼成字符串跨进程传递再解析，开销很大。
+ * 打开Camera后只取一次参数，之后的读取都走缓存；修改通过{@link Editor}暂存：
+ * commit()立即setParameters，apply()合并到Camera线程执行，每个最小间隔内最多setParameters一次。
+ * setParameters失败时缓存回滚到上一次提交成功的参数，commit()抛出异常，apply()只输出日志，
+ * 等待中的{@link OnAppliedListener}收到失败，不能当作修改已生效。
+ *
+ * @author xiaozhi
+ * @since 2024/11/12
+ */
+public class ParametersCache {
+
+    private static final String TAG = ParametersCache.class.getSimpleName();
+
+    /**
+     * 默认最小提交间隔，约一帧（30fps）
+     */
+    public static final long DEFAULT_MIN_APPLY_INTERVAL_MS = 33;
+
+    private final Camera mCamera;
+    private final Parameters mParameters;
+    // 上一次被Camera接受的参数，setParameters失败时回滚
+    private String mAppliedParameters;
+    private int mAppliedZoom;
+    private final Handler mHandler;
+
+    // 支持列表只在创建时解析一次
+    private final List<String> mSupportedFlashModes;
+    private final List<String> mSupportedFocusModes;
+    private final List<Camera.Size> mSupportedPreviewSizes;
+    private final List<int[]> mSupportedPreviewFpsRange;
+    private final List<Integer> mSupportedPreviewFormats;
+    private final List<Integer> mZoomRatios;
+    private final boolean isZoomSupported;
+    private final boolean isSmoothZoomSupported;
+    private final int mMaxZoom;
+    private final int mMaxNumFocusAreas;
+    private final int mMaxNumMeteringAreas;
+
+    private boolean isDirty;
+    private boolean isApplyScheduled;
+    private boolean isReleased;
+    private long mLastApplyTime;
+    private long mMinApplyInterval = DEFAULT_MIN_APPLY_INTERVAL_MS;
+    // 等待提交后执行的动作，同一key只保留最后一个，不同key互不覆盖
+    private final Map<String, OnAppliedListener> mPendingActions = new LinkedHashMap<>();
+    private int mApplyCount;
+
+    private final Runnable mApplyRunnable = this::flush;
+
+    /**
+     * 提交结束后在提交线程中回调
+     */
+    public interface OnAppliedListener {
+        /**
+         * @param success setParameters是否成功，失败时缓存已回滚到上一次成功的参数
+         */
+        void onApplied(boolean success);
+    }
+
+    /**
+     * 在Camera线程中创建，只调用一次getParameters()
+     *
+     * @param camera
+     * @param handler Camera线程Handler，apply()在该线程中提交
+     */
+    public ParametersCache(Camera camera, Handler handler) {
+        this(camera, handler, null);
+    }
+
+    /**
+     * 在Camera线程中创建，支持列表取自磁盘缓存，不再解析，可稍后用{@link #readCapabilities()}在后台校验
+     *
+     * @param camera
+     * @param handler      Camera线程Handler，apply()在该线程中提交
+     * @param capabilities 缓存的能力，为null时从参数中解析
+     */
+    public ParametersCache(Camera camera, Handler handler, CameraCapabilities capabilities) {
+        mCamera = camera;
+        mHandler = handler;
+        mParameters = camera.getParameters();
+        mAppliedParameters = mParameters.flatten();
+        mAppliedZoom = mParameters.getZoom();
+        if (capabilities != null && capabilities.getPreviewSizes() != null) {
+            mSupportedFlashModes = capabilities.getFlashModes();
+            mSupportedFocusModes = capabilities.getFocusModes();
+            mSupportedPreviewSizes = new ArrayList<>(capabilities.getPreviewSizes().size());
+            for (int[] size : capabilities.getPreviewSizes()) {
+                mSupportedPreviewSizes.add(camera.new Size(size[0], size[1]));
+            }
+            mSupportedPreviewFpsRange = capabilities.getPreviewFpsRanges();
+            mSupportedPreviewFormats = capabilities.getPreviewFormats();
+        } else {
+            mSupportedFlashModes = mParameters.getSupportedFlashModes();
+            mSupportedFocusModes = mParameters.getSupportedFocusModes();
+            mSupportedPreviewSizes = mParameters.getSupportedPreviewSizes();
+            mSupportedPreviewFpsRange = mParameters.getSupportedPreviewFpsRange();
+            mSupportedPreviewFormats = mParameters.getSupportedPreviewFormats();
+        }
+        isZoomSupported = mParameters.isZoomSupported();
+        isSmoothZoomSupported = mParameters.isSmoothZoomSupported();
+        mMaxZoom = isZoomSupported ? mParameters.getMaxZoom() : 0;
+        mZoomRatios = isZoomSupported ? mParameters.getZoomRatios() : null;
+        mMaxNumFocusAreas = mParameters.getMaxNumFocusAreas();
+        mMaxNumMeteringAreas = mParameters.getMaxNumMeteringAreas();
+    }
+
+    /**
+     * 从参数中重新解析能力，不使用缓存，可在后台线程中调用
+     *
+     * @return 只包含支持列表和默认拍照尺寸
+     */
+    public CameraCapabilities readCapabilities() {
+        synchronized (this) {
+            List<Camera.Size> previewSizes = mParameters.getSupportedPreviewSizes();
+            List<int[]> sizes = null;
+            if (previewSizes != null) {
+                sizes = new ArrayList<>(previewSizes.size());
+                for (Camera.Size size : previewSizes) {
+                    sizes.add(new int[]{size.width, size.height});
+                }
+            }
+            Camera.Size pictureSize = mParameters.getPictureSize();
+            return new CameraCapabilities()
+                    .setPreviewSizes(sizes)
+                    .setPreviewFpsRanges(mParameters.getSupportedPreviewFpsRange())
+                    .setPreviewFormats(mParameters.getSupportedPreviewFormats())
+                    .setFlashModes(mParameters.getSupportedFlashModes())
+                    .setFocusModes(mParameters.getSupportedFocusModes())
+                    .setPictureSize(pictureSize.width, pictureSize.height);
+        }
+    }
+
+    /**
+     * 开始一次修改
+     *
+     * @return
+     */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * 设置apply()的最小提交间隔，一般设为一帧的时长
+     *
+     * @param intervalMs
+     */
+    public synchronized void setMinApplyInterval(long intervalMs) {
+        mMinApplyInterval = intervalMs;
+    }
+
+    /**
+     * 立即把暂存的修改提交给Camera，并执行等待中的动作，失败时只输出日志
+     */
+    public void flush() {
+        try {
+            flushOrThrow();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "setParameters failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @throws RuntimeException setParameters失败，缓存已回滚，等待中的动作已收到失败
+     */
+    private void flushOrThrow() {
+        OnAppliedListener[] actions;
+        RuntimeException error = null;
+        synchronized (this) {
+            isApplyScheduled = false;
+            if (isReleased) {
+                return;
+            }
+            if (isDirty) {
+                try {
+                    mCamera.setParameters(mParameters);
+                    mAppliedParameters = mParameters.flatten();
+                    mAppliedZoom = mParameters.getZoom();
+                    mApplyCount++;
+                } catch (RuntimeException e) {
+                    // 不保留被拒绝的值，否则之后每次提交都会带上它们再次失败
+                    mParameters.unflatten(mAppliedParameters);
+                    error = e;
+                }
+                isDirty = false;
+                mLastApplyTime = SystemClock.uptimeMillis();
+            }
+            actions = mPendingActions.values().toArray(new OnAppliedListener[0]);
+            mPendingActions.clear();
+        }
+        for (OnAppliedListener action : actions) {
+            action.onApplied(error == null);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Camera释放前调用，之后不再提交
+     */
+    public synchronized void release() {
+        isReleased = true;
+        mPendingActions.clear();
+        mHandler.removeCallbacks(mApplyRunnable);
+        Log.d(TAG, "setParameters count: " + mApplyCount);
+    }
+
+    public List<String> getSupportedFlashModes() {
+        return mSupportedFlashModes;
+    }
+
+    public List<String> getSupportedFocusModes() {
+        return mSupportedFocusModes;
+    }
+
+    public List<Camera.Size> getSupportedPreviewSizes() {
+        return mSupportedPreviewSizes;
+    }
+
+    /**
+     * @return 支持的帧率范围，单位为帧/1000秒
+     */
+    public List<int[]> getSupportedPreviewFpsRange() {
+        return mSupportedPreviewFpsRange;
+    }
+
+    public List<Integer> getSupportedPreviewFormats() {
+        return mSupportedPreviewFormats;
+    }
+
+    public List<Integer> getZoomRatios() {
+        return mZoomRatios;
+    }
+
+    public boolean isZoomSupported() {
+        return isZoomSupported;
+    }
+
+    public boolean isSmoothZoomSupported() {
+        return isSmoothZoomSupported;
+    }
+
+    public int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    public int getMaxNumFocusAreas() {
+        return mMaxNumFocusAreas;
+    }
+
+    public int getMaxNumMeteringAreas() {
+        return mMaxNumMeteringAreas;
+    }
+
+    /**
+     * 当前缓存（包括已暂存未提交）的缩放值
+     */
+    public synchronized int getZoom() {
+        return mParameters.getZoom();
+    }
+
+    /**
+     * 上一次被Camera接受的缩放值，不包括暂存和被拒绝的修改
+     */
+    public synchronized int getAppliedZoom() {
+        return mAppliedZoom;
+    }
+
+    public synchronized String getFlashMode() {
+        return mParameters.getFlashMode();
+    }
+
+    public synchronized Camera.Size getPictureSize() {
+        return mParameters.getPictureSize();
+    }
+
+    private synchronized void stage(List<Change> changes, String actionKey, OnAppliedListener action,
+                                    boolean immediately) {
+        if (isReleased) {
+            return;
+        }
+        for (Change change : changes) {
+            change.apply(mParameters);
+        }
+        if (!changes.isEmpty()) {
+            isDirty = true;
+        }
+        if (action != null) {
+            // 同类的连续动作只保留最后一个，例如连续点击对焦
+            mPendingActions.remove(actionKey);
+            mPendingActions.put(actionKey, action);
+        }
+        if (immediately || isApplyScheduled) {
+            return;
+        }
+        isApplyScheduled = true;
+        long delay = Math.max(0, mLastApplyTime + mMinApplyInterval - SystemClock.uptimeMillis());
+        mHandler.postDelayed(mApplyRunnable, delay);
+    }
+
+    private interface Change {
+        void apply(Parameters parameters);
+    }
+
+    /**
+     * 参数修改，所有修改在commit()/apply()时一次性写入缓存
+     */
+    public class Editor {
+
+        private final List<Change> mChanges = new ArrayList<>();
+
+        private Editor() {
+        }
+
+        public Editor setZoom(int zoom) {
+            mChanges.add(p -> p.setZoom(zoom));
+            return this;
+        }
+
+        public Editor setFlashMode(String flashMode) {
+            mChanges.add(p -> p.setFlashMode(flashMode));
+            return this;
+        }
+
+        public Editor setFocusMode(String focusMode) {
+            mChanges.add(p -> p.setFocusMode(focusMode));
+            return this;
+        }
+
+        public Editor setFocusAreas(List<Camera.Area> focusAreas) {
+            mChanges.add(p -> p.setFocusAreas(focusAreas));
+            return this;
+        }
+
+        public Editor setMeteringAreas(List<Camera.Area> meteringAreas) {
+            mChanges.add(p -> p.setMeteringAreas(meteringAreas));
+            return this;
+        }
+
+        public Editor setRotation(int rotation) {
+            mChanges.add(p -> p.setRotation(rotation));
+            return this;
+        }
+
+        public Editor setPreviewSize(int width, int height) {
+            mChanges.add(p -> p.setPreviewSize(width, height));
+            return this;
+        }
+
+        public Editor setPreviewFpsRange(int min, int max) {
+            mChanges.add(p -> p.setPreviewFpsRange(min, max));
+            return this;
+        }
+
+        public Editor setPictureSize(int width, int height) {
+            mChanges.add(p -> p.setPictureSize(width, height));
+            return this;
+        }
+
+        public Editor setPreviewFormat(int format) {
+            mChanges.add(p -> p.setPreviewFormat(format));
+            return this;
+        }
+
+        public Editor setPictureFormat(int format) {
+            mChanges.add(p -> p.setPictureFormat(format));
+            return this;
+        }
+
+        public Editor setExposureCompensation(int value) {
+            mChanges.add(p -> p.setExposureCompensation(value));
+            return this;
+        }
+
+        /**
+         * 立即提交，在调用线程中执行setParameters
+         *
+         * @throws RuntimeException setParameters失败，本次和之前暂存的修改都已丢弃
+         */
+        public void commit() {
+            stage(mChanges, null, null, true);
+            flushOrThrow();
+        }
+
+        /**
+         * 合并提交，在Camera线程中执行
+         */
+        public void apply() {
+            stage(mChanges, null, null, false);
+        }
+
+        /**
+         * 合并提交，提交后在Camera线程中回调action，setParameters失败时参数为false
+         *
+         * @param actionKey 动作类别，提交前同一类别的动作只执行最后一个，不同类别都会执行
+         * @param action
+         */
+        public void apply(String actionKey, OnAppliedListener action) {
+            stage(mChanges, actionKey, action, false);
+        }
+    }
+}
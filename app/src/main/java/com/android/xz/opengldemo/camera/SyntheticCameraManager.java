@@ -0,0 +1,493 @@
+package com.android.xz.opengldemo.camera;
+
+import android.graphics.SurfaceTexture;
+import android.util.Size;
+import android.view.SurfaceHolder;
+
+import com.android.xz.opengldemo.camera.buffer.DirectFrameDispatcher;
+import com.android.xz.opengldemo.camera.buffer.PreviewBufferRing;
+import com.android.xz.opengldemo.camera.buffer.PreviewFrameDispatcher;
+import com.android.xz.opengldemo.camera.callback.CameraCallback;
+import com.android.xz.opengldemo.camera.callback.PictureBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewDirectBufferCallback;
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+import com.android.xz.opengldemo.camera.source.FrameSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 合成数据源实现，不依赖真实摄像头
+ * <p>
+ * 由{@link FrameSource}按设定的尺寸和帧率生成NV21帧，经过与{@link CameraManager}相同的
+ * 缓冲环和分发流程交给{@link PreviewBufferCallback}，{@link CameraCallback}的回调顺序也一致。
+ * 热路径中不使用Handler、Log等Android API，可以在纯JVM中做基准测试和回归测试。
+ * 预览Surface会被忽略，可以传null。
+ *
+ * @author xiaozhi
+ * @since 2024/11/15
+ */
+public class SyntheticCameraManager implements ICameraManager {
+
+    public static final int DEFAULT_FPS = 30;
+
+    private final FrameSource mFrameSource;
+    private int mPreviewWidth;
+    private int mPreviewHeight;
+    private int mFps = DEFAULT_FPS;
+    private long mMaxFrames;
+    private int mCameraId = 0;
+
+    private boolean isOpen = false;
+    private boolean isPreviewing = false;
+    private CameraCallback mCameraCallback;
+    private List<PreviewBufferCallback> mPreviewBufferCallbacks = new ArrayList<>();
+    private PreviewBufferRing mPreviewBufferRing = new PreviewBufferRing(CameraManager.DEFAULT_PREVIEW_BUFFER_COUNT,
+            PreviewBufferRing.DropPolicy.DROP_OLDEST);
+    private PreviewFrameDispatcher mPreviewFrameDispatcher = new PreviewFrameDispatcher(mPreviewBufferRing);
+    private DirectFrameDispatcher mDirectFrameDispatcher = new DirectFrameDispatcher();
+    private StreamMetrics mPreviewMetrics = FrameMetrics.getInstance().getStream(FrameMetrics.STREAM_PREVIEW_BUFFER);
+    // 相当于Camera手中可填充的缓冲区
+    private final LinkedBlockingQueue<byte[]> mFreeBuffers = new LinkedBlockingQueue<>();
+    private final ZoomController mZoomController = new ZoomController();
+    private final OrientationTracker mOrientationTracker = new OrientationTracker();
+    private volatile long mLastSwitchCost = -1;
+
+    // 模拟Camera线程，异步接口按调用顺序执行
+    private ExecutorService mCameraExecutor;
+    // 生产线程
+    private Thread mProducerThread;
+    private volatile boolean isProducing;
+    private volatile long mProducedCount;
+
+    /**
+     * @param frameSource 数据源
+     * @param width       预览宽度
+     * @param height      预览高度
+     * @param fps         帧率，小于等于0时不限速，有空闲缓冲区就生成下一帧
+     */
+    public SyntheticCameraManager(FrameSource frameSource, int width, int height, int fps) {
+        mFrameSource = frameSource;
+        setPreviewSize(width, height);
+        mFps = fps;
+        mPreviewBufferRing.setMetrics(mPreviewMetrics);
+        mPreviewFrameDispatcher.setMetrics(mPreviewMetrics);
+    }
+
+    @Override
+    public synchronized void openCamera() {
+        if (isOpen) {
+            return;
+        }
+        try {
+            mFrameSource.open(mPreviewWidth, mPreviewHeight);
+        } catch (IOException | RuntimeException e) {
+            onOpenError(CameraManager.CAMERA_ERROR_OPEN, e.getMessage());
+            return;
+        }
+        isOpen = true;
+        onOpen();
+    }
+
+    @Override
+    public void openCameraAsync() {
+        getCameraExecutor().execute(this::openCamera);
+    }
+
+    @Override
+    public synchronized void releaseCamera() {
+        if (!isOpen) {
+            return;
+        }
+        stopPreview();
+        mFrameSource.close();
+        isOpen = false;
+        onClose();
+    }
+
+    @Override
+    public void releaseCameraAsync() {
+        getCameraExecutor().execute(this::releaseCamera);
+    }
+
+    @Override
+    public void startPreview(SurfaceHolder surfaceHolder) {
+        startPreview();
+    }
+
+    @Override
+    public void startPreview(SurfaceTexture surfaceTexture) {
+        startPreview();
+    }
+
+    @Override
+    public void startPreviewAsync(SurfaceTexture surfaceTexture) {
+        getCameraExecutor().execute(this::startPreview);
+    }
+
+    /**
+     * 开启预览，合成数据源不需要Surface
+     */
+    public synchronized void startPreview() {
+        if (!isOpen || isPreviewing) {
+            return;
+        }
+        mFreeBuffers.clear();
+        mPreviewBufferRing.attach(mPreviewWidth * mPreviewHeight * 3 / 2, mFreeBuffers::offer);
+        mProducedCount = 0;
+        isProducing = true;
+        mProducerThread = new Thread(this::produce, "SyntheticCamera");
+        mProducerThread.start();
+        onPreview(mPreviewWidth, mPreviewHeight);
+    }
+
+    @Override
+    public void stopPreview() {
+        stopPreview(false);
+    }
+
+    /**
+     * @param keepConsumers 是否保留预览数据使用者及其线程，切换摄像头时保留
+     */
+    private void stopPreview(boolean keepConsumers) {
+        Thread producerThread;
+        synchronized (this) {
+            if (!isPreviewing) {
+                return;
+            }
+            isProducing = false;
+            producerThread = mProducerThread;
+            mProducerThread = null;
+        }
+        // 生产线程不会获取本对象的锁，这里可以直接等待其结束
+        if (producerThread != null) {
+            producerThread.interrupt();
+            try {
+                producerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (!keepConsumers) {
+                mPreviewBufferCallbacks.clear();
+                mPreviewFrameDispatcher.clear();
+                mDirectFrameDispatcher.clear();
+            }
+            mPreviewBufferRing.detach();
+            mFreeBuffers.clear();
+            isPreviewing = false;
+        }
+    }
+
+    /**
+     * 生产循环：按帧率取空闲缓冲区填充并分发，没有空闲缓冲区时与HAL一样丢弃该帧
+     */
+    private void produce() {
+        final int width = mPreviewWidth;
+        final int height = mPreviewHeight;
+        final long intervalNs = mFps > 0 ? 1_000_000_000L / mFps : 0;
+        long nextFrameNs = System.nanoTime();
+        long index = 0;
+        while (isProducing && (mMaxFrames <= 0 || index < mMaxFrames)) {
+            byte[] buffer;
+            if (intervalNs > 0) {
+                long waitNs = nextFrameNs - System.nanoTime();
+                if (waitNs > 0) {
+                    LockSupport.parkNanos(waitNs);
+                    continue;
+                }
+                nextFrameNs += intervalNs;
+                buffer = mFreeBuffers.poll();
+            } else {
+                try {
+                    buffer = mFreeBuffers.poll(10, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (buffer == null) {
+                    continue;
+                }
+            }
+            long frameIndex = index++;
+            mPreviewMetrics.onFrameArrived(System.nanoTime());
+            if (buffer == null) {
+                mPreviewMetrics.onFrameDropped();
+                continue;
+            }
+            mFrameSource.fill(buffer, width, height, frameIndex);
+            mProducedCount = index;
+            if (!mPreviewBufferRing.enqueue(buffer)) {
+                continue;
+            }
+            byte[] frame;
+            while ((frame = mPreviewBufferRing.poll()) != null) {
+                mPreviewFrameDispatcher.dispatch(frame, width, height);
+            }
+        }
+    }
+
+    /**
+     * 设置帧率，下次开启预览时生效
+     *
+     * @param fps 小于等于0时不限速
+     */
+    public synchronized void setFps(int fps) {
+        mFps = fps;
+    }
+
+    /**
+     * 设置最多生成的帧数，达到后停止生成但不关闭预览，用于可重复的回归测试
+     *
+     * @param maxFrames 小于等于0时不限制
+     */
+    public synchronized void setMaxFrames(long maxFrames) {
+        mMaxFrames = maxFrames;
+    }
+
+    /**
+     * @return 本次预览已生成的帧数，包括被分发前丢弃的帧
+     */
+    public long getProducedCount() {
+        return mProducedCount;
+    }
+
+    public PreviewBufferRing getPreviewBufferRing() {
+        return mPreviewBufferRing;
+    }
+
+    /**
+     * 设置预览尺寸，下次打开时生效；不创建{@link Size}，纯JVM中使用此方法
+     *
+     * @param width
+     * @param height
+     */
+    public synchronized void setPreviewSize(int width, int height) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("invalid NV21 size: " + width + "x" + height);
+        }
+        mPreviewWidth = width;
+        mPreviewHeight = height;
+    }
+
+    public int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+
+    public int getPreviewHeight() {
+        return mPreviewHeight;
+    }
+
+    @Override
+    public void setCameraId(int cameraId) {
+        mCameraId = cameraId;
+    }
+
+    @Override
+    public int getCameraId() {
+        return mCameraId;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return isOpen;
+    }
+
+    @Override
+    public Size getPreviewSize() {
+        return new Size(mPreviewWidth, mPreviewHeight);
+    }
+
+    @Override
+    public void setPreviewSize(Size size) {
+        setPreviewSize(size.getWidth(), size.getHeight());
+    }
+
+    @Override
+    public int getOrientation() {
+        return 0;
+    }
+
+    @Override
+    public int getDisplayOrientation() {
+        return 0;
+    }
+
+    @Override
+    public void setCameraCallback(CameraCallback cameraCallback) {
+        mCameraCallback = cameraCallback;
+    }
+
+    @Override
+    public void addPreviewBufferCallback(PreviewBufferCallback previewBufferCallback) {
+        addPreviewBufferCallback(previewBufferCallback, PreviewFrameDispatcher.Mode.LATEST,
+                PreviewFrameDispatcher.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * 添加预览数据回调，回调在独立线程中执行
+     *
+     * @param previewBufferCallback
+     * @param mode                  队列满时的处理方式
+     * @param capacity              队列容量
+     */
+    public synchronized void addPreviewBufferCallback(PreviewBufferCallback previewBufferCallback,
+                                                      PreviewFrameDispatcher.Mode mode, int capacity) {
+        if (previewBufferCallback != null && !mPreviewBufferCallbacks.contains(previewBufferCallback)) {
+            mPreviewBufferCallbacks.add(previewBufferCallback);
+            mPreviewFrameDispatcher.addConsumer(previewBufferCallback, mode, capacity);
+        }
+    }
+
+    public synchronized void removePreviewBufferCallback(PreviewBufferCallback previewBufferCallback) {
+        if (mPreviewBufferCallbacks.remove(previewBufferCallback)) {
+            mPreviewFrameDispatcher.removeConsumer(previewBufferCallback);
+        }
+    }
+
+    @Override
+    public synchronized void addPreviewDirectBufferCallback(PreviewDirectBufferCallback previewDirectBufferCallback) {
+        if (previewDirectBufferCallback != null && mDirectFrameDispatcher.addCallback(previewDirectBufferCallback)) {
+            // 由一个独立的使用者线程把byte[]拷贝到direct缓冲区
+            addPreviewBufferCallback(mDirectFrameDispatcher);
+        }
+    }
+
+    /**
+     * 移除direct ByteBuffer预览数据回调
+     *
+     * @param previewDirectBufferCallback
+     */
+    public synchronized void removePreviewDirectBufferCallback(PreviewDirectBufferCallback previewDirectBufferCallback) {
+        mDirectFrameDispatcher.removeCallback(previewDirectBufferCallback);
+        if (!mDirectFrameDispatcher.hasCallbacks()) {
+            removePreviewBufferCallback(mDirectFrameDispatcher);
+        }
+    }
+
+    /**
+     * 合成数据源不支持拍照
+     *
+     * @param pictureCallback
+     */
+    @Override
+    public void takePicture(PictureBufferCallback pictureCallback) {
+    }
+
+    /**
+     * 合成数据源只用GPU裁剪
+     *
+     * @return
+     */
+    @Override
+    public ZoomController getZoomController() {
+        return mZoomController;
+    }
+
+    /**
+     * 合成数据源没有方向传感器，可由调用方喂入角度
+     *
+     * @return
+     */
+    @Override
+    public OrientationTracker getOrientationTracker() {
+        return mOrientationTracker;
+    }
+
+    /**
+     * 与{@link CameraManager#switchCamera()}一致：保留预览数据使用者（含分发模式和队列容量），
+     * 不回调onClose，重新打开后如果之前在预览则直接开启预览。
+     */
+    @Override
+    public synchronized void switchCamera() {
+        long startNs = System.nanoTime();
+        mCameraId ^= 1;
+        if (!isOpen) {
+            return;
+        }
+        boolean wasPreviewing = isPreviewing;
+        stopPreview(true);
+        mFrameSource.close();
+        isOpen = false;
+        openCamera();
+        if (!isOpen) {
+            // 打开失败，按完整释放处理
+            mPreviewBufferCallbacks.clear();
+            mPreviewFrameDispatcher.clear();
+            mDirectFrameDispatcher.clear();
+            onClose();
+            return;
+        }
+        // onOpen回调中可能已经开启了预览
+        if (wasPreviewing) {
+            startPreview();
+        }
+        mLastSwitchCost = (System.nanoTime() - startNs) / 1_000_000;
+    }
+
+    @Override
+    public void switchCameraAsync() {
+        getCameraExecutor().execute(this::switchCamera);
+    }
+
+    /**
+     * 合成数据源只有一路，切换即重新打开，统计的是关闭再打开的耗时
+     *
+     * @return
+     */
+    @Override
+    public long getLastSwitchCost() {
+        return mLastSwitchCost;
+    }
+
+    /**
+     * 释放模拟的Camera线程，不再使用时调用
+     */
+    @Override
+    public synchronized void quit() {
+        if (mCameraExecutor != null) {
+            mCameraExecutor.shutdown();
+            mCameraExecutor = null;
+        }
+    }
+
+    private synchronized ExecutorService getCameraExecutor() {
+        if (mCameraExecutor == null) {
+            mCameraExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "SyntheticCameraThread"));
+        }
+        return mCameraExecutor;
+    }
+
+    private void onOpen() {
+        if (mCameraCallback != null) {
+            mCameraCallback.onOpen();
+        }
+    }
+
+    private void onOpenError(int error, String msg) {
+        if (mCameraCallback != null) {
+            mCameraCallback.onOpenError(error, msg);
+        }
+    }
+
+    private void onPreview(int width, int height) {
+        isPreviewing = true;
+        if (mCameraCallback != null) {
+            mCameraCallback.onPreview(width, height);
+        }
+    }
+
+    private void onClose() {
+        if (mCameraCallback != null) {
+            mCameraCallback.onClose();
+        }
+    }
+}
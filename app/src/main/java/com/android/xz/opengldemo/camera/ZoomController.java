@@ -0,0 +1,237 @@
+package com.android.xz.opengldemo.camera;
+
+import java.util.List;
+
+/**
+ * 缩放控制
+ * <p>
+ * 手势只修改目标缩放比例，由渲染循环每帧调用{@link #onFrame()}统一提交，每帧最多向Camera发出一次请求：
+ * 支持平滑缩放时使用startSmoothZoom，否则直接设置缩放级别。
+ * Camera的缩放还没跟上目标时，{@link #onFrame()}返回的GPU裁剪比例补上差值，画面立即响应；
+ * Camera太慢或不支持缩放时可以只用GPU裁剪。
+ * 不依赖Android API，Camera操作通过{@link Hal}完成。
+ *
+ * @author xiaozhi
+ * @since 2024/11/20
+ */
+public class ZoomController {
+
+    /**
+     * 缩放方式
+     */
+    public enum Mode {
+        /**
+         * 只由Camera缩放
+         */
+        HAL,
+        /**
+         * Camera缩放，未跟上目标时由GPU裁剪补足
+         */
+        HAL_WITH_GPU_ASSIST,
+        /**
+         * 只用GPU裁剪，不向Camera发请求
+         */
+        GPU
+    }
+
+    /**
+     * Camera缩放接口，在任意线程调用，实现需自行切换到Camera线程
+     */
+    public interface Hal {
+        /**
+         * @return 各缩放级别的比例（x100），第一个为100
+         */
+        List<Integer> getZoomRatios();
+
+        boolean isSmoothZoomSupported();
+
+        void setZoom(int index);
+
+        void startSmoothZoom(int index);
+
+        void stopSmoothZoom();
+    }
+
+    /**
+     * Camera不支持缩放时GPU裁剪的最大比例
+     */
+    public static final float DEFAULT_MAX_GPU_RATIO = 4f;
+
+    private volatile Hal mHal;
+    private volatile int[] mRatios = new int[]{100};
+    private volatile Mode mMode = Mode.HAL_WITH_GPU_ASSIST;
+    private volatile float mTargetRatio = 1f;
+
+    // Camera当前缩放级别，在Camera线程中更新
+    private volatile int mAppliedIndex;
+    private volatile boolean isSmoothZooming;
+    // setHal时递增，渲染线程发现变化后重置自己的请求状态
+    private volatile int mHalGeneration;
+    // 以下只在渲染线程中访问
+    private int mSeenHalGeneration;
+    private int mRequestedIndex;
+    private boolean isStopRequested;
+
+    /**
+     * 设置Camera，打开Camera后调用；传null表示没有Camera缩放，只用GPU裁剪
+     *
+     * @param hal
+     */
+    public synchronized void setHal(Hal hal) {
+        List<Integer> ratios = hal != null ? hal.getZoomRatios() : null;
+        if (ratios == null || ratios.isEmpty()) {
+            mRatios = new int[]{100};
+        } else {
+            int[] array = new int[ratios.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ratios.get(i);
+            }
+            mRatios = array;
+        }
+        mAppliedIndex = 0;
+        isSmoothZooming = false;
+        mHal = ratios == null || ratios.isEmpty() ? null : hal;
+        // 保留目标比例，下一帧按新Camera重新提交
+        mTargetRatio = Math.min(mTargetRatio, getMaxRatio());
+        // 最后写，渲染线程看到新的代数时mHal已经更新
+        mHalGeneration++;
+    }
+
+    public void setMode(Mode mode) {
+        mMode = mode;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    /**
+     * @return 最大缩放比例，Camera不支持缩放时为{@link #DEFAULT_MAX_GPU_RATIO}
+     */
+    public float getMaxRatio() {
+        int[] ratios = mRatios;
+        return ratios.length > 1 ? ratios[ratios.length - 1] / 100f : DEFAULT_MAX_GPU_RATIO;
+    }
+
+    /**
+     * 设置目标缩放比例
+     *
+     * @param ratio
+     */
+    public void setZoomRatio(float ratio) {
+        mTargetRatio = Math.max(1f, Math.min(ratio, getMaxRatio()));
+    }
+
+    public float getZoomRatio() {
+        return mTargetRatio;
+    }
+
+    /**
+     * 按手势缩放因子累积，例如ScaleGestureDetector的getScaleFactor()
+     *
+     * @param scaleFactor
+     */
+    public void zoomBy(float scaleFactor) {
+        setZoomRatio(mTargetRatio * scaleFactor);
+    }
+
+    /**
+     * 放大或缩小一级
+     *
+     * @param isZoomIn
+     */
+    public void zoomStep(boolean isZoomIn) {
+        int[] ratios = mRatios;
+        if (ratios.length <= 1) {
+            setZoomRatio(mTargetRatio * (isZoomIn ? 1.1f : 1 / 1.1f));
+            return;
+        }
+        int index = floorIndex(ratios, mTargetRatio);
+        if (isZoomIn) {
+            index = Math.min(index + 1, ratios.length - 1);
+        } else if (ratios[index] >= Math.round(mTargetRatio * 100)) {
+            // 目标正好在某一级上时才退一级，否则退到当前级
+            index = Math.max(index - 1, 0);
+        }
+        setZoomRatio(ratios[index] / 100f);
+    }
+
+    /**
+     * @return Camera当前的缩放级别
+     */
+    public int getAppliedIndex() {
+        return mAppliedIndex;
+    }
+
+    /**
+     * Camera缩放变化，对应Camera.OnZoomChangeListener，或设置缩放生效后调用
+     *
+     * @param index
+     * @param stopped 平滑缩放是否结束
+     */
+    public void onZoomChange(int index, boolean stopped) {
+        mAppliedIndex = index;
+        if (stopped) {
+            isSmoothZooming = false;
+        }
+    }
+
+    /**
+     * 每帧调用一次，需要时向Camera提交缩放，在渲染线程中调用
+     *
+     * @return 本帧的GPU裁剪比例，大于等于1
+     */
+    public float onFrame() {
+        int generation = mHalGeneration;
+        if (generation != mSeenHalGeneration) {
+            mSeenHalGeneration = generation;
+            mRequestedIndex = 0;
+            isStopRequested = false;
+        }
+        float target = mTargetRatio;
+        Hal hal = mHal;
+        Mode mode = mMode;
+        if (hal == null || mode == Mode.GPU) {
+            return target;
+        }
+        int[] ratios = mRatios;
+        // Camera缩放到不超过目标的最大级别，剩下的由GPU补
+        int index = floorIndex(ratios, target);
+        if (!hal.isSmoothZoomSupported()) {
+            if (index != mRequestedIndex) {
+                hal.setZoom(index);
+                mRequestedIndex = index;
+            }
+        } else if (!isSmoothZooming) {
+            // 上一次平滑缩放已结束（包括被中断），停在哪一级以回调为准
+            if (index != mAppliedIndex) {
+                isSmoothZooming = true;
+                isStopRequested = false;
+                hal.startSmoothZoom(index);
+                mRequestedIndex = index;
+            }
+        } else if (index != mRequestedIndex && !isStopRequested) {
+            // 平滑缩放进行中目标变化，先停下，结束回调后下一帧重新开始
+            isStopRequested = true;
+            hal.stopSmoothZoom();
+        }
+        if (mode == Mode.HAL) {
+            return 1f;
+        }
+        int applied = Math.min(mAppliedIndex, ratios.length - 1);
+        return Math.max(1f, target * 100 / ratios[applied]);
+    }
+
+    private static int floorIndex(int[] ratios, float ratio) {
+        int value = Math.round(ratio * 100);
+        int index = 0;
+        for (int i = 1; i < ratios.length; i++) {
+            if (ratios[i] <= value) {
+                index = i;
+            } else {
+                break;
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,149 @@
+package com.android.xz.opengldemo.camera.buffer;
+
+import android.graphics.ImageFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 存放在direct ByteBuffer中的一帧YUV数据
+ * <p>
+ * 格式为{@link ImageFormat#NV21}时有Y、VU两个平面，为{@link ImageFormat#YUV_420_888}时有Y、U、V三个平面，
+ * 各平面在缓冲区中的偏移、行跨度和像素跨度通过对应方法获取。
+ * 缓冲区由{@link DirectFramePool}复用，生命周期由引用计数管理：每个持有者使用完调用一次{@link #release()}。
+ * 多个持有者共享同一个ByteBuffer，读取时请使用绝对位置或{@link ByteBuffer#duplicate()}，不要修改其position。
+ *
+ * @author xiaozhi
+ * @since 2024/11/16
+ */
+public class DirectFrame {
+
+    public static final int MAX_PLANES = 3;
+
+    private final DirectFramePool mPool;
+    private final ByteBuffer mBuffer;
+    private final AtomicInteger mRefCount = new AtomicInteger();
+
+    private int mFormat;
+    private int mWidth;
+    private int mHeight;
+    private int mPlaneCount;
+    private final int[] mOffsets = new int[MAX_PLANES];
+    private final int[] mRowStrides = new int[MAX_PLANES];
+    private final int[] mPixelStrides = new int[MAX_PLANES];
+    private long mTimestampNs;
+
+    DirectFrame(DirectFramePool pool, int capacity) {
+        mPool = pool;
+        mBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 设置为紧凑排列的NV21
+     */
+    void setNv21(int width, int height, long timestampNs) {
+        mFormat = ImageFormat.NV21;
+        mWidth = width;
+        mHeight = height;
+        mTimestampNs = timestampNs;
+        mPlaneCount = 2;
+        setPlane(0, 0, width, 1);
+        setPlane(1, width * height, width, 2);
+        mBuffer.clear().limit(width * height * 3 / 2);
+    }
+
+    /**
+     * 设置格式，各平面随后通过{@link #setPlane}设置
+     */
+    void setFormat(int format, int width, int height, int planeCount, int size, long timestampNs) {
+        mFormat = format;
+        mWidth = width;
+        mHeight = height;
+        mPlaneCount = planeCount;
+        mTimestampNs = timestampNs;
+        mBuffer.clear().limit(size);
+    }
+
+    void setPlane(int plane, int offset, int rowStride, int pixelStride) {
+        mOffsets[plane] = offset;
+        mRowStrides[plane] = rowStride;
+        mPixelStrides[plane] = pixelStride;
+    }
+
+    int capacity() {
+        return mBuffer.capacity();
+    }
+
+    /**
+     * 设置引用计数，从池中取出时调用
+     */
+    void acquire(int refCount) {
+        mRefCount.set(refCount);
+    }
+
+    /**
+     * 增加一次引用，需要交给其他线程继续持有时调用
+     */
+    public void retain() {
+        if (mRefCount.getAndIncrement() <= 0) {
+            mRefCount.getAndDecrement();
+            throw new IllegalStateException("frame already released");
+        }
+    }
+
+    /**
+     * 释放一次引用，全部释放后缓冲区回到池中
+     */
+    public void release() {
+        int refCount = mRefCount.decrementAndGet();
+        if (refCount == 0) {
+            mPool.recycle(this);
+        } else if (refCount < 0) {
+            mRefCount.incrementAndGet();
+            throw new IllegalStateException("frame released too many times");
+        }
+    }
+
+    /**
+     * @return 整帧数据，position为0，limit为有效数据长度
+     */
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getPlaneCount() {
+        return mPlaneCount;
+    }
+
+    public int getPlaneOffset(int plane) {
+        return mOffsets[plane];
+    }
+
+    public int getRowStride(int plane) {
+        return mRowStrides[plane];
+    }
+
+    public int getPixelStride(int plane) {
+        return mPixelStrides[plane];
+    }
+
+    /**
+     * @return 帧时间戳，纳秒
+     */
+    public long getTimestamp() {
+        return mTimestampNs;
+    }
+}
@@ -0,0 +1,178 @@
+package com.android.xz.opengldemo.camera.buffer;
+
+import android.graphics.ImageFormat;
+import android.util.Log;
+
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewDirectBufferCallback;
+import com.android.xz.opengldemo.util.ImageUtils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PreviewDirectBufferCallback}分发
+ * <p>
+ * 每帧拷贝一次到{@link DirectFramePool}的direct ByteBuffer中，所有使用者共享同一帧，
+ * 每个使用者持有一次引用。池中没有空闲帧时丢弃该帧。
+ * <ul>
+ * <li>Camera：作为一个{@link PreviewBufferCallback}注册到{@link PreviewFrameDispatcher}，
+ * 拷贝在独立线程中完成，拷贝完byte[]立即归还Camera</li>
+ * <li>Camera2：在ImageReader回调中调用{@link #dispatchPlanes}，直接从Image平面拷贝，保留原始跨度</li>
+ * </ul>
+ *
+ * @author xiaozhi
+ * @since 2024/11/16
+ */
+public class DirectFrameDispatcher implements PreviewBufferCallback {
+
+    private static final String TAG = DirectFrameDispatcher.class.getSimpleName();
+
+    public static final int DEFAULT_POOL_SIZE = 3;
+
+    private final DirectFramePool mPool;
+    private final CopyOnWriteArrayList<PreviewDirectBufferCallback> mCallbacks = new CopyOnWriteArrayList<>();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    public DirectFrameDispatcher() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param poolSize 最多同时被使用者持有的帧数
+     */
+    public DirectFrameDispatcher(int poolSize) {
+        mPool = new DirectFramePool(poolSize);
+    }
+
+    /**
+     * 添加使用者
+     *
+     * @param callback
+     * @return 是否为第一个使用者
+     */
+    public boolean addCallback(PreviewDirectBufferCallback callback) {
+        return mCallbacks.addIfAbsent(callback) && mCallbacks.size() == 1;
+    }
+
+    public void removeCallback(PreviewDirectBufferCallback callback) {
+        mCallbacks.remove(callback);
+    }
+
+    public boolean hasCallbacks() {
+        return !mCallbacks.isEmpty();
+    }
+
+    public CopyOnWriteArrayList<PreviewDirectBufferCallback> getCallbacks() {
+        return mCallbacks;
+    }
+
+    /**
+     * 移除所有使用者并丢弃空闲缓冲区
+     */
+    public void clear() {
+        mCallbacks.clear();
+        mPool.trim();
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * NV21 byte[]拷贝到direct缓冲区后分发
+     */
+    @Override
+    public void onPreviewBufferFrame(byte[] data, int width, int height) {
+        Object[] callbacks = mCallbacks.toArray();
+        if (callbacks.length == 0) {
+            return;
+        }
+        int size = width * height * 3 / 2;
+        DirectFrame frame = mPool.acquire(size, callbacks.length);
+        if (frame == null) {
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+        frame.setNv21(width, height, System.nanoTime());
+        ByteBuffer buffer = frame.getBuffer();
+        buffer.put(data, 0, size);
+        buffer.clear().limit(size);
+        deliver(frame, callbacks);
+    }
+
+    /**
+     * 从YUV_420_888平面拷贝后分发，平面只需在调用期间有效
+     * <p>
+     * U、V平面为同一块VU交错内存（见{@link ImageUtils#isVuInterleaved}）时按NV21输出两个平面，
+     * 否则按三个平面输出，各平面保留原始行跨度
+     *
+     * @param planes
+     * @param rowStrides
+     * @param pixelStrides
+     * @param width
+     * @param height
+     * @param timestampNs
+     */
+    public void dispatchPlanes(ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides,
+                               int width, int height, long timestampNs) {
+        Object[] callbacks = mCallbacks.toArray();
+        if (callbacks.length == 0) {
+            return;
+        }
+        ByteBuffer y = planes[0];
+        ByteBuffer u = planes[1];
+        ByteBuffer v = planes[2];
+        int ySize = y.remaining();
+        // 像素跨度为2只说明交错，还要确认是V在前
+        boolean isNv21 = pixelStrides[1] == 2 && pixelStrides[2] == 2 && rowStrides[1] == rowStrides[2]
+                && u.remaining() == v.remaining() && ImageUtils.isVuInterleaved(u, v);
+        int size = isNv21 ? ySize + v.remaining() + 1 : ySize + u.remaining() + v.remaining();
+        DirectFrame frame = mPool.acquire(size, callbacks.length);
+        if (frame == null) {
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+        ByteBuffer buffer = frame.getBuffer();
+        buffer.clear();
+        int yPosition = y.position();
+        buffer.put(y);
+        y.position(yPosition);
+        if (isNv21) {
+            frame.setFormat(ImageFormat.NV21, width, height, 2, size, timestampNs);
+            frame.setPlane(0, 0, rowStrides[0], 1);
+            frame.setPlane(1, ySize, rowStrides[2], 2);
+            int vPosition = v.position();
+            buffer.put(v);
+            v.position(vPosition);
+            // V平面最后一个字节之后是U平面的最后一个字节
+            buffer.put(u.get(u.limit() - 1));
+        } else {
+            frame.setFormat(ImageFormat.YUV_420_888, width, height, 3, size, timestampNs);
+            frame.setPlane(0, 0, rowStrides[0], pixelStrides[0]);
+            frame.setPlane(1, ySize, rowStrides[1], pixelStrides[1]);
+            frame.setPlane(2, ySize + u.remaining(), rowStrides[2], pixelStrides[2]);
+            int uPosition = u.position();
+            buffer.put(u);
+            u.position(uPosition);
+            int vPosition = v.position();
+            buffer.put(v);
+            v.position(vPosition);
+        }
+        buffer.clear().limit(size);
+        deliver(frame, callbacks);
+    }
+
+    private void deliver(DirectFrame frame, Object[] callbacks) {
+        for (int i = 0; i < callbacks.length; i++) {
+            try {
+                ((PreviewDirectBufferCallback) callbacks[i]).onPreviewDirectFrame(frame);
+            } catch (RuntimeException e) {
+                // 出错的使用者的引用在这里释放，其他使用者照常回调
+                Log.e(TAG, "direct consumer failed: " + callbacks[i], e);
+                frame.release();
+            }
+        }
+    }
+}
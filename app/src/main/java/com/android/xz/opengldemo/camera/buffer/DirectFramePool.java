@@ -0,0 +1,64 @@
+package com.android.xz.opengldemo.camera.buffer;
+
+import java.util.ArrayDeque;
+
+/**
+ * {@link DirectFrame}缓冲池
+ * <p>
+ * 最多同时存在maxFrames个帧，全部被持有时{@link #acquire}返回null，由调用方丢帧，内存占用有上限。
+ * 所需容量变大时（例如切换分辨率）空闲帧被丢弃并按新容量重新分配。
+ *
+ * @author xiaozhi
+ * @since 2024/11/16
+ */
+public class DirectFramePool {
+
+    private final int mMaxFrames;
+    private final ArrayDeque<DirectFrame> mFreeFrames;
+    private int mAllocatedCount;
+
+    public DirectFramePool(int maxFrames) {
+        if (maxFrames < 1) {
+            throw new IllegalArgumentException("maxFrames must be positive: " + maxFrames);
+        }
+        mMaxFrames = maxFrames;
+        mFreeFrames = new ArrayDeque<>(maxFrames);
+    }
+
+    /**
+     * 取出一个容量不小于capacity的帧
+     *
+     * @param capacity 所需字节数
+     * @param refCount 初始引用计数，即持有者个数
+     * @return 没有可用帧时返回null
+     */
+    public synchronized DirectFrame acquire(int capacity, int refCount) {
+        DirectFrame frame = mFreeFrames.pollFirst();
+        while (frame != null && frame.capacity() < capacity) {
+            // 容量不够的直接丢弃，由GC回收native内存
+            mAllocatedCount--;
+            frame = mFreeFrames.pollFirst();
+        }
+        if (frame == null) {
+            if (mAllocatedCount >= mMaxFrames) {
+                return null;
+            }
+            frame = new DirectFrame(this, capacity);
+            mAllocatedCount++;
+        }
+        frame.acquire(refCount);
+        return frame;
+    }
+
+    synchronized void recycle(DirectFrame frame) {
+        mFreeFrames.addLast(frame);
+    }
+
+    /**
+     * 丢弃空闲帧，被持有的帧释放后仍会回到池中
+     */
+    public synchronized void trim() {
+        mAllocatedCount -= mFreeFrames.size();
+        mFreeFrames.clear();
+    }
+}
@@ -0,0 +1,302 @@
+package com.android.xz.opengldemo.camera.buffer;
+
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+
+import java.util.ArrayDeque;
+
+/**
+ * 预览数据缓冲环
+ * <p>
+ * 持有N个预览缓冲区，空闲缓冲区交给Camera填充；Camera回调的帧进入待分发队列，
+ * 使用者全部释放后再归还给Camera。当Camera手中已没有可填充的缓冲区时，按丢帧策略处理。
+ *
+ * @author xiaozhi
+ * @since 2024/11/4
+ */
+public class PreviewBufferRing {
+
+    /**
+     * 丢帧策略
+     */
+    public enum DropPolicy {
+        /**
+         * 丢弃最早未分发的帧，保证Camera始终有缓冲区可用
+         */
+        DROP_OLDEST,
+        /**
+         * 丢弃最新到达的帧，保证Camera始终有缓冲区可用
+         */
+        DROP_NEWEST,
+        /**
+         * 不主动丢帧，等待使用者释放缓冲区，期间由HAL自行丢帧
+         */
+        BLOCK
+    }
+
+    /**
+     * 缓冲区归还接口，Camera实现中即addCallbackBuffer
+     */
+    public interface Recycler {
+        void recycle(byte[] buffer);
+    }
+
+    // 空闲，未交给Camera
+    private static final int STATE_FREE = 0;
+    // 已交给Camera，等待填充
+    private static final int STATE_QUEUED = 1;
+    // 已填充，等待分发
+    private static final int STATE_PENDING = 2;
+    // 正在被使用者持有
+    private static final int STATE_IN_USE = 3;
+
+    private static class Slot {
+        final byte[] data;
+        int state = STATE_FREE;
+        int refCount;
+        // 进入待分发队列的时间
+        long timestampNs;
+
+        Slot(int size) {
+            data = new byte[size];
+        }
+    }
+
+    private int mSlotCount;
+    private DropPolicy mDropPolicy;
+    private Slot[] mSlots = new Slot[0];
+    private int mFrameSize;
+    private int mQueuedCount;
+    private Recycler mRecycler;
+    private final ArrayDeque<Slot> mPendingSlots;
+
+    private long mDeliveredCount;
+    private long mDroppedCount;
+    private long mRecycledCount;
+    private StreamMetrics mMetrics;
+
+    public PreviewBufferRing(int slotCount, DropPolicy dropPolicy) {
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("slotCount must be positive: " + slotCount);
+        }
+        mSlotCount = slotCount;
+        mDropPolicy = dropPolicy;
+        mPendingSlots = new ArrayDeque<>(slotCount);
+    }
+
+    /**
+     * 设置缓冲区个数，下次{@link #attach}时生效
+     *
+     * @param slotCount
+     */
+    public synchronized void setSlotCount(int slotCount) {
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("slotCount must be positive: " + slotCount);
+        }
+        mSlotCount = slotCount;
+    }
+
+    public synchronized int getSlotCount() {
+        return mSlotCount;
+    }
+
+    public synchronized void setDropPolicy(DropPolicy dropPolicy) {
+        mDropPolicy = dropPolicy;
+    }
+
+    public synchronized DropPolicy getDropPolicy() {
+        return mDropPolicy;
+    }
+
+    /**
+     * 设置丢帧统计，可为null
+     *
+     * @param metrics
+     */
+    public synchronized void setMetrics(StreamMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * 将缓冲区交给Camera，尺寸或个数不变时复用已有缓冲区
+     *
+     * @param frameSize 单帧字节数
+     * @param recycler  缓冲区归还接口
+     */
+    public synchronized void attach(int frameSize, Recycler recycler) {
+        if (frameSize != mFrameSize || mSlots.length != mSlotCount) {
+            // 尺寸变化后旧缓冲区作废，使用者释放时直接忽略
+            mSlots = new Slot[mSlotCount];
+            for (int i = 0; i < mSlotCount; i++) {
+                mSlots[i] = new Slot(frameSize);
+            }
+            mFrameSize = frameSize;
+        }
+        mRecycler = recycler;
+        mPendingSlots.clear();
+        mQueuedCount = 0;
+        for (Slot slot : mSlots) {
+            if (slot.state != STATE_IN_USE) {
+                queueSlot(slot);
+            }
+        }
+    }
+
+    /**
+     * Camera停止预览后调用，之后释放的缓冲区不再归还给Camera
+     */
+    public synchronized void detach() {
+        mRecycler = null;
+        mPendingSlots.clear();
+        mQueuedCount = 0;
+        for (Slot slot : mSlots) {
+            if (slot.state != STATE_IN_USE) {
+                slot.state = STATE_FREE;
+            }
+        }
+    }
+
+    /**
+     * Camera填充完一帧后调用
+     *
+     * @param data Camera回调的缓冲区
+     * @return 该帧是否进入待分发队列
+     */
+    public synchronized boolean enqueue(byte[] data) {
+        Slot slot = findSlot(data);
+        if (slot == null || slot.state != STATE_QUEUED) {
+            return false;
+        }
+        mQueuedCount--;
+        slot.state = STATE_PENDING;
+        slot.timestampNs = System.nanoTime();
+        mPendingSlots.addLast(slot);
+
+        if (mQueuedCount > 0 || mDropPolicy == DropPolicy.BLOCK) {
+            return true;
+        }
+        // Camera手中已无缓冲区，按策略腾出一个
+        if (mDropPolicy == DropPolicy.DROP_OLDEST && mPendingSlots.size() > 1) {
+            recycleSlot(mPendingSlots.pollFirst());
+            onDropped();
+            return true;
+        }
+        recycleSlot(mPendingSlots.pollLast());
+        onDropped();
+        return false;
+    }
+
+    /**
+     * 取出最早的待分发帧，取出后引用计数为1，使用完需调用{@link #release}
+     *
+     * @return 没有待分发帧时返回null
+     */
+    public synchronized byte[] poll() {
+        Slot slot = mPendingSlots.pollFirst();
+        if (slot == null) {
+            return null;
+        }
+        slot.state = STATE_IN_USE;
+        slot.refCount = 1;
+        mDeliveredCount++;
+        return slot.data;
+    }
+
+    /**
+     * 增加引用计数，用于一帧分发给多个使用者
+     *
+     * @param data
+     * @param count
+     */
+    public synchronized void retain(byte[] data, int count) {
+        Slot slot = findSlot(data);
+        if (slot != null && slot.state == STATE_IN_USE) {
+            slot.refCount += count;
+        }
+    }
+
+    /**
+     * 释放一次引用，引用全部释放后缓冲区归还给Camera
+     *
+     * @param data
+     */
+    public synchronized void release(byte[] data) {
+        Slot slot = findSlot(data);
+        if (slot == null || slot.state != STATE_IN_USE) {
+            return;
+        }
+        if (--slot.refCount > 0) {
+            return;
+        }
+        recycleSlot(slot);
+    }
+
+    /**
+     * 获取帧到达时间
+     *
+     * @param data
+     * @return {@link System#nanoTime()}时间，不是本缓冲环的缓冲区时返回0
+     */
+    public synchronized long getTimestamp(byte[] data) {
+        Slot slot = findSlot(data);
+        return slot == null ? 0 : slot.timestampNs;
+    }
+
+    public synchronized int getPendingCount() {
+        return mPendingSlots.size();
+    }
+
+    /**
+     * 已分发给使用者的帧数
+     */
+    public synchronized long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * 因缓冲区不足主动丢弃的帧数
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * 归还给Camera的缓冲区次数
+     */
+    public synchronized long getRecycledCount() {
+        return mRecycledCount;
+    }
+
+    private void onDropped() {
+        mDroppedCount++;
+        if (mMetrics != null) {
+            mMetrics.onFrameDropped();
+        }
+    }
+
+    private void recycleSlot(Slot slot) {
+        if (queueSlot(slot)) {
+            mRecycledCount++;
+        }
+    }
+
+    private boolean queueSlot(Slot slot) {
+        slot.refCount = 0;
+        if (mRecycler == null) {
+            slot.state = STATE_FREE;
+            return false;
+        }
+        slot.state = STATE_QUEUED;
+        mQueuedCount++;
+        mRecycler.recycle(slot.data);
+        return true;
+    }
+
+    private Slot findSlot(byte[] data) {
+        for (Slot slot : mSlots) {
+            if (slot.data == data) {
+                return slot;
+            }
+        }
+        return null;
+    }
+}
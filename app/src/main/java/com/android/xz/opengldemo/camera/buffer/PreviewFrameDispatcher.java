@@ -0,0 +1,299 @@
+package com.android.xz.opengldemo.camera.buffer;
+
+import android.util.Log;
+
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 预览帧分发
+ * <p>
+ * 每个{@link PreviewBufferCallback}拥有独立的线程和有界队列，Camera回调线程只负责入队，
+ * 慢的使用者不会拖慢Camera和其他使用者。一帧被所有使用者释放后才归还给Camera。
+ *
+ * @author xiaozhi
+ * @since 2024/11/6
+ */
+public class PreviewFrameDispatcher {
+
+    private static final String TAG = PreviewFrameDispatcher.class.getSimpleName();
+
+    /**
+     * 使用者队列满时的处理方式
+     */
+    public enum Mode {
+        /**
+         * 按顺序处理，队列满时丢弃新到达的帧
+         */
+        QUEUE,
+        /**
+         * 只处理最新帧，队列满时丢弃最早的帧
+         */
+        LATEST
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1;
+
+    private final PreviewBufferRing mBufferRing;
+    private final Object mLock = new Object();
+    private volatile Consumer[] mConsumers = new Consumer[0];
+    private volatile StreamMetrics mMetrics;
+    private int mConsumerIndex;
+
+    public PreviewFrameDispatcher(PreviewBufferRing bufferRing) {
+        mBufferRing = bufferRing;
+    }
+
+    /**
+     * 添加使用者，已添加的不会重复添加
+     *
+     * @param callback
+     * @param mode     队列满时的处理方式
+     * @param capacity 队列容量
+     */
+    public void addConsumer(PreviewBufferCallback callback, Mode mode, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        synchronized (mLock) {
+            Consumer[] consumers = mConsumers;
+            for (Consumer consumer : consumers) {
+                if (consumer.mCallback == callback) {
+                    return;
+                }
+            }
+            Consumer[] newConsumers = new Consumer[consumers.length + 1];
+            System.arraycopy(consumers, 0, newConsumers, 0, consumers.length);
+            newConsumers[consumers.length] = new Consumer(callback, mode, capacity, mConsumerIndex++);
+            mConsumers = newConsumers;
+        }
+    }
+
+    /**
+     * 移除使用者，队列中未处理的帧直接释放
+     *
+     * @param callback
+     */
+    public void removeConsumer(PreviewBufferCallback callback) {
+        Consumer removed = null;
+        synchronized (mLock) {
+            Consumer[] consumers = mConsumers;
+            for (int i = 0; i < consumers.length; i++) {
+                if (consumers[i].mCallback == callback) {
+                    removed = consumers[i];
+                    Consumer[] newConsumers = new Consumer[consumers.length - 1];
+                    System.arraycopy(consumers, 0, newConsumers, 0, i);
+                    System.arraycopy(consumers, i + 1, newConsumers, i, consumers.length - i - 1);
+                    mConsumers = newConsumers;
+                    break;
+                }
+            }
+        }
+        if (removed != null) {
+            removed.close();
+        }
+    }
+
+    /**
+     * 移除所有使用者
+     */
+    public void clear() {
+        Consumer[] consumers;
+        synchronized (mLock) {
+            consumers = mConsumers;
+            mConsumers = new Consumer[0];
+        }
+        for (Consumer consumer : consumers) {
+            consumer.close();
+        }
+    }
+
+    /**
+     * 设置统计，记录使用者处理耗时和丢帧，可为null
+     *
+     * @param metrics
+     */
+    public void setMetrics(StreamMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public boolean isEmpty() {
+        return mConsumers.length == 0;
+    }
+
+    /**
+     * 获取某个使用者因队列满丢弃的帧数
+     *
+     * @param callback
+     * @return
+     */
+    public long getDroppedCount(PreviewBufferCallback callback) {
+        for (Consumer consumer : mConsumers) {
+            if (consumer.mCallback == callback) {
+                return consumer.getDroppedCount();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 分发一帧，data须是从{@link PreviewBufferRing#poll()}取出的缓冲区
+     *
+     * @param data
+     * @param width
+     * @param height
+     */
+    public void dispatch(byte[] data, int width, int height) {
+        Consumer[] consumers = mConsumers;
+        if (consumers.length == 0) {
+            mBufferRing.release(data);
+            return;
+        }
+        if (consumers.length > 1) {
+            mBufferRing.retain(data, consumers.length - 1);
+        }
+        long arrivalNs = mMetrics != null ? System.nanoTime() : 0;
+        for (Consumer consumer : consumers) {
+            consumer.offer(data, width, height, arrivalNs);
+        }
+    }
+
+    private class Consumer implements Runnable {
+
+        private final PreviewBufferCallback mCallback;
+        private final Mode mMode;
+        private final ExecutorService mExecutor;
+
+        // 环形队列
+        private final byte[][] mFrames;
+        private final int[] mWidths;
+        private final int[] mHeights;
+        private final long[] mArrivals;
+        private int mHead;
+        private int mSize;
+
+        private boolean isScheduled;
+        private boolean isClosed;
+        private long mDroppedCount;
+
+        Consumer(PreviewBufferCallback callback, Mode mode, int capacity, int index) {
+            mCallback = callback;
+            mMode = mode;
+            mFrames = new byte[capacity][];
+            mWidths = new int[capacity];
+            mHeights = new int[capacity];
+            mArrivals = new long[capacity];
+            final String name = "PreviewConsumer-" + index;
+            mExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, name));
+        }
+
+        void offer(byte[] data, int width, int height, long arrivalNs) {
+            byte[] dropped = null;
+            boolean overflow = false;
+            boolean schedule = false;
+            synchronized (this) {
+                if (isClosed) {
+                    dropped = data;
+                } else {
+                    int capacity = mFrames.length;
+                    if (mSize == capacity) {
+                        if (mMode == Mode.QUEUE) {
+                            dropped = data;
+                        } else {
+                            dropped = mFrames[mHead];
+                            mFrames[mHead] = null;
+                            mHead = (mHead + 1) % capacity;
+                            mSize--;
+                        }
+                        mDroppedCount++;
+                        overflow = true;
+                    }
+                    if (dropped != data) {
+                        int tail = (mHead + mSize) % capacity;
+                        mFrames[tail] = data;
+                        mWidths[tail] = width;
+                        mHeights[tail] = height;
+                        mArrivals[tail] = arrivalNs;
+                        mSize++;
+                        if (!isScheduled) {
+                            isScheduled = true;
+                            schedule = true;
+                        }
+                    }
+                }
+            }
+            if (dropped != null) {
+                mBufferRing.release(dropped);
+            }
+            StreamMetrics metrics = mMetrics;
+            if (overflow && metrics != null) {
+                metrics.onFrameDropped();
+            }
+            if (schedule) {
+                try {
+                    mExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // 已关闭，队列中的帧在close中释放
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                byte[] data;
+                int width;
+                int height;
+                long arrivalNs;
+                synchronized (this) {
+                    if (mSize == 0 || isClosed) {
+                        isScheduled = false;
+                        return;
+                    }
+                    data = mFrames[mHead];
+                    width = mWidths[mHead];
+                    height = mHeights[mHead];
+                    arrivalNs = mArrivals[mHead];
+                    mFrames[mHead] = null;
+                    mHead = (mHead + 1) % mFrames.length;
+                    mSize--;
+                }
+                long startNs = System.nanoTime();
+                try {
+                    mCallback.onPreviewBufferFrame(data, width, height);
+                } catch (RuntimeException e) {
+                    // 只丢弃这一帧，异常抛出去会使isScheduled保持true，之后的帧都不再调度
+                    Log.e(TAG, "preview consumer failed: " + mCallback, e);
+                } finally {
+                    mBufferRing.release(data);
+                }
+                StreamMetrics metrics = mMetrics;
+                if (metrics != null) {
+                    long endNs = System.nanoTime();
+                    metrics.onFrameProcessed(endNs - startNs, arrivalNs > 0 ? endNs - arrivalNs : 0);
+                }
+            }
+        }
+
+        synchronized long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        void close() {
+            synchronized (this) {
+                isClosed = true;
+                while (mSize > 0) {
+                    mBufferRing.release(mFrames[mHead]);
+                    mFrames[mHead] = null;
+                    mHead = (mHead + 1) % mFrames.length;
+                    mSize--;
+                }
+            }
+            mExecutor.shutdown();
+        }
+    }
+}
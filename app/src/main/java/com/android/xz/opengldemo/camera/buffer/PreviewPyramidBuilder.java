@@ -0,0 +1,263 @@
+package com.android.xz.opengldemo.camera.buffer;
+
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewPyramidCallback;
+
+/**
+ * NV21预览帧金字塔
+ * <p>
+ * 作为一个{@link PreviewBufferCallback}注册到Camera，每帧生成1/2、1/4、1/8层的亮度（按需包括色度），
+ * 分析类使用者（二维码、运动检测、模型推理）只订阅需要的层级，不用各自缩放整帧。
+ * 只计算被订阅的层级及其依赖的层级，各层缓冲区复用，尺寸不变时不分配内存。
+ * <p>
+ * 每层可选滤波方式：
+ * <ul>
+ * <li>{@link Filter#BOX}：上一层2x2平均，抗混叠好，依赖上一层</li>
+ * <li>{@link Filter#BILINEAR}：直接在原图上按像素中心双线性采样，只读原图很少的像素，不依赖上一层，有混叠</li>
+ * </ul>
+ * 回调在Camera分配给本对象的使用者线程中依次执行。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class PreviewPyramidBuilder implements PreviewBufferCallback {
+
+    public enum Filter {
+        BOX,
+        BILINEAR
+    }
+
+    public static final int LEVEL_HALF = 1;
+    public static final int LEVEL_QUARTER = 2;
+    public static final int LEVEL_EIGHTH = 3;
+    public static final int MAX_LEVEL = LEVEL_EIGHTH;
+
+    private final Object mLock = new Object();
+    private volatile Subscriber[] mSubscribers = new Subscriber[0];
+    // 下标为层级，0不使用
+    private volatile Filter[] mFilters = {null, Filter.BOX, Filter.BOX, Filter.BOX};
+
+    // 以下只在回调线程中访问
+    private final byte[][] mBuffers = new byte[MAX_LEVEL + 1][];
+    private final int[] mWidths = new int[MAX_LEVEL + 1];
+    private final int[] mHeights = new int[MAX_LEVEL + 1];
+    private final boolean[] mNeedLuma = new boolean[MAX_LEVEL + 2];
+    private final boolean[] mNeedChroma = new boolean[MAX_LEVEL + 2];
+
+    /**
+     * 设置某一层的滤波方式
+     *
+     * @param level
+     * @param filter
+     */
+    public void setFilter(int level, Filter filter) {
+        checkLevel(level);
+        if (filter == null) {
+            throw new IllegalArgumentException("filter is null");
+        }
+        synchronized (mLock) {
+            Filter[] filters = mFilters.clone();
+            filters[level] = filter;
+            mFilters = filters;
+        }
+    }
+
+    public Filter getFilter(int level) {
+        checkLevel(level);
+        return mFilters[level];
+    }
+
+    /**
+     * 订阅某一层，同一回调可订阅多个层级
+     *
+     * @param callback
+     * @param level      {@link #LEVEL_HALF}、{@link #LEVEL_QUARTER}、{@link #LEVEL_EIGHTH}
+     * @param withChroma 是否需要色度
+     */
+    public void addCallback(PreviewPyramidCallback callback, int level, boolean withChroma) {
+        checkLevel(level);
+        if (callback == null) {
+            return;
+        }
+        synchronized (mLock) {
+            Subscriber[] subscribers = mSubscribers;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.mCallback == callback && subscriber.mLevel == level) {
+                    return;
+                }
+            }
+            Subscriber[] newSubscribers = new Subscriber[subscribers.length + 1];
+            System.arraycopy(subscribers, 0, newSubscribers, 0, subscribers.length);
+            newSubscribers[subscribers.length] = new Subscriber(callback, level, withChroma);
+            mSubscribers = newSubscribers;
+        }
+    }
+
+    /**
+     * 取消该回调订阅的所有层级
+     *
+     * @param callback
+     */
+    public void removeCallback(PreviewPyramidCallback callback) {
+        synchronized (mLock) {
+            Subscriber[] subscribers = mSubscribers;
+            int count = 0;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.mCallback != callback) {
+                    count++;
+                }
+            }
+            if (count == subscribers.length) {
+                return;
+            }
+            Subscriber[] newSubscribers = new Subscriber[count];
+            int i = 0;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.mCallback != callback) {
+                    newSubscribers[i++] = subscriber;
+                }
+            }
+            mSubscribers = newSubscribers;
+        }
+    }
+
+    public boolean hasCallbacks() {
+        return mSubscribers.length > 0;
+    }
+
+    @Override
+    public void onPreviewBufferFrame(byte[] data, int width, int height) {
+        Subscriber[] subscribers = mSubscribers;
+        if (subscribers.length == 0) {
+            return;
+        }
+        Filter[] filters = mFilters;
+        // 从最深的层级往上推算需要计算的层级，BOX依赖上一层
+        mNeedLuma[MAX_LEVEL + 1] = false;
+        mNeedChroma[MAX_LEVEL + 1] = false;
+        for (int level = MAX_LEVEL; level > 0; level--) {
+            boolean luma = false;
+            boolean chroma = false;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.mLevel == level) {
+                    luma = true;
+                    chroma |= subscriber.isWithChroma;
+                }
+            }
+            if (level < MAX_LEVEL && filters[level + 1] == Filter.BOX) {
+                luma |= mNeedLuma[level + 1];
+                chroma |= mNeedChroma[level + 1];
+            }
+            mNeedLuma[level] = luma;
+            mNeedChroma[level] = chroma;
+        }
+
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            mWidths[level] = 0;
+            mHeights[level] = 0;
+            if (!mNeedLuma[level]) {
+                continue;
+            }
+            // 宽高取偶数，保证NV21色度平面完整
+            int levelWidth = (width >> level) & ~1;
+            int levelHeight = (height >> level) & ~1;
+            if (levelWidth < 2 || levelHeight < 2) {
+                continue;
+            }
+            int size = levelWidth * levelHeight * 3 / 2;
+            byte[] dst = mBuffers[level];
+            if (dst == null || dst.length != size) {
+                dst = new byte[size];
+                mBuffers[level] = dst;
+            }
+            byte[] src;
+            int srcWidth;
+            int srcHeight;
+            int shift;
+            if (filters[level] == Filter.BOX && level > 1) {
+                src = mBuffers[level - 1];
+                srcWidth = mWidths[level - 1];
+                srcHeight = mHeights[level - 1];
+                shift = 1;
+                if (srcWidth == 0) {
+                    continue;
+                }
+            } else {
+                // 1/2层两种滤波相同
+                src = data;
+                srcWidth = width;
+                srcHeight = height;
+                shift = level;
+            }
+            downscale(src, 0, srcWidth, shift, 1, dst, 0, levelWidth, levelHeight);
+            if (mNeedChroma[level]) {
+                downscale(src, srcWidth * srcHeight, srcWidth / 2, shift, 2,
+                        dst, levelWidth * levelHeight, levelWidth / 2, levelHeight / 2);
+            }
+            mWidths[level] = levelWidth;
+            mHeights[level] = levelHeight;
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            int level = subscriber.mLevel;
+            if (mWidths[level] > 0) {
+                subscriber.mCallback.onPyramidLevel(level, mBuffers[level], mWidths[level], mHeights[level]);
+            }
+        }
+    }
+
+    /**
+     * 缩小一个平面，输出(x, y)取源图以((x << shift) + offset, (y << shift) + offset)为左上角的2x2平均，
+     * offset使采样点落在输出像素中心。shift为1时即2x2 box，大于1时为中心处的双线性插值。
+     *
+     * @param srcWidth 源平面宽度，单位为元素
+     * @param elemSize 元素字节数，VU交错平面为2
+     */
+    private static void downscale(byte[] src, int srcOffset, int srcWidth, int shift, int elemSize,
+                                  byte[] dst, int dstOffset, int dstWidth, int dstHeight) {
+        int offset = (1 << (shift - 1)) - 1;
+        int srcRowBytes = srcWidth * elemSize;
+        int step = (1 << shift) * elemSize;
+        int d = dstOffset;
+        for (int y = 0; y < dstHeight; y++) {
+            int s0 = srcOffset + ((y << shift) + offset) * srcRowBytes + offset * elemSize;
+            int s1 = s0 + srcRowBytes;
+            if (elemSize == 1) {
+                for (int x = 0; x < dstWidth; x++) {
+                    dst[d++] = (byte) (((src[s0] & 0xff) + (src[s0 + 1] & 0xff)
+                            + (src[s1] & 0xff) + (src[s1 + 1] & 0xff) + 2) >> 2);
+                    s0 += step;
+                    s1 += step;
+                }
+            } else {
+                for (int x = 0; x < dstWidth; x++) {
+                    dst[d++] = (byte) (((src[s0] & 0xff) + (src[s0 + 2] & 0xff)
+                            + (src[s1] & 0xff) + (src[s1 + 2] & 0xff) + 2) >> 2);
+                    dst[d++] = (byte) (((src[s0 + 1] & 0xff) + (src[s0 + 3] & 0xff)
+                            + (src[s1 + 1] & 0xff) + (src[s1 + 3] & 0xff) + 2) >> 2);
+                    s0 += step;
+                    s1 += step;
+                }
+            }
+        }
+    }
+
+    private static void checkLevel(int level) {
+        if (level < 1 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("level must be 1~" + MAX_LEVEL + ": " + level);
+        }
+    }
+
+    private static class Subscriber {
+
+        private final PreviewPyramidCallback mCallback;
+        private final int mLevel;
+        private final boolean isWithChroma;
+
+        Subscriber(PreviewPyramidCallback callback, int level, boolean withChroma) {
+            mCallback = callback;
+            mLevel = level;
+            isWithChroma = withChroma;
+        }
+    }
+}
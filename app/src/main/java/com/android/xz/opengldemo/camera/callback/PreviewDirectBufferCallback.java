@@ -0,0 +1,17 @@
+package com.android.xz.opengldemo.camera.callback;
+
+import com.android.xz.opengldemo.camera.buffer.DirectFrame;
+
+/**
+ * 摄像头预览数据回调，数据在复用的direct ByteBuffer中
+ * <p>
+ * 可以直接交给native、glTexImage2D或编码器，不需要再拷贝一次。
+ * 回调返回后仍可持有frame，使用完必须调用一次{@link DirectFrame#release()}，否则缓冲区不会被复用。
+ *
+ * @author xiaozhi
+ * @since 2024/11/16
+ */
+public interface PreviewDirectBufferCallback {
+
+    void onPreviewDirectFrame(DirectFrame frame);
+}
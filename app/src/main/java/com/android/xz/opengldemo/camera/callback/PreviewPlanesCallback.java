@@ -0,0 +1,23 @@
+package com.android.xz.opengldemo.camera.callback;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Camera2 YUV_420_888预览数据回调
+ * <p>
+ * planes直接来自ImageReader，是不经过拷贝的direct ByteBuffer，只在回调期间有效
+ *
+ * @author xiaozhi
+ * @since 2024/11/8
+ */
+public interface PreviewPlanesCallback {
+
+    /**
+     * @param planes       Y、U、V三个平面
+     * @param rowStrides   各平面行跨度
+     * @param pixelStrides 各平面像素跨度
+     * @param width
+     * @param height
+     */
+    void onPreviewPlanes(ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides, int width, int height);
+}
@@ -0,0 +1,23 @@
+package com.android.xz.opengldemo.camera.callback;
+
+import com.android.xz.opengldemo.camera.buffer.PreviewPyramidBuilder;
+
+/**
+ * 预览帧金字塔某一层的回调
+ * <p>
+ * data是{@link PreviewPyramidBuilder}复用的缓冲区，只在回调期间有效，需要保留时自行拷贝。
+ * 前width * height字节为亮度，订阅时要求色度时后面紧跟NV21的VU平面。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public interface PreviewPyramidCallback {
+
+    /**
+     * @param level  层级，1为1/2，2为1/4，3为1/8
+     * @param data
+     * @param width  该层宽度，偶数
+     * @param height 该层高度，偶数
+     */
+    void onPyramidLevel(int level, byte[] data, int width, int height);
+}
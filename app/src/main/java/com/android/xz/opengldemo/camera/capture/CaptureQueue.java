@@ -0,0 +1,199 @@
+package com.android.xz.opengldemo.camera.capture;
+
+import android.util.Log;
+
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拍照队列
+ * <p>
+ * 请求按提交顺序排队，同一时间只有一个请求交给HAL，上一张JPEG返回后才发出下一张，
+ * 拍照过程中再次调用不会被忽略，连拍就是连续提交多个请求。
+ * JPEG数据交给后台线程处理（回调、旋转、保存），不占用Camera回调线程。
+ * 统计记录在{@link FrameMetrics#STREAM_CAPTURE}：到达间隔即连拍的张间耗时，延迟为提交到处理完成的耗时。
+ *
+ * @author xiaozhi
+ * @since 2024/11/18
+ */
+public class CaptureQueue {
+
+    private static final String TAG = CaptureQueue.class.getSimpleName();
+
+    /**
+     * 实际执行拍照，在HAL线程中调用，完成后须调用{@link #onCaptureCompleted}或{@link #onCaptureFailed}
+     */
+    public interface Capturer {
+        void capture(PictureRequest request) throws Exception;
+    }
+
+    /**
+     * 连拍时创建每一张的请求
+     */
+    public interface RequestFactory {
+        PictureRequest create(int index);
+    }
+
+    private final Capturer mCapturer;
+    private final Executor mHalExecutor;
+    private final PictureProcessor mProcessor = new PictureProcessor();
+    private final ThreadPoolExecutor mProcessExecutor;
+    private final ArrayDeque<PictureRequest> mPendingRequests = new ArrayDeque<>();
+    private final StreamMetrics mMetrics = FrameMetrics.getInstance().getStream(FrameMetrics.STREAM_CAPTURE);
+    private PictureRequest mInFlightRequest;
+
+    /**
+     * @param capturer    执行拍照
+     * @param halExecutor 执行拍照的线程，一般为Camera线程
+     */
+    public CaptureQueue(Capturer capturer, Executor halExecutor) {
+        mCapturer = capturer;
+        mHalExecutor = halExecutor;
+        // 按顺序处理，空闲一段时间后线程退出
+        mProcessExecutor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(r, "PictureProcessor"));
+        mProcessExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交拍照请求
+     *
+     * @param request
+     * @param rotation 当前设备方向
+     */
+    public void submit(PictureRequest request, int rotation) {
+        synchronized (this) {
+            request.mRotation = rotation;
+            request.mSubmitTimeNs = System.nanoTime();
+            mPendingRequests.addLast(request);
+            if (mInFlightRequest != null) {
+                return;
+            }
+        }
+        scheduleNext();
+    }
+
+    /**
+     * 连拍，提交count个相同设置的请求
+     *
+     * @param count
+     * @param factory  为每一张创建请求
+     * @param rotation 当前设备方向
+     */
+    public void submitBurst(int count, RequestFactory factory, int rotation) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                PictureRequest request = factory.create(i);
+                request.mRotation = rotation;
+                request.mSubmitTimeNs = now;
+                mPendingRequests.addLast(request);
+            }
+            if (mInFlightRequest != null) {
+                return;
+            }
+        }
+        scheduleNext();
+    }
+
+    /**
+     * HAL返回JPEG数据，在Camera回调线程中调用
+     *
+     * @param jpeg
+     */
+    public void onCaptureCompleted(byte[] jpeg) {
+        PictureRequest request;
+        synchronized (this) {
+            request = mInFlightRequest;
+            mInFlightRequest = null;
+        }
+        if (request == null) {
+            // 已取消
+            return;
+        }
+        long now = System.nanoTime();
+        mMetrics.onFrameArrived(now);
+        Log.d(TAG, "capture cost: " + (now - request.mCaptureTimeNs) / 1000000 + "ms, pending: " + getPendingCount());
+        mProcessExecutor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                mProcessor.process(request, jpeg);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "process picture failed", e);
+            }
+            long end = System.nanoTime();
+            mMetrics.onFrameProcessed(end - start, end - request.mSubmitTimeNs);
+        });
+        scheduleNext();
+    }
+
+    /**
+     * 拍照失败，丢弃当前请求并继续下一个
+     *
+     * @param msg
+     */
+    public void onCaptureFailed(String msg) {
+        synchronized (this) {
+            if (mInFlightRequest == null) {
+                return;
+            }
+            mInFlightRequest = null;
+        }
+        Log.e(TAG, "capture failed: " + msg);
+        mMetrics.onFrameDropped();
+        scheduleNext();
+    }
+
+    /**
+     * 取消所有未完成的请求，停止预览或关闭Camera时调用；已返回的照片仍会处理完
+     */
+    public void cancel() {
+        int count;
+        synchronized (this) {
+            count = mPendingRequests.size() + (mInFlightRequest != null ? 1 : 0);
+            mPendingRequests.clear();
+            mInFlightRequest = null;
+        }
+        if (count > 0) {
+            Log.w(TAG, "cancel " + count + " picture requests");
+        }
+    }
+
+    /**
+     * @return 排队中和进行中的请求数
+     */
+    public synchronized int getPendingCount() {
+        return mPendingRequests.size() + (mInFlightRequest != null ? 1 : 0);
+    }
+
+    private void scheduleNext() {
+        final PictureRequest request;
+        synchronized (this) {
+            if (mInFlightRequest != null || mPendingRequests.isEmpty()) {
+                return;
+            }
+            request = mPendingRequests.pollFirst();
+            mInFlightRequest = request;
+        }
+        mHalExecutor.execute(() -> {
+            synchronized (CaptureQueue.this) {
+                if (mInFlightRequest != request) {
+                    // 已取消
+                    return;
+                }
+            }
+            request.mCaptureTimeNs = System.nanoTime();
+            try {
+                mCapturer.capture(request);
+            } catch (Exception e) {
+                onCaptureFailed(e.getMessage());
+            }
+        });
+    }
+}
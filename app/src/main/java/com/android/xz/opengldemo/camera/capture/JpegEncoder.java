@@ -0,0 +1,189 @@
+package com.android.xz.opengldemo.camera.capture;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import com.android.xz.opengldemo.camera.callback.PictureBufferCallback;
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+import com.android.xz.opengldemo.util.ByteArrayPool;
+import com.android.xz.opengldemo.util.Nv21View;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NV21编码JPEG服务
+ * <p>
+ * 保存或推流预览帧时不在持有帧的线程中编码：提交时把NV21拷贝到池中的缓冲区后立即返回，
+ * 由有界线程池编码，队列满时丢弃。每个编码线程复用自己的输出流，缓冲区只在帧变大时增长。
+ * 编码结果按{@link PictureRequest}交给{@link PictureProcessor}：回调{@link PictureBufferCallback}、按需保存文件，
+ * 质量取{@link PictureRequest#getJpegQuality()}，不做方向处理，request本身不会被修改，可以重复提交。
+ * 输入为{@link Nv21View}时只拷贝视图内的像素，ROI编码不需要先裁剪出来。
+ * 统计记录在{@link FrameMetrics#STREAM_JPEG_ENCODE}。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class JpegEncoder {
+
+    private static final String TAG = JpegEncoder.class.getSimpleName();
+
+    public static final int DEFAULT_THREAD_COUNT = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 2;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final ByteArrayPool mBufferPool;
+    private final PictureProcessor mProcessor = new PictureProcessor();
+    private final StreamMetrics mMetrics = FrameMetrics.getInstance().getStream(FrameMetrics.STREAM_JPEG_ENCODE);
+    // 每个编码线程一个，reset后复用内部数组
+    private final ThreadLocal<ByteArrayOutputStream> mOutputStreams = new ThreadLocal<ByteArrayOutputStream>() {
+        @Override
+        protected ByteArrayOutputStream initialValue() {
+            return new ByteArrayOutputStream();
+        }
+    };
+
+    public JpegEncoder() {
+        this(DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param threadCount   编码线程数
+     * @param queueCapacity 等待编码的最大帧数，超过时丢弃
+     */
+    public JpegEncoder(int threadCount, int queueCapacity) {
+        if (threadCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("threadCount and queueCapacity must be positive: "
+                    + threadCount + ", " + queueCapacity);
+        }
+        final AtomicInteger index = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 10, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> new Thread(r, "JpegEncoder-" + index.getAndIncrement()));
+        mExecutor.allowCoreThreadTimeOut(true);
+        mBufferPool = new ByteArrayPool(threadCount + queueCapacity);
+    }
+
+    /**
+     * 编码整帧
+     *
+     * @see #encode(byte[], int, int, Rect, PictureRequest)
+     */
+    public boolean encode(byte[] nv21, int width, int height, PictureRequest request) {
+        return encode(nv21, width, height, null, request);
+    }
+
+    /**
+     * 提交一帧编码，nv21在返回后即可复用
+     *
+     * @param nv21
+     * @param width
+     * @param height
+     * @param cropRect 编码区域，为null时编码整帧，左上角向下对齐到偶数以保证色度对齐
+     * @param request  回调、输出文件和质量，方向不做处理
+     * @return 队列满或已关闭时返回false，该帧被丢弃
+     */
+    public boolean encode(byte[] nv21, int width, int height, Rect cropRect, PictureRequest request) {
+        int size = width * height * 3 / 2;
+        if (nv21.length < size) {
+            throw new IllegalArgumentException("buffer too small: " + nv21.length + " for " + width + "x" + height);
+        }
+        final Rect rect = cropRect == null ? new Rect(0, 0, width, height) : new Rect(cropRect);
+        if (!rect.intersect(0, 0, width, height)) {
+            throw new IllegalArgumentException("crop rect out of frame: " + cropRect);
+        }
+        rect.left &= ~1;
+        rect.top &= ~1;
+        long submitNs = System.nanoTime();
+        if (!checkCapacity(submitNs)) {
+            return false;
+        }
+        byte[] data = mBufferPool.acquire(size);
+        System.arraycopy(nv21, 0, data, 0, size);
+        return submit(data, width, height, rect, request, submitNs);
+    }
+
+    /**
+     * 提交一个视图编码，视图内的像素拷贝后即可复用底层数据
+     *
+     * @param src     可以是裁剪、下采样后的视图
+     * @param request 回调、输出文件和质量，方向不做处理
+     * @return 队列满或已关闭时返回false，该帧被丢弃
+     */
+    public boolean encode(Nv21View src, PictureRequest request) {
+        long submitNs = System.nanoTime();
+        if (!checkCapacity(submitNs)) {
+            return false;
+        }
+        byte[] data = mBufferPool.acquire(src.getFrameSize());
+        src.copyTo(data);
+        return submit(data, src.getWidth(), src.getHeight(), new Rect(0, 0, src.getWidth(), src.getHeight()),
+                request, submitNs);
+    }
+
+    private boolean checkCapacity(long submitNs) {
+        mMetrics.onFrameArrived(submitNs);
+        // 队列已满时不做拷贝
+        if (mExecutor.getQueue().remainingCapacity() == 0 || mExecutor.isShutdown()) {
+            mMetrics.onFrameDropped();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean submit(final byte[] data, final int width, final int height, final Rect rect,
+                           final PictureRequest request, final long submitNs) {
+        try {
+            mExecutor.execute(() -> {
+                long start = System.nanoTime();
+                byte[] jpeg;
+                try {
+                    ByteArrayOutputStream out = mOutputStreams.get();
+                    out.reset();
+                    YuvImage yuvImage = new YuvImage(data, ImageFormat.NV21, width, height, null);
+                    if (!yuvImage.compressToJpeg(rect, request.getJpegQuality(), out)) {
+                        Log.e(TAG, "compress to jpeg failed");
+                        return;
+                    }
+                    jpeg = out.toByteArray();
+                } finally {
+                    mBufferPool.release(data);
+                }
+                long encodeNs = System.nanoTime() - start;
+                try {
+                    mProcessor.deliver(request, jpeg);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "process jpeg failed", e);
+                }
+                mMetrics.onFrameProcessed(encodeNs, System.nanoTime() - submitNs);
+            });
+        } catch (RejectedExecutionException e) {
+            // 其他线程同时提交把队列占满
+            mBufferPool.release(data);
+            mMetrics.onFrameDropped();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 正在编码和等待编码的帧数
+     */
+    public int getPendingCount() {
+        return mExecutor.getActiveCount() + mExecutor.getQueue().size();
+    }
+
+    /**
+     * 停止接收新的帧，已提交的帧继续编码
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+        mBufferPool.clear();
+    }
+}
@@ -0,0 +1,78 @@
+package com.android.xz.opengldemo.camera.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 拍照结果后台处理：回调JPEG数据，按需解码旋转，保存文件
+ *
+ * @author xiaozhi
+ * @since 2024/11/18
+ */
+public class PictureProcessor {
+
+    private static final String TAG = PictureProcessor.class.getSimpleName();
+
+    /**
+     * 处理一张照片，在后台线程中调用
+     *
+     * @param request
+     * @param jpeg
+     */
+    public void process(PictureRequest request, byte[] jpeg) {
+        if (request.isRotateBitmap() && request.getRotation() % 360 != 0) {
+            jpeg = rotate(jpeg, request.getRotation(), request.getJpegQuality());
+        }
+        deliver(request, jpeg);
+    }
+
+    /**
+     * JPEG已是最终方向时直接回调和保存，忽略请求的旋转设置，在后台线程中调用
+     *
+     * @param request
+     * @param jpeg
+     */
+    public void deliver(PictureRequest request, byte[] jpeg) {
+        if (request.getCallback() != null) {
+            request.getCallback().onPictureToken(jpeg);
+        }
+        File outputFile = request.getOutputFile();
+        if (outputFile != null) {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+                out.write(jpeg);
+            } catch (IOException e) {
+                Log.e(TAG, "save picture failed: " + outputFile, e);
+            }
+        }
+    }
+
+    /**
+     * 解码后旋转像素再编码，失败时返回原数据
+     */
+    private static byte[] rotate(byte[] jpeg, int rotation, int quality) {
+        Bitmap bitmap = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        if (bitmap == null) {
+            Log.e(TAG, "decode picture failed");
+            return jpeg;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotation);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+            bitmap.recycle();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length);
+        rotated.compress(Bitmap.CompressFormat.JPEG, quality, out);
+        rotated.recycle();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,98 @@
+package com.android.xz.opengldemo.camera.capture;
+
+import com.android.xz.opengldemo.camera.callback.PictureBufferCallback;
+
+import java.io.File;
+
+/**
+ * 一次拍照请求
+ * <p>
+ * JPEG数据在后台线程中交给{@link PictureBufferCallback}，设置了输出文件时同时保存。
+ * 设置{@link #setRotateBitmap(boolean)}后不让Camera处理方向，由后台线程解码、旋转像素后再保存，
+ * 避免部分设备只写EXIF方向导致图片显示方向不对。
+ *
+ * @author xiaozhi
+ * @since 2024/11/18
+ */
+public class PictureRequest {
+
+    private final PictureBufferCallback mCallback;
+    private File mOutputFile;
+    private boolean isRotateBitmap;
+    private int mJpegQuality = 95;
+
+    // 以下由CaptureQueue设置
+    int mRotation;
+    long mSubmitTimeNs;
+    long mCaptureTimeNs;
+
+    /**
+     * @param callback 可为null
+     */
+    public PictureRequest(PictureBufferCallback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * 保存到文件
+     *
+     * @param outputFile
+     * @return
+     */
+    public PictureRequest setOutputFile(File outputFile) {
+        mOutputFile = outputFile;
+        return this;
+    }
+
+    /**
+     * 是否在后台线程中旋转像素
+     *
+     * @param rotateBitmap
+     * @return
+     */
+    public PictureRequest setRotateBitmap(boolean rotateBitmap) {
+        isRotateBitmap = rotateBitmap;
+        return this;
+    }
+
+    /**
+     * 旋转像素后重新编码的质量
+     *
+     * @param jpegQuality 0~100
+     * @return
+     */
+    public PictureRequest setJpegQuality(int jpegQuality) {
+        mJpegQuality = jpegQuality;
+        return this;
+    }
+
+    public PictureBufferCallback getCallback() {
+        return mCallback;
+    }
+
+    public File getOutputFile() {
+        return mOutputFile;
+    }
+
+    public boolean isRotateBitmap() {
+        return isRotateBitmap;
+    }
+
+    public int getJpegQuality() {
+        return mJpegQuality;
+    }
+
+    /**
+     * @return 提交时的设备方向
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * @return 交给Camera时需要设置的方向，由后台旋转时为0
+     */
+    public int getCameraRotation() {
+        return isRotateBitmap ? 0 : mRotation;
+    }
+}
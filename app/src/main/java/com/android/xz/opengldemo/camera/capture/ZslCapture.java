@@ -0,0 +1,130 @@
+package com.android.xz.opengldemo.camera.capture;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+import com.android.xz.opengldemo.util.ImageUtils;
+import com.android.xz.opengldemo.util.Nv21Rotator;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 零延时拍照
+ * <p>
+ * 从{@link ZslFrameHistory}中取出最接近按下快门时刻的预览帧，在后台线程中编码为JPEG，
+ * 再交给{@link PictureProcessor}，整个过程不停止预览。
+ * 编码结果没有EXIF方向，编码前先用{@link Nv21Rotator}按请求的方向旋转NV21，
+ * 不再解码JPEG旋转后重新编码。
+ * 同一时刻最多持有一帧历史帧（对应预览缓冲区为拍照多预留的一个），上一次拍照还没旋转完时不排队，
+ * 返回false由调用方按普通拍照处理。
+ *
+ * @author xiaozhi
+ * @since 2024/11/19
+ */
+public class ZslCapture {
+
+    private static final String TAG = ZslCapture.class.getSimpleName();
+
+    private final ZslFrameHistory mHistory;
+    private final PictureProcessor mProcessor = new PictureProcessor();
+    // 只在编码线程中使用
+    private final Nv21Rotator mRotator = new Nv21Rotator();
+    private final ThreadPoolExecutor mExecutor;
+    // 已取出、还没旋转完的历史帧
+    private final AtomicBoolean isHoldingFrame = new AtomicBoolean();
+    private final StreamMetrics mMetrics = FrameMetrics.getInstance().getStream(FrameMetrics.STREAM_CAPTURE);
+    // 预览显示相对帧到达的延迟，用户按下快门时看到的是更早的帧
+    private long mShutterLagNs;
+
+    public ZslCapture(ZslFrameHistory history) {
+        mHistory = history;
+        mExecutor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1), r -> new Thread(r, "ZslEncoder"));
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public ZslFrameHistory getHistory() {
+        return mHistory;
+    }
+
+    /**
+     * 设置显示延迟补偿，选帧时以按下时刻减去该值为准
+     *
+     * @param shutterLagNs
+     */
+    public void setShutterLag(long shutterLagNs) {
+        mShutterLagNs = shutterLagNs;
+    }
+
+    /**
+     * 拍照，不修改request
+     *
+     * @param request
+     * @param rotation 当前设备方向
+     * @return 没有可用的历史帧或上一次拍照还在持有历史帧时返回false
+     */
+    public boolean capture(PictureRequest request, int rotation) {
+        final long shutterNs = System.nanoTime();
+        if (!isHoldingFrame.compareAndSet(false, true)) {
+            Log.w(TAG, "previous zsl capture still holds a frame");
+            return false;
+        }
+        final ZslFrameHistory.Frame frame = mHistory.acquireNearest(shutterNs - mShutterLagNs);
+        if (frame == null) {
+            isHoldingFrame.set(false);
+            return false;
+        }
+        try {
+            mExecutor.execute(() -> encode(request, rotation, frame, shutterNs));
+        } catch (RejectedExecutionException e) {
+            mHistory.release(frame);
+            isHoldingFrame.set(false);
+            return false;
+        }
+        mMetrics.onFrameArrived(shutterNs);
+        return true;
+    }
+
+    private void encode(PictureRequest request, int rotation, ZslFrameHistory.Frame frame, long shutterNs) {
+        long start = System.nanoTime();
+        int pictureRotation = (rotation % 360 + 360) % 360;
+        int width = ImageUtils.getRotatedWidth(frame.width, frame.height, pictureRotation);
+        int height = ImageUtils.getRotatedHeight(frame.width, frame.height, pictureRotation);
+        byte[] nv21;
+        try {
+            nv21 = mRotator.rotate(frame.data, frame.width, frame.height, pictureRotation, false);
+        } finally {
+            // 旋转后历史帧即可归还，不等编码结束
+            mHistory.release(frame);
+            isHoldingFrame.set(false);
+        }
+        byte[] jpeg;
+        try {
+            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(width * height / 4);
+            yuvImage.compressToJpeg(new Rect(0, 0, width, height), request.getJpegQuality(), out);
+            jpeg = out.toByteArray();
+        } finally {
+            mRotator.release(nv21);
+        }
+        try {
+            // 像素已在编码前旋转
+            mProcessor.deliver(request, jpeg);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "process picture failed", e);
+        }
+        long end = System.nanoTime();
+        mMetrics.onFrameProcessed(end - start, end - shutterNs);
+        Log.d(TAG, "zsl frame age: " + (shutterNs - frame.timestampNs) / 1000000 + "ms, cost: "
+                + (end - start) / 1000000 + "ms");
+    }
+}
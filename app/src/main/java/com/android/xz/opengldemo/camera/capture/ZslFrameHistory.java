@@ -0,0 +1,128 @@
+package com.android.xz.opengldemo.camera.capture;
+
+import com.android.xz.opengldemo.camera.buffer.PreviewBufferRing;
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+
+/**
+ * 零延时拍照的预览帧历史
+ * <p>
+ * 作为预览数据使用者注册，不拷贝数据，而是对最近N帧各多持有一次缓冲环的引用，
+ * 新帧到达时释放最早的一帧。因此缓冲环需要额外N+1个缓冲区（多出的一个用于编码中的帧）。
+ *
+ * @author xiaozhi
+ * @since 2024/11/19
+ */
+public class ZslFrameHistory implements PreviewBufferCallback {
+
+    /**
+     * 一帧历史数据，使用完调用{@link ZslFrameHistory#release(Frame)}
+     */
+    public static class Frame {
+        public final byte[] data;
+        public final int width;
+        public final int height;
+        public final long timestampNs;
+
+        Frame(byte[] data, int width, int height, long timestampNs) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.timestampNs = timestampNs;
+        }
+    }
+
+    private final PreviewBufferRing mBufferRing;
+    private final Frame[] mFrames;
+    private int mHead;
+    private int mSize;
+
+    /**
+     * @param bufferRing 预览缓冲环
+     * @param capacity   保留的帧数
+     */
+    public ZslFrameHistory(PreviewBufferRing bufferRing, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mBufferRing = bufferRing;
+        mFrames = new Frame[capacity];
+    }
+
+    public int getCapacity() {
+        return mFrames.length;
+    }
+
+    @Override
+    public void onPreviewBufferFrame(byte[] data, int width, int height) {
+        // 回调返回后分发器会释放一次，这里多持有一次
+        mBufferRing.retain(data, 1);
+        Frame frame = new Frame(data, width, height, mBufferRing.getTimestamp(data));
+        Frame evicted = null;
+        synchronized (this) {
+            int capacity = mFrames.length;
+            if (mSize == capacity) {
+                evicted = mFrames[mHead];
+                mFrames[mHead] = null;
+                mHead = (mHead + 1) % capacity;
+                mSize--;
+            }
+            mFrames[(mHead + mSize) % capacity] = frame;
+            mSize++;
+        }
+        if (evicted != null) {
+            mBufferRing.release(evicted.data);
+        }
+    }
+
+    /**
+     * 取出时间最接近timestampNs的一帧并持有引用
+     *
+     * @param timestampNs {@link System#nanoTime()}时间
+     * @return 没有历史帧时返回null
+     */
+    public synchronized Frame acquireNearest(long timestampNs) {
+        Frame nearest = null;
+        long minDelta = Long.MAX_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            Frame frame = mFrames[(mHead + i) % mFrames.length];
+            long delta = Math.abs(frame.timestampNs - timestampNs);
+            if (delta < minDelta) {
+                minDelta = delta;
+                nearest = frame;
+            }
+        }
+        if (nearest != null) {
+            mBufferRing.retain(nearest.data, 1);
+        }
+        return nearest;
+    }
+
+    /**
+     * 释放{@link #acquireNearest}取出的帧
+     *
+     * @param frame
+     */
+    public void release(Frame frame) {
+        mBufferRing.release(frame.data);
+    }
+
+    /**
+     * 释放所有历史帧，停止预览时在缓冲环detach之前调用
+     */
+    public void clear() {
+        Frame[] frames;
+        synchronized (this) {
+            frames = new Frame[mSize];
+            for (int i = 0; i < mSize; i++) {
+                int index = (mHead + i) % mFrames.length;
+                frames[i] = mFrames[index];
+                mFrames[index] = null;
+            }
+            mHead = 0;
+            mSize = 0;
+        }
+        for (Frame frame : frames) {
+            mBufferRing.release(frame.data);
+        }
+    }
+}
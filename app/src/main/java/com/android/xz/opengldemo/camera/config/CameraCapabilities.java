@@ -0,0 +1,173 @@
+package com.android.xz.opengldemo.camera.config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 一个摄像头的能力及上次选定的配置，用于{@link CapabilityStore}持久化
+ * <p>
+ * 不依赖Android API，尺寸用{width, height}，帧率范围用Camera1的{min, max}（x1000）表示，
+ * 不支持或未知的列表为null。
+ *
+ * @author xiaozhi
+ * @since 2024/11/22
+ */
+public class CameraCapabilities {
+
+    private int mSensorOrientation;
+    private boolean isFrontFacing;
+    private List<int[]> mPreviewSizes;
+    private List<int[]> mPreviewFpsRanges;
+    private List<Integer> mPreviewFormats;
+    private List<String> mFlashModes;
+    private List<String> mFocusModes;
+    private int mPictureWidth;
+    private int mPictureHeight;
+
+    // 选定的配置及当时的预算
+    private PreviewBudget mBudget;
+    private PreviewConfig mPreviewConfig;
+
+    public CameraCapabilities setSensorOrientation(int sensorOrientation) {
+        mSensorOrientation = sensorOrientation;
+        return this;
+    }
+
+    public CameraCapabilities setFrontFacing(boolean frontFacing) {
+        isFrontFacing = frontFacing;
+        return this;
+    }
+
+    public CameraCapabilities setPreviewSizes(List<int[]> previewSizes) {
+        mPreviewSizes = previewSizes;
+        return this;
+    }
+
+    public CameraCapabilities setPreviewFpsRanges(List<int[]> previewFpsRanges) {
+        mPreviewFpsRanges = previewFpsRanges;
+        return this;
+    }
+
+    public CameraCapabilities setPreviewFormats(List<Integer> previewFormats) {
+        mPreviewFormats = previewFormats;
+        return this;
+    }
+
+    public CameraCapabilities setFlashModes(List<String> flashModes) {
+        mFlashModes = flashModes;
+        return this;
+    }
+
+    public CameraCapabilities setFocusModes(List<String> focusModes) {
+        mFocusModes = focusModes;
+        return this;
+    }
+
+    public CameraCapabilities setPictureSize(int width, int height) {
+        mPictureWidth = width;
+        mPictureHeight = height;
+        return this;
+    }
+
+    /**
+     * 记录选定的预览配置
+     *
+     * @param budget 协商时的预算，预算变化后配置作废
+     * @param config
+     * @return
+     */
+    public CameraCapabilities setPreviewConfig(PreviewBudget budget, PreviewConfig config) {
+        mBudget = budget;
+        mPreviewConfig = config;
+        return this;
+    }
+
+    public int getSensorOrientation() {
+        return mSensorOrientation;
+    }
+
+    public boolean isFrontFacing() {
+        return isFrontFacing;
+    }
+
+    public List<int[]> getPreviewSizes() {
+        return mPreviewSizes;
+    }
+
+    public List<int[]> getPreviewFpsRanges() {
+        return mPreviewFpsRanges;
+    }
+
+    public List<Integer> getPreviewFormats() {
+        return mPreviewFormats;
+    }
+
+    public List<String> getFlashModes() {
+        return mFlashModes;
+    }
+
+    public List<String> getFocusModes() {
+        return mFocusModes;
+    }
+
+    public int getPictureWidth() {
+        return mPictureWidth;
+    }
+
+    public int getPictureHeight() {
+        return mPictureHeight;
+    }
+
+    public PreviewBudget getBudget() {
+        return mBudget;
+    }
+
+    public PreviewConfig getPreviewConfig() {
+        return mPreviewConfig;
+    }
+
+    /**
+     * 获取该预算下缓存的预览配置
+     *
+     * @param budget
+     * @return 没有记录或预算不同时返回null
+     */
+    public PreviewConfig getPreviewConfig(PreviewBudget budget) {
+        return budget.equals(mBudget) ? mPreviewConfig : null;
+    }
+
+    /**
+     * 能力是否一致，只比较摄像头本身的能力，不比较选定的配置
+     *
+     * @param other
+     * @return
+     */
+    public boolean isSameCapabilities(CameraCapabilities other) {
+        return other != null
+                && mSensorOrientation == other.mSensorOrientation
+                && isFrontFacing == other.isFrontFacing
+                && mPictureWidth == other.mPictureWidth
+                && mPictureHeight == other.mPictureHeight
+                && sameArrays(mPreviewSizes, other.mPreviewSizes)
+                && sameArrays(mPreviewFpsRanges, other.mPreviewFpsRanges)
+                && Objects.equals(mPreviewFormats, other.mPreviewFormats)
+                && Objects.equals(mFlashModes, other.mFlashModes)
+                && Objects.equals(mFocusModes, other.mFocusModes);
+    }
+
+    private static boolean sameArrays(List<int[]> a, List<int[]> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!Arrays.equals(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
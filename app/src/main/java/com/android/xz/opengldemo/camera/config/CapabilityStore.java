@@ -0,0 +1,307 @@
+package com.android.xz.opengldemo.camera.config;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 摄像头能力磁盘缓存
+ * <p>
+ * 按设备型号、系统版本、Camera API和camera id作为key，每个key一个JSON文件。
+ * 打开Camera时先读缓存直接配置，能力查询和校验放到后台执行，不一致时由调用方{@link #invalidate}后重新保存。
+ * 写文件在后台线程中进行，先写临时文件再重命名，读到损坏的文件时直接删除。
+ *
+ * @author xiaozhi
+ * @since 2024/11/22
+ */
+public class CapabilityStore {
+
+    /**
+     * 默认缓存目录名，一般放在Context.getCacheDir()下
+     */
+    public static final String DIR_NAME = "camera_capabilities";
+
+    // 格式变化时递增，旧文件自动失效
+    private static final int VERSION = 1;
+
+    private static CapabilityStore sInstance;
+
+    private final File mDir;
+    private final Map<String, CameraCapabilities> mMemoryCache = new ConcurrentHashMap<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "CapabilityStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 进程内共用一个实例
+     *
+     * @param dir 缓存目录，只在第一次调用时生效
+     * @return
+     */
+    public static synchronized CapabilityStore getInstance(File dir) {
+        if (sInstance == null) {
+            sInstance = new CapabilityStore(dir);
+        }
+        return sInstance;
+    }
+
+    public CapabilityStore(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param model    设备型号，如Build.MODEL
+     * @param osBuild  系统版本，如Build.FINGERPRINT
+     * @param api      Camera API，如camera1、camera2
+     * @param cameraId
+     * @return
+     */
+    public static String createKey(String model, String osBuild, String api, String cameraId) {
+        String key = model + "_" + Integer.toHexString(String.valueOf(osBuild).hashCode()) + "_" + api + "_" + cameraId;
+        return key.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * 读取缓存，先查内存再读文件
+     *
+     * @param key
+     * @return 没有缓存或文件无效时返回null
+     */
+    public CameraCapabilities load(String key) {
+        CameraCapabilities capabilities = mMemoryCache.get(key);
+        if (capabilities != null) {
+            return capabilities;
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            capabilities = fromJson(new JSONObject(readFile(file)));
+        } catch (IOException | JSONException | RuntimeException e) {
+            capabilities = null;
+        }
+        if (capabilities == null) {
+            file.delete();
+            return null;
+        }
+        mMemoryCache.put(key, capabilities);
+        return capabilities;
+    }
+
+    /**
+     * 保存，内存立即生效，文件在后台写入
+     *
+     * @param key
+     * @param capabilities
+     */
+    public void save(String key, CameraCapabilities capabilities) {
+        mMemoryCache.put(key, capabilities);
+        mExecutor.execute(() -> {
+            try {
+                writeFile(getFile(key), toJson(capabilities).toString());
+            } catch (IOException | JSONException e) {
+                getFile(key).delete();
+            }
+        });
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        mMemoryCache.remove(key);
+        mExecutor.execute(() -> getFile(key).delete());
+    }
+
+    /**
+     * 在后台线程中执行，用于能力校验
+     *
+     * @param command
+     */
+    public void execute(Runnable command) {
+        mExecutor.execute(command);
+    }
+
+    private File getFile(String key) {
+        return new File(mDir, key + ".json");
+    }
+
+    private static String readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int count = in.read(data, offset, data.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
+            }
+            return new String(data, 0, offset, StandardCharsets.UTF_8);
+        }
+    }
+
+    private void writeFile(File file, String content) throws IOException {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            throw new IOException("mkdirs failed: " + mDir);
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("rename failed: " + file);
+        }
+    }
+
+    private static JSONObject toJson(CameraCapabilities capabilities) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("version", VERSION);
+        json.put("sensorOrientation", capabilities.getSensorOrientation());
+        json.put("front", capabilities.isFrontFacing());
+        json.put("pictureWidth", capabilities.getPictureWidth());
+        json.put("pictureHeight", capabilities.getPictureHeight());
+        json.putOpt("previewSizes", intArrays(capabilities.getPreviewSizes()));
+        json.putOpt("previewFpsRanges", intArrays(capabilities.getPreviewFpsRanges()));
+        if (capabilities.getPreviewFormats() != null) {
+            json.put("previewFormats", new JSONArray(capabilities.getPreviewFormats()));
+        }
+        if (capabilities.getFlashModes() != null) {
+            json.put("flashModes", new JSONArray(capabilities.getFlashModes()));
+        }
+        if (capabilities.getFocusModes() != null) {
+            json.put("focusModes", new JSONArray(capabilities.getFocusModes()));
+        }
+        PreviewBudget budget = capabilities.getBudget();
+        PreviewConfig config = capabilities.getPreviewConfig();
+        if (budget != null && config != null) {
+            JSONObject budgetJson = new JSONObject();
+            budgetJson.put("targetFps", budget.getTargetFps());
+            budgetJson.put("maxPixelsPerSecond", budget.getMaxPixelsPerSecond());
+            budgetJson.put("displayWidth", budget.getDisplayWidth());
+            budgetJson.put("displayHeight", budget.getDisplayHeight());
+            JSONArray formats = new JSONArray();
+            for (int format : budget.getPreferredFormats()) {
+                formats.put(format);
+            }
+            budgetJson.put("formats", formats);
+            json.put("budget", budgetJson);
+            JSONObject configJson = new JSONObject();
+            configJson.put("width", config.getWidth());
+            configJson.put("height", config.getHeight());
+            configJson.put("minFps", config.getMinFps());
+            configJson.put("maxFps", config.getMaxFps());
+            configJson.put("format", config.getFormat());
+            configJson.put("cost", (double) config.getCost());
+            json.put("previewConfig", configJson);
+        }
+        return json;
+    }
+
+    private static CameraCapabilities fromJson(JSONObject json) throws JSONException {
+        if (json.optInt("version") != VERSION) {
+            return null;
+        }
+        CameraCapabilities capabilities = new CameraCapabilities()
+                .setSensorOrientation(json.getInt("sensorOrientation"))
+                .setFrontFacing(json.getBoolean("front"))
+                .setPictureSize(json.getInt("pictureWidth"), json.getInt("pictureHeight"))
+                .setPreviewSizes(intArrays(json.optJSONArray("previewSizes")))
+                .setPreviewFpsRanges(intArrays(json.optJSONArray("previewFpsRanges")))
+                .setPreviewFormats(ints(json.optJSONArray("previewFormats")))
+                .setFlashModes(strings(json.optJSONArray("flashModes")))
+                .setFocusModes(strings(json.optJSONArray("focusModes")));
+        JSONObject budgetJson = json.optJSONObject("budget");
+        JSONObject configJson = json.optJSONObject("previewConfig");
+        if (budgetJson != null && configJson != null) {
+            JSONArray formatsJson = budgetJson.getJSONArray("formats");
+            int[] formats = new int[formatsJson.length()];
+            for (int i = 0; i < formats.length; i++) {
+                formats[i] = formatsJson.getInt(i);
+            }
+            PreviewBudget budget = new PreviewBudget(budgetJson.getInt("targetFps"),
+                    budgetJson.getLong("maxPixelsPerSecond"), budgetJson.getInt("displayWidth"),
+                    budgetJson.getInt("displayHeight"), formats);
+            PreviewConfig config = new PreviewConfig(configJson.getInt("width"), configJson.getInt("height"),
+                    configJson.getInt("minFps"), configJson.getInt("maxFps"), configJson.getInt("format"),
+                    (float) configJson.getDouble("cost"));
+            capabilities.setPreviewConfig(budget, config);
+        }
+        return capabilities;
+    }
+
+    private static JSONArray intArrays(List<int[]> list) {
+        if (list == null) {
+            return null;
+        }
+        JSONArray array = new JSONArray();
+        for (int[] values : list) {
+            JSONArray item = new JSONArray();
+            for (int value : values) {
+                item.put(value);
+            }
+            array.put(item);
+        }
+        return array;
+    }
+
+    private static List<int[]> intArrays(JSONArray array) throws JSONException {
+        if (array == null) {
+            return null;
+        }
+        List<int[]> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONArray item = array.getJSONArray(i);
+            int[] values = new int[item.length()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = item.getInt(j);
+            }
+            list.add(values);
+        }
+        return list;
+    }
+
+    private static List<Integer> ints(JSONArray array) throws JSONException {
+        if (array == null) {
+            return null;
+        }
+        List<Integer> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getInt(i));
+        }
+        return list;
+    }
+
+    private static List<String> strings(JSONArray array) throws JSONException {
+        if (array == null) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getString(i));
+        }
+        return list;
+    }
+}
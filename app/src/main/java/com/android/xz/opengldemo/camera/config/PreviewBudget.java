@@ -0,0 +1,126 @@
+package com.android.xz.opengldemo.camera.config;
+
+import java.util.Arrays;
+
+/**
+ * 预览预算，协商预览配置时的约束条件
+ * <p>
+ * 尺寸不区分横竖，比较时统一按长边、短边处理
+ *
+ * @author xiaozhi
+ * @since 2024/11/13
+ */
+public class PreviewBudget {
+
+    public static final int DEFAULT_TARGET_FPS = 30;
+
+    /**
+     * 默认每秒最大处理像素数：1080p@30fps
+     */
+    public static final long DEFAULT_MAX_PIXELS_PER_SECOND = 1920L * 1080 * 30;
+
+    private final int mTargetFps;
+    private final long mMaxPixelsPerSecond;
+    private final int mDisplayWidth;
+    private final int mDisplayHeight;
+    private final int[] mPreferredFormats;
+
+    /**
+     * @param targetFps          目标帧率
+     * @param maxPixelsPerSecond 每秒最大处理像素数，按帧率范围上限计算
+     * @param displayWidth       显示宽度
+     * @param displayHeight      显示高度
+     * @param preferredFormats   可接受的预览格式，越靠前越优先
+     */
+    public PreviewBudget(int targetFps, long maxPixelsPerSecond, int displayWidth, int displayHeight,
+                         int... preferredFormats) {
+        if (targetFps <= 0 || maxPixelsPerSecond <= 0 || displayWidth <= 0 || displayHeight <= 0) {
+            throw new IllegalArgumentException("invalid budget: " + targetFps + "fps, "
+                    + maxPixelsPerSecond + "px/s, " + displayWidth + "x" + displayHeight);
+        }
+        if (preferredFormats == null || preferredFormats.length == 0) {
+            throw new IllegalArgumentException("preferredFormats must not be empty");
+        }
+        mTargetFps = targetFps;
+        mMaxPixelsPerSecond = maxPixelsPerSecond;
+        mDisplayWidth = Math.max(displayWidth, displayHeight);
+        mDisplayHeight = Math.min(displayWidth, displayHeight);
+        mPreferredFormats = preferredFormats.clone();
+    }
+
+    public int getTargetFps() {
+        return mTargetFps;
+    }
+
+    public long getMaxPixelsPerSecond() {
+        return mMaxPixelsPerSecond;
+    }
+
+    /**
+     * @return 显示尺寸长边
+     */
+    public int getDisplayWidth() {
+        return mDisplayWidth;
+    }
+
+    /**
+     * @return 显示尺寸短边
+     */
+    public int getDisplayHeight() {
+        return mDisplayHeight;
+    }
+
+    /**
+     * 格式优先级，不可接受的格式返回-1
+     *
+     * @param format
+     * @return
+     */
+    public int getFormatRank(int format) {
+        for (int i = 0; i < mPreferredFormats.length; i++) {
+            if (mPreferredFormats[i] == format) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getPreferredFormat() {
+        return mPreferredFormats[0];
+    }
+
+    /**
+     * @return 可接受的预览格式，越靠前越优先
+     */
+    public int[] getPreferredFormats() {
+        return mPreferredFormats.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PreviewBudget)) return false;
+        PreviewBudget that = (PreviewBudget) o;
+        return mTargetFps == that.mTargetFps
+                && mMaxPixelsPerSecond == that.mMaxPixelsPerSecond
+                && mDisplayWidth == that.mDisplayWidth
+                && mDisplayHeight == that.mDisplayHeight
+                && Arrays.equals(mPreferredFormats, that.mPreferredFormats);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mTargetFps;
+        result = 31 * result + Long.hashCode(mMaxPixelsPerSecond);
+        result = 31 * result + mDisplayWidth;
+        result = 31 * result + mDisplayHeight;
+        result = 31 * result + Arrays.hashCode(mPreferredFormats);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewBudget{" + mTargetFps + "fps, " + mMaxPixelsPerSecond + "px/s, "
+                + mDisplayWidth + "x" + mDisplayHeight + "}";
+    }
+}
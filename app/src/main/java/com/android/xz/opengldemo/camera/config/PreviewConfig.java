@@ -0,0 +1,81 @@
+package com.android.xz.opengldemo.camera.config;
+
+/**
+ * 协商得到的预览配置
+ * <p>
+ * 帧率与Camera1一致，单位为帧/1000秒，例如30fps为30000
+ *
+ * @author xiaozhi
+ * @since 2024/11/13
+ */
+public class PreviewConfig {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mMinFps;
+    private final int mMaxFps;
+    private final int mFormat;
+    private final float mCost;
+
+    public PreviewConfig(int width, int height, int minFps, int maxFps, int format, float cost) {
+        mWidth = width;
+        mHeight = height;
+        mMinFps = minFps;
+        mMaxFps = maxFps;
+        mFormat = format;
+        mCost = cost;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return 帧率范围下限（x1000）
+     */
+    public int getMinFps() {
+        return mMinFps;
+    }
+
+    /**
+     * @return 帧率范围上限（x1000）
+     */
+    public int getMaxFps() {
+        return mMaxFps;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * @return 评分代价，越小越好
+     */
+    public float getCost() {
+        return mCost;
+    }
+
+    /**
+     * @return 每秒最大像素数
+     */
+    public long getPixelsPerSecond() {
+        return (long) mWidth * mHeight * mMaxFps / 1000;
+    }
+
+    /**
+     * @return 一帧的时长，毫秒
+     */
+    public long getFrameIntervalMs() {
+        return mMaxFps > 0 ? Math.max(1, 1000000L / mMaxFps) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewConfig{" + mWidth + "x" + mHeight + ", fps[" + mMinFps + "," + mMaxFps
+                + "], format=" + mFormat + ", cost=" + mCost + "}";
+    }
+}
@@ -0,0 +1,188 @@
+package com.android.xz.opengldemo.camera.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预览配置协商
+ * <p>
+ * 对（尺寸，帧率范围，格式）的所有组合按{@link PreviewBudget}评分，取代价最小的一个：
+ * <ul>
+ * <li>超过每秒最大像素数的组合直接排除，全部超出时取像素吞吐最小的</li>
+ * <li>宽高比与显示尺寸不一致代价最高，其次是帧率达不到目标，再次是尺寸小于显示尺寸</li>
+ * <li>比显示尺寸大、帧率高于目标只计较小的浪费代价</li>
+ * </ul>
+ * 不依赖Android API，尺寸用{width, height}，帧率范围用Camera1的{min, max}（x1000）表示。
+ * 结果按camera id缓存，预算不变时不再重复计算。
+ *
+ * @author xiaozhi
+ * @since 2024/11/13
+ */
+public class PreviewConfigNegotiator {
+
+    private static final float ASPECT_WEIGHT = 10f;
+    private static final float UNDERSIZE_WEIGHT = 4f;
+    private static final float OVERSIZE_WEIGHT = 0.5f;
+    private static final float FPS_SHORTFALL_WEIGHT = 8f;
+    private static final float FPS_EXCESS_WEIGHT = 0.5f;
+    private static final float FORMAT_WEIGHT = 1f;
+
+    private final Map<String, Entry> mCache = new ConcurrentHashMap<>();
+
+    /**
+     * 协商预览配置，同一camera id和预算命中缓存时直接返回
+     *
+     * @param cameraId
+     * @param sizes     支持的预览尺寸
+     * @param fpsRanges 支持的帧率范围，为空时按目标帧率处理
+     * @param formats   支持的预览格式，为空时按预算首选格式处理
+     * @param budget
+     * @return 没有可用尺寸时返回null
+     */
+    public PreviewConfig negotiate(String cameraId, List<int[]> sizes, List<int[]> fpsRanges,
+                                   List<Integer> formats, PreviewBudget budget) {
+        Entry entry = mCache.get(cameraId);
+        if (entry != null && entry.mBudget.equals(budget)) {
+            return entry.mConfig;
+        }
+        PreviewConfig config = negotiate(sizes, fpsRanges, formats, budget);
+        if (config != null) {
+            mCache.put(cameraId, new Entry(budget, config));
+        }
+        return config;
+    }
+
+    /**
+     * 获取缓存的配置
+     *
+     * @param cameraId
+     * @return
+     */
+    public PreviewConfig getCached(String cameraId) {
+        Entry entry = mCache.get(cameraId);
+        return entry == null ? null : entry.mConfig;
+    }
+
+    public void invalidate(String cameraId) {
+        mCache.remove(cameraId);
+    }
+
+    public void clear() {
+        mCache.clear();
+    }
+
+    /**
+     * 协商预览配置，不使用缓存
+     *
+     * @param sizes
+     * @param fpsRanges
+     * @param formats
+     * @param budget
+     * @return 没有可用尺寸时返回null
+     */
+    public static PreviewConfig negotiate(List<int[]> sizes, List<int[]> fpsRanges,
+                                          List<Integer> formats, PreviewBudget budget) {
+        if (sizes == null || sizes.isEmpty()) {
+            return null;
+        }
+        int targetFps = budget.getTargetFps() * 1000;
+        boolean hasFpsRanges = fpsRanges != null && !fpsRanges.isEmpty();
+        int fpsCount = hasFpsRanges ? fpsRanges.size() : 1;
+        boolean hasFormats = formats != null && !formats.isEmpty();
+        int formatCount = hasFormats ? formats.size() : 1;
+
+        int[] best = null;
+        float bestCost = Float.MAX_VALUE;
+        // 全部超出吞吐预算时的兜底
+        int[] fallback = null;
+        float fallbackCost = Float.MAX_VALUE;
+        long fallbackThroughput = Long.MAX_VALUE;
+
+        for (int f = 0; f < formatCount; f++) {
+            int format = hasFormats ? formats.get(f) : budget.getPreferredFormat();
+            int formatRank = budget.getFormatRank(format);
+            if (formatRank < 0) {
+                continue;
+            }
+            for (int r = 0; r < fpsCount; r++) {
+                int minFps = hasFpsRanges ? fpsRanges.get(r)[0] : targetFps;
+                int maxFps = hasFpsRanges ? fpsRanges.get(r)[1] : targetFps;
+                float fpsCost = fpsCost(maxFps, targetFps);
+                for (int s = 0; s < sizes.size(); s++) {
+                    int[] size = sizes.get(s);
+                    float cost = fpsCost + sizeCost(size[0], size[1], budget) + formatRank * FORMAT_WEIGHT;
+                    long throughput = (long) size[0] * size[1] * maxFps / 1000;
+                    if (throughput <= budget.getMaxPixelsPerSecond()) {
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            best = new int[]{size[0], size[1], minFps, maxFps, format};
+                        }
+                    } else if (best == null && (throughput < fallbackThroughput
+                            || throughput == fallbackThroughput && cost < fallbackCost)) {
+                        fallbackThroughput = throughput;
+                        fallbackCost = cost;
+                        fallback = new int[]{size[0], size[1], minFps, maxFps, format};
+                    }
+                }
+            }
+        }
+        if (best == null) {
+            best = fallback;
+            bestCost = fallbackCost;
+        }
+        if (best == null) {
+            // 没有可接受的格式
+            return null;
+        }
+        return new PreviewConfig(best[0], best[1], best[2], best[3], best[4], bestCost);
+    }
+
+    /**
+     * 尺寸代价：宽高比差异 + 小于显示尺寸的模糊 + 大于显示尺寸的浪费
+     */
+    static float sizeCost(int width, int height, PreviewBudget budget) {
+        int longSide = Math.max(width, height);
+        int shortSide = Math.min(width, height);
+        if (shortSide <= 0) {
+            return Float.MAX_VALUE / 2;
+        }
+        int displayLong = budget.getDisplayWidth();
+        int displayShort = budget.getDisplayHeight();
+        float aspect = (float) longSide / shortSide;
+        float displayAspect = (float) displayLong / displayShort;
+        float cost = Math.abs((float) Math.log(aspect / displayAspect)) * ASPECT_WEIGHT;
+
+        float ratio = (float) ((long) longSide * shortSide) / ((long) displayLong * displayShort);
+        if (longSide >= displayLong && shortSide >= displayShort) {
+            cost += (ratio - 1) * OVERSIZE_WEIGHT;
+        } else {
+            cost += (1 - Math.min(ratio, 1f)) * UNDERSIZE_WEIGHT;
+            // 面积够但某一边不够时也算作不足
+            if (ratio >= 1) {
+                cost += UNDERSIZE_WEIGHT / 4;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * 帧率代价：达不到目标帧率代价高，超出目标只计浪费
+     */
+    static float fpsCost(int maxFps, int targetFps) {
+        if (maxFps < targetFps) {
+            return (float) (targetFps - maxFps) / targetFps * FPS_SHORTFALL_WEIGHT;
+        }
+        return (float) (maxFps - targetFps) / targetFps * FPS_EXCESS_WEIGHT;
+    }
+
+    private static class Entry {
+        final PreviewBudget mBudget;
+        final PreviewConfig mConfig;
+
+        Entry(PreviewBudget budget, PreviewConfig config) {
+            mBudget = budget;
+            mConfig = config;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.android.xz.opengldemo.camera.metrics;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 帧统计注册表
+ * <p>
+ * 各数据流通过{@link #getStream(String)}取得{@link StreamMetrics}记录数据，
+ * 有{@link MetricsListener}时在主线程中按周期汇总上报，没有监听者时不做汇总。
+ *
+ * @author xiaozhi
+ * @since 2024/11/14
+ */
+public class FrameMetrics {
+
+    /**
+     * SurfaceTexture预览流，记录到达间隔和GL绘制
+     */
+    public static final String STREAM_PREVIEW = "preview";
+    /**
+     * byte[]预览数据流，记录到达间隔、丢帧和使用者处理
+     */
+    public static final String STREAM_PREVIEW_BUFFER = "preview_buffer";
+    /**
+     * 拍照，到达间隔为连拍张间耗时，处理为后台处理耗时，延迟为提交到处理完成
+     */
+    public static final String STREAM_CAPTURE = "capture";
+    /**
+     * NV21编码JPEG，处理为编码耗时，延迟为提交到回调完成，队列满丢弃计为丢帧
+     */
+    public static final String STREAM_JPEG_ENCODE = "jpeg_encode";
+
+    public static final long DEFAULT_REPORT_INTERVAL_MS = 1000;
+
+    private static final FrameMetrics sInstance = new FrameMetrics();
+    private static volatile boolean isEnabled;
+
+    private final Map<String, StreamMetrics> mStreams = new ConcurrentHashMap<>();
+    private final List<MetricsListener> mListeners = new CopyOnWriteArrayList<>();
+    // 第一次添加监听时创建，没有监听者时不依赖Looper，可以在纯JVM环境中记录
+    private Handler mHandler;
+    private long mReportInterval = DEFAULT_REPORT_INTERVAL_MS;
+
+    private final Runnable mReportRunnable = new Runnable() {
+        @Override
+        public void run() {
+            report();
+            if (!mListeners.isEmpty()) {
+                mHandler.postDelayed(this, mReportInterval);
+            }
+        }
+    };
+
+    private FrameMetrics() {
+    }
+
+    public static FrameMetrics getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 全局开关，默认关闭，关闭时记录方法直接返回
+     *
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * 获取数据流统计，不存在时创建
+     *
+     * @param name
+     * @return
+     */
+    public StreamMetrics getStream(String name) {
+        StreamMetrics stream = mStreams.get(name);
+        if (stream == null) {
+            StreamMetrics newStream = new StreamMetrics(name);
+            stream = mStreams.putIfAbsent(name, newStream);
+            if (stream == null) {
+                stream = newStream;
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * 设置上报周期，主线程调用
+     *
+     * @param intervalMs
+     */
+    public void setReportInterval(long intervalMs) {
+        mReportInterval = intervalMs;
+    }
+
+    /**
+     * 添加监听，第一个监听者加入时开始周期上报，主线程调用
+     *
+     * @param listener
+     */
+    public void addListener(MetricsListener listener) {
+        if (listener == null || mListeners.contains(listener)) {
+            return;
+        }
+        mListeners.add(listener);
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        if (mListeners.size() == 1) {
+            // 丢弃没有监听期间积累的数据
+            for (StreamMetrics stream : mStreams.values()) {
+                stream.snapshot();
+            }
+            mHandler.postDelayed(mReportRunnable, mReportInterval);
+        }
+    }
+
+    /**
+     * 移除监听，没有监听者时停止上报，主线程调用
+     *
+     * @param listener
+     */
+    public void removeListener(MetricsListener listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty() && mHandler != null) {
+            mHandler.removeCallbacks(mReportRunnable);
+        }
+    }
+
+    private void report() {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        List<StreamMetrics.Snapshot> snapshots = new ArrayList<>(mStreams.size());
+        for (StreamMetrics stream : mStreams.values()) {
+            snapshots.add(stream.snapshot());
+        }
+        for (MetricsListener listener : mListeners) {
+            listener.onMetrics(snapshots);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.android.xz.opengldemo.camera.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图
+ * <p>
+ * 桶边界按约1.2倍等比增长，覆盖50us~10s，百分位误差在一个桶宽（约20%）以内。
+ * 记录只做几次原子加，可以在预览回调等热路径中调用。
+ *
+ * @author xiaozhi
+ * @since 2024/11/14
+ */
+public class LatencyHistogram {
+
+    private static final long MIN_BOUND_US = 50;
+    private static final long MAX_BOUND_US = 10_000_000;
+    private static final double GROWTH = 1.2;
+
+    // 各桶上界，单位us，最后一个桶收集超出范围的值
+    private static final long[] BOUNDS;
+
+    static {
+        int count = 0;
+        for (double bound = MIN_BOUND_US; bound < MAX_BOUND_US; bound *= GROWTH) {
+            count++;
+        }
+        BOUNDS = new long[count + 1];
+        double bound = MIN_BOUND_US;
+        for (int i = 0; i < count; i++) {
+            BOUNDS[i] = (long) Math.ceil(bound);
+            bound *= GROWTH;
+        }
+        BOUNDS[count] = Long.MAX_VALUE;
+    }
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BOUNDS.length);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumUs = new AtomicLong();
+    private final AtomicLong mMaxUs = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param durationNs 纳秒
+     */
+    public void record(long durationNs) {
+        if (durationNs < 0) {
+            return;
+        }
+        long us = durationNs / 1000;
+        mBuckets.incrementAndGet(indexOf(us));
+        mCount.incrementAndGet();
+        mSumUs.addAndGet(us);
+        long max;
+        while (us > (max = mMaxUs.get())) {
+            if (mMaxUs.compareAndSet(max, us)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 取出当前统计并清零，用于按周期上报
+     *
+     * @return
+     */
+    public Snapshot snapshotAndReset() {
+        long[] buckets = new long[BOUNDS.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = mBuckets.getAndSet(i, 0);
+            count += buckets[i];
+        }
+        mCount.set(0);
+        long sumUs = mSumUs.getAndSet(0);
+        long maxUs = mMaxUs.getAndSet(0);
+        if (count == 0) {
+            return Snapshot.EMPTY;
+        }
+        return new Snapshot(count, sumUs / count, percentile(buckets, count, 0.5, maxUs),
+                percentile(buckets, count, 0.99, maxUs), maxUs);
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    private static long percentile(long[] buckets, long count, double percent, long maxUs) {
+        long rank = (long) Math.ceil(count * percent);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                // 桶上界不会超过实际最大值
+                return Math.min(BOUNDS[i], maxUs);
+            }
+        }
+        return maxUs;
+    }
+
+    private static int indexOf(long us) {
+        int low = 0;
+        int high = BOUNDS.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (us <= BOUNDS[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 一个上报周期内的统计，单位us
+     */
+    public static class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0);
+
+        public final long count;
+        public final long meanUs;
+        public final long p50Us;
+        public final long p99Us;
+        public final long maxUs;
+
+        Snapshot(long count, long meanUs, long p50Us, long p99Us, long maxUs) {
+            this.count = count;
+            this.meanUs = meanUs;
+            this.p50Us = p50Us;
+            this.p99Us = p99Us;
+            this.maxUs = maxUs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50=%.1fms p99=%.1fms max=%.1fms", p50Us / 1000f, p99Us / 1000f, maxUs / 1000f);
+        }
+    }
+}
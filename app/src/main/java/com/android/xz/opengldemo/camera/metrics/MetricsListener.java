@@ -0,0 +1,17 @@
+package com.android.xz.opengldemo.camera.metrics;
+
+import java.util.List;
+
+/**
+ * 帧统计上报回调，在主线程中按周期回调
+ *
+ * @author xiaozhi
+ * @since 2024/11/14
+ */
+public interface MetricsListener {
+
+    /**
+     * @param snapshots 各数据流在本周期内的统计
+     */
+    void onMetrics(List<StreamMetrics.Snapshot> snapshots);
+}
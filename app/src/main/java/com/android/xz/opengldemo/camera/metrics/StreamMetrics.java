@@ -0,0 +1,169 @@
+package com.android.xz.opengldemo.camera.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单路数据流的帧统计：到达间隔、使用者处理耗时、丢帧、GL绘制耗时和端到端延迟
+ * <p>
+ * 时间统一使用{@link System#nanoTime()}，与SurfaceTexture时间戳同一时钟
+ *
+ * @author xiaozhi
+ * @since 2024/11/14
+ */
+public class StreamMetrics {
+
+    private final String mName;
+    private final LatencyHistogram mInterval = new LatencyHistogram();
+    private final LatencyHistogram mProcessing = new LatencyHistogram();
+    private final LatencyHistogram mDraw = new LatencyHistogram();
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final AtomicLong mLastArrivalNs = new AtomicLong();
+    private final AtomicLong mFrameCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    // 上一次上报时的状态，只在上报线程中访问
+    private long mReportedFrameCount;
+    private long mReportedDroppedCount;
+    private long mReportTimeNs = System.nanoTime();
+
+    StreamMetrics(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 一帧到达
+     *
+     * @param timestampNs 到达时间
+     */
+    public void onFrameArrived(long timestampNs) {
+        if (!FrameMetrics.isEnabled()) {
+            return;
+        }
+        long last = mLastArrivalNs.getAndSet(timestampNs);
+        if (last > 0) {
+            mInterval.record(timestampNs - last);
+        }
+        mFrameCount.incrementAndGet();
+    }
+
+    /**
+     * 一帧被丢弃，包括缓冲区不足和使用者处理不过来
+     */
+    public void onFrameDropped() {
+        if (!FrameMetrics.isEnabled()) {
+            return;
+        }
+        mDroppedCount.incrementAndGet();
+    }
+
+    /**
+     * 使用者处理完一帧
+     *
+     * @param durationNs 处理耗时
+     * @param latencyNs  从到达到处理完成的耗时，包括排队，未知时传0
+     */
+    public void onFrameProcessed(long durationNs, long latencyNs) {
+        if (!FrameMetrics.isEnabled()) {
+            return;
+        }
+        mProcessing.record(durationNs);
+        if (latencyNs > 0) {
+            mLatency.record(latencyNs);
+        }
+    }
+
+    /**
+     * GL绘制完一帧
+     *
+     * @param durationNs 绘制耗时
+     * @param latencyNs  从帧时间戳到绘制完成的耗时，未知时传0
+     */
+    public void onFrameDrawn(long durationNs, long latencyNs) {
+        if (!FrameMetrics.isEnabled()) {
+            return;
+        }
+        mDraw.record(durationNs);
+        if (latencyNs > 0) {
+            mLatency.record(latencyNs);
+        }
+    }
+
+    public long getFrameCount() {
+        return mFrameCount.get();
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    public long getLastArrivalNs() {
+        return mLastArrivalNs.get();
+    }
+
+    /**
+     * 生成上报周期内的统计
+     */
+    synchronized Snapshot snapshot() {
+        long now = System.nanoTime();
+        long frames = mFrameCount.get();
+        long dropped = mDroppedCount.get();
+        long elapsedNs = now - mReportTimeNs;
+        float fps = elapsedNs > 0 ? (frames - mReportedFrameCount) * 1e9f / elapsedNs : 0;
+        Snapshot snapshot = new Snapshot(mName, fps, frames, dropped - mReportedDroppedCount,
+                mInterval.snapshotAndReset(), mProcessing.snapshotAndReset(),
+                mDraw.snapshotAndReset(), mLatency.snapshotAndReset());
+        mReportedFrameCount = frames;
+        mReportedDroppedCount = dropped;
+        mReportTimeNs = now;
+        return snapshot;
+    }
+
+    /**
+     * 一个上报周期内的统计
+     */
+    public static class Snapshot {
+
+        public final String name;
+        public final float fps;
+        public final long totalFrames;
+        public final long dropped;
+        public final LatencyHistogram.Snapshot interval;
+        public final LatencyHistogram.Snapshot processing;
+        public final LatencyHistogram.Snapshot draw;
+        public final LatencyHistogram.Snapshot latency;
+
+        Snapshot(String name, float fps, long totalFrames, long dropped,
+                 LatencyHistogram.Snapshot interval, LatencyHistogram.Snapshot processing,
+                 LatencyHistogram.Snapshot draw, LatencyHistogram.Snapshot latency) {
+            this.name = name;
+            this.fps = fps;
+            this.totalFrames = totalFrames;
+            this.dropped = dropped;
+            this.interval = interval;
+            this.processing = processing;
+            this.draw = draw;
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(name).append(String.format(": %.1ffps dropped=%d", fps, dropped));
+            sb.append("\n  interval ").append(interval);
+            if (processing.count > 0) {
+                sb.append("\n  process  ").append(processing);
+            }
+            if (draw.count > 0) {
+                sb.append("\n  draw     ").append(draw);
+            }
+            if (latency.count > 0) {
+                sb.append("\n  latency  ").append(latency);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.android.xz.opengldemo.camera.source;
+
+import java.io.IOException;
+
+/**
+ * 合成预览数据源，为{@link com.android.xz.opengldemo.camera.SyntheticCameraManager}生成NV21帧
+ * <p>
+ * 实现不能依赖Android API，保证在纯JVM环境中可用
+ *
+ * @author xiaozhi
+ * @since 2024/11/15
+ */
+public interface FrameSource {
+
+    /**
+     * 打开数据源
+     *
+     * @param width
+     * @param height
+     * @throws IOException 数据源不可用或与尺寸不匹配
+     */
+    void open(int width, int height) throws IOException;
+
+    /**
+     * 填充一帧NV21数据，在生产线程中调用
+     *
+     * @param nv21       长度为width * height * 3 / 2
+     * @param width
+     * @param height
+     * @param frameIndex 从0开始的帧序号
+     */
+    void fill(byte[] nv21, int width, int height, long frameIndex);
+
+    /**
+     * 关闭数据源
+     */
+    void close();
+}
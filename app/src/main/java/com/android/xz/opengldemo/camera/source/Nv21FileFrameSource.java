@@ -0,0 +1,59 @@
+package com.android.xz.opengldemo.camera.source;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * 回放录制的NV21文件，文件内容为连续的整帧NV21数据，播完后从头循环
+ * <p>
+ * 打开时一次读入内存，回放期间不做IO，避免磁盘速度影响测试结果
+ *
+ * @author xiaozhi
+ * @since 2024/11/15
+ */
+public class Nv21FileFrameSource implements FrameSource {
+
+    private final File mFile;
+    private byte[][] mFrames;
+
+    public Nv21FileFrameSource(File file) {
+        mFile = file;
+    }
+
+    @Override
+    public void open(int width, int height) throws IOException {
+        int frameSize = width * height * 3 / 2;
+        long length = mFile.length();
+        if (length == 0 || length % frameSize != 0) {
+            throw new IOException(mFile + " is not a sequence of " + width + "x" + height + " NV21 frames, length: " + length);
+        }
+        long count = length / frameSize;
+        if (count > Integer.MAX_VALUE) {
+            throw new IOException(mFile + " has too many frames: " + count);
+        }
+        byte[][] frames = new byte[(int) count][frameSize];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(mFile))) {
+            for (byte[] frame : frames) {
+                in.readFully(frame);
+            }
+        }
+        mFrames = frames;
+    }
+
+    @Override
+    public void fill(byte[] nv21, int width, int height, long frameIndex) {
+        byte[] frame = mFrames[(int) (frameIndex % mFrames.length)];
+        System.arraycopy(frame, 0, nv21, 0, frame.length);
+    }
+
+    @Override
+    public void close() {
+        mFrames = null;
+    }
+
+    public int getFrameCount() {
+        return mFrames == null ? 0 : mFrames.length;
+    }
+}
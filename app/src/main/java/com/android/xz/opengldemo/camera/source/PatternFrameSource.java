@@ -0,0 +1,51 @@
+package com.android.xz.opengldemo.camera.source;
+
+/**
+ * 生成移动的斜向渐变图案，每帧平移一次，用于基准测试和回归测试
+ * <p>
+ * 按行从预先生成的渐变中拷贝，生成开销接近内存拷贝
+ *
+ * @author xiaozhi
+ * @since 2024/11/15
+ */
+public class PatternFrameSource implements FrameSource {
+
+    // 每帧平移的像素数
+    private static final int STEP = 4;
+
+    private byte[] mLumaRow;
+    private byte[] mChromaRow;
+
+    @Override
+    public void open(int width, int height) {
+        // 多出256个像素，按偏移拷贝实现平移
+        mLumaRow = new byte[width + 256];
+        for (int i = 0; i < mLumaRow.length; i++) {
+            mLumaRow[i] = (byte) i;
+        }
+        mChromaRow = new byte[width + 256];
+        for (int i = 0; i < mChromaRow.length; i += 2) {
+            mChromaRow[i] = (byte) (128 + (i >> 2));
+            mChromaRow[i + 1] = (byte) (128 - (i >> 2));
+        }
+    }
+
+    @Override
+    public void fill(byte[] nv21, int width, int height, long frameIndex) {
+        int shift = (int) (frameIndex * STEP & 0xFF);
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(mLumaRow, (row + shift) & 0xFF, nv21, row * width, width);
+        }
+        int uvOffset = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            // VU交错，偏移保持偶数
+            System.arraycopy(mChromaRow, (row + shift) & 0xFE, nv21, uvOffset + row * width, width);
+        }
+    }
+
+    @Override
+    public void close() {
+        mLumaRow = null;
+        mChromaRow = null;
+    }
+}
@@ -0,0 +1,244 @@
+package com.android.xz.opengldemo.camera.stats;
+
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 预览帧亮度统计
+ * <p>
+ * 作为一个{@link PreviewBufferCallback}注册到Camera，按采样间隔在亮度平面的网格上遍历一次，
+ * 同时得到直方图、平均亮度、过暗/过曝比例、清晰度（梯度能量）以及分块的平均亮度和清晰度，
+ * 用于曝光和画质监控。间隔为4时只读1/16的像素。
+ * <p>
+ * 结果写入预先分配的{@link LumaStats}，两份交替使用，每帧统计完交换一次后回调监听者，统计过程不分配内存。
+ * 配置修改在下一帧生效。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class LumaStatistics implements PreviewBufferCallback {
+
+    public interface OnLumaStatsListener {
+        /**
+         * 在统计线程中回调，stats只在回调期间有效
+         *
+         * @param stats
+         */
+        void onLumaStats(LumaStats stats);
+    }
+
+    public static final int DEFAULT_STRIDE = 4;
+    public static final int DEFAULT_TILE_COLS = 4;
+    public static final int DEFAULT_TILE_ROWS = 3;
+    public static final int DEFAULT_CLIP_LOW = 5;
+    public static final int DEFAULT_CLIP_HIGH = 250;
+
+    private final CopyOnWriteArrayList<OnLumaStatsListener> mListeners = new CopyOnWriteArrayList<>();
+    private final Object mLock = new Object();
+
+    // 配置在mLock下读写，每帧开始时读取一次
+    private int mStride = DEFAULT_STRIDE;
+    private int mTileCols = DEFAULT_TILE_COLS;
+    private int mTileRows = DEFAULT_TILE_ROWS;
+    private int mClipLow = DEFAULT_CLIP_LOW;
+    private int mClipHigh = DEFAULT_CLIP_HIGH;
+
+    // mPublished在mLock下交换，交换后只读；mWorking只在统计线程中写
+    private LumaStats mWorking = new LumaStats();
+    private LumaStats mPublished = new LumaStats();
+    private long mFrameNumber;
+
+    // 以下只在统计线程中访问
+    private long[] mTileSums = new long[0];
+    private long[] mTileGradients = new long[0];
+    private int[] mTileCounts = new int[0];
+    // 采样列对应的分块列
+    private int[] mColumnTiles = new int[0];
+
+    public void addListener(OnLumaStatsListener listener) {
+        if (listener != null) {
+            mListeners.addIfAbsent(listener);
+        }
+    }
+
+    public void removeListener(OnLumaStatsListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 设置采样间隔，横向和纵向每隔stride个像素取一个点
+     *
+     * @param stride 大于等于1
+     */
+    public void setStride(int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("stride must be positive: " + stride);
+        }
+        synchronized (mLock) {
+            mStride = stride;
+        }
+    }
+
+    public int getStride() {
+        synchronized (mLock) {
+            return mStride;
+        }
+    }
+
+    /**
+     * 设置分块数
+     *
+     * @param cols
+     * @param rows
+     */
+    public void setTileGrid(int cols, int rows) {
+        if (cols < 1 || rows < 1) {
+            throw new IllegalArgumentException("tile grid must be positive: " + cols + "x" + rows);
+        }
+        synchronized (mLock) {
+            mTileCols = cols;
+            mTileRows = rows;
+        }
+    }
+
+    /**
+     * 设置过暗、过曝阈值
+     *
+     * @param low  亮度小于等于low计为过暗
+     * @param high 亮度大于等于high计为过曝
+     */
+    public void setClipThresholds(int low, int high) {
+        if (low < 0 || high > 255 || low >= high) {
+            throw new IllegalArgumentException("invalid clip thresholds: " + low + ", " + high);
+        }
+        synchronized (mLock) {
+            mClipLow = low;
+            mClipHigh = high;
+        }
+    }
+
+    /**
+     * 拷贝最近一帧的结果
+     *
+     * @param out
+     * @return 还没有统计过时返回false
+     */
+    public boolean copyLatest(LumaStats out) {
+        synchronized (mLock) {
+            if (mPublished.mFrameNumber == 0) {
+                return false;
+            }
+            mPublished.copyTo(out);
+            return true;
+        }
+    }
+
+    @Override
+    public void onPreviewBufferFrame(byte[] data, int width, int height) {
+        int stride;
+        int tileCols;
+        int tileRows;
+        int clipLow;
+        int clipHigh;
+        synchronized (mLock) {
+            stride = mStride;
+            tileCols = mTileCols;
+            tileRows = mTileRows;
+            clipLow = mClipLow;
+            clipHigh = mClipHigh;
+        }
+        LumaStats stats = mWorking;
+        compute(data, width, height, stride, tileCols, tileRows, clipLow, clipHigh, stats);
+        stats.mFrameNumber = ++mFrameNumber;
+        stats.mTimestampNs = System.nanoTime();
+        synchronized (mLock) {
+            mWorking = mPublished;
+            mPublished = stats;
+        }
+        for (OnLumaStatsListener listener : mListeners) {
+            listener.onLumaStats(stats);
+        }
+    }
+
+    private void compute(byte[] data, int width, int height, int stride, int tileCols, int tileRows,
+                         int clipLow, int clipHigh, LumaStats stats) {
+        int[] histogram = stats.mHistogram;
+        Arrays.fill(histogram, 0);
+        int tileCount = tileCols * tileRows;
+        if (mTileSums.length != tileCount) {
+            mTileSums = new long[tileCount];
+            mTileGradients = new long[tileCount];
+            mTileCounts = new int[tileCount];
+        } else {
+            Arrays.fill(mTileSums, 0);
+            Arrays.fill(mTileGradients, 0);
+            Arrays.fill(mTileCounts, 0);
+        }
+        long[] tileSums = mTileSums;
+        long[] tileGradients = mTileGradients;
+        int[] tileCounts = mTileCounts;
+
+        // 最后一行、一列没有右、下相邻像素，不采样
+        int columns = (width - 2) / stride + 1;
+        int rows = (height - 2) / stride + 1;
+        if (width < 2 || height < 2) {
+            columns = 0;
+            rows = 0;
+        }
+        if (mColumnTiles.length < columns) {
+            mColumnTiles = new int[columns];
+        }
+        int[] columnTiles = mColumnTiles;
+        for (int i = 0; i < columns; i++) {
+            columnTiles[i] = i * stride * tileCols / width;
+        }
+
+        long sum = 0;
+        long gradient = 0;
+        for (int r = 0; r < rows; r++) {
+            int y = r * stride;
+            int tileBase = y * tileRows / height * tileCols;
+            int index = y * width;
+            for (int c = 0; c < columns; c++) {
+                int v = data[index] & 0xff;
+                int gx = (data[index + 1] & 0xff) - v;
+                int gy = (data[index + width] & 0xff) - v;
+                int g = gx * gx + gy * gy;
+                histogram[v]++;
+                sum += v;
+                gradient += g;
+                int tile = tileBase + columnTiles[c];
+                tileSums[tile] += v;
+                tileGradients[tile] += g;
+                tileCounts[tile]++;
+                index += stride;
+            }
+        }
+
+        long count = (long) columns * rows;
+        long low = 0;
+        for (int i = 0; i <= clipLow; i++) {
+            low += histogram[i];
+        }
+        long high = 0;
+        for (int i = clipHigh; i < LumaStats.HISTOGRAM_SIZE; i++) {
+            high += histogram[i];
+        }
+        stats.mWidth = width;
+        stats.mHeight = height;
+        stats.mStride = stride;
+        stats.mSampleCount = count;
+        stats.mMean = count > 0 ? (float) sum / count : 0f;
+        stats.mClipLowRatio = count > 0 ? (float) low / count : 0f;
+        stats.mClipHighRatio = count > 0 ? (float) high / count : 0f;
+        stats.mSharpness = count > 0 ? (float) gradient / count : 0f;
+        stats.setTileGrid(tileCols, tileRows);
+        for (int i = 0; i < tileCount; i++) {
+            int n = tileCounts[i];
+            stats.mTileMeans[i] = n > 0 ? (float) tileSums[i] / n : 0f;
+            stats.mTileSharpness[i] = n > 0 ? (float) tileGradients[i] / n : 0f;
+        }
+    }
+}
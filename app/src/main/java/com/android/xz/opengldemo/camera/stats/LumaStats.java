@@ -0,0 +1,156 @@
+package com.android.xz.opengldemo.camera.stats;
+
+/**
+ * 一帧的亮度统计结果
+ * <p>
+ * 由{@link LumaStatistics}复用，数组预先分配。回调中拿到的对象只在回调期间有效，
+ * 其他线程读取用{@link LumaStatistics#copyLatest(LumaStats)}拷贝一份。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class LumaStats {
+
+    public static final int HISTOGRAM_SIZE = 256;
+
+    final int[] mHistogram = new int[HISTOGRAM_SIZE];
+    int mWidth;
+    int mHeight;
+    int mStride;
+    long mFrameNumber;
+    long mTimestampNs;
+    long mSampleCount;
+    float mMean;
+    float mClipLowRatio;
+    float mClipHighRatio;
+    float mSharpness;
+    int mTileCols;
+    int mTileRows;
+    float[] mTileMeans = new float[0];
+    float[] mTileSharpness = new float[0];
+
+    void setTileGrid(int cols, int rows) {
+        if (mTileCols != cols || mTileRows != rows) {
+            mTileCols = cols;
+            mTileRows = rows;
+            mTileMeans = new float[cols * rows];
+            mTileSharpness = new float[cols * rows];
+        }
+    }
+
+    /**
+     * 拷贝到out，out的数组尺寸不同时重新分配
+     *
+     * @param out
+     */
+    public void copyTo(LumaStats out) {
+        System.arraycopy(mHistogram, 0, out.mHistogram, 0, HISTOGRAM_SIZE);
+        out.mWidth = mWidth;
+        out.mHeight = mHeight;
+        out.mStride = mStride;
+        out.mFrameNumber = mFrameNumber;
+        out.mTimestampNs = mTimestampNs;
+        out.mSampleCount = mSampleCount;
+        out.mMean = mMean;
+        out.mClipLowRatio = mClipLowRatio;
+        out.mClipHighRatio = mClipHighRatio;
+        out.mSharpness = mSharpness;
+        out.setTileGrid(mTileCols, mTileRows);
+        System.arraycopy(mTileMeans, 0, out.mTileMeans, 0, mTileMeans.length);
+        System.arraycopy(mTileSharpness, 0, out.mTileSharpness, 0, mTileSharpness.length);
+    }
+
+    /**
+     * @return 采样点的亮度直方图，不要修改
+     */
+    public int[] getHistogram() {
+        return mHistogram;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return 采样间隔
+     */
+    public int getStride() {
+        return mStride;
+    }
+
+    /**
+     * @return 从1开始的帧序号，0表示还没有统计过
+     */
+    public long getFrameNumber() {
+        return mFrameNumber;
+    }
+
+    public long getTimestampNs() {
+        return mTimestampNs;
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return 平均亮度，0~255
+     */
+    public float getMean() {
+        return mMean;
+    }
+
+    /**
+     * @return 亮度不高于下限的采样点比例
+     */
+    public float getClipLowRatio() {
+        return mClipLowRatio;
+    }
+
+    /**
+     * @return 亮度不低于上限的采样点比例
+     */
+    public float getClipHighRatio() {
+        return mClipHighRatio;
+    }
+
+    /**
+     * @return 清晰度，采样点与右、下相邻像素差的平方和的平均值
+     */
+    public float getSharpness() {
+        return mSharpness;
+    }
+
+    public int getTileCols() {
+        return mTileCols;
+    }
+
+    public int getTileRows() {
+        return mTileRows;
+    }
+
+    /**
+     * @return 各分块平均亮度，按行排列，不要修改
+     */
+    public float[] getTileMeans() {
+        return mTileMeans;
+    }
+
+    /**
+     * @return 各分块清晰度，按行排列，不要修改
+     */
+    public float[] getTileSharpness() {
+        return mTileSharpness;
+    }
+
+    @Override
+    public String toString() {
+        return "LumaStats{frame=" + mFrameNumber + ", " + mWidth + "x" + mHeight + ", stride=" + mStride
+                + ", mean=" + mMean + ", clipLow=" + mClipLowRatio + ", clipHigh=" + mClipHighRatio
+                + ", sharpness=" + mSharpness + ", tiles=" + mTileCols + "x" + mTileRows + "}";
+    }
+}
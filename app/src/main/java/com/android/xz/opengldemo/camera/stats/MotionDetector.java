@@ -0,0 +1,230 @@
+package com.android.xz.opengldemo.camera.stats;
+
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+/**
+ * 分块差分运动检测
+ * <p>
+ * 把亮度平面分成blockSize x blockSize的块，每块按采样间隔取平均亮度（相当于下采样后的亮度图），
+ * 与参考帧对应块的平均亮度比较，差值超过阈值的块记为运动块，运动块比例即变化分数。
+ * 参考帧由调用者通过{@link #updateReference()}决定何时更新：每帧更新检测相邻帧的变化，
+ * 只在处理过的帧上更新则检测相对上次处理的累计变化。
+ * 1080p默认参数下每帧只读约1/16的亮度像素。非线程安全，只在一个线程中使用。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class MotionDetector {
+
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+    public static final int DEFAULT_SAMPLE_STRIDE = 4;
+    public static final int DEFAULT_BLOCK_THRESHOLD = 12;
+
+    private final int mBlockSize;
+    private final int mSampleStride;
+    private int mBlockThreshold = DEFAULT_BLOCK_THRESHOLD;
+
+    private int mWidth;
+    private int mHeight;
+    private int mBlockCols;
+    private int mBlockRows;
+    // 块内采样点亮度和，采样点数相同，直接比较和
+    private int[] mCurrent = new int[0];
+    private int[] mReference = new int[0];
+    private byte[] mMotionMask = new byte[0];
+    private boolean hasReference;
+    private int mSamplesPerBlock;
+    private int mMotionBlocks;
+    private float mScore;
+
+    public MotionDetector() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_SAMPLE_STRIDE);
+    }
+
+    /**
+     * @param blockSize    块大小
+     * @param sampleStride 块内采样间隔，不大于blockSize
+     */
+    public MotionDetector(int blockSize, int sampleStride) {
+        if (blockSize < 1 || sampleStride < 1 || sampleStride > blockSize) {
+            throw new IllegalArgumentException("invalid block size or stride: " + blockSize + ", " + sampleStride);
+        }
+        mBlockSize = blockSize;
+        mSampleStride = sampleStride;
+    }
+
+    /**
+     * 设置块平均亮度差的阈值
+     *
+     * @param threshold 0~255
+     */
+    public void setBlockThreshold(int threshold) {
+        if (threshold < 0 || threshold > 255) {
+            throw new IllegalArgumentException("threshold must be 0~255: " + threshold);
+        }
+        mBlockThreshold = threshold;
+    }
+
+    public int getBlockThreshold() {
+        return mBlockThreshold;
+    }
+
+    /**
+     * 检测一帧相对参考帧的变化，没有参考帧或尺寸变化时所有块都记为运动
+     *
+     * @param data   NV21或其他亮度平面在前的数据
+     * @param width
+     * @param height
+     * @return 变化分数，运动块比例0~1
+     */
+    public float detect(byte[] data, int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            resize(width, height);
+        }
+        int blockCount = mBlockCols * mBlockRows;
+        if (blockCount == 0) {
+            mScore = 0f;
+            mMotionBlocks = 0;
+            return 0f;
+        }
+        computeBlockSums(data, width);
+        if (!hasReference) {
+            Arrays.fill(mMotionMask, (byte) 1);
+            mMotionBlocks = blockCount;
+            mScore = 1f;
+            return mScore;
+        }
+        int threshold = mBlockThreshold * mSamplesPerBlock;
+        int[] current = mCurrent;
+        int[] reference = mReference;
+        byte[] mask = mMotionMask;
+        int motionBlocks = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int diff = current[i] - reference[i];
+            if (diff > threshold || diff < -threshold) {
+                mask[i] = 1;
+                motionBlocks++;
+            } else {
+                mask[i] = 0;
+            }
+        }
+        mMotionBlocks = motionBlocks;
+        mScore = (float) motionBlocks / blockCount;
+        return mScore;
+    }
+
+    /**
+     * 把最近一次{@link #detect}的帧作为参考帧
+     */
+    public void updateReference() {
+        int[] reference = mReference;
+        mReference = mCurrent;
+        mCurrent = reference;
+        hasReference = mBlockCols * mBlockRows > 0;
+    }
+
+    /**
+     * 丢弃参考帧，下一帧记为全部变化
+     */
+    public void resetReference() {
+        hasReference = false;
+    }
+
+    public float getScore() {
+        return mScore;
+    }
+
+    public int getMotionBlockCount() {
+        return mMotionBlocks;
+    }
+
+    public int getBlockCols() {
+        return mBlockCols;
+    }
+
+    public int getBlockRows() {
+        return mBlockRows;
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    /**
+     * @return 各块是否运动，按行排列，1为运动，不要修改
+     */
+    public byte[] getMotionMask() {
+        return mMotionMask;
+    }
+
+    /**
+     * 计算所有运动块的外接矩形，单位为像素
+     *
+     * @param out
+     * @return 没有运动块时返回false
+     */
+    public boolean getMotionBounds(Rect out) {
+        if (mMotionBlocks == 0) {
+            out.setEmpty();
+            return false;
+        }
+        int left = mBlockCols;
+        int top = mBlockRows;
+        int right = -1;
+        int bottom = -1;
+        byte[] mask = mMotionMask;
+        for (int row = 0; row < mBlockRows; row++) {
+            int base = row * mBlockCols;
+            for (int col = 0; col < mBlockCols; col++) {
+                if (mask[base + col] != 0) {
+                    left = Math.min(left, col);
+                    right = Math.max(right, col);
+                    top = Math.min(top, row);
+                    bottom = Math.max(bottom, row);
+                }
+            }
+        }
+        out.set(left * mBlockSize, top * mBlockSize, (right + 1) * mBlockSize, (bottom + 1) * mBlockSize);
+        return true;
+    }
+
+    private void resize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mBlockCols = width / mBlockSize;
+        mBlockRows = height / mBlockSize;
+        int blockCount = mBlockCols * mBlockRows;
+        mCurrent = new int[blockCount];
+        mReference = new int[blockCount];
+        mMotionMask = new byte[blockCount];
+        int samples = (mBlockSize + mSampleStride - 1) / mSampleStride;
+        mSamplesPerBlock = samples * samples;
+        hasReference = false;
+    }
+
+    private void computeBlockSums(byte[] data, int width) {
+        int[] sums = mCurrent;
+        Arrays.fill(sums, 0);
+        int blockSize = mBlockSize;
+        int stride = mSampleStride;
+        int cols = mBlockCols;
+        // 采样点相对块的左上角取，blockSize不是stride的整数倍时每块的采样点数也相同
+        for (int blockRow = 0; blockRow < mBlockRows; blockRow++) {
+            int base = blockRow * cols;
+            for (int dy = 0; dy < blockSize; dy += stride) {
+                int index = (blockRow * blockSize + dy) * width;
+                for (int col = 0; col < cols; col++) {
+                    int sum = 0;
+                    int end = index + blockSize;
+                    for (int i = index; i < end; i += stride) {
+                        sum += data[i] & 0xff;
+                    }
+                    sums[base + col] += sum;
+                    index = end;
+                }
+            }
+        }
+    }
+}
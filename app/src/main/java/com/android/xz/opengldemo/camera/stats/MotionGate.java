@@ -0,0 +1,101 @@
+package com.android.xz.opengldemo.camera.stats;
+
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+
+/**
+ * 按画面变化过滤预览帧
+ * <p>
+ * 包装一个{@link PreviewBufferCallback}后注册到Camera，相对上次交给使用者的帧变化分数达到阈值时才交给使用者，
+ * 静止画面下使用者不再重复处理相同的内容。
+ * 使用者在回调中可以通过{@link #getDetector()}读取本帧的变化分数和运动区域。
+ * 设置了最大跳过帧数时，连续跳过该数量后强制交给使用者一帧。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class MotionGate implements PreviewBufferCallback {
+
+    private final PreviewBufferCallback mDelegate;
+    private final MotionDetector mDetector;
+    private volatile float mThreshold;
+    private volatile int mMaxSkipFrames;
+
+    // 以下只在回调线程中写
+    private int mSkippedInRow;
+    private volatile long mDeliveredCount;
+    private volatile long mSkippedCount;
+
+    /**
+     * @param delegate
+     * @param threshold 变化分数阈值，即运动块比例0~1
+     */
+    public MotionGate(PreviewBufferCallback delegate, float threshold) {
+        this(delegate, threshold, new MotionDetector());
+    }
+
+    public MotionGate(PreviewBufferCallback delegate, float threshold, MotionDetector detector) {
+        if (delegate == null || detector == null) {
+            throw new IllegalArgumentException("delegate and detector must not be null");
+        }
+        mDelegate = delegate;
+        mDetector = detector;
+        setThreshold(threshold);
+    }
+
+    public void setThreshold(float threshold) {
+        if (threshold < 0f || threshold > 1f) {
+            throw new IllegalArgumentException("threshold must be 0~1: " + threshold);
+        }
+        mThreshold = threshold;
+    }
+
+    public float getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * 设置最多连续跳过的帧数
+     *
+     * @param maxSkipFrames 小于等于0时不限制
+     */
+    public void setMaxSkipFrames(int maxSkipFrames) {
+        mMaxSkipFrames = maxSkipFrames;
+    }
+
+    public PreviewBufferCallback getDelegate() {
+        return mDelegate;
+    }
+
+    /**
+     * 只在回调线程中访问
+     *
+     * @return
+     */
+    public MotionDetector getDetector() {
+        return mDetector;
+    }
+
+    public long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    @Override
+    public void onPreviewBufferFrame(byte[] data, int width, int height) {
+        float score = mDetector.detect(data, width, height);
+        int maxSkipFrames = mMaxSkipFrames;
+        if (score < mThreshold && (maxSkipFrames <= 0 || mSkippedInRow < maxSkipFrames)) {
+            mSkippedInRow++;
+            mSkippedCount++;
+            return;
+        }
+        // 以交给使用者的帧作为参考，缓慢的变化也会累计到阈值
+        mDetector.updateReference();
+        mSkippedInRow = 0;
+        mDeliveredCount++;
+        mDelegate.onPreviewBufferFrame(data, width, height);
+    }
+}
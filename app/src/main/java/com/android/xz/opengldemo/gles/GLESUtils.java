@@ -1,15 +1,19 @@
 package com.android.xz.opengldemo.gles;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
 
 public class GLESUtils {
 
+    private static final String TAG = GLESUtils.class.getSimpleName();
+
     /**
      * 加载着色器代码
      *
      * @param type
      * @param shaderCode
-     * @return
+     * @return 编译失败时输出日志并返回0
      */
     public static int loadShader(int type, String shaderCode) {
 
@@ -21,6 +25,78 @@ public class GLESUtils {
         GLES20.glShaderSource(shader, shaderCode);
         GLES20.glCompileShader(shader);
 
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            Log.e(TAG, "compile " + (type == GLES20.GL_VERTEX_SHADER ? "vertex" : "fragment")
+                    + " shader failed: " + GLES20.glGetShaderInfoLog(shader) + "\n" + shaderCode);
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
         return shader;
     }
+
+    /**
+     * 编译、链接程序，链接后删除着色器
+     *
+     * @param vertexShaderCode
+     * @param fragmentShaderCode
+     * @return 失败时输出日志并返回0
+     */
+    public static int createProgram(String vertexShaderCode, String fragmentShaderCode) {
+        return createProgram(vertexShaderCode, fragmentShaderCode, false);
+    }
+
+    /**
+     * 编译、链接程序，链接后删除着色器
+     *
+     * @param vertexShaderCode
+     * @param fragmentShaderCode
+     * @param retrievable        链接前设置GL_PROGRAM_BINARY_RETRIEVABLE_HINT，之后要读取程序二进制时传true，只用于GLES3上下文
+     * @return 失败时输出日志并返回0
+     */
+    public static int createProgram(String vertexShaderCode, String fragmentShaderCode, boolean retrievable) {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        if (vertexShader == 0) {
+            return 0;
+        }
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+        if (fragmentShader == 0) {
+            GLES20.glDeleteShader(vertexShader);
+            return 0;
+        }
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        if (retrievable) {
+            GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+        GLES20.glLinkProgram(program);
+        // 链接后着色器不再需要，分离后删除才会真正释放
+        GLES20.glDetachShader(program, vertexShader);
+        GLES20.glDetachShader(program, fragmentShader);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        if (!checkLinkStatus(program)) {
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * 检查链接结果，失败时输出日志
+     *
+     * @param program
+     * @return
+     */
+    public static boolean checkLinkStatus(int program) {
+        int[] linked = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linked, 0);
+        if (linked[0] == 0) {
+            Log.e(TAG, "link program failed: " + GLES20.glGetProgramInfoLog(program));
+            return false;
+        }
+        return true;
+    }
 }
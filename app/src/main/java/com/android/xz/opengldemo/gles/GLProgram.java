@@ -0,0 +1,60 @@
+package com.android.xz.opengldemo.gles;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 已链接的OpenGL ES程序
+ * <p>
+ * 由{@link ProgramCache}创建，同一上下文中相同着色器代码的绘制对象共享同一个实例。
+ * 属性和uniform位置第一次查询后缓存。只在所属上下文的GL线程中使用。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class GLProgram {
+
+    private final int mProgramId;
+    private final Map<String, Integer> mAttribLocations = new HashMap<>();
+    private final Map<String, Integer> mUniformLocations = new HashMap<>();
+
+    GLProgram(int programId) {
+        mProgramId = programId;
+    }
+
+    public int getProgramId() {
+        return mProgramId;
+    }
+
+    public void use() {
+        GLES20.glUseProgram(mProgramId);
+    }
+
+    /**
+     * @param name
+     * @return 不存在时为-1
+     */
+    public int getAttribLocation(String name) {
+        Integer location = mAttribLocations.get(name);
+        if (location == null) {
+            location = GLES20.glGetAttribLocation(mProgramId, name);
+            mAttribLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * @param name
+     * @return 不存在时为-1
+     */
+    public int getUniformLocation(String name) {
+        Integer location = mUniformLocations.get(name);
+        if (location == null) {
+            location = GLES20.glGetUniformLocation(mProgramId, name);
+            mUniformLocations.put(name, location);
+        }
+        return location;
+    }
+}
@@ -0,0 +1,74 @@
+package com.android.xz.opengldemo.gles;
+
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * 优先选择可渲染GLES3的EGLConfig，没有时退回GLES2，与{@link Gles3ContextFactory}配合使用
+ * <p>
+ * 替代setEGLContextClientVersion(2)的默认选择：RGB888，16位深度，不要求alpha和模板，
+ * 多个候选时取颜色位数正好为8的第一个。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class Gles3ConfigChooser implements GLSurfaceView.EGLConfigChooser {
+
+    private static final String TAG = Gles3ConfigChooser.class.getSimpleName();
+
+    static final int EGL_OPENGL_ES2_BIT = 0x0004;
+    // EGL_KHR_create_context
+    static final int EGL_OPENGL_ES3_BIT_KHR = 0x0040;
+
+    private static final int DEPTH_SIZE = 16;
+
+    @Override
+    public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+        EGLConfig config = chooseConfig(egl, display, EGL_OPENGL_ES3_BIT_KHR);
+        if (config == null) {
+            Log.i(TAG, "GLES3 config not available, fallback to GLES2");
+            config = chooseConfig(egl, display, EGL_OPENGL_ES2_BIT);
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("no EGLConfig matched");
+        }
+        return config;
+    }
+
+    private static EGLConfig chooseConfig(EGL10 egl, EGLDisplay display, int renderableType) {
+        int[] attribList = {
+                EGL10.EGL_RED_SIZE, 8,
+                EGL10.EGL_GREEN_SIZE, 8,
+                EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_DEPTH_SIZE, DEPTH_SIZE,
+                EGL10.EGL_RENDERABLE_TYPE, renderableType,
+                EGL10.EGL_NONE
+        };
+        int[] numConfig = new int[1];
+        if (!egl.eglChooseConfig(display, attribList, null, 0, numConfig) || numConfig[0] <= 0) {
+            return null;
+        }
+        EGLConfig[] configs = new EGLConfig[numConfig[0]];
+        if (!egl.eglChooseConfig(display, attribList, configs, configs.length, numConfig)) {
+            return null;
+        }
+        for (EGLConfig config : configs) {
+            if (getAttrib(egl, display, config, EGL10.EGL_RED_SIZE) == 8
+                    && getAttrib(egl, display, config, EGL10.EGL_GREEN_SIZE) == 8
+                    && getAttrib(egl, display, config, EGL10.EGL_BLUE_SIZE) == 8
+                    && getAttrib(egl, display, config, EGL10.EGL_ALPHA_SIZE) == 0) {
+                return config;
+            }
+        }
+        return configs[0];
+    }
+
+    static int getAttrib(EGL10 egl, EGLDisplay display, EGLConfig config, int attribute) {
+        int[] value = new int[1];
+        return egl.eglGetConfigAttrib(display, config, attribute, value) ? value[0] : 0;
+    }
+}
@@ -0,0 +1,52 @@
+package com.android.xz.opengldemo.gles;
+
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * 优先创建GLES3上下文，失败时退回GLES2
+ * <p>
+ * GLES3上下文兼容现有的GLSL ES 1.00着色器，额外可以读写程序二进制（见{@link ProgramBinaryStore}）。
+ * 替代setEGLContextClientVersion(2)的上下文创建，EGLConfig由{@link Gles3ConfigChooser}选择，
+ * 选中的EGLConfig不支持GLES3时直接创建GLES2上下文。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class Gles3ContextFactory implements GLSurfaceView.EGLContextFactory {
+
+    private static final String TAG = Gles3ContextFactory.class.getSimpleName();
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    @Override
+    public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig) {
+        EGLContext context = null;
+        int renderableType = Gles3ConfigChooser.getAttrib(egl, display, eglConfig, EGL10.EGL_RENDERABLE_TYPE);
+        if ((renderableType & Gles3ConfigChooser.EGL_OPENGL_ES3_BIT_KHR) != 0) {
+            context = createContext(egl, display, eglConfig, 3);
+        }
+        if (context == null || context == EGL10.EGL_NO_CONTEXT) {
+            Log.i(TAG, "GLES3 context not available, fallback to GLES2");
+            context = createContext(egl, display, eglConfig, 2);
+        }
+        return context;
+    }
+
+    @Override
+    public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+        if (!egl.eglDestroyContext(display, context)) {
+            Log.e(TAG, "eglDestroyContext failed: 0x" + Integer.toHexString(egl.eglGetError()));
+        }
+    }
+
+    private static EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig, int version) {
+        int[] attribList = {EGL_CONTEXT_CLIENT_VERSION, version, EGL10.EGL_NONE};
+        return egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attribList);
+    }
+}
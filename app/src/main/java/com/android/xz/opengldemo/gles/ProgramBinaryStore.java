@@ -0,0 +1,247 @@
+package com.android.xz.opengldemo.gles;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 着色器程序二进制磁盘缓存
+ * <p>
+ * 链接成功的程序通过glGetProgramBinary读出后保存到文件，下次启动时用glProgramBinary直接加载，省去编译链接。
+ * 文件名是着色器代码的SHA-1，文件头记录GL_RENDERER和GL_VERSION（包含驱动版本），
+ * 不一致、文件损坏或驱动拒绝加载时删除文件，由调用方重新编译后再保存。
+ * Java层只有GLES3的接口，GLES2上下文中{@link #isSupported()}返回false；驱动不提供二进制格式时同样不支持。
+ * load、save须在GL线程中调用，写文件在后台线程中进行，先写临时文件再重命名。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class ProgramBinaryStore {
+
+    private static final String TAG = ProgramBinaryStore.class.getSimpleName();
+
+    /**
+     * 默认缓存目录名，一般放在Context.getCacheDir()下
+     */
+    public static final String DIR_NAME = "program_binaries";
+
+    // 格式变化时递增，旧文件自动失效
+    private static final int VERSION = 1;
+    // 正常程序的二进制只有几十KB，超过时认为文件损坏
+    private static final int MAX_BINARY_LENGTH = 4 * 1024 * 1024;
+
+    private static ProgramBinaryStore sInstance;
+
+    private final File mDir;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ProgramBinaryStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 进程内共用一个实例
+     *
+     * @param dir 缓存目录，只在第一次调用时生效
+     * @return
+     */
+    public static synchronized ProgramBinaryStore getInstance(File dir) {
+        if (sInstance == null) {
+            sInstance = new ProgramBinaryStore(dir);
+        }
+        return sInstance;
+    }
+
+    public ProgramBinaryStore(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 当前上下文是否支持读写程序二进制，须在GL线程中调用
+     *
+     * @return
+     */
+    public boolean isSupported() {
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        // 格式为"OpenGL ES N.M 厂商信息"
+        if (version == null || !version.startsWith("OpenGL ES ") || version.length() < 11
+                || version.charAt(10) < '3' || version.charAt(10) > '9') {
+            return false;
+        }
+        int[] formats = new int[1];
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        return formats[0] > 0;
+    }
+
+    /**
+     * 从文件加载程序，须在GL线程中调用，并且{@link #isSupported()}为true
+     *
+     * @param vertexShaderCode
+     * @param fragmentShaderCode
+     * @return 没有缓存或加载失败时返回0，无效的文件会被删除
+     */
+    public int load(String vertexShaderCode, String fragmentShaderCode) {
+        String sourceHash = hash(vertexShaderCode, fragmentShaderCode);
+        File file = getFile(sourceHash);
+        if (!file.exists()) {
+            return 0;
+        }
+        int format;
+        ByteBuffer binary;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION
+                    || !in.readUTF().equals(getRenderer())
+                    || !in.readUTF().equals(getDriverVersion())
+                    || !in.readUTF().equals(sourceHash)) {
+                // 驱动升级或换了GPU
+                Log.i(TAG, "binary outdated: " + file.getName());
+                file.delete();
+                return 0;
+            }
+            format = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_BINARY_LENGTH) {
+                throw new IOException("invalid length: " + length);
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            binary = ByteBuffer.allocateDirect(length);
+            binary.put(data).position(0);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "read binary failed: " + e.getMessage());
+            file.delete();
+            return 0;
+        }
+        int program = GLES20.glCreateProgram();
+        GLES30.glProgramBinary(program, format, binary, binary.capacity());
+        int[] linked = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linked, 0);
+        if (linked[0] == 0) {
+            // 格式不再支持时glProgramBinary会产生GL_INVALID_ENUM，清掉避免影响后面的错误检查
+            while (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+            }
+            Log.i(TAG, "driver rejected binary: " + file.getName());
+            GLES20.glDeleteProgram(program);
+            file.delete();
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * 读取程序二进制并在后台保存，须在GL线程中调用，并且{@link #isSupported()}为true
+     *
+     * @param program            链接成功的程序，链接前最好设置GL_PROGRAM_BINARY_RETRIEVABLE_HINT
+     * @param vertexShaderCode
+     * @param fragmentShaderCode
+     */
+    public void save(int program, String vertexShaderCode, String fragmentShaderCode) {
+        int[] values = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, values, 0);
+        int length = values[0];
+        if (length <= 0 || length > MAX_BINARY_LENGTH) {
+            return;
+        }
+        ByteBuffer binary = ByteBuffer.allocateDirect(length);
+        int[] format = new int[1];
+        GLES30.glGetProgramBinary(program, length, values, 0, format, 0, binary);
+        if (values[0] <= 0) {
+            Log.w(TAG, "glGetProgramBinary failed");
+            return;
+        }
+        byte[] data = new byte[values[0]];
+        binary.get(data);
+        String renderer = getRenderer();
+        String driverVersion = getDriverVersion();
+        String sourceHash = hash(vertexShaderCode, fragmentShaderCode);
+        int binaryFormat = format[0];
+        mExecutor.execute(() -> {
+            File file = getFile(sourceHash);
+            try {
+                writeFile(file, renderer, driverVersion, sourceHash, binaryFormat, data);
+            } catch (IOException e) {
+                Log.w(TAG, "write binary failed: " + e.getMessage());
+                file.delete();
+            }
+        });
+    }
+
+    /**
+     * 删除所有缓存文件
+     */
+    public void clear() {
+        mExecutor.execute(() -> {
+            File[] files = mDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                file.delete();
+            }
+        });
+    }
+
+    private File getFile(String sourceHash) {
+        return new File(mDir, sourceHash + ".bin");
+    }
+
+    private void writeFile(File file, String renderer, String driverVersion, String sourceHash,
+                           int format, byte[] data) throws IOException {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            throw new IOException("mkdirs failed: " + mDir);
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(renderer);
+            out.writeUTF(driverVersion);
+            out.writeUTF(sourceHash);
+            out.writeInt(format);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("rename failed: " + file);
+        }
+    }
+
+    private static String getRenderer() {
+        return String.valueOf(GLES20.glGetString(GLES20.GL_RENDERER));
+    }
+
+    private static String getDriverVersion() {
+        return String.valueOf(GLES20.glGetString(GLES20.GL_VERSION));
+    }
+
+    private static String hash(String vertexShaderCode, String fragmentShaderCode) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(vertexShaderCode.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fragmentShaderCode.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest()) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
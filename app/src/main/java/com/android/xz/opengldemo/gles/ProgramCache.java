@@ -0,0 +1,122 @@
+package com.android.xz.opengldemo.gles;
+
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 着色器程序缓存
+ * <p>
+ * 按当前EGL上下文分别缓存，以着色器代码为键，同一上下文中相同代码只编译链接一次，
+ * 多个绘制对象和再次进入页面时（上下文仍在）直接复用。
+ * GLSurfaceView暂停时上下文销毁，其中的程序随之失效，而新上下文的句柄可能与旧的相同，程序id也可能被重新分配，
+ * 所以每次创建上下文后须调用{@link #onContextCreated()}丢弃该句柄下的旧缓存，不依赖glIsProgram判断。
+ * 已销毁的上下文最多保留{@link #MAX_CONTEXTS}个，超过时丢弃最久未使用的（只丢弃缓存，不调用GL）。
+ * 设置{@link ProgramBinaryStore}后，首次需要编译时先尝试从磁盘加载程序二进制，失败再编译并保存。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class ProgramCache {
+
+    private static final String TAG = ProgramCache.class.getSimpleName();
+
+    public static final int MAX_CONTEXTS = 4;
+
+    private static final ProgramCache sInstance = new ProgramCache();
+
+    // 按访问顺序，GLSurfaceView暂停时销毁的上下文不会通知这里，靠数量上限淘汰
+    private final Map<EGLContext, Map<String, GLProgram>> mPrograms =
+            new LinkedHashMap<EGLContext, Map<String, GLProgram>>(MAX_CONTEXTS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<EGLContext, Map<String, GLProgram>> eldest) {
+                    return size() > MAX_CONTEXTS;
+                }
+            };
+    private ProgramBinaryStore mBinaryStore;
+
+    private ProgramCache() {
+    }
+
+    public static ProgramCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 设置程序二进制磁盘缓存，传null关闭，默认关闭
+     *
+     * @param store
+     */
+    public synchronized void setBinaryStore(ProgramBinaryStore store) {
+        mBinaryStore = store;
+    }
+
+    /**
+     * 上下文创建后在GL线程中调用，一般在Renderer.onSurfaceCreated的开头
+     * <p>
+     * 只丢弃缓存不删除程序：旧程序属于已销毁的上下文，其id在新上下文中可能已属于别的程序。
+     */
+    public synchronized void onContextCreated() {
+        Map<String, GLProgram> programs = mPrograms.remove(getCurrentContext());
+        if (programs != null && !programs.isEmpty()) {
+            Log.i(TAG, "context recreated, drop " + programs.size() + " programs");
+        }
+    }
+
+    /**
+     * 获取程序，当前上下文中没有时编译链接，须在GL线程中调用
+     *
+     * @param vertexShaderCode
+     * @param fragmentShaderCode
+     * @return
+     * @throws IllegalStateException 没有当前上下文，或编译、链接失败（日志中有详细信息）
+     */
+    public synchronized GLProgram get(String vertexShaderCode, String fragmentShaderCode) {
+        EGLContext context = getCurrentContext();
+        Map<String, GLProgram> programs = mPrograms.get(context);
+        if (programs == null) {
+            programs = new HashMap<>();
+            mPrograms.put(context, programs);
+        }
+        String key = vertexShaderCode + '\0' + fragmentShaderCode;
+        GLProgram program = programs.get(key);
+        if (program != null) {
+            return program;
+        }
+        int programId = createProgram(vertexShaderCode, fragmentShaderCode);
+        if (programId == 0) {
+            throw new IllegalStateException("create program failed, see log for shader info");
+        }
+        program = new GLProgram(programId);
+        programs.put(key, program);
+        return program;
+    }
+
+    private int createProgram(String vertexShaderCode, String fragmentShaderCode) {
+        ProgramBinaryStore store = mBinaryStore;
+        if (store == null || !store.isSupported()) {
+            return GLESUtils.createProgram(vertexShaderCode, fragmentShaderCode);
+        }
+        int programId = store.load(vertexShaderCode, fragmentShaderCode);
+        if (programId != 0) {
+            return programId;
+        }
+        programId = GLESUtils.createProgram(vertexShaderCode, fragmentShaderCode, true);
+        if (programId != 0) {
+            store.save(programId, vertexShaderCode, fragmentShaderCode);
+        }
+        return programId;
+    }
+
+    private static EGLContext getCurrentContext() {
+        EGLContext context = EGL14.eglGetCurrentContext();
+        if (context == null || context.equals(EGL14.EGL_NO_CONTEXT)) {
+            throw new IllegalStateException("no current EGL context");
+        }
+        return context;
+    }
+}
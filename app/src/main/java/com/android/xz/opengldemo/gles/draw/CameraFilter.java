@@ -5,7 +5,8 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.util.Log;
 
-import com.android.xz.opengldemo.gles.GLESUtils;
+import com.android.xz.opengldemo.gles.GLProgram;
+import com.android.xz.opengldemo.gles.ProgramCache;
 import com.android.xz.opengldemo.util.MatrixUtils;
 
 import java.nio.ByteBuffer;
@@ -115,6 +116,10 @@ public class CameraFilter {
     private final float[] mProjectionMatrix = new float[16];
     // 相机矩阵
     private final float[] mViewMatrix = new float[16];
+    // 中心裁剪矩阵，用于GPU缩放
+    private final float[] mCropMatrix = new float[16];
+    private final float[] mCropTexMatrix = new float[16];
+    private float mCropScale = 1f;
 
 
     public CameraFilter() {
@@ -138,31 +143,19 @@ public class CameraFilter {
     }
 
     public void surfaceCreated() {
-        // 加载顶点着色器程序
-        int vertexShader = GLESUtils.loadShader(GLES20.GL_VERTEX_SHADER,
-                vertexShaderCode);
-        // 加载片段着色器程序
-        int fragmentShader = GLESUtils.loadShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderCode);
-
-        // 创建空的OpenGL ES程序
-        mProgram = GLES20.glCreateProgram();
-        // 将顶点着色器添加到程序中
-        GLES20.glAttachShader(mProgram, vertexShader);
-        // 将片段着色器添加到程序中
-        GLES20.glAttachShader(mProgram, fragmentShader);
-        // 创建OpenGL ES程序可执行文件
-        GLES20.glLinkProgram(mProgram);
+        // 同一上下文中相同着色器的程序只编译一次
+        GLProgram program = ProgramCache.getInstance().get(vertexShaderCode, fragmentShaderCode);
+        mProgram = program.getProgramId();
 
         // 获取顶点着色器vPosition成员的句柄
-        positionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        positionHandle = program.getAttribLocation("vPosition");
         // 获取顶点着色器中纹理坐标的句柄
-        texCoordinateHandle = GLES20.glGetAttribLocation(mProgram, "vTexCoordinate");
+        texCoordinateHandle = program.getAttribLocation("vTexCoordinate");
         // 获取绘制矩阵句柄
-        vPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+        vPMatrixHandle = program.getUniformLocation("uMVPMatrix");
         // 获取Texture句柄
-        texHandle = GLES20.glGetUniformLocation(mProgram, "vTexture");
-        vTexPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uTexPMatrix");
+        texHandle = program.getUniformLocation("vTexture");
+        vTexPMatrixHandle = program.getUniformLocation("uTexPMatrix");
 
         // 创建纹理句柄
         textureId = createTexture();
@@ -175,7 +168,34 @@ public class CameraFilter {
         Matrix.setIdentityM(mMVPMatrix, 0);
     }
 
+    /**
+     * 设置GPU缩放比例，以纹理中心裁剪后铺满画面，小于等于1时不裁剪
+     *
+     * @param scale
+     */
+    public void setCropScale(float scale) {
+        if (scale == mCropScale) {
+            return;
+        }
+        mCropScale = scale;
+        if (scale > 1f) {
+            Matrix.setIdentityM(mCropMatrix, 0);
+            Matrix.translateM(mCropMatrix, 0, 0.5f, 0.5f, 0f);
+            Matrix.scaleM(mCropMatrix, 0, 1f / scale, 1f / scale, 1f);
+            Matrix.translateM(mCropMatrix, 0, -0.5f, -0.5f, 0f);
+        }
+    }
+
+    public float getCropScale() {
+        return mCropScale;
+    }
+
     public void draw(float[] texMatrix) {
+        if (mCropScale > 1f) {
+            // 先在原始纹理坐标上裁剪中心区域，再做SurfaceTexture的变换
+            Matrix.multiplyMM(mCropTexMatrix, 0, texMatrix, 0, mCropMatrix, 0);
+            texMatrix = mCropTexMatrix;
+        }
         // 将程序添加到OpenGL ES环境
         GLES20.glUseProgram(mProgram);
 
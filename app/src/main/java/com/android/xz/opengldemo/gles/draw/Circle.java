@@ -3,7 +3,8 @@ package com.android.xz.opengldemo.gles.draw;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 
-import com.android.xz.opengldemo.gles.GLESUtils;
+import com.android.xz.opengldemo.gles.GLProgram;
+import com.android.xz.opengldemo.gles.ProgramCache;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -81,26 +82,15 @@ public class Circle {
     }
 
     public void surfaceCreated() {
-        int vertexShader = GLESUtils.loadShader(GLES20.GL_VERTEX_SHADER,
-                vertexShaderCode);
-        int fragmentShader = GLESUtils.loadShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderCode);
-
-        // 创建空的OpenGL ES程序
-        mProgram = GLES20.glCreateProgram();
-        // 将顶点着色器添加到程序中
-        GLES20.glAttachShader(mProgram, vertexShader);
-        // 将片段着色器添加到程序中
-        GLES20.glAttachShader(mProgram, fragmentShader);
-        // 创建OpenGL ES程序可执行文件
-        GLES20.glLinkProgram(mProgram);
+        GLProgram program = ProgramCache.getInstance().get(vertexShaderCode, fragmentShaderCode);
+        mProgram = program.getProgramId();
 
         // 获取顶点着色器vPosition成员的句柄
-        positionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        positionHandle = program.getAttribLocation("vPosition");
         // 获取片段着色器vColor成员的句柄
-        colorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+        colorHandle = program.getUniformLocation("vColor");
         // 获取绘制矩阵句柄
-        vPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+        vPMatrixHandle = program.getUniformLocation("uMVPMatrix");
     }
 
     public void surfaceChanged(int width, int height) {
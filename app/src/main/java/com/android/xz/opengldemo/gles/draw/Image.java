@@ -6,7 +6,8 @@ import android.opengl.GLUtils;
 import android.opengl.Matrix;
 import android.util.Log;
 
-import com.android.xz.opengldemo.gles.GLESUtils;
+import com.android.xz.opengldemo.gles.GLProgram;
+import com.android.xz.opengldemo.gles.ProgramCache;
 import com.android.xz.opengldemo.util.MatrixUtils;
 
 import java.nio.ByteBuffer;
@@ -132,30 +133,17 @@ public class Image {
     }
 
     public void surfaceCreated() {
-        // 加载顶点着色器程序
-        int vertexShader = GLESUtils.loadShader(GLES20.GL_VERTEX_SHADER,
-                vertexShaderCode);
-        // 加载片段着色器程序
-        int fragmentShader = GLESUtils.loadShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderCode);
-
-        // 创建空的OpenGL ES程序
-        mProgram = GLES20.glCreateProgram();
-        // 将顶点着色器添加到程序中
-        GLES20.glAttachShader(mProgram, vertexShader);
-        // 将片段着色器添加到程序中
-        GLES20.glAttachShader(mProgram, fragmentShader);
-        // 创建OpenGL ES程序可执行文件
-        GLES20.glLinkProgram(mProgram);
+        GLProgram program = ProgramCache.getInstance().get(vertexShaderCode, fragmentShaderCode);
+        mProgram = program.getProgramId();
 
         // 获取顶点着色器vPosition成员的句柄
-        positionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        positionHandle = program.getAttribLocation("vPosition");
         // 获取顶点着色器中纹理坐标的句柄
-        texCoordinateHandle = GLES20.glGetAttribLocation(mProgram, "vTexCoordinate");
+        texCoordinateHandle = program.getAttribLocation("vTexCoordinate");
         // 获取绘制矩阵句柄
-        vPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+        vPMatrixHandle = program.getUniformLocation("uMVPMatrix");
         // 获取Texture句柄
-        texHandle = GLES20.glGetUniformLocation(mProgram, "vTexture");
+        texHandle = program.getUniformLocation("vTexture");
 
         // 创建纹理句柄
         textureId = createTexture();
@@ -4,7 +4,8 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.util.Log;
 
-import com.android.xz.opengldemo.gles.GLESUtils;
+import com.android.xz.opengldemo.gles.GLProgram;
+import com.android.xz.opengldemo.gles.ProgramCache;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -102,28 +103,15 @@ public class Triangle {
     }
 
     public void surfaceCreated() {
-        // 加载顶点着色器代码
-        int vertexShader = GLESUtils.loadShader(GLES20.GL_VERTEX_SHADER,
-                vertexShaderCode);
-        // 加载片段着色器代码
-        int fragmentShader = GLESUtils.loadShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderCode);
-
-        // 创建空的OpenGL ES程序
-        mProgram = GLES20.glCreateProgram();
-        // 将顶点着色器添加到程序中
-        GLES20.glAttachShader(mProgram, vertexShader);
-        // 将片段着色器添加到程序中
-        GLES20.glAttachShader(mProgram, fragmentShader);
-        // 链接OpenGL ES程序
-        GLES20.glLinkProgram(mProgram);
+        GLProgram program = ProgramCache.getInstance().get(vertexShaderCode, fragmentShaderCode);
+        mProgram = program.getProgramId();
 
         // 获取顶点着色器vPosition成员的句柄
-        positionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        positionHandle = program.getAttribLocation("vPosition");
         // 获取片段着色器vColor成员的句柄
-        colorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+        colorHandle = program.getUniformLocation("vColor");
         // 获取绘制矩阵句柄
-        vPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+        vPMatrixHandle = program.getUniformLocation("uMVPMatrix");
     }
 
     public void surfaceChanged(int width, int height) {
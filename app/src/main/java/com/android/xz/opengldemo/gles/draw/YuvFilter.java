@@ -0,0 +1,437 @@
+package com.android.xz.opengldemo.gles.draw;
+
+import android.graphics.ImageFormat;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+
+import com.android.xz.opengldemo.camera.buffer.DirectFrame;
+import com.android.xz.opengldemo.gles.GLProgram;
+import com.android.xz.opengldemo.gles.ProgramCache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * NV21数据绘制
+ * <p>
+ * 与{@link CameraFilter}对应，用于已经拿到NV21数据的场景（回放、网络源、处理后的帧），不需要在CPU上转RGB。
+ * Y平面上传为GL_LUMINANCE纹理，VU交错平面上传为GL_LUMINANCE_ALPHA纹理（V在L通道，U在A通道），
+ * 片段着色器中转RGB。纹理只在尺寸变化时重新分配，每帧用glTexSubImage2D更新。
+ * 所有方法须在GL线程中调用。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class YuvFilter {
+
+    private static final String TAG = YuvFilter.class.getSimpleName();
+
+    public static final int COLOR_SPACE_BT601 = 0;
+    public static final int COLOR_SPACE_BT709 = 1;
+
+    // 顶点着色器代码
+    private final String vertexShaderCode =
+            "uniform mat4 uMVPMatrix;\n" +
+                    "uniform mat4 uTexPMatrix;\n" +
+                    "attribute vec4 vPosition;\n" +
+                    "attribute vec4 vTexCoordinate;\n" +
+                    "varying vec2 aTexCoordinate;\n" +
+                    "void main() {\n" +
+                    "  gl_Position = uMVPMatrix * vPosition;\n" +
+                    "  aTexCoordinate = (uTexPMatrix * vTexCoordinate).xy;\n" +
+                    "}";
+
+    // 片段着色器代码，uYuvToRgb和uYuvOffset按色彩空间和范围在CPU上算好
+    private final String fragmentShaderCode =
+            "precision mediump float;\n" +
+                    "uniform sampler2D yTexture;\n" +
+                    "uniform sampler2D vuTexture;\n" +
+                    "uniform mat3 uYuvToRgb;\n" +
+                    "uniform vec3 uYuvOffset;\n" +
+                    "varying vec2 aTexCoordinate;\n" +
+                    "void main() {\n" +
+                    "  vec4 vu = texture2D(vuTexture, aTexCoordinate);\n" +
+                    "  vec3 yuv = vec3(texture2D(yTexture, aTexCoordinate).r, vu.a, vu.r);\n" +
+                    "  gl_FragColor = vec4(clamp(uYuvToRgb * (yuv - uYuvOffset), 0.0, 1.0), 1.0);\n" +
+                    "}\n";
+
+    private int mProgram;
+
+    // 顶点坐标缓冲区
+    private FloatBuffer vertexBuffer;
+
+    // 纹理坐标缓冲区
+    private FloatBuffer textureBuffer;
+
+    // 此数组中每个顶点的坐标数
+    static final int COORDS_PER_VERTEX = 2;
+
+    private float vertexCoords[] = {
+            -1.0f, 1.0f,  // 左上
+            -1.0f, -1.0f, // 左下
+            1.0f, 1.0f,   // 右上
+            1.0f, -1.0f}; // 右下
+
+    /**
+     * 纹理坐标数组
+     * 数据第一行上传到纹理t=0处，所以画面上方对应t=0
+     */
+    private float textureCoords[] = {
+            0.0f, 0.0f, // 左上
+            0.0f, 1.0f, // 左下
+            1.0f, 0.0f, // 右上
+            1.0f, 1.0f, // 右下
+    };
+
+    private final int[] mTextureIds = new int[2];
+    private int positionHandle;
+    // 纹理坐标句柄
+    private int texCoordinateHandle;
+    private int yTexHandle;
+    private int vuTexHandle;
+    private int vPMatrixHandle;
+    private int vTexPMatrixHandle;
+    private int yuvToRgbHandle;
+    private int yuvOffsetHandle;
+
+    private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
+
+    // 最终变化矩阵
+    private final float[] mMVPMatrix = new float[16];
+    private final float[] mTexMatrix = new float[16];
+    // 列主序，直接传给glUniformMatrix3fv
+    private final float[] mYuvToRgb = new float[9];
+    private final float[] mYuvOffset = new float[3];
+
+    private int mColorSpace = COLOR_SPACE_BT601;
+    private boolean isFullRange;
+    private boolean isColorDirty = true;
+
+    // 已分配的纹理尺寸
+    private int mTextureWidth;
+    private int mTextureHeight;
+    private boolean hasFrame;
+    // 行跨度大于宽度的DirectFrame先拷贝到这里
+    private ByteBuffer mPackedBuffer;
+
+    public YuvFilter() {
+        // 初始化形状坐标的顶点字节缓冲区
+        vertexBuffer = ByteBuffer.allocateDirect(vertexCoords.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer()
+                .put(vertexCoords);
+        vertexBuffer.position(0);
+
+        // 初始化纹理坐标顶点字节缓冲区
+        textureBuffer = ByteBuffer.allocateDirect(textureCoords.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer()
+                .put(textureCoords);
+        textureBuffer.position(0);
+
+        Matrix.setIdentityM(mMVPMatrix, 0);
+        Matrix.setIdentityM(mTexMatrix, 0);
+    }
+
+    public void surfaceCreated() {
+        GLProgram program = ProgramCache.getInstance().get(vertexShaderCode, fragmentShaderCode);
+        mProgram = program.getProgramId();
+
+        positionHandle = program.getAttribLocation("vPosition");
+        texCoordinateHandle = program.getAttribLocation("vTexCoordinate");
+        vPMatrixHandle = program.getUniformLocation("uMVPMatrix");
+        vTexPMatrixHandle = program.getUniformLocation("uTexPMatrix");
+        yTexHandle = program.getUniformLocation("yTexture");
+        vuTexHandle = program.getUniformLocation("vuTexture");
+        yuvToRgbHandle = program.getUniformLocation("uYuvToRgb");
+        yuvOffsetHandle = program.getUniformLocation("uYuvOffset");
+
+        createTextures();
+        // 新的上下文中纹理需要重新分配
+        mTextureWidth = 0;
+        mTextureHeight = 0;
+        hasFrame = false;
+    }
+
+    public void surfaceChanged(int width, int height) {
+        GLES20.glViewport(0, 0, width, height);
+    }
+
+    /**
+     * 设置顶点变换矩阵，默认为单位矩阵
+     *
+     * @param mvpMatrix
+     */
+    public void setMVPMatrix(float[] mvpMatrix) {
+        System.arraycopy(mvpMatrix, 0, mMVPMatrix, 0, 16);
+    }
+
+    /**
+     * 设置色彩空间
+     *
+     * @param colorSpace {@link #COLOR_SPACE_BT601}或{@link #COLOR_SPACE_BT709}
+     */
+    public void setColorSpace(int colorSpace) {
+        if (colorSpace != COLOR_SPACE_BT601 && colorSpace != COLOR_SPACE_BT709) {
+            throw new IllegalArgumentException("unknown color space: " + colorSpace);
+        }
+        if (mColorSpace != colorSpace) {
+            mColorSpace = colorSpace;
+            isColorDirty = true;
+        }
+    }
+
+    public int getColorSpace() {
+        return mColorSpace;
+    }
+
+    /**
+     * 设置取值范围，Camera预览一般为limited range(Y 16~235)，JPEG解码的数据为full range
+     *
+     * @param fullRange
+     */
+    public void setFullRange(boolean fullRange) {
+        if (isFullRange != fullRange) {
+            isFullRange = fullRange;
+            isColorDirty = true;
+        }
+    }
+
+    public boolean isFullRange() {
+        return isFullRange;
+    }
+
+    /**
+     * 上传一帧NV21
+     *
+     * @param nv21
+     * @param width  偶数
+     * @param height 偶数
+     */
+    public void updateNv21(byte[] nv21, int width, int height) {
+        if (nv21.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("buffer too small: " + nv21.length + " for " + width + "x" + height);
+        }
+        updateNv21(ByteBuffer.wrap(nv21), width, height);
+    }
+
+    /**
+     * 上传一帧NV21，从buffer的position开始读取，不改变position
+     *
+     * @param nv21   紧凑排列的NV21，可以是direct ByteBuffer；{@link DirectFrame}用{@link #updateNv21(DirectFrame)}
+     * @param width  偶数
+     * @param height 偶数
+     */
+    public void updateNv21(ByteBuffer nv21, int width, int height) {
+        checkSize(width, height);
+        int ySize = width * height;
+        if (nv21.remaining() < ySize * 3 / 2) {
+            throw new IllegalArgumentException("buffer too small: " + nv21.remaining() + " for " + width + "x" + height);
+        }
+        int position = nv21.position();
+        upload(nv21, position, position + ySize, width, height);
+    }
+
+    /**
+     * 上传一帧{@link DirectFrame}，按帧的平面偏移和行跨度读取，不改变其缓冲区的position。
+     * 行跨度大于宽度时（Camera2的平面常有行末填充）先逐行拷贝成紧凑排列再上传。
+     *
+     * @param frame 格式须为{@link ImageFormat#NV21}，三平面的{@link ImageFormat#YUV_420_888}不支持
+     */
+    public void updateNv21(DirectFrame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (frame.getFormat() != ImageFormat.NV21 || frame.getPlaneCount() != 2
+                || frame.getPixelStride(0) != 1 || frame.getPixelStride(1) != 2) {
+            throw new IllegalArgumentException("unsupported frame layout, format: " + frame.getFormat()
+                    + ", planes: " + frame.getPlaneCount());
+        }
+        checkSize(width, height);
+        int yOffset = frame.getPlaneOffset(0);
+        int vuOffset = frame.getPlaneOffset(1);
+        int yRowStride = frame.getRowStride(0);
+        int vuRowStride = frame.getRowStride(1);
+        if (yRowStride < width || vuRowStride < width) {
+            throw new IllegalArgumentException("row stride smaller than width: " + yRowStride + ", " + vuRowStride
+                    + " for " + width + "x" + height);
+        }
+        ByteBuffer buffer = frame.getBuffer().duplicate();
+        // 最后一行不一定有填充
+        int end = Math.max(yOffset + yRowStride * (height - 1) + width,
+                vuOffset + vuRowStride * (height / 2 - 1) + width);
+        if (end > buffer.limit()) {
+            throw new IllegalArgumentException("buffer too small: " + buffer.limit() + " for " + width + "x" + height);
+        }
+        if (yRowStride == width && vuRowStride == width) {
+            upload(buffer, yOffset, vuOffset, width, height);
+            return;
+        }
+        int ySize = width * height;
+        if (mPackedBuffer == null || mPackedBuffer.capacity() < ySize * 3 / 2) {
+            mPackedBuffer = ByteBuffer.allocateDirect(ySize * 3 / 2).order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer packed = mPackedBuffer;
+        packed.clear();
+        copyRows(buffer, yOffset, yRowStride, packed, width, height);
+        copyRows(buffer, vuOffset, vuRowStride, packed, width, height / 2);
+        upload(packed, 0, ySize, width, height);
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("width and height must be positive and even: " + width + "x" + height);
+        }
+    }
+
+    /**
+     * 从src的offset开始按行跨度取rows行，每行width字节，接着dst的position写入
+     */
+    private static void copyRows(ByteBuffer src, int offset, int rowStride, ByteBuffer dst, int width, int rows) {
+        for (int row = 0; row < rows; row++) {
+            int start = offset + row * rowStride;
+            src.limit(start + width).position(start);
+            dst.put(src);
+        }
+        src.clear();
+    }
+
+    /**
+     * 上传Y、VU两个紧凑排列的平面，完成后恢复buffer的position
+     */
+    private void upload(ByteBuffer buffer, int yPosition, int vuPosition, int width, int height) {
+        int position = buffer.position();
+        // 行宽不一定是4的倍数
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        boolean reallocate = width != mTextureWidth || height != mTextureHeight;
+
+        buffer.position(yPosition);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[0]);
+        if (reallocate) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, width, height, 0,
+                    GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, buffer);
+        } else {
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                    GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, buffer);
+        }
+
+        buffer.position(vuPosition);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[1]);
+        if (reallocate) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE_ALPHA, width / 2, height / 2, 0,
+                    GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE, buffer);
+        } else {
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width / 2, height / 2,
+                    GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE, buffer);
+        }
+        buffer.position(position);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        mTextureWidth = width;
+        mTextureHeight = height;
+        hasFrame = true;
+    }
+
+    public void draw() {
+        draw(mTexMatrix);
+    }
+
+    /**
+     * 绘制最近上传的一帧，没有上传过时不绘制
+     *
+     * @param texMatrix 纹理坐标变换
+     */
+    public void draw(float[] texMatrix) {
+        if (!hasFrame) {
+            return;
+        }
+        if (isColorDirty) {
+            computeColorMatrix(mColorSpace, isFullRange, mYuvToRgb, mYuvOffset);
+            isColorDirty = false;
+        }
+        GLES20.glUseProgram(mProgram);
+
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, vertexStride, vertexBuffer);
+        GLES20.glEnableVertexAttribArray(texCoordinateHandle);
+        GLES20.glVertexAttribPointer(texCoordinateHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, vertexStride, textureBuffer);
+
+        GLES20.glUniformMatrix4fv(vPMatrixHandle, 1, false, mMVPMatrix, 0);
+        GLES20.glUniformMatrix4fv(vTexPMatrixHandle, 1, false, texMatrix, 0);
+        GLES20.glUniformMatrix3fv(yuvToRgbHandle, 1, false, mYuvToRgb, 0);
+        GLES20.glUniform3fv(yuvOffsetHandle, 1, mYuvOffset, 0);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[0]);
+        GLES20.glUniform1i(yTexHandle, 0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[1]);
+        GLES20.glUniform1i(vuTexHandle, 1);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glDisableVertexAttribArray(texCoordinateHandle);
+    }
+
+    /**
+     * 释放纹理，须在GL上下文销毁前调用，程序由{@link ProgramCache}管理
+     */
+    public void release() {
+        GLES20.glDeleteTextures(2, mTextureIds, 0);
+        mTextureIds[0] = 0;
+        mTextureIds[1] = 0;
+        mProgram = 0;
+        mTextureWidth = 0;
+        mTextureHeight = 0;
+        hasFrame = false;
+    }
+
+    private void createTextures() {
+        GLES20.glGenTextures(2, mTextureIds, 0);
+        for (int textureId : mTextureIds) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * 计算YUV转RGB矩阵，rgb = matrix * (yuv - offset)，yuv各分量取值0~1
+     *
+     * @param colorSpace
+     * @param fullRange
+     * @param matrix     输出，3x3列主序
+     * @param offset     输出
+     */
+    static void computeColorMatrix(int colorSpace, boolean fullRange, float[] matrix, float[] offset) {
+        float kr = colorSpace == COLOR_SPACE_BT709 ? 0.2126f : 0.299f;
+        float kb = colorSpace == COLOR_SPACE_BT709 ? 0.0722f : 0.114f;
+        float kg = 1f - kr - kb;
+        // limited range：Y 16~235，UV 16~240
+        float yScale = fullRange ? 1f : 255f / 219f;
+        float cScale = fullRange ? 1f : 255f / 224f;
+        offset[0] = fullRange ? 0f : 16f / 255f;
+        offset[1] = 128f / 255f;
+        offset[2] = 128f / 255f;
+        // 第一列：Y
+        matrix[0] = yScale;
+        matrix[1] = yScale;
+        matrix[2] = yScale;
+        // 第二列：U
+        matrix[3] = 0f;
+        matrix[4] = -cScale * 2f * kb * (1f - kb) / kg;
+        matrix[5] = cScale * 2f * (1f - kb);
+        // 第三列：V
+        matrix[6] = cScale * 2f * (1f - kr);
+        matrix[7] = -cScale * 2f * kr * (1f - kr) / kg;
+        matrix[8] = 0f;
+    }
+}
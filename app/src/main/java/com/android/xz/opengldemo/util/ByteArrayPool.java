@@ -0,0 +1,56 @@
+package com.android.xz.opengldemo.util;
+
+import java.util.ArrayDeque;
+
+/**
+ * byte[]缓冲池
+ * <p>
+ * 最多缓存maxCount个空闲数组，只复用长度完全相同的数组，尺寸变化后旧数组逐渐被丢弃。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class ByteArrayPool {
+
+    private final int mMaxCount;
+    private final ArrayDeque<byte[]> mFreeArrays;
+
+    public ByteArrayPool(int maxCount) {
+        if (maxCount < 1) {
+            throw new IllegalArgumentException("maxCount must be positive: " + maxCount);
+        }
+        mMaxCount = maxCount;
+        mFreeArrays = new ArrayDeque<>(maxCount);
+    }
+
+    /**
+     * 取出一个长度为size的数组，没有空闲的时新分配
+     *
+     * @param size
+     * @return
+     */
+    public synchronized byte[] acquire(int size) {
+        byte[] array;
+        while ((array = mFreeArrays.pollFirst()) != null) {
+            if (array.length == size) {
+                return array;
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * 归还数组，池满时丢弃
+     *
+     * @param array
+     */
+    public synchronized void release(byte[] array) {
+        if (array != null && mFreeArrays.size() < mMaxCount) {
+            mFreeArrays.addLast(array);
+        }
+    }
+
+    public synchronized void clear() {
+        mFreeArrays.clear();
+    }
+}
@@ -1,4 +1,445 @@
 package com.android.xz.opengldemo.util;
 
+import android.graphics.ImageFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 图像数据工具
+ * <p>
+ * YUV转RGB按BT.601 limited range（Y 16~235，UV 16~240），系数放大2^14用整数运算，不分配内存。
+ * 单线程转换直接调用这里的方法，大尺寸或需要多核时使用{@link YuvConverter}。
+ * <ul>
+ * <li>NV21：Y平面后跟VU交错平面，行跨度等于宽度，即Camera1默认预览格式</li>
+ * <li>YV12：Y平面后跟V平面、U平面，Y行跨度16字节对齐，UV行跨度为Y行跨度一半再16字节对齐</li>
+ * </ul>
+ * 宽高须为偶数。ARGB输出为int像素0xAARRGGBB，可直接用于Bitmap.setPixels；
+ * RGBA输出为按R、G、B、A排列的字节，可直接上传纹理或copyPixelsFromBuffer。
+ * 只处理帧中一个区域时用{@link Nv21View}描述，不需要先拷贝出来。
+ *
+ * @author xiaozhi
+ * @since 2024/11/23
+ */
 public class ImageUtils {
+
+    private static final int SHIFT = 14;
+    private static final int ROUND = 1 << (SHIFT - 1);
+    // 1.164 * 2^14
+    private static final int Y_COEF = 19077;
+    // 1.596 * 2^14
+    private static final int V_TO_R = 26149;
+    // 0.813 * 2^14
+    private static final int V_TO_G = 13320;
+    // 0.392 * 2^14
+    private static final int U_TO_G = 6419;
+    // 2.017 * 2^14
+    private static final int U_TO_B = 33050;
+    // 旋转分块大小
+    private static final int TILE_SIZE = 32;
+
+    private ImageUtils() {
+    }
+
+    /**
+     * NV21转ARGB
+     *
+     * @param nv21
+     * @param width
+     * @param height
+     * @param argb   输出，至少width * height
+     */
+    public static void nv21ToArgb(byte[] nv21, int width, int height, int[] argb) {
+        checkArgs(ImageFormat.NV21, nv21, width, height, argb.length);
+        convertRows(ImageFormat.NV21, nv21, width, height, argb, null, 0, height);
+    }
+
+    /**
+     * NV21转RGBA
+     *
+     * @param nv21
+     * @param width
+     * @param height
+     * @param rgba   输出，至少width * height * 4
+     */
+    public static void nv21ToRgba(byte[] nv21, int width, int height, byte[] rgba) {
+        checkArgs(ImageFormat.NV21, nv21, width, height, rgba.length / 4);
+        convertRows(ImageFormat.NV21, nv21, width, height, null, rgba, 0, height);
+    }
+
+    /**
+     * NV21视图转ARGB
+     *
+     * @param src
+     * @param argb 输出，至少width * height，紧凑排列
+     */
+    public static void nv21ToArgb(Nv21View src, int[] argb) {
+        checkOutput(src, argb.length);
+        convertRows(src, argb, null, 0, src.getHeight());
+    }
+
+    /**
+     * NV21视图转RGBA
+     *
+     * @param src
+     * @param rgba 输出，至少width * height * 4，紧凑排列
+     */
+    public static void nv21ToRgba(Nv21View src, byte[] rgba) {
+        checkOutput(src, rgba.length / 4);
+        convertRows(src, null, rgba, 0, src.getHeight());
+    }
+
+    /**
+     * YV12转ARGB
+     *
+     * @param yv12
+     * @param width
+     * @param height
+     * @param argb   输出，至少width * height
+     */
+    public static void yv12ToArgb(byte[] yv12, int width, int height, int[] argb) {
+        checkArgs(ImageFormat.YV12, yv12, width, height, argb.length);
+        convertRows(ImageFormat.YV12, yv12, width, height, argb, null, 0, height);
+    }
+
+    /**
+     * YV12转RGBA
+     *
+     * @param yv12
+     * @param width
+     * @param height
+     * @param rgba   输出，至少width * height * 4
+     */
+    public static void yv12ToRgba(byte[] yv12, int width, int height, byte[] rgba) {
+        checkArgs(ImageFormat.YV12, yv12, width, height, rgba.length / 4);
+        convertRows(ImageFormat.YV12, yv12, width, height, null, rgba, 0, height);
+    }
+
+    /**
+     * 按格式计算一帧的字节数
+     *
+     * @param format {@link ImageFormat#NV21}或{@link ImageFormat#YV12}
+     * @param width
+     * @param height
+     * @return
+     */
+    public static int getYuvFrameSize(int format, int width, int height) {
+        if (format == ImageFormat.YV12) {
+            int yStride = getYv12YStride(width);
+            int cStride = getYv12CStride(width);
+            return yStride * height + cStride * height;
+        }
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * 判断YUV_420_888的U、V平面是否为同一块VU交错内存，即V平面的第二个字节就是U平面的第一个字节
+     * <p>
+     * 像素跨度为2时也可能是UV交错或两块独立内存，所以改写U平面第一个字节后从V平面读回确认，再恢复原值。
+     * 只读缓冲区无法确认，按不交错处理。
+     *
+     * @param u U平面，从position开始
+     * @param v V平面，从position开始
+     * @return
+     */
+    public static boolean isVuInterleaved(ByteBuffer u, ByteBuffer v) {
+        if (u.isReadOnly() || !u.hasRemaining() || v.remaining() < 2) {
+            return false;
+        }
+        int uIndex = u.position();
+        int vIndex = v.position() + 1;
+        byte original = u.get(uIndex);
+        if (v.get(vIndex) != original) {
+            return false;
+        }
+        byte probe = (byte) ~original;
+        u.put(uIndex, probe);
+        boolean interleaved = v.get(vIndex) == probe;
+        u.put(uIndex, original);
+        return interleaved;
+    }
+
+    static int getYv12YStride(int width) {
+        return (width + 15) & ~15;
+    }
+
+    static int getYv12CStride(int width) {
+        return (getYv12YStride(width) / 2 + 15) & ~15;
+    }
+
+    static void checkArgs(int format, byte[] yuv, int width, int height, int outPixels) {
+        if (format != ImageFormat.NV21 && format != ImageFormat.YV12) {
+            throw new IllegalArgumentException("unsupported format: " + format);
+        }
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("width and height must be positive and even: " + width + "x" + height);
+        }
+        if (yuv.length < getYuvFrameSize(format, width, height)) {
+            throw new IllegalArgumentException("yuv buffer too small: " + yuv.length);
+        }
+        if (outPixels < width * height) {
+            throw new IllegalArgumentException("output buffer too small: " + outPixels);
+        }
+    }
+
+    static void checkOutput(Nv21View src, int outPixels) {
+        if (outPixels < src.getWidth() * src.getHeight()) {
+            throw new IllegalArgumentException("output buffer too small: " + outPixels);
+        }
+    }
+
+    /**
+     * 转换[rowStart, rowEnd)行，行号须为偶数，argb和rgba只设置一个
+     */
+    static void convertRows(int format, byte[] yuv, int width, int height, int[] argb, byte[] rgba,
+                            int rowStart, int rowEnd) {
+        if (format == ImageFormat.YV12) {
+            int yStride = getYv12YStride(width);
+            int cStride = getYv12CStride(width);
+            int vOffset = yStride * height;
+            convertRows(yuv, width, 0, yStride, 1, vOffset, vOffset + cStride * (height / 2), cStride, 1,
+                    argb, rgba, rowStart, rowEnd);
+        } else {
+            convertRows(yuv, width, 0, width, 1, width * height, width * height + 1, width, 2,
+                    argb, rgba, rowStart, rowEnd);
+        }
+    }
+
+    static void convertRows(Nv21View src, int[] argb, byte[] rgba, int rowStart, int rowEnd) {
+        convertRows(src.getData(), src.getWidth(), src.getYOffset(), src.getYRowStride(), src.getYPixelStride(),
+                src.getUvOffset(), src.getUvOffset() + 1, src.getUvRowStride(), src.getUvPixelStride(),
+                argb, rgba, rowStart, rowEnd);
+    }
+
+    /**
+     * 按各平面的偏移和跨度转换，输出紧凑排列
+     */
+    private static void convertRows(byte[] yuv, int width, int yOffset, int yStride, int yPixelStride,
+                                    int vOffset, int uOffset, int cStride, int cPixelStride,
+                                    int[] argb, byte[] rgba, int rowStart, int rowEnd) {
+        int yStep = yPixelStride * 2;
+        for (int row = rowStart; row < rowEnd; row += 2) {
+            int y0 = yOffset + row * yStride;
+            int y1 = y0 + yStride;
+            int c = (row >> 1) * cStride;
+            int vIndex = vOffset + c;
+            int uIndex = uOffset + c;
+            int out0 = row * width;
+            int out1 = out0 + width;
+            for (int col = 0; col < width; col += 2) {
+                int v = (yuv[vIndex] & 0xff) - 128;
+                int u = (yuv[uIndex] & 0xff) - 128;
+                vIndex += cPixelStride;
+                uIndex += cPixelStride;
+                // 同一组2x2像素共用色度
+                int rOffset = V_TO_R * v + ROUND;
+                int gOffset = -V_TO_G * v - U_TO_G * u + ROUND;
+                int bOffset = U_TO_B * u + ROUND;
+                if (argb != null) {
+                    argb[out0 + col] = argb(yuv[y0], rOffset, gOffset, bOffset);
+                    argb[out0 + col + 1] = argb(yuv[y0 + yPixelStride], rOffset, gOffset, bOffset);
+                    argb[out1 + col] = argb(yuv[y1], rOffset, gOffset, bOffset);
+                    argb[out1 + col + 1] = argb(yuv[y1 + yPixelStride], rOffset, gOffset, bOffset);
+                } else {
+                    rgba((out0 + col) << 2, rgba, yuv[y0], rOffset, gOffset, bOffset);
+                    rgba((out0 + col + 1) << 2, rgba, yuv[y0 + yPixelStride], rOffset, gOffset, bOffset);
+                    rgba((out1 + col) << 2, rgba, yuv[y1], rOffset, gOffset, bOffset);
+                    rgba((out1 + col + 1) << 2, rgba, yuv[y1 + yPixelStride], rOffset, gOffset, bOffset);
+                }
+                y0 += yStep;
+                y1 += yStep;
+            }
+        }
+    }
+
+    /**
+     * NV21旋转、镜像
+     * <p>
+     * 按32x32分块处理，块内按目标行顺序写入，读取集中在源图的一小块区域内，比逐像素按行遍历缓存命中率高。
+     * 先顺时针旋转，再左右镜像（前置摄像头预览效果）。
+     *
+     * @param src
+     * @param width    源宽度
+     * @param height   源高度
+     * @param rotation 顺时针旋转角度，0/90/180/270
+     * @param mirror   是否左右镜像
+     * @param dst      输出，至少width * height * 3 / 2，旋转90/270时宽高互换，不能与src相同
+     */
+    public static void rotateNv21(byte[] src, int width, int height, int rotation, boolean mirror, byte[] dst) {
+        checkRotateArgs(src, width, height, rotation, dst);
+        rotateNv21(Nv21View.wrap(src, width, height), rotation, mirror, dst);
+    }
+
+    /**
+     * NV21视图旋转、镜像，输出紧凑排列
+     *
+     * @param src
+     * @param rotation 顺时针旋转角度，0/90/180/270
+     * @param mirror   是否左右镜像
+     * @param dst      输出，至少{@link Nv21View#getFrameSize()}，不能与src的数据相同
+     */
+    public static void rotateNv21(Nv21View src, int rotation, boolean mirror, byte[] dst) {
+        checkRotateArgs(src, rotation, dst);
+        int dstHeight = getRotatedHeight(src.getWidth(), src.getHeight(), rotation);
+        rotateNv21Rows(src, rotation, mirror, dst, 0, dstHeight);
+    }
+
+    /**
+     * @return 旋转后的宽度
+     */
+    public static int getRotatedWidth(int width, int height, int rotation) {
+        return rotation % 180 == 0 ? width : height;
+    }
+
+    /**
+     * @return 旋转后的高度
+     */
+    public static int getRotatedHeight(int width, int height, int rotation) {
+        return rotation % 180 == 0 ? height : width;
+    }
+
+    static void checkRotateArgs(byte[] src, int width, int height, int rotation, byte[] dst) {
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("rotation must be 0, 90, 180 or 270: " + rotation);
+        }
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("width and height must be positive and even: " + width + "x" + height);
+        }
+        int frameSize = width * height * 3 / 2;
+        if (src.length < frameSize || dst.length < frameSize) {
+            throw new IllegalArgumentException("buffer too small: " + src.length + ", " + dst.length);
+        }
+        if (src == dst) {
+            throw new IllegalArgumentException("src and dst must be different buffers");
+        }
+    }
+
+    static void checkRotateArgs(Nv21View src, int rotation, byte[] dst) {
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("rotation must be 0, 90, 180 or 270: " + rotation);
+        }
+        if (dst.length < src.getFrameSize()) {
+            throw new IllegalArgumentException("buffer too small: " + dst.length);
+        }
+        if (src.getData() == dst) {
+            throw new IllegalArgumentException("src and dst must be different buffers");
+        }
+    }
+
+    /**
+     * 旋转输出的[rowStart, rowEnd)行，行号为目标图像的亮度行，须为偶数
+     */
+    static void rotateNv21Rows(Nv21View src, int rotation, boolean mirror, byte[] dst, int rowStart, int rowEnd) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        byte[] data = src.getData();
+        transformPlane(data, src.getYOffset(), src.getYRowStride(), src.getYPixelStride(), width, height, 1,
+                rotation, mirror, dst, 0, rowStart, rowEnd);
+        // VU交错平面按2字节一个元素处理，与亮度同样旋转
+        transformPlane(data, src.getUvOffset(), src.getUvRowStride(), src.getUvPixelStride(), width / 2, height / 2, 2,
+                rotation, mirror, dst, width * height, rowStart / 2, rowEnd / 2);
+    }
+
+    /**
+     * 旋转一个平面
+     *
+     * @param src
+     * @param srcOffset      平面起始位置
+     * @param srcRowStride   行跨度，字节
+     * @param srcPixelStride 元素跨度，字节
+     * @param srcWidth       平面宽度，单位为元素
+     * @param srcHeight      平面高度
+     * @param elemSize       元素字节数
+     * @param rotation
+     * @param mirror
+     * @param dst
+     * @param dstOffset
+     * @param rowStart  目标起始行
+     * @param rowEnd    目标结束行
+     */
+    private static void transformPlane(byte[] src, int srcOffset, int srcRowStride, int srcPixelStride,
+                                       int srcWidth, int srcHeight, int elemSize,
+                                       int rotation, boolean mirror, byte[] dst, int dstOffset,
+                                       int rowStart, int rowEnd) {
+        int dstWidth = rotation % 180 == 0 ? srcWidth : srcHeight;
+        // 目标(dx, dy)对应的源字节位置为origin + dx * stepX + dy * stepY
+        int origin;
+        int stepX;
+        int stepY;
+        switch (rotation) {
+            case 90:
+                origin = (srcHeight - 1) * srcRowStride;
+                stepX = -srcRowStride;
+                stepY = srcPixelStride;
+                break;
+            case 180:
+                origin = (srcHeight - 1) * srcRowStride + (srcWidth - 1) * srcPixelStride;
+                stepX = -srcPixelStride;
+                stepY = -srcRowStride;
+                break;
+            case 270:
+                origin = (srcWidth - 1) * srcPixelStride;
+                stepX = srcRowStride;
+                stepY = -srcPixelStride;
+                break;
+            default:
+                origin = 0;
+                stepX = srcPixelStride;
+                stepY = srcRowStride;
+                break;
+        }
+        origin += srcOffset;
+        if (mirror) {
+            origin += (dstWidth - 1) * stepX;
+            stepX = -stepX;
+        }
+        int rowBytes = dstWidth * elemSize;
+        if (stepX == elemSize) {
+            // 行内连续，整行拷贝
+            for (int dy = rowStart; dy < rowEnd; dy++) {
+                System.arraycopy(src, origin + dy * stepY, dst, dstOffset + dy * rowBytes, rowBytes);
+            }
+            return;
+        }
+        for (int ty = rowStart; ty < rowEnd; ty += TILE_SIZE) {
+            int tyEnd = Math.min(ty + TILE_SIZE, rowEnd);
+            for (int tx = 0; tx < dstWidth; tx += TILE_SIZE) {
+                int count = Math.min(TILE_SIZE, dstWidth - tx);
+                for (int dy = ty; dy < tyEnd; dy++) {
+                    int d = dstOffset + dy * rowBytes + tx * elemSize;
+                    int s = origin + tx * stepX + dy * stepY;
+                    if (elemSize == 1) {
+                        for (int i = 0; i < count; i++) {
+                            dst[d++] = src[s];
+                            s += stepX;
+                        }
+                    } else {
+                        for (int i = 0; i < count; i++) {
+                            dst[d] = src[s];
+                            dst[d + 1] = src[s + 1];
+                            d += 2;
+                            s += stepX;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int argb(byte yValue, int rOffset, int gOffset, int bOffset) {
+        int y = Y_COEF * Math.max((yValue & 0xff) - 16, 0);
+        return 0xff000000 | (clamp((y + rOffset) >> SHIFT) << 16)
+                | (clamp((y + gOffset) >> SHIFT) << 8) | clamp((y + bOffset) >> SHIFT);
+    }
+
+    private static void rgba(int index, byte[] rgba, byte yValue, int rOffset, int gOffset, int bOffset) {
+        int y = Y_COEF * Math.max((yValue & 0xff) - 16, 0);
+        rgba[index] = (byte) clamp((y + rOffset) >> SHIFT);
+        rgba[index + 1] = (byte) clamp((y + gOffset) >> SHIFT);
+        rgba[index + 2] = (byte) clamp((y + bOffset) >> SHIFT);
+        rgba[index + 3] = (byte) 0xff;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
 }
@@ -0,0 +1,175 @@
+package com.android.xz.opengldemo.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * NV21旋转、镜像
+ * <p>
+ * 输出写入{@link ByteArrayPool}中的缓冲区，用完调用{@link #release(byte[])}归还。
+ * 指定ForkJoinPool时按目标行分条带并行处理，条带任务复用，不分配内存；
+ * 同一实例的旋转方法串行执行。分块算法见{@link ImageUtils#rotateNv21}。
+ * 输入可以是{@link Nv21View}，只旋转帧中的一个区域时不需要先拷贝出来。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class Nv21Rotator {
+
+    /**
+     * 默认缓存的输出缓冲区个数
+     */
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    // 每条带至少的行数
+    private static final int MIN_STRIPE_ROWS = 64;
+
+    private final ByteArrayPool mBufferPool;
+    private final ForkJoinPool mPool;
+    private final Stripe[] mStripes;
+
+    /**
+     * 单线程处理
+     */
+    public Nv21Rotator() {
+        this(null, 1);
+    }
+
+    /**
+     * @param pool        为null时在调用线程中处理
+     * @param stripeCount 最多条带数，包括调用线程处理的一条
+     */
+    public Nv21Rotator(ForkJoinPool pool, int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripeCount must be positive: " + stripeCount);
+        }
+        mBufferPool = new ByteArrayPool(DEFAULT_POOL_SIZE);
+        mPool = pool;
+        mStripes = new Stripe[pool == null ? 1 : stripeCount];
+        for (int i = 0; i < mStripes.length; i++) {
+            mStripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * 旋转到缓冲池中的数组
+     *
+     * @param src
+     * @param width
+     * @param height
+     * @param rotation 顺时针旋转角度，0/90/180/270
+     * @param mirror   是否左右镜像
+     * @return 旋转后的数据，宽高见{@link ImageUtils#getRotatedWidth}，用完调用{@link #release(byte[])}
+     */
+    public byte[] rotate(byte[] src, int width, int height, int rotation, boolean mirror) {
+        return rotate(Nv21View.wrap(src, width, height), rotation, mirror);
+    }
+
+    /**
+     * 旋转视图到缓冲池中的数组
+     *
+     * @param src
+     * @param rotation 顺时针旋转角度，0/90/180/270
+     * @param mirror   是否左右镜像
+     * @return 旋转后紧凑排列的数据，用完调用{@link #release(byte[])}
+     */
+    public byte[] rotate(Nv21View src, int rotation, boolean mirror) {
+        byte[] dst = mBufferPool.acquire(src.getFrameSize());
+        try {
+            rotate(src, rotation, mirror, dst);
+        } catch (RuntimeException e) {
+            mBufferPool.release(dst);
+            throw e;
+        }
+        return dst;
+    }
+
+    /**
+     * 旋转到指定数组
+     */
+    public void rotate(byte[] src, int width, int height, int rotation, boolean mirror, byte[] dst) {
+        ImageUtils.checkRotateArgs(src, width, height, rotation, dst);
+        rotate(Nv21View.wrap(src, width, height), rotation, mirror, dst);
+    }
+
+    /**
+     * 旋转视图到指定数组
+     */
+    public synchronized void rotate(Nv21View src, int rotation, boolean mirror, byte[] dst) {
+        ImageUtils.checkRotateArgs(src, rotation, dst);
+        int dstHeight = ImageUtils.getRotatedHeight(src.getWidth(), src.getHeight(), rotation);
+        int stripeCount = Math.max(1, Math.min(mStripes.length, dstHeight / MIN_STRIPE_ROWS));
+        if (stripeCount == 1) {
+            ImageUtils.rotateNv21Rows(src, rotation, mirror, dst, 0, dstHeight);
+            return;
+        }
+        int pairs = dstHeight / 2;
+        for (int i = 0; i < stripeCount; i++) {
+            mStripes[i].set(src, rotation, mirror, dst,
+                    pairs * i / stripeCount * 2, pairs * (i + 1) / stripeCount * 2);
+        }
+        for (int i = 1; i < stripeCount; i++) {
+            mPool.execute(mStripes[i]);
+        }
+        RuntimeException error = null;
+        try {
+            mStripes[0].compute();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        for (int i = 1; i < stripeCount; i++) {
+            try {
+                mStripes[i].join();
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        for (int i = 0; i < stripeCount; i++) {
+            mStripes[i].reset();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 归还{@link #rotate(byte[], int, int, int, boolean)}返回的数组
+     *
+     * @param buffer
+     */
+    public void release(byte[] buffer) {
+        mBufferPool.release(buffer);
+    }
+
+    private static class Stripe extends RecursiveAction {
+
+        private Nv21View mSrc;
+        private int mRotation;
+        private boolean isMirror;
+        private byte[] mDst;
+        private int mRowStart;
+        private int mRowEnd;
+
+        void set(Nv21View src, int rotation, boolean mirror, byte[] dst, int rowStart, int rowEnd) {
+            mSrc = src;
+            mRotation = rotation;
+            isMirror = mirror;
+            mDst = dst;
+            mRowStart = rowStart;
+            mRowEnd = rowEnd;
+        }
+
+        void reset() {
+            mSrc = null;
+            mDst = null;
+            reinitialize();
+        }
+
+        @Override
+        protected void compute() {
+            ImageUtils.rotateNv21Rows(mSrc, mRotation, isMirror, mDst, mRowStart, mRowEnd);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.android.xz.opengldemo.util;
+
+import android.graphics.Rect;
+
+/**
+ * NV21帧视图
+ * <p>
+ * 描述一块NV21数据中的一个区域，不持有拷贝：Y平面和VU交错平面各自有起始位置、行跨度和像素跨度（字节）。
+ * {@link #crop}和{@link #subsample}只计算新的偏移和跨度，返回新的视图，不拷贝像素，
+ * 可以直接交给{@link ImageUtils}、{@link YuvConverter}、{@link Nv21Rotator}和JPEG编码处理，
+ * 整条ROI处理链不需要中间缓冲区。视图本身不可变，底层数据变化时视图看到的内容随之变化。
+ * <p>
+ * 宽高总是偶数，裁剪位置须为偶数以保证色度对齐。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public final class Nv21View {
+
+    private final byte[] mData;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mYOffset;
+    private final int mYRowStride;
+    private final int mYPixelStride;
+    private final int mUvOffset;
+    private final int mUvRowStride;
+    private final int mUvPixelStride;
+
+    /**
+     * @param data
+     * @param width         偶数
+     * @param height        偶数
+     * @param yOffset       Y平面第一个像素的位置
+     * @param yRowStride    Y平面相邻两行的字节距离
+     * @param yPixelStride  Y平面相邻两个像素的字节距离
+     * @param uvOffset      第一个V的位置，U紧跟在V后
+     * @param uvRowStride   VU平面相邻两行的字节距离
+     * @param uvPixelStride VU平面相邻两组的字节距离，不小于2
+     */
+    public Nv21View(byte[] data, int width, int height, int yOffset, int yRowStride, int yPixelStride,
+                    int uvOffset, int uvRowStride, int uvPixelStride) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("width and height must be positive and even: " + width + "x" + height);
+        }
+        if (yOffset < 0 || uvOffset < 0 || yPixelStride < 1 || yRowStride < width * yPixelStride
+                || uvPixelStride < 2 || uvRowStride < width / 2 * uvPixelStride) {
+            throw new IllegalArgumentException("invalid offsets or strides");
+        }
+        long yLast = yOffset + (long) (height - 1) * yRowStride + (long) (width - 1) * yPixelStride;
+        long uvLast = uvOffset + (long) (height / 2 - 1) * uvRowStride + (long) (width / 2 - 1) * uvPixelStride + 1;
+        if (yLast >= data.length || uvLast >= data.length) {
+            throw new IllegalArgumentException("view out of buffer: " + data.length);
+        }
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+        mYOffset = yOffset;
+        mYRowStride = yRowStride;
+        mYPixelStride = yPixelStride;
+        mUvOffset = uvOffset;
+        mUvRowStride = uvRowStride;
+        mUvPixelStride = uvPixelStride;
+    }
+
+    /**
+     * 包装一整帧紧凑排列的NV21
+     *
+     * @param nv21
+     * @param width
+     * @param height
+     * @return
+     */
+    public static Nv21View wrap(byte[] nv21, int width, int height) {
+        return new Nv21View(nv21, width, height, 0, width, 1, width * height, width, 2);
+    }
+
+    /**
+     * 裁剪
+     *
+     * @param left   偶数
+     * @param top    偶数
+     * @param width  偶数
+     * @param height 偶数
+     * @return 新的视图，坐标相对当前视图
+     */
+    public Nv21View crop(int left, int top, int width, int height) {
+        if (((left | top | width | height) & 1) != 0 || left < 0 || top < 0 || width <= 0 || height <= 0
+                || left + width > mWidth || top + height > mHeight) {
+            throw new IllegalArgumentException("invalid crop: " + left + "," + top + " " + width + "x" + height
+                    + " in " + mWidth + "x" + mHeight);
+        }
+        return new Nv21View(mData, width, height,
+                mYOffset + top * mYRowStride + left * mYPixelStride, mYRowStride, mYPixelStride,
+                mUvOffset + top / 2 * mUvRowStride + left / 2 * mUvPixelStride, mUvRowStride, mUvPixelStride);
+    }
+
+    /**
+     * 裁剪，rect与视图求交后左上角向下、右下角向上对齐到偶数
+     *
+     * @param rect
+     * @return 新的视图，交集为空时抛出IllegalArgumentException
+     */
+    public Nv21View crop(Rect rect) {
+        int left = (Math.max(rect.left, 0) + 1) & ~1;
+        int top = (Math.max(rect.top, 0) + 1) & ~1;
+        int right = Math.min(rect.right, mWidth) & ~1;
+        int bottom = Math.min(rect.bottom, mHeight) & ~1;
+        return crop(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * 下采样，横向和纵向每factor个像素取一个，宽高向下取偶数
+     *
+     * @param factor 大于等于1
+     * @return 新的视图
+     */
+    public Nv21View subsample(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("factor must be positive: " + factor);
+        }
+        if (factor == 1) {
+            return this;
+        }
+        // 视图色度(cx, cy)对应视图亮度(2cx, 2cy)，即源亮度(2cx * factor, 2cy * factor)，源色度(cx * factor, cy * factor)
+        return new Nv21View(mData, mWidth / factor & ~1, mHeight / factor & ~1,
+                mYOffset, mYRowStride * factor, mYPixelStride * factor,
+                mUvOffset, mUvRowStride * factor, mUvPixelStride * factor);
+    }
+
+    /**
+     * @return 是否与{@link #wrap}得到的紧凑排列相同
+     */
+    public boolean isCompact() {
+        return mYOffset == 0 && mYPixelStride == 1 && mYRowStride == mWidth
+                && mUvOffset == mWidth * mHeight && mUvPixelStride == 2 && mUvRowStride == mWidth;
+    }
+
+    /**
+     * 拷贝成紧凑排列的NV21
+     *
+     * @param dst 至少{@link #getFrameSize()}
+     */
+    public void copyTo(byte[] dst) {
+        if (dst.length < getFrameSize()) {
+            throw new IllegalArgumentException("buffer too small: " + dst.length);
+        }
+        int d = 0;
+        for (int row = 0; row < mHeight; row++) {
+            int s = getYRowOffset(row);
+            if (mYPixelStride == 1) {
+                System.arraycopy(mData, s, dst, d, mWidth);
+                d += mWidth;
+            } else {
+                for (int col = 0; col < mWidth; col++) {
+                    dst[d++] = mData[s];
+                    s += mYPixelStride;
+                }
+            }
+        }
+        int pairs = mWidth / 2;
+        for (int row = 0; row < mHeight / 2; row++) {
+            int s = getUvRowOffset(row);
+            if (mUvPixelStride == 2) {
+                System.arraycopy(mData, s, dst, d, mWidth);
+                d += mWidth;
+            } else {
+                for (int col = 0; col < pairs; col++) {
+                    dst[d++] = mData[s];
+                    dst[d++] = mData[s + 1];
+                    s += mUvPixelStride;
+                }
+            }
+        }
+    }
+
+    public int getFrameSize() {
+        return mWidth * mHeight * 3 / 2;
+    }
+
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getYOffset() {
+        return mYOffset;
+    }
+
+    public int getYRowStride() {
+        return mYRowStride;
+    }
+
+    public int getYPixelStride() {
+        return mYPixelStride;
+    }
+
+    public int getUvOffset() {
+        return mUvOffset;
+    }
+
+    public int getUvRowStride() {
+        return mUvRowStride;
+    }
+
+    public int getUvPixelStride() {
+        return mUvPixelStride;
+    }
+
+    /**
+     * @param row 亮度行
+     * @return 该行第一个Y在{@link #getData()}中的位置，后续像素间隔{@link #getYPixelStride()}
+     */
+    public int getYRowOffset(int row) {
+        return mYOffset + row * mYRowStride;
+    }
+
+    /**
+     * @param row 色度行，0~height/2
+     * @return 该行第一个V在{@link #getData()}中的位置，U在其后一个字节，后续间隔{@link #getUvPixelStride()}
+     */
+    public int getUvRowOffset(int row) {
+        return mUvOffset + row * mUvRowStride;
+    }
+
+    public int getY(int x, int y) {
+        return mData[mYOffset + y * mYRowStride + x * mYPixelStride] & 0xff;
+    }
+
+    /**
+     * @param x 色度坐标
+     * @param y 色度坐标
+     */
+    public int getV(int x, int y) {
+        return mData[mUvOffset + y * mUvRowStride + x * mUvPixelStride] & 0xff;
+    }
+
+    /**
+     * @param x 色度坐标
+     * @param y 色度坐标
+     */
+    public int getU(int x, int y) {
+        return mData[mUvOffset + y * mUvRowStride + x * mUvPixelStride + 1] & 0xff;
+    }
+
+    @Override
+    public String toString() {
+        return "Nv21View{" + mWidth + "x" + mHeight + ", y=" + mYOffset + "/" + mYRowStride + "/" + mYPixelStride
+                + ", uv=" + mUvOffset + "/" + mUvRowStride + "/" + mUvPixelStride + "}";
+    }
+}
@@ -0,0 +1,157 @@
+package com.android.xz.opengldemo.util;
+
+import android.graphics.ImageFormat;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 多线程YUV转RGB
+ * <p>
+ * 按行分成若干条带在ForkJoinPool中并行转换，调用线程处理第一条带。
+ * 条带任务在创建时分配，每帧通过reinitialize()复用，转换过程不分配内存。
+ * 同一实例的转换方法串行执行，多个调用方需要并发时各自创建实例。
+ * NV21输入也可以是{@link Nv21View}，只转换帧中的一个区域。
+ *
+ * @author xiaozhi
+ * @since 2024/11/23
+ */
+public class YuvConverter {
+
+    // 每条带至少的行数，太小时调度开销大于收益
+    private static final int MIN_STRIPE_ROWS = 32;
+
+    private final ForkJoinPool mPool;
+    private final Stripe[] mStripes;
+
+    /**
+     * 使用公共ForkJoinPool，条带数与并行度一致
+     */
+    public YuvConverter() {
+        this(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    /**
+     * @param pool
+     * @param stripeCount 最多条带数，包括调用线程处理的一条
+     */
+    public YuvConverter(ForkJoinPool pool, int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripeCount must be positive: " + stripeCount);
+        }
+        mPool = pool;
+        mStripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            mStripes[i] = new Stripe();
+        }
+    }
+
+    public synchronized void nv21ToArgb(byte[] nv21, int width, int height, int[] argb) {
+        ImageUtils.checkArgs(ImageFormat.NV21, nv21, width, height, argb.length);
+        convert(ImageFormat.NV21, nv21, null, width, height, argb, null);
+    }
+
+    public synchronized void nv21ToRgba(byte[] nv21, int width, int height, byte[] rgba) {
+        ImageUtils.checkArgs(ImageFormat.NV21, nv21, width, height, rgba.length / 4);
+        convert(ImageFormat.NV21, nv21, null, width, height, null, rgba);
+    }
+
+    public synchronized void nv21ToArgb(Nv21View src, int[] argb) {
+        ImageUtils.checkOutput(src, argb.length);
+        convert(ImageFormat.NV21, null, src, src.getWidth(), src.getHeight(), argb, null);
+    }
+
+    public synchronized void nv21ToRgba(Nv21View src, byte[] rgba) {
+        ImageUtils.checkOutput(src, rgba.length / 4);
+        convert(ImageFormat.NV21, null, src, src.getWidth(), src.getHeight(), null, rgba);
+    }
+
+    public synchronized void yv12ToArgb(byte[] yv12, int width, int height, int[] argb) {
+        ImageUtils.checkArgs(ImageFormat.YV12, yv12, width, height, argb.length);
+        convert(ImageFormat.YV12, yv12, null, width, height, argb, null);
+    }
+
+    public synchronized void yv12ToRgba(byte[] yv12, int width, int height, byte[] rgba) {
+        ImageUtils.checkArgs(ImageFormat.YV12, yv12, width, height, rgba.length / 4);
+        convert(ImageFormat.YV12, yv12, null, width, height, null, rgba);
+    }
+
+    private void convert(int format, byte[] yuv, Nv21View view, int width, int height, int[] argb, byte[] rgba) {
+        int stripeCount = Math.max(1, Math.min(mStripes.length, height / MIN_STRIPE_ROWS));
+        // 条带边界按偶数行对齐，保证每条带的色度行完整
+        int pairs = height / 2;
+        for (int i = 0; i < stripeCount; i++) {
+            Stripe stripe = mStripes[i];
+            stripe.set(format, yuv, view, width, height, argb, rgba,
+                    pairs * i / stripeCount * 2, pairs * (i + 1) / stripeCount * 2);
+        }
+        for (int i = 1; i < stripeCount; i++) {
+            mPool.execute(mStripes[i]);
+        }
+        RuntimeException error = null;
+        try {
+            mStripes[0].compute();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        for (int i = 1; i < stripeCount; i++) {
+            try {
+                mStripes[i].join();
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        for (int i = 0; i < stripeCount; i++) {
+            mStripes[i].reset();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static class Stripe extends RecursiveAction {
+
+        private int mFormat;
+        private byte[] mYuv;
+        private Nv21View mView;
+        private int mWidth;
+        private int mHeight;
+        private int[] mArgb;
+        private byte[] mRgba;
+        private int mRowStart;
+        private int mRowEnd;
+
+        void set(int format, byte[] yuv, Nv21View view, int width, int height, int[] argb, byte[] rgba,
+                 int rowStart, int rowEnd) {
+            mFormat = format;
+            mYuv = yuv;
+            mView = view;
+            mWidth = width;
+            mHeight = height;
+            mArgb = argb;
+            mRgba = rgba;
+            mRowStart = rowStart;
+            mRowEnd = rowEnd;
+        }
+
+        void reset() {
+            // 不持有帧数据，便于回收
+            mYuv = null;
+            mView = null;
+            mArgb = null;
+            mRgba = null;
+            reinitialize();
+        }
+
+        @Override
+        protected void compute() {
+            if (mView != null) {
+                ImageUtils.convertRows(mView, mArgb, mRgba, mRowStart, mRowEnd);
+            } else {
+                ImageUtils.convertRows(mFormat, mYuv, mWidth, mHeight, mArgb, mRgba, mRowStart, mRowEnd);
+            }
+        }
+    }
+}
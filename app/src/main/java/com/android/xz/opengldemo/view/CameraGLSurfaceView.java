@@ -3,13 +3,22 @@ package com.android.xz.opengldemo.view;
 import android.content.Context;
 import android.graphics.SurfaceTexture;
 import android.opengl.GLSurfaceView;
-import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.SurfaceHolder;
 
+import com.android.xz.opengldemo.camera.Camera2Manager;
 import com.android.xz.opengldemo.camera.CameraManager;
+import com.android.xz.opengldemo.camera.ICameraManager;
 import com.android.xz.opengldemo.camera.callback.CameraCallback;
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+import com.android.xz.opengldemo.gles.Gles3ConfigChooser;
+import com.android.xz.opengldemo.gles.Gles3ContextFactory;
+import com.android.xz.opengldemo.gles.ProgramCache;
 import com.android.xz.opengldemo.gles.draw.CameraFilter;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -22,11 +31,18 @@ public class CameraGLSurfaceView extends GLSurfaceView implements SurfaceTexture
 
     private static final String TAG = CameraGLSurfaceView.class.getSimpleName();
 
+    // 是否使用Camera2预览
+    private static final boolean USE_CAMERA2 = false;
+
     private Context mContext;
-    private SurfaceTexture mSurfaceTexture;
-    private Handler mMainHandler;
-    private CameraManager mCameraManager;
-    private boolean hasSurface; // 是否存在摄像头显示层
+    private volatile SurfaceTexture mSurfaceTexture;
+    private ICameraManager mCameraManager;
+    private ScaleGestureDetector mScaleGestureDetector;
+    // 请求打开摄像头的时间，用于统计首帧耗时
+    private volatile long mOpenRequestTime;
+    // 请求切换摄像头的时间，用于统计切换后首帧耗时
+    private volatile long mSwitchRequestTime;
+    private final StreamMetrics mPreviewMetrics = FrameMetrics.getInstance().getStream(FrameMetrics.STREAM_PREVIEW);
 
     public CameraGLSurfaceView(Context context) {
         super(context);
@@ -40,19 +56,35 @@ public class CameraGLSurfaceView extends GLSurfaceView implements SurfaceTexture
 
     private void init(Context context) {
         mContext = context;
-        mMainHandler = new Handler(mContext.getMainLooper());
-        setEGLContextClientVersion(2);
+        // GLES3上下文可用时ProgramCache可以缓存链接好的程序二进制，下次打开预览跳过着色器编译
+        setEGLConfigChooser(new Gles3ConfigChooser());
+        setEGLContextFactory(new Gles3ContextFactory());
         setRenderer(new MyRenderer(this));
-        mCameraManager = new CameraManager(mContext);
+        // 只在onFrameAvailable中请求绘制，统计的每次绘制对应一帧新的预览
+        setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        mCameraManager = USE_CAMERA2 ? new Camera2Manager(mContext) : new CameraManager(mContext);
         mCameraManager.setCameraCallback(mCameraCallback);
+        // 手势只累积目标缩放比例，由渲染循环每帧提交
+        mScaleGestureDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                mCameraManager.getZoomController().zoomBy(detector.getScaleFactor());
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        mScaleGestureDetector.onTouchEvent(event);
+        return true;
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        if (hasSurface) {
-            openCamera();
-        }
+        // 不等SurfaceTexture创建，先在Camera线程打开摄像头，与EGL环境创建并行
+        openCamera();
     }
 
     @Override
@@ -61,47 +93,63 @@ public class CameraGLSurfaceView extends GLSurfaceView implements SurfaceTexture
         closeCamera();
     }
 
+    /**
+     * GL线程中创建SurfaceTexture后调用，Camera已打开则直接开启预览，否则等待onOpen回调
+     *
+     * @param surfaceTexture
+     */
     private void surfaceTextureCreated(SurfaceTexture surfaceTexture) {
+        surfaceTexture.setOnFrameAvailableListener(this);
         mSurfaceTexture = surfaceTexture;
-        hasSurface = true;
-        mSurfaceTexture.setOnFrameAvailableListener(this);
-        openCamera();
+        mCameraManager.startPreviewAsync(surfaceTexture);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        closeCamera();
+        // 页面销毁后不会再打开，Camera线程在关闭完成后退出
+        mCameraManager.quit();
+        super.onDetachedFromWindow();
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
         super.surfaceDestroyed(holder);
         closeCamera();
-        hasSurface = false;
     }
 
     /**
-     * 打开摄像头
+     * 打开摄像头，已打开时CameraManager内部会忽略
      */
     private void openCamera() {
-        if (mSurfaceTexture == null) {
-            Log.e(TAG, "mSurfaceTexture is null.");
-            return;
-        }
-        if (mCameraManager.isOpen()) {
-            Log.w(TAG, "Camera is opened！");
-            return;
-        }
-        mCameraManager.openCamera();
+        mOpenRequestTime = SystemClock.elapsedRealtime();
+        mCameraManager.openCameraAsync();
+    }
+
+    /**
+     * 切换前后摄像头，SurfaceTexture和绘制环境保持不变，只重新打开Camera
+     */
+    public void switchCamera() {
+        mSwitchRequestTime = SystemClock.elapsedRealtime();
+        mCameraManager.switchCameraAsync();
     }
 
     /**
      * 关闭摄像头
      */
     private void closeCamera() {
-        mCameraManager.releaseCamera();
+        mCameraManager.releaseCameraAsync();
         mSurfaceTexture = null;
     }
 
     CameraCallback mCameraCallback = new CameraCallback() {
         @Override
         public void onOpen() {
-            mCameraManager.startPreview(mSurfaceTexture);
+            // Camera线程回调，SurfaceTexture还没创建时由surfaceTextureCreated开启预览
+            SurfaceTexture surfaceTexture = mSurfaceTexture;
+            if (surfaceTexture != null) {
+                mCameraManager.startPreview(surfaceTexture);
+            }
         }
 
         @Override
@@ -127,16 +175,29 @@ public class CameraGLSurfaceView extends GLSurfaceView implements SurfaceTexture
 
     @Override
     public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        if (mOpenRequestTime > 0) {
+            Log.i(TAG, "first preview frame cost: " + (SystemClock.elapsedRealtime() - mOpenRequestTime) + "ms");
+            mOpenRequestTime = 0;
+        }
+        if (mSwitchRequestTime > 0) {
+            Log.i(TAG, "first frame after switch cost: " + (SystemClock.elapsedRealtime() - mSwitchRequestTime)
+                    + "ms, camera switch cost: " + mCameraManager.getLastSwitchCost() + "ms");
+            mSwitchRequestTime = 0;
+        }
+        mPreviewMetrics.onFrameArrived(System.nanoTime());
         requestRender();
     }
 
     static class MyRenderer implements Renderer {
 
+        private static final long MAX_LATENCY_NS = 1_000_000_000L;
+
         private CameraFilter mCameraFilter;
         private int mTextureId;
         private SurfaceTexture mSurfaceTexture;
         private CameraGLSurfaceView mView;
         private final float[] mDisplayProjectionMatrix = new float[16];
+        private long mLastTimestampNs;
 
         public MyRenderer(CameraGLSurfaceView glSurfaceView) {
             mView = glSurfaceView;
@@ -145,10 +206,12 @@ public class CameraGLSurfaceView extends GLSurfaceView implements SurfaceTexture
 
         @Override
         public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+            // 新上下文，丢弃句柄相同的旧上下文中缓存的程序
+            ProgramCache.getInstance().onContextCreated();
             mCameraFilter.surfaceCreated();
             mTextureId = mCameraFilter.getTextureId();
             mSurfaceTexture = new SurfaceTexture(mTextureId);
-            mView.mMainHandler.post(() -> mView.surfaceTextureCreated(mSurfaceTexture));
+            mView.surfaceTextureCreated(mSurfaceTexture);
         }
 
         @Override
@@ -158,12 +221,27 @@ public class CameraGLSurfaceView extends GLSurfaceView implements SurfaceTexture
 
         @Override
         public void onDrawFrame(GL10 gl) {
+            long startNs = System.nanoTime();
             // 更新最新纹理
             mSurfaceTexture.updateTexImage();
             // 获取SurfaceTexture变换矩阵
             mSurfaceTexture.getTransformMatrix(mDisplayProjectionMatrix);
+            // 每帧最多提交一次缩放，Camera未跟上的部分由GPU裁剪补足
+            mCameraFilter.setCropScale(mView.mCameraManager.getZoomController().onFrame());
             // 将SurfaceTexture绘制到GLSurfaceView上
             mCameraFilter.draw(mDisplayProjectionMatrix);
+            // 只统计提交绘制命令的CPU耗时，不调用glFinish等待GPU
+            long endNs = System.nanoTime();
+            long timestampNs = mSurfaceTexture.getTimestamp();
+            if (timestampNs == mLastTimestampNs) {
+                // Surface尺寸变化等引起的重绘，画的还是上一帧，不计入统计
+                return;
+            }
+            mLastTimestampNs = timestampNs;
+            long latencyNs = endNs - timestampNs;
+            // 时间戳与nanoTime不是同一时钟时（如BOOTTIME）忽略延迟
+            mView.mPreviewMetrics.onFrameDrawn(endNs - startNs,
+                    latencyNs > 0 && latencyNs < MAX_LATENCY_NS ? latencyNs : 0);
         }
     }
 }
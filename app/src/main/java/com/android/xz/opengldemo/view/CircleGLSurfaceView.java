@@ -4,6 +4,7 @@ import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.util.AttributeSet;
 
+import com.android.xz.opengldemo.gles.ProgramCache;
 import com.android.xz.opengldemo.gles.draw.Circle;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -42,6 +43,7 @@ public class CircleGLSurfaceView extends GLSurfaceView {
 
         @Override
         public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+            ProgramCache.getInstance().onContextCreated();
             mCircle.surfaceCreated();
         }
 
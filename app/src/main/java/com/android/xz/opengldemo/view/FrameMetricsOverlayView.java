@@ -0,0 +1,85 @@
+package com.android.xz.opengldemo.view;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+
+import androidx.appcompat.widget.AppCompatTextView;
+
+import com.android.xz.opengldemo.camera.metrics.FrameMetrics;
+import com.android.xz.opengldemo.camera.metrics.MetricsListener;
+import com.android.xz.opengldemo.camera.metrics.StreamMetrics;
+
+import java.util.List;
+
+/**
+ * 帧统计浮层，显示各数据流的帧率、丢帧及耗时p50/p99
+ * <p>
+ * 显示在窗口上时才注册监听，不显示时不产生任何汇总开销
+ *
+ * @author xiaozhi
+ * @since 2024/11/14
+ */
+public class FrameMetricsOverlayView extends AppCompatTextView implements MetricsListener {
+
+    public FrameMetricsOverlayView(Context context) {
+        super(context);
+        init();
+    }
+
+    public FrameMetricsOverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0x80000000);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (getVisibility() == VISIBLE) {
+            FrameMetrics.getInstance().addListener(this);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        FrameMetrics.getInstance().removeListener(this);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void setVisibility(int visibility) {
+        super.setVisibility(visibility);
+        if (!isAttachedToWindow()) {
+            return;
+        }
+        if (visibility == VISIBLE) {
+            FrameMetrics.getInstance().addListener(this);
+        } else {
+            FrameMetrics.getInstance().removeListener(this);
+        }
+    }
+
+    @Override
+    public void onMetrics(List<StreamMetrics.Snapshot> snapshots) {
+        StringBuilder sb = new StringBuilder();
+        for (StreamMetrics.Snapshot snapshot : snapshots) {
+            if (snapshot.totalFrames == 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(snapshot);
+        }
+        setText(sb);
+    }
+}
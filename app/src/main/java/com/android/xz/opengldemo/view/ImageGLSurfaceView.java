@@ -9,6 +9,7 @@ import android.util.AttributeSet;
 import android.util.Log;
 
 import com.android.xz.opengldemo.R;
+import com.android.xz.opengldemo.gles.ProgramCache;
 import com.android.xz.opengldemo.gles.draw.Image;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -54,6 +55,7 @@ public class ImageGLSurfaceView extends GLSurfaceView {
 
         @Override
         public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+            ProgramCache.getInstance().onContextCreated();
             // Set the background frame color
             GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
             mImage.surfaceCreated();
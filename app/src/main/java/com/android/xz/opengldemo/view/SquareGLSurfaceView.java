@@ -4,6 +4,7 @@ import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.util.AttributeSet;
 
+import com.android.xz.opengldemo.gles.ProgramCache;
 import com.android.xz.opengldemo.gles.draw.Square;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -42,6 +43,7 @@ public class SquareGLSurfaceView extends GLSurfaceView {
 
         @Override
         public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+            ProgramCache.getInstance().onContextCreated();
             mSquare.surfaceCreated();
         }
 
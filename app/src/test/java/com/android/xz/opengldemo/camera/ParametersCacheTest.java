@@ -0,0 +1,124 @@
+package com.android.xz.opengldemo.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.hardware.Camera;
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * setParameters失败时缓存回滚到上一次成功的参数，等待中的动作收到失败
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class ParametersCacheTest {
+
+    private Camera mCamera;
+    private Camera.Parameters mParameters;
+    private ParametersCache mCache;
+    private final List<String> mResults = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mCamera = mock(Camera.class);
+        mParameters = mock(Camera.Parameters.class);
+        when(mCamera.getParameters()).thenReturn(mParameters);
+        when(mParameters.flatten()).thenReturn("zoom=0");
+        mCache = new ParametersCache(mCamera, mock(Handler.class));
+    }
+
+    @Test
+    public void commit_success_keepsValue() {
+        mCache.edit().setZoom(3).commit();
+        verify(mParameters).setZoom(3);
+        verify(mCamera).setParameters(mParameters);
+        verify(mParameters, never()).unflatten("zoom=0");
+    }
+
+    @Test
+    public void commit_failure_rollsBackAndThrows() {
+        doThrow(new RuntimeException("setParameters failed")).when(mCamera).setParameters(mParameters);
+        try {
+            mCache.edit().setZoom(5).commit();
+            fail("commit should rethrow");
+        } catch (RuntimeException expected) {
+        }
+        verify(mParameters).unflatten("zoom=0");
+    }
+
+    @Test
+    public void rollback_restoresLastAccepted() {
+        when(mParameters.flatten()).thenReturn("zoom=3");
+        mCache.edit().setZoom(3).commit();
+        doThrow(new RuntimeException("setParameters failed")).when(mCamera).setParameters(mParameters);
+        mCache.edit().setZoom(5).apply();
+        mCache.flush();
+        verify(mParameters).unflatten("zoom=3");
+    }
+
+    @Test
+    public void rejectedValues_areNotResent() {
+        doThrow(new RuntimeException("setParameters failed")).when(mCamera).setParameters(mParameters);
+        mCache.edit().setZoom(5).apply();
+        mCache.flush();
+        // 没有新的修改，不再带着被拒绝的值提交
+        mCache.edit().apply("focus", success -> mResults.add("focus " + success));
+        mCache.flush();
+        verify(mCamera, times(1)).setParameters(mParameters);
+        assertEquals("[focus true]", mResults.toString());
+    }
+
+    @Test
+    public void apply_failure_reportsToEveryAction() {
+        doThrow(new RuntimeException("setParameters failed")).when(mCamera).setParameters(mParameters);
+        mCache.edit().setZoom(5).apply("zoom", success -> mResults.add("zoom " + success));
+        mCache.edit().setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO)
+                .apply("focus", success -> mResults.add("focus " + success));
+        mCache.flush();
+        assertEquals("[zoom false, focus false]", mResults.toString());
+        verify(mParameters).unflatten("zoom=0");
+    }
+
+    @Test
+    public void appliedZoom_ignoresRejectedValue() {
+        when(mParameters.getZoom()).thenReturn(3);
+        mCache.edit().setZoom(3).commit();
+        when(mParameters.getZoom()).thenReturn(5);
+        doThrow(new RuntimeException("setParameters failed")).when(mCamera).setParameters(mParameters);
+        mCache.edit().setZoom(5).apply("zoom", success -> mResults.add("zoom " + success));
+        mCache.flush();
+        assertEquals("[zoom false]", mResults.toString());
+        assertEquals(3, mCache.getAppliedZoom());
+    }
+
+    @Test
+    public void apply_success_runsLastActionPerKey() {
+        mCache.edit().setZoom(1).apply("zoom", success -> mResults.add("zoom 1 " + success));
+        mCache.edit().setZoom(2).apply("zoom", success -> mResults.add("zoom 2 " + success));
+        mCache.flush();
+        assertEquals("[zoom 2 true]", mResults.toString());
+        verify(mCamera, times(1)).setParameters(mParameters);
+    }
+
+    @Test
+    public void release_dropsPendingActions() {
+        mCache.edit().setZoom(1).apply("zoom", success -> mResults.add("zoom " + success));
+        mCache.release();
+        mCache.flush();
+        assertEquals(0, mResults.size());
+        verify(mCamera, never()).setParameters(mParameters);
+    }
+}
@@ -0,0 +1,254 @@
+package com.android.xz.opengldemo.camera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.xz.opengldemo.camera.buffer.PreviewBufferRing;
+import com.android.xz.opengldemo.camera.buffer.PreviewFrameDispatcher;
+import com.android.xz.opengldemo.camera.callback.CameraCallback;
+import com.android.xz.opengldemo.camera.callback.PreviewBufferCallback;
+import com.android.xz.opengldemo.camera.source.FrameSource;
+import com.android.xz.opengldemo.camera.source.Nv21FileFrameSource;
+import com.android.xz.opengldemo.camera.source.PatternFrameSource;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在纯JVM中跑完整的打开、预览、关闭流程：回调顺序、帧数、帧率和两种数据源的内容
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class SyntheticCameraManagerTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private SyntheticCameraManager mManager;
+    private final Events mEvents = new Events();
+
+    @After
+    public void tearDown() {
+        if (mManager != null) {
+            mManager.releaseCamera();
+            mManager.quit();
+        }
+    }
+
+    @Test
+    public void callbacks_openPreviewClose() {
+        FrameCollector collector = new FrameCollector(1);
+        mManager = newManager(new PatternFrameSource(), 0);
+        mManager.openCamera();
+        mManager.addPreviewBufferCallback(collector);
+        mManager.startPreview();
+        assertTrue(collector.await());
+        mManager.releaseCamera();
+        assertEquals(Arrays.asList("open", "preview " + WIDTH + "x" + HEIGHT, "close"), mEvents.get());
+        assertFalse(mManager.isOpen());
+    }
+
+    @Test
+    public void asyncCallbacks_keepCallOrder() throws InterruptedException {
+        mManager = newManager(new PatternFrameSource(), 0);
+        mManager.openCameraAsync();
+        mManager.startPreviewAsync(null);
+        mManager.releaseCameraAsync();
+        assertTrue(mEvents.mClosed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("open", "preview " + WIDTH + "x" + HEIGHT, "close"), mEvents.get());
+    }
+
+    @Test
+    public void maxFrames_deliversPatternFramesInOrder() throws InterruptedException {
+        int maxFrames = 20;
+        FrameCollector collector = new FrameCollector(maxFrames);
+        mManager = newManager(new PatternFrameSource(), 0);
+        mManager.setMaxFrames(maxFrames);
+        mManager.openCamera();
+        addLosslessCallback(collector);
+        mManager.startPreview();
+        assertTrue(collector.await());
+        // 达到上限后不再生成
+        Thread.sleep(100);
+        assertEquals(maxFrames, mManager.getProducedCount());
+
+        List<byte[]> frames = collector.getFrames();
+        assertEquals(maxFrames, frames.size());
+        PatternFrameSource reference = new PatternFrameSource();
+        reference.open(WIDTH, HEIGHT);
+        byte[] expected = new byte[FRAME_SIZE];
+        for (int i = 0; i < maxFrames; i++) {
+            reference.fill(expected, WIDTH, HEIGHT, i);
+            assertArrayEquals("frame " + i, expected, frames.get(i));
+        }
+    }
+
+    @Test
+    public void fps_pacesFrames() {
+        int fps = 30;
+        int maxFrames = 10;
+        FrameCollector collector = new FrameCollector(maxFrames);
+        mManager = newManager(new PatternFrameSource(), fps);
+        mManager.setMaxFrames(maxFrames);
+        mManager.openCamera();
+        addLosslessCallback(collector);
+        long startNs = System.nanoTime();
+        mManager.startPreview();
+        assertTrue(collector.await());
+        long elapsedMs = (System.nanoTime() - startNs) / 1_000_000;
+
+        // 第一帧立即生成，之后每帧间隔1/fps秒
+        long expectedMs = (maxFrames - 1) * 1000L / fps;
+        assertTrue("elapsed " + elapsedMs + "ms", elapsedMs >= expectedMs);
+        assertTrue("elapsed " + elapsedMs + "ms", elapsedMs < expectedMs + 2000);
+        assertEquals(maxFrames, mManager.getProducedCount());
+        assertEquals(maxFrames, collector.getFrames().size());
+    }
+
+    @Test
+    public void nv21File_replaysAndLoops() throws IOException {
+        int fileFrames = 3;
+        File file = mTempFolder.newFile("preview.nv21");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < fileFrames; i++) {
+                out.write(filledFrame(i + 1));
+            }
+        }
+        int maxFrames = 7;
+        FrameCollector collector = new FrameCollector(maxFrames);
+        mManager = newManager(new Nv21FileFrameSource(file), 0);
+        mManager.setMaxFrames(maxFrames);
+        mManager.openCamera();
+        addLosslessCallback(collector);
+        mManager.startPreview();
+        assertTrue(collector.await());
+
+        List<byte[]> frames = collector.getFrames();
+        assertEquals(maxFrames, frames.size());
+        for (int i = 0; i < maxFrames; i++) {
+            assertArrayEquals("frame " + i, filledFrame(i % fileFrames + 1), frames.get(i));
+        }
+    }
+
+    @Test
+    public void nv21FileWithWrongSize_reportsOpenError() throws IOException {
+        File file = mTempFolder.newFile("broken.nv21");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[FRAME_SIZE + 1]);
+        }
+        mManager = newManager(new Nv21FileFrameSource(file), 0);
+        mManager.openCamera();
+        assertFalse(mManager.isOpen());
+        assertEquals(Collections.singletonList("openError " + CameraManager.CAMERA_ERROR_OPEN), mEvents.get());
+    }
+
+    private SyntheticCameraManager newManager(FrameSource source, int fps) {
+        SyntheticCameraManager manager = new SyntheticCameraManager(source, WIDTH, HEIGHT, fps);
+        manager.setCameraCallback(mEvents);
+        return manager;
+    }
+
+    /**
+     * 缓冲环不丢帧，使用者队列容量不小于缓冲区个数，生成的每一帧都会交给callback
+     */
+    private void addLosslessCallback(PreviewBufferCallback callback) {
+        mManager.getPreviewBufferRing().setDropPolicy(PreviewBufferRing.DropPolicy.BLOCK);
+        mManager.addPreviewBufferCallback(callback, PreviewFrameDispatcher.Mode.QUEUE,
+                CameraManager.DEFAULT_PREVIEW_BUFFER_COUNT);
+    }
+
+    private static byte[] filledFrame(int value) {
+        byte[] frame = new byte[FRAME_SIZE];
+        Arrays.fill(frame, (byte) value);
+        return frame;
+    }
+
+    private static class Events implements CameraCallback {
+
+        private final List<String> mEvents = new ArrayList<>();
+        final CountDownLatch mClosed = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onOpen() {
+            mEvents.add("open");
+        }
+
+        @Override
+        public synchronized void onOpenError(int error, String msg) {
+            mEvents.add("openError " + error);
+        }
+
+        @Override
+        public synchronized void onPreview(int previewWidth, int previewHeight) {
+            mEvents.add("preview " + previewWidth + "x" + previewHeight);
+        }
+
+        @Override
+        public synchronized void onPreviewError(int error, String msg) {
+            mEvents.add("previewError " + error);
+        }
+
+        @Override
+        public synchronized void onClose() {
+            mEvents.add("close");
+            mClosed.countDown();
+        }
+
+        synchronized List<String> get() {
+            return new ArrayList<>(mEvents);
+        }
+    }
+
+    private static class FrameCollector implements PreviewBufferCallback {
+
+        private final List<byte[]> mFrames = new ArrayList<>();
+        private final CountDownLatch mLatch;
+
+        FrameCollector(int count) {
+            mLatch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onPreviewBufferFrame(byte[] data, int width, int height) {
+            assertEquals(WIDTH, width);
+            assertEquals(HEIGHT, height);
+            synchronized (this) {
+                // 缓冲区会被复用，拷贝下来比较
+                mFrames.add(data.clone());
+            }
+            mLatch.countDown();
+        }
+
+        boolean await() {
+            try {
+                return mLatch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        synchronized List<byte[]> getFrames() {
+            return new ArrayList<>(mFrames);
+        }
+    }
+}
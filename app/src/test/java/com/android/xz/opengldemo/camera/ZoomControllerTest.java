@@ -0,0 +1,111 @@
+package com.android.xz.opengldemo.camera;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 缩放请求合并、Camera拒绝缩放时GPU裁剪补足，以及更换Camera后重新提交
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class ZoomControllerTest {
+
+    private static final List<Integer> RATIOS = Arrays.asList(100, 150, 200, 300);
+
+    @Test
+    public void setZoom_sentOncePerLevel() {
+        ZoomController controller = new ZoomController();
+        FakeHal hal = new FakeHal();
+        controller.setHal(hal);
+        controller.setZoomRatio(2f);
+        controller.onFrame();
+        controller.onFrame();
+        assertEquals(Arrays.asList(2), hal.mRequests);
+    }
+
+    @Test
+    public void gpuAssist_coversCameraLag() {
+        ZoomController controller = new ZoomController();
+        controller.setHal(new FakeHal());
+        controller.setZoomRatio(2.4f);
+        // Camera还在1x，全部由GPU裁剪
+        assertEquals(2.4f, controller.onFrame(), 1e-4f);
+        controller.onZoomChange(2, true);
+        assertEquals(1.2f, controller.onFrame(), 1e-4f);
+    }
+
+    @Test
+    public void rejectedZoom_cropsFromAppliedLevel() {
+        ZoomController controller = new ZoomController();
+        controller.setHal(new FakeHal());
+        controller.setZoomRatio(3f);
+        controller.onFrame();
+        // setParameters被拒绝，报告Camera实际停留的级别
+        controller.onZoomChange(1, true);
+        assertEquals(1, controller.getAppliedIndex());
+        assertEquals(2f, controller.onFrame(), 1e-4f);
+    }
+
+    @Test
+    public void newHal_resendsFromRenderThread() throws InterruptedException {
+        ZoomController controller = new ZoomController();
+        FakeHal first = new FakeHal();
+        controller.setHal(first);
+        controller.setZoomRatio(2f);
+        controller.onFrame();
+
+        // 与CameraManager一样在其他线程中更换Camera
+        FakeHal second = new FakeHal();
+        Thread cameraThread = new Thread(() -> controller.setHal(second));
+        cameraThread.start();
+        cameraThread.join();
+        controller.onFrame();
+        assertEquals(Arrays.asList(2), first.mRequests);
+        assertEquals(Arrays.asList(2), second.mRequests);
+    }
+
+    @Test
+    public void gpuMode_neverCallsHal() {
+        ZoomController controller = new ZoomController();
+        FakeHal hal = new FakeHal();
+        controller.setHal(hal);
+        controller.setMode(ZoomController.Mode.GPU);
+        controller.setZoomRatio(2f);
+        assertEquals(2f, controller.onFrame(), 0f);
+        assertEquals(0, hal.mRequests.size());
+    }
+
+    private static class FakeHal implements ZoomController.Hal {
+
+        final List<Integer> mRequests = new ArrayList<>();
+
+        @Override
+        public List<Integer> getZoomRatios() {
+            return RATIOS;
+        }
+
+        @Override
+        public boolean isSmoothZoomSupported() {
+            return false;
+        }
+
+        @Override
+        public void setZoom(int index) {
+            mRequests.add(index);
+        }
+
+        @Override
+        public void startSmoothZoom(int index) {
+        }
+
+        @Override
+        public void stopSmoothZoom() {
+        }
+    }
+}
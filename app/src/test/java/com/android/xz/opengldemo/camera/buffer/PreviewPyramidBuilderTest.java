@@ -0,0 +1,171 @@
+package com.android.xz.opengldemo.camera.buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.android.xz.opengldemo.camera.callback.PreviewPyramidCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 金字塔各层与逐像素缩小的参考结果比较，以及只计算被订阅的层级
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class PreviewPyramidBuilderTest {
+
+    // 各层宽高向下取偶数：50x38、24x18、12x8
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 76;
+
+    private final byte[] mFrame = randomFrame();
+
+    @Test
+    public void box_matchesNaive() {
+        PreviewPyramidBuilder builder = new PreviewPyramidBuilder();
+        Recorder recorder = new Recorder();
+        for (int level = 1; level <= PreviewPyramidBuilder.MAX_LEVEL; level++) {
+            builder.addCallback(recorder, level, true);
+        }
+        builder.onPreviewBufferFrame(mFrame, WIDTH, HEIGHT);
+        assertEquals(3, recorder.mLevels.size());
+
+        byte[] src = mFrame;
+        int srcWidth = WIDTH;
+        int srcHeight = HEIGHT;
+        for (int level = 1; level <= PreviewPyramidBuilder.MAX_LEVEL; level++) {
+            int width = (WIDTH >> level) & ~1;
+            int height = (HEIGHT >> level) & ~1;
+            byte[] expected = naiveDownscale(src, srcWidth, srcHeight, width, height, 1);
+            recorder.assertLevel(level, expected, width, height, true);
+            src = expected;
+            srcWidth = width;
+            srcHeight = height;
+        }
+    }
+
+    @Test
+    public void bilinear_matchesNaive() {
+        PreviewPyramidBuilder builder = new PreviewPyramidBuilder();
+        Recorder recorder = new Recorder();
+        for (int level = 1; level <= PreviewPyramidBuilder.MAX_LEVEL; level++) {
+            builder.setFilter(level, PreviewPyramidBuilder.Filter.BILINEAR);
+            builder.addCallback(recorder, level, true);
+        }
+        builder.onPreviewBufferFrame(mFrame, WIDTH, HEIGHT);
+        for (int level = 1; level <= PreviewPyramidBuilder.MAX_LEVEL; level++) {
+            int width = (WIDTH >> level) & ~1;
+            int height = (HEIGHT >> level) & ~1;
+            recorder.assertLevel(level, naiveDownscale(mFrame, WIDTH, HEIGHT, width, height, level),
+                    width, height, true);
+        }
+    }
+
+    @Test
+    public void deepLevelOnly_deliversOnlySubscribedLevel() {
+        PreviewPyramidBuilder builder = new PreviewPyramidBuilder();
+        Recorder recorder = new Recorder();
+        builder.addCallback(recorder, PreviewPyramidBuilder.LEVEL_EIGHTH, false);
+        builder.onPreviewBufferFrame(mFrame, WIDTH, HEIGHT);
+        assertEquals(Arrays.asList(PreviewPyramidBuilder.LEVEL_EIGHTH), recorder.mLevels);
+
+        // 1/8层依赖的1/2、1/4层仍按BOX计算，结果与逐层缩小相同
+        byte[] half = naiveDownscale(mFrame, WIDTH, HEIGHT, 50, 38, 1);
+        byte[] quarter = naiveDownscale(half, 50, 38, 24, 18, 1);
+        recorder.assertLevel(PreviewPyramidBuilder.LEVEL_EIGHTH, naiveDownscale(quarter, 24, 18, 12, 8, 1),
+                12, 8, false);
+    }
+
+    @Test
+    public void tooSmallLevel_isSkipped() {
+        PreviewPyramidBuilder builder = new PreviewPyramidBuilder();
+        Recorder recorder = new Recorder();
+        for (int level = 1; level <= PreviewPyramidBuilder.MAX_LEVEL; level++) {
+            builder.addCallback(recorder, level, false);
+        }
+        // 1/8层宽度为1，不足2
+        builder.onPreviewBufferFrame(randomFrame(), 12, 12);
+        assertEquals(Arrays.asList(PreviewPyramidBuilder.LEVEL_HALF, PreviewPyramidBuilder.LEVEL_QUARTER),
+                recorder.mLevels);
+    }
+
+    @Test
+    public void removeCallback_stopsDelivery() {
+        PreviewPyramidBuilder builder = new PreviewPyramidBuilder();
+        Recorder recorder = new Recorder();
+        builder.addCallback(recorder, PreviewPyramidBuilder.LEVEL_HALF, false);
+        builder.addCallback(recorder, PreviewPyramidBuilder.LEVEL_QUARTER, false);
+        builder.removeCallback(recorder);
+        builder.onPreviewBufferFrame(mFrame, WIDTH, HEIGHT);
+        assertEquals(0, recorder.mLevels.size());
+    }
+
+    private static byte[] randomFrame() {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(5).nextBytes(frame);
+        return frame;
+    }
+
+    /**
+     * 输出像素取源图中心附近2x2的平均：shift为1时即2x2 box，大于1时只在原图上采样
+     */
+    private static byte[] naiveDownscale(byte[] src, int srcWidth, int srcHeight, int width, int height, int shift) {
+        byte[] dst = new byte[width * height * 3 / 2];
+        int offset = (1 << (shift - 1)) - 1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sx = (x << shift) + offset;
+                int sy = (y << shift) + offset;
+                dst[y * width + x] = average(src, sy * srcWidth + sx, 1, srcWidth);
+            }
+        }
+        int srcUv = srcWidth * srcHeight;
+        int dstUv = width * height;
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int sx = (x << shift) + offset;
+                int sy = (y << shift) + offset;
+                int s = srcUv + sy * srcWidth + sx * 2;
+                int d = dstUv + y * width + x * 2;
+                dst[d] = average(src, s, 2, srcWidth);
+                dst[d + 1] = average(src, s + 1, 2, srcWidth);
+            }
+        }
+        return dst;
+    }
+
+    private static byte average(byte[] src, int index, int step, int rowBytes) {
+        int sum = (src[index] & 0xff) + (src[index + step] & 0xff)
+                + (src[index + rowBytes] & 0xff) + (src[index + rowBytes + step] & 0xff);
+        return (byte) Math.round(sum / 4f);
+    }
+
+    private static class Recorder implements PreviewPyramidCallback {
+
+        final List<Integer> mLevels = new ArrayList<>();
+        final List<byte[]> mData = new ArrayList<>();
+        final List<int[]> mSizes = new ArrayList<>();
+
+        @Override
+        public void onPyramidLevel(int level, byte[] data, int width, int height) {
+            mLevels.add(level);
+            // 缓冲区会被复用，拷贝下来比较
+            mData.add(data.clone());
+            mSizes.add(new int[]{width, height});
+        }
+
+        void assertLevel(int level, byte[] expected, int width, int height, boolean withChroma) {
+            int index = mLevels.indexOf(level);
+            assertArrayEquals(new int[]{width, height}, mSizes.get(index));
+            int length = withChroma ? width * height * 3 / 2 : width * height;
+            assertArrayEquals("level " + level, Arrays.copyOf(expected, length),
+                    Arrays.copyOf(mData.get(index), length));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.android.xz.opengldemo.camera.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.ImageFormat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 吞吐预算超出、宽高比不一致、帧率达不到目标时的协商结果，以及按camera id缓存
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class PreviewConfigNegotiatorTest {
+
+    private static final List<int[]> SIZES = Arrays.asList(
+            new int[]{1920, 1080}, new int[]{1440, 1080}, new int[]{1280, 720}, new int[]{640, 480});
+    private static final List<int[]> FPS_30 = Collections.singletonList(new int[]{30000, 30000});
+    private static final List<Integer> NV21 = Collections.singletonList(ImageFormat.NV21);
+
+    @Test
+    public void withinBudget_picksDisplaySize() {
+        PreviewConfig config = PreviewConfigNegotiator.negotiate(SIZES, FPS_30, NV21, budget(1920, 1080));
+        assertConfig(1920, 1080, 30000, config);
+        assertEquals(ImageFormat.NV21, config.getFormat());
+    }
+
+    @Test
+    public void budgetOverflow_excludesLargerSizes() {
+        PreviewBudget budget = new PreviewBudget(30, 1280L * 720 * 30, 1920, 1080, ImageFormat.NV21);
+        assertConfig(1280, 720, 30000, PreviewConfigNegotiator.negotiate(SIZES, FPS_30, NV21, budget));
+    }
+
+    @Test
+    public void budgetOverflow_prefersFullFpsOverFullSize() {
+        // 1080p只能以15fps进入预算，帧率不足的代价高于尺寸偏小
+        PreviewBudget budget = new PreviewBudget(30, 1280L * 720 * 30, 1920, 1080, ImageFormat.NV21);
+        List<int[]> fpsRanges = Arrays.asList(new int[]{15000, 15000}, new int[]{30000, 30000});
+        assertConfig(1280, 720, 30000, PreviewConfigNegotiator.negotiate(SIZES, fpsRanges, NV21, budget));
+    }
+
+    @Test
+    public void allOverBudget_fallsBackToLowestThroughput() {
+        PreviewBudget budget = new PreviewBudget(30, 1000, 1920, 1080, ImageFormat.NV21);
+        List<int[]> fpsRanges = Arrays.asList(new int[]{30000, 30000}, new int[]{10000, 15000});
+        PreviewConfig config = PreviewConfigNegotiator.negotiate(SIZES, fpsRanges, NV21, budget);
+        assertConfig(640, 480, 15000, config);
+        assertEquals(10000, config.getMinFps());
+    }
+
+    @Test
+    public void aspectMismatch_losesToMatchingSmallerSize() {
+        // 4:3的1440x1080面积更大，但宽高比与16:9显示不一致
+        List<int[]> sizes = Arrays.asList(new int[]{1440, 1080}, new int[]{1280, 720});
+        assertConfig(1280, 720, 30000, PreviewConfigNegotiator.negotiate(sizes, FPS_30, NV21, budget(1920, 1080)));
+        assertConfig(1440, 1080, 30000, PreviewConfigNegotiator.negotiate(sizes, FPS_30, NV21, budget(1440, 1080)));
+    }
+
+    @Test
+    public void portraitDisplay_matchesLandscapeSizes() {
+        assertConfig(1920, 1080, 30000, PreviewConfigNegotiator.negotiate(SIZES, FPS_30, NV21, budget(1080, 1920)));
+    }
+
+    @Test
+    public void fpsBelowTarget_fallsBackToHighestAvailable() {
+        List<int[]> fpsRanges = Arrays.asList(new int[]{15000, 15000}, new int[]{7000, 24000});
+        PreviewConfig config = PreviewConfigNegotiator.negotiate(SIZES, fpsRanges, NV21, budget(1920, 1080));
+        assertConfig(1920, 1080, 24000, config);
+        assertEquals(7000, config.getMinFps());
+    }
+
+    @Test
+    public void fpsAboveTarget_prefersClosest() {
+        List<int[]> fpsRanges = Arrays.asList(new int[]{60000, 60000}, new int[]{15000, 30000});
+        assertConfig(1920, 1080, 30000, PreviewConfigNegotiator.negotiate(SIZES, fpsRanges, NV21, budget(1920, 1080)));
+    }
+
+    @Test
+    public void noFpsRanges_usesTargetFps() {
+        assertConfig(1920, 1080, 30000, PreviewConfigNegotiator.negotiate(SIZES, null, NV21, budget(1920, 1080)));
+    }
+
+    @Test
+    public void formats_followBudgetPreference() {
+        PreviewBudget budget = new PreviewBudget(30, PreviewBudget.DEFAULT_MAX_PIXELS_PER_SECOND, 1920, 1080,
+                ImageFormat.YV12, ImageFormat.NV21);
+        List<Integer> formats = Arrays.asList(ImageFormat.NV21, ImageFormat.YV12);
+        assertEquals(ImageFormat.YV12, PreviewConfigNegotiator.negotiate(SIZES, FPS_30, formats, budget).getFormat());
+        // 不可接受的格式不参与协商
+        assertNull(PreviewConfigNegotiator.negotiate(SIZES, FPS_30,
+                Collections.singletonList(ImageFormat.YUY2), budget));
+    }
+
+    @Test
+    public void noSizes_returnsNull() {
+        assertNull(PreviewConfigNegotiator.negotiate(Collections.<int[]>emptyList(), FPS_30, NV21, budget(1920, 1080)));
+    }
+
+    @Test
+    public void cache_reusedUntilBudgetChanges() {
+        PreviewConfigNegotiator negotiator = new PreviewConfigNegotiator();
+        PreviewConfig first = negotiator.negotiate("0", SIZES, FPS_30, NV21, budget(1920, 1080));
+        assertSame(first, negotiator.negotiate("0", SIZES, FPS_30, NV21, budget(1920, 1080)));
+        assertSame(first, negotiator.getCached("0"));
+
+        PreviewConfig changed = negotiator.negotiate("0", SIZES, FPS_30, NV21, budget(1440, 1080));
+        assertConfig(1440, 1080, 30000, changed);
+
+        negotiator.invalidate("0");
+        assertNull(negotiator.getCached("0"));
+        assertNotSame(changed, negotiator.negotiate("0", SIZES, FPS_30, NV21, budget(1440, 1080)));
+    }
+
+    private static PreviewBudget budget(int displayWidth, int displayHeight) {
+        return new PreviewBudget(PreviewBudget.DEFAULT_TARGET_FPS, PreviewBudget.DEFAULT_MAX_PIXELS_PER_SECOND,
+                displayWidth, displayHeight, ImageFormat.NV21);
+    }
+
+    private static void assertConfig(int width, int height, int maxFps, PreviewConfig config) {
+        assertEquals(width + "x" + height + "@" + maxFps, config.getWidth() + "x" + config.getHeight()
+                + "@" + config.getMaxFps());
+    }
+}
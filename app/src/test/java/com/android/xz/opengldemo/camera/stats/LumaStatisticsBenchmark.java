@@ -0,0 +1,94 @@
+package com.android.xz.opengldemo.camera.stats;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LumaStatistics}每帧统计耗时的JMH基准测试，按分辨率和采样间隔比较
+ * <p>
+ * 默认不运行，执行：./gradlew :app:testReleaseUnitTest --tests '*LumaStatisticsBenchmark' -Pjmh
+ * JMH输出每帧耗时，结束后再按像素数换算成每百万像素耗时打印，便于不同分辨率之间比较。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class LumaStatisticsBenchmark {
+
+    @Param({"640x480", "1280x720", "1440x1080"})
+    public String size;
+
+    @Param({"1", "2", "4"})
+    public int stride;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mNv21;
+    private LumaStatistics mStatistics;
+
+    @Setup
+    public void setup() {
+        int[] wh = parseSize(size);
+        mWidth = wh[0];
+        mHeight = wh[1];
+        mNv21 = new byte[mWidth * mHeight * 3 / 2];
+        new Random(1).nextBytes(mNv21);
+        mStatistics = new LumaStatistics();
+        mStatistics.setStride(stride);
+    }
+
+    @Benchmark
+    public LumaStatistics statistics() {
+        mStatistics.onPreviewBufferFrame(mNv21, mWidth, mHeight);
+        return mStatistics;
+    }
+
+    private static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    /**
+     * 通过单元测试任务启动，在当前进程中运行
+     */
+    @Test
+    public void run() throws RunnerException {
+        Assume.assumeTrue("run with -Pjmh", Boolean.getBoolean("jmh"));
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(LumaStatisticsBenchmark.class.getName())
+                .build()).run();
+        System.out.println("Time per megapixel:");
+        for (RunResult result : results) {
+            String size = result.getParams().getParam("size");
+            int[] wh = parseSize(size);
+            double megapixels = wh[0] * wh[1] / 1e6;
+            System.out.printf("%-10s stride=%s  %8.2f %s/MP%n", size, result.getParams().getParam("stride"),
+                    result.getPrimaryResult().getScore() / megapixels,
+                    result.getPrimaryResult().getScoreUnit().replace("/op", ""));
+        }
+    }
+}
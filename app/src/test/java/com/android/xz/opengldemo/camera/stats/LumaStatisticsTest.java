@@ -0,0 +1,163 @@
+package com.android.xz.opengldemo.camera.stats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 采样统计与逐像素全图遍历的参考结果比较，以及配置生效时机和结果发布
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class LumaStatisticsTest {
+
+    // 宽高不是采样间隔和分块数的整数倍
+    private static final int WIDTH = 101;
+    private static final int HEIGHT = 75;
+
+    @Test
+    public void defaultConfig_matchesNaive() {
+        LumaStatistics statistics = new LumaStatistics();
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        statistics.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        assertMatchesNaive(latest(statistics), frame, WIDTH, HEIGHT, LumaStatistics.DEFAULT_STRIDE,
+                LumaStatistics.DEFAULT_TILE_COLS, LumaStatistics.DEFAULT_TILE_ROWS,
+                LumaStatistics.DEFAULT_CLIP_LOW, LumaStatistics.DEFAULT_CLIP_HIGH);
+    }
+
+    @Test
+    public void allStrides_matchNaive() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        for (int stride = 1; stride <= 7; stride++) {
+            LumaStatistics statistics = new LumaStatistics();
+            statistics.setStride(stride);
+            statistics.setTileGrid(5, 2);
+            statistics.setClipThresholds(20, 230);
+            statistics.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+            assertMatchesNaive(latest(statistics), frame, WIDTH, HEIGHT, stride, 5, 2, 20, 230);
+        }
+    }
+
+    @Test
+    public void configChange_appliesToNextFrame() {
+        LumaStatistics statistics = new LumaStatistics();
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        statistics.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        statistics.setStride(2);
+        statistics.setTileGrid(3, 3);
+        statistics.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        LumaStats stats = latest(statistics);
+        assertEquals(2, stats.getFrameNumber());
+        assertMatchesNaive(stats, frame, WIDTH, HEIGHT, 2, 3, 3,
+                LumaStatistics.DEFAULT_CLIP_LOW, LumaStatistics.DEFAULT_CLIP_HIGH);
+    }
+
+    @Test
+    public void tooSmallFrame_hasNoSamples() {
+        LumaStatistics statistics = new LumaStatistics();
+        statistics.onPreviewBufferFrame(new byte[3], 1, 2);
+        LumaStats stats = latest(statistics);
+        assertEquals(0, stats.getSampleCount());
+        assertEquals(0f, stats.getMean(), 0f);
+        assertEquals(0f, stats.getSharpness(), 0f);
+    }
+
+    @Test
+    public void listener_receivesPublishedStats() {
+        LumaStatistics statistics = new LumaStatistics();
+        assertFalse(statistics.copyLatest(new LumaStats()));
+        List<Long> frames = new ArrayList<>();
+        List<LumaStats> received = new ArrayList<>();
+        statistics.addListener(stats -> {
+            frames.add(stats.getFrameNumber());
+            received.add(stats);
+        });
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        statistics.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        statistics.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        statistics.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        assertEquals(3, frames.size());
+        assertEquals(Long.valueOf(1), frames.get(0));
+        assertEquals(Long.valueOf(3), frames.get(2));
+        // 两份结果交替使用
+        assertSame(received.get(0), received.get(2));
+    }
+
+    private static byte[] randomFrame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        new Random(9).nextBytes(frame);
+        return frame;
+    }
+
+    private static LumaStats latest(LumaStatistics statistics) {
+        LumaStats stats = new LumaStats();
+        assertTrue(statistics.copyLatest(stats));
+        return stats;
+    }
+
+    /**
+     * 遍历整张亮度平面，横纵坐标都是stride整数倍、且有右、下相邻像素的点为采样点
+     */
+    private static void assertMatchesNaive(LumaStats stats, byte[] frame, int width, int height, int stride,
+                                           int tileCols, int tileRows, int clipLow, int clipHigh) {
+        int[] histogram = new int[LumaStats.HISTOGRAM_SIZE];
+        long[] tileSums = new long[tileCols * tileRows];
+        long[] tileGradients = new long[tileCols * tileRows];
+        int[] tileCounts = new int[tileCols * tileRows];
+        long count = 0;
+        long sum = 0;
+        long gradient = 0;
+        long low = 0;
+        long high = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x % stride != 0 || y % stride != 0 || x + 1 >= width || y + 1 >= height) {
+                    continue;
+                }
+                int v = frame[y * width + x] & 0xff;
+                int gx = (frame[y * width + x + 1] & 0xff) - v;
+                int gy = (frame[(y + 1) * width + x] & 0xff) - v;
+                int g = gx * gx + gy * gy;
+                histogram[v]++;
+                count++;
+                sum += v;
+                gradient += g;
+                if (v <= clipLow) {
+                    low++;
+                }
+                if (v >= clipHigh) {
+                    high++;
+                }
+                int tile = y * tileRows / height * tileCols + x * tileCols / width;
+                tileSums[tile] += v;
+                tileGradients[tile] += g;
+                tileCounts[tile]++;
+            }
+        }
+        String message = "stride " + stride;
+        assertArrayEquals(message, histogram, stats.getHistogram());
+        assertEquals(message, count, stats.getSampleCount());
+        assertEquals(message, (double) sum / count, stats.getMean(), 1e-3);
+        assertEquals(message, (double) low / count, stats.getClipLowRatio(), 1e-6);
+        assertEquals(message, (double) high / count, stats.getClipHighRatio(), 1e-6);
+        assertEquals(message, (double) gradient / count, stats.getSharpness(), 1e-2);
+        assertEquals(tileCols, stats.getTileCols());
+        assertEquals(tileRows, stats.getTileRows());
+        for (int i = 0; i < tileCounts.length; i++) {
+            assertTrue(message + " tile " + i, tileCounts[i] > 0);
+            assertEquals(message + " tile " + i, (double) tileSums[i] / tileCounts[i],
+                    stats.getTileMeans()[i], 1e-3);
+            assertEquals(message + " tile " + i, (double) tileGradients[i] / tileCounts[i],
+                    stats.getTileSharpness()[i], 1e-2);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.android.xz.opengldemo.camera.stats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * 分块差分与逐块平均亮度的参考结果比较，以及{@link MotionGate}的过滤行为
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class MotionDetectorTest {
+
+    // 宽高都不是块大小的整数倍，边缘不足一块的部分不参与检测
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+
+    @Test
+    public void firstFrame_isFullMotion() {
+        MotionDetector detector = new MotionDetector();
+        assertEquals(1f, detector.detect(randomFrame(1), WIDTH, HEIGHT), 0f);
+        assertEquals(6, detector.getBlockCols());
+        assertEquals(4, detector.getBlockRows());
+        assertEquals(24, detector.getMotionBlockCount());
+    }
+
+    @Test
+    public void sameFrame_isStatic() {
+        MotionDetector detector = new MotionDetector();
+        byte[] frame = randomFrame(1);
+        detector.detect(frame, WIDTH, HEIGHT);
+        detector.updateReference();
+        assertEquals(0f, detector.detect(frame, WIDTH, HEIGHT), 0f);
+    }
+
+    @Test
+    public void changedBlock_isMarked() {
+        MotionDetector detector = new MotionDetector();
+        byte[] frame = flatFrame(100);
+        detector.detect(frame, WIDTH, HEIGHT);
+        detector.updateReference();
+        // 第2行第3列的块整体变亮
+        fillBlock(frame, 3, 2, 16, 160);
+        assertEquals(1f / 24, detector.detect(frame, WIDTH, HEIGHT), 1e-6f);
+        byte[] expected = new byte[24];
+        expected[2 * 6 + 3] = 1;
+        assertArrayEquals(expected, detector.getMotionMask());
+    }
+
+    @Test
+    public void changeBelowThreshold_isIgnored() {
+        MotionDetector detector = new MotionDetector();
+        detector.detect(flatFrame(100), WIDTH, HEIGHT);
+        detector.updateReference();
+        assertEquals(0f, detector.detect(flatFrame(100 + MotionDetector.DEFAULT_BLOCK_THRESHOLD), WIDTH, HEIGHT), 0f);
+        assertEquals(1f, detector.detect(flatFrame(101 + MotionDetector.DEFAULT_BLOCK_THRESHOLD), WIDTH, HEIGHT), 0f);
+    }
+
+    @Test
+    public void edgeOutsideBlocks_isIgnored() {
+        MotionDetector detector = new MotionDetector();
+        byte[] frame = flatFrame(100);
+        detector.detect(frame, WIDTH, HEIGHT);
+        detector.updateReference();
+        // 右边96~99列和下边64~69行不属于任何块
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 96; x < WIDTH; x++) {
+                frame[y * WIDTH + x] = (byte) 255;
+            }
+        }
+        for (int y = 64; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                frame[y * WIDTH + x] = (byte) 255;
+            }
+        }
+        assertEquals(0f, detector.detect(frame, WIDTH, HEIGHT), 0f);
+    }
+
+    @Test
+    public void randomFrames_matchNaive() {
+        int[][] params = {{16, 4}, {16, 1}, {8, 3}, {10, 10}};
+        for (int[] p : params) {
+            MotionDetector detector = new MotionDetector(p[0], p[1]);
+            detector.setBlockThreshold(20);
+            byte[] reference = randomFrame(2);
+            byte[] current = randomFrame(3);
+            detector.detect(reference, WIDTH, HEIGHT);
+            detector.updateReference();
+            float score = detector.detect(current, WIDTH, HEIGHT);
+            byte[] expected = naiveMask(reference, current, p[0], p[1], 20);
+            assertArrayEquals("block " + p[0] + " stride " + p[1], expected, detector.getMotionMask());
+            int count = 0;
+            for (byte b : expected) {
+                count += b;
+            }
+            assertEquals((float) count / expected.length, score, 1e-6f);
+        }
+    }
+
+    @Test
+    public void resize_resetsReference() {
+        MotionDetector detector = new MotionDetector();
+        byte[] frame = randomFrame(1);
+        detector.detect(frame, WIDTH, HEIGHT);
+        detector.updateReference();
+        assertEquals(1f, detector.detect(frame, WIDTH / 2, HEIGHT / 2), 0f);
+    }
+
+    @Test
+    public void gate_skipsStaticFrames() {
+        int[] delivered = new int[1];
+        MotionGate gate = new MotionGate((data, width, height) -> delivered[0]++, 0.1f);
+        byte[] frame = flatFrame(100);
+        gate.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        gate.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        gate.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        assertEquals(1, delivered[0]);
+        assertEquals(2, gate.getSkippedCount());
+        gate.onPreviewBufferFrame(flatFrame(200), WIDTH, HEIGHT);
+        assertEquals(2, delivered[0]);
+    }
+
+    @Test
+    public void gate_forcesFrameAfterMaxSkip() {
+        int[] delivered = new int[1];
+        MotionGate gate = new MotionGate((data, width, height) -> delivered[0]++, 0.1f);
+        gate.setMaxSkipFrames(2);
+        byte[] frame = flatFrame(100);
+        for (int i = 0; i < 7; i++) {
+            gate.onPreviewBufferFrame(frame, WIDTH, HEIGHT);
+        }
+        // 第1帧，之后每跳过2帧送1帧
+        assertEquals(3, delivered[0]);
+    }
+
+    @Test
+    public void gate_accumulatesSlowChange() {
+        int[] delivered = new int[1];
+        MotionGate gate = new MotionGate((data, width, height) -> delivered[0]++, 0.5f);
+        gate.onPreviewBufferFrame(flatFrame(100), WIDTH, HEIGHT);
+        // 每帧只变化阈值以内，参考帧是上次送出的帧，累计超过阈值后送出
+        int level = 100;
+        for (int i = 0; i < 3; i++) {
+            level += MotionDetector.DEFAULT_BLOCK_THRESHOLD / 2 + 1;
+            gate.onPreviewBufferFrame(flatFrame(level), WIDTH, HEIGHT);
+        }
+        assertEquals(2, delivered[0]);
+    }
+
+    private static byte[] randomFrame(long seed) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    private static byte[] flatFrame(int luma) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            frame[i] = (byte) luma;
+        }
+        return frame;
+    }
+
+    private static void fillBlock(byte[] frame, int col, int row, int blockSize, int luma) {
+        for (int y = row * blockSize; y < (row + 1) * blockSize; y++) {
+            for (int x = col * blockSize; x < (col + 1) * blockSize; x++) {
+                frame[y * WIDTH + x] = (byte) luma;
+            }
+        }
+    }
+
+    /**
+     * 逐块计算采样点的平均亮度，平均值之差超过阈值记为运动
+     */
+    private static byte[] naiveMask(byte[] reference, byte[] current, int blockSize, int stride, int threshold) {
+        int cols = WIDTH / blockSize;
+        int rows = HEIGHT / blockSize;
+        byte[] mask = new byte[cols * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                double diff = 0;
+                int samples = 0;
+                for (int y = row * blockSize; y < (row + 1) * blockSize; y++) {
+                    for (int x = col * blockSize; x < (col + 1) * blockSize; x++) {
+                        if ((y - row * blockSize) % stride == 0 && (x - col * blockSize) % stride == 0) {
+                            diff += (current[y * WIDTH + x] & 0xff) - (reference[y * WIDTH + x] & 0xff);
+                            samples++;
+                        }
+                    }
+                }
+                mask[row * cols + col] = (byte) (Math.abs(diff / samples) > threshold ? 1 : 0);
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,69 @@
+package com.android.xz.opengldemo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888平面VU交错判断，只有V在前、U在后共用同一块内存时才成立
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class ImageUtilsTest {
+
+    private static final int CHROMA_SIZE = 16;
+
+    @Test
+    public void vuSharedMemory_isInterleaved() {
+        ByteBuffer chroma = filledChroma();
+        ByteBuffer v = slice(chroma, 0, CHROMA_SIZE - 1);
+        ByteBuffer u = slice(chroma, 1, CHROMA_SIZE - 1);
+        assertTrue(ImageUtils.isVuInterleaved(u, v));
+        // 探测后恢复原值
+        assertEquals(filledChroma(), chroma);
+    }
+
+    @Test
+    public void uvSharedMemory_isNotInterleaved() {
+        ByteBuffer chroma = filledChroma();
+        ByteBuffer u = slice(chroma, 0, CHROMA_SIZE - 1);
+        ByteBuffer v = slice(chroma, 1, CHROMA_SIZE - 1);
+        assertFalse(ImageUtils.isVuInterleaved(u, v));
+        assertEquals(filledChroma(), chroma);
+    }
+
+    @Test
+    public void separatePlanes_areNotInterleaved() {
+        // 两块内存的内容恰好错开一个字节相同，只比较内容会误判
+        ByteBuffer v = filledChroma();
+        ByteBuffer u = slice(filledChroma(), 1, CHROMA_SIZE - 1);
+        assertFalse(ImageUtils.isVuInterleaved(u, v));
+    }
+
+    @Test
+    public void readOnlyPlanes_areNotInterleaved() {
+        ByteBuffer chroma = filledChroma();
+        ByteBuffer v = slice(chroma, 0, CHROMA_SIZE - 1).asReadOnlyBuffer();
+        ByteBuffer u = slice(chroma, 1, CHROMA_SIZE - 1).asReadOnlyBuffer();
+        assertFalse(ImageUtils.isVuInterleaved(u, v));
+    }
+
+    private static ByteBuffer filledChroma() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHROMA_SIZE);
+        for (int i = 0; i < CHROMA_SIZE; i++) {
+            buffer.put(i, (byte) (i * 7));
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset).limit(offset + length);
+        return duplicate.slice();
+    }
+}
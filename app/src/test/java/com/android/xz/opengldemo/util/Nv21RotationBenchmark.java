@@ -0,0 +1,136 @@
+package com.android.xz.opengldemo.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NV21旋转的JMH基准测试，逐像素循环、分块的{@link ImageUtils#rotateNv21}与多条带{@link Nv21Rotator}
+ * <p>
+ * 默认不运行，执行：./gradlew :app:testReleaseUnitTest --tests '*Nv21RotationBenchmark' -Pjmh
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class Nv21RotationBenchmark {
+
+    @Param({"640x480", "1280x720", "1440x1080"})
+    public String size;
+
+    @Param({"0", "90", "180", "270"})
+    public int rotation;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mSrc;
+    private byte[] mDst;
+    private ForkJoinPool mPool;
+    private Nv21Rotator mRotator;
+
+    @Setup
+    public void setup() {
+        String[] parts = size.split("x");
+        mWidth = Integer.parseInt(parts[0]);
+        mHeight = Integer.parseInt(parts[1]);
+        mSrc = new byte[mWidth * mHeight * 3 / 2];
+        new Random(1).nextBytes(mSrc);
+        mDst = new byte[mSrc.length];
+        int threads = Runtime.getRuntime().availableProcessors();
+        mPool = new ForkJoinPool(threads);
+        mRotator = new Nv21Rotator(mPool, threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] naive() {
+        naiveRotate(mSrc, mWidth, mHeight, rotation, mDst);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] tiled() {
+        ImageUtils.rotateNv21(mSrc, mWidth, mHeight, rotation, false, mDst);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] striped() {
+        mRotator.rotate(mSrc, mWidth, mHeight, rotation, false, mDst);
+        return mDst;
+    }
+
+    /**
+     * 按源图顺序逐像素读取，计算每个像素在目标图中的位置写入
+     */
+    private static void naiveRotate(byte[] src, int width, int height, int rotation, byte[] dst) {
+        int dstWidth = rotation % 180 == 0 ? width : height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                dst[targetIndex(x, y, width, height, dstWidth, rotation)] = src[y * width + x];
+            }
+        }
+        int uvOffset = width * height;
+        int uvWidth = width / 2;
+        int uvHeight = height / 2;
+        for (int y = 0; y < uvHeight; y++) {
+            for (int x = 0; x < uvWidth; x++) {
+                int s = uvOffset + y * width + x * 2;
+                int d = uvOffset + targetIndex(x, y, uvWidth, uvHeight, dstWidth / 2, rotation) * 2;
+                dst[d] = src[s];
+                dst[d + 1] = src[s + 1];
+            }
+        }
+    }
+
+    private static int targetIndex(int x, int y, int width, int height, int dstWidth, int rotation) {
+        switch (rotation) {
+            case 90:
+                return x * dstWidth + height - 1 - y;
+            case 180:
+                return (height - 1 - y) * dstWidth + width - 1 - x;
+            case 270:
+                return (width - 1 - x) * dstWidth + y;
+            default:
+                return y * dstWidth + x;
+        }
+    }
+
+    /**
+     * 通过单元测试任务启动，在当前进程中运行
+     */
+    @Test
+    public void run() throws RunnerException {
+        Assume.assumeTrue("run with -Pjmh", Boolean.getBoolean("jmh"));
+        new Runner(new OptionsBuilder()
+                .include(Nv21RotationBenchmark.class.getName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,143 @@
+package com.android.xz.opengldemo.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 分块旋转与逐像素旋转的结果逐字节比较，覆盖所有角度、镜像，单线程和多条带
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class Nv21RotatorTest {
+
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+    // 包含不是32整数倍的尺寸，覆盖分块的边缘
+    private static final int[][] SIZES = {{2, 2}, {32, 32}, {64, 48}, {166, 134}, {320, 240}, {350, 262}};
+
+    private static final ForkJoinPool sPool = new ForkJoinPool(3);
+
+    @AfterClass
+    public static void tearDown() {
+        sPool.shutdown();
+    }
+
+    @Test
+    public void rotateNv21_matchesNaive() {
+        for (int[] size : SIZES) {
+            byte[] src = randomFrame(size[0], size[1]);
+            for (int rotation : ROTATIONS) {
+                for (boolean mirror : new boolean[]{false, true}) {
+                    byte[] expected = naiveRotate(src, size[0], size[1], rotation, mirror);
+                    byte[] actual = new byte[expected.length];
+                    ImageUtils.rotateNv21(src, size[0], size[1], rotation, mirror, actual);
+                    assertArrayEquals(message(size, rotation, mirror), expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotator_serialMatchesNaive() {
+        checkRotator(new Nv21Rotator());
+    }
+
+    @Test
+    public void rotator_stripedMatchesNaive() {
+        checkRotator(new Nv21Rotator(sPool, 4));
+    }
+
+    @Test
+    public void rotator_reusesPooledBuffer() {
+        Nv21Rotator rotator = new Nv21Rotator();
+        byte[] src = randomFrame(64, 48);
+        byte[] first = rotator.rotate(src, 64, 48, 90, false);
+        rotator.release(first);
+        byte[] second = rotator.rotate(src, 64, 48, 270, true);
+        assertEquals(first, second);
+        assertArrayEquals(naiveRotate(src, 64, 48, 270, true), second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotateNv21_rejectsInvalidRotation() {
+        byte[] src = new byte[4 * 4 * 3 / 2];
+        ImageUtils.rotateNv21(src, 4, 4, 45, false, new byte[src.length]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotateNv21_rejectsSameBuffer() {
+        byte[] src = new byte[4 * 4 * 3 / 2];
+        ImageUtils.rotateNv21(src, 4, 4, 90, false, src);
+    }
+
+    private static void checkRotator(Nv21Rotator rotator) {
+        for (int[] size : SIZES) {
+            byte[] src = randomFrame(size[0], size[1]);
+            for (int rotation : ROTATIONS) {
+                for (boolean mirror : new boolean[]{false, true}) {
+                    byte[] expected = naiveRotate(src, size[0], size[1], rotation, mirror);
+                    byte[] actual = rotator.rotate(src, size[0], size[1], rotation, mirror);
+                    assertArrayEquals(message(size, rotation, mirror), expected, actual);
+                    rotator.release(actual);
+                }
+            }
+        }
+    }
+
+    private static String message(int[] size, int rotation, boolean mirror) {
+        return size[0] + "x" + size[1] + " rotation " + rotation + " mirror " + mirror;
+    }
+
+    static byte[] randomFrame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        new Random(width * 31L + height).nextBytes(frame);
+        return frame;
+    }
+
+    /**
+     * 逐像素参考实现：目标像素先取镜像前的位置，再按顺时针旋转反推源像素
+     */
+    static byte[] naiveRotate(byte[] src, int width, int height, int rotation, boolean mirror) {
+        int dstWidth = rotation % 180 == 0 ? width : height;
+        int dstHeight = rotation % 180 == 0 ? height : width;
+        byte[] dst = new byte[width * height * 3 / 2];
+        for (int y = 0; y < dstHeight; y++) {
+            for (int x = 0; x < dstWidth; x++) {
+                int[] p = sourcePoint(mirror ? dstWidth - 1 - x : x, y, width, height, rotation);
+                dst[y * dstWidth + x] = src[p[1] * width + p[0]];
+            }
+        }
+        int uvOffset = width * height;
+        int uvWidth = width / 2;
+        int uvHeight = height / 2;
+        for (int y = 0; y < dstHeight / 2; y++) {
+            for (int x = 0; x < dstWidth / 2; x++) {
+                int[] p = sourcePoint(mirror ? dstWidth / 2 - 1 - x : x, y, uvWidth, uvHeight, rotation);
+                int s = uvOffset + p[1] * width + p[0] * 2;
+                int d = uvOffset + y * dstWidth + x * 2;
+                dst[d] = src[s];
+                dst[d + 1] = src[s + 1];
+            }
+        }
+        return dst;
+    }
+
+    private static int[] sourcePoint(int x, int y, int width, int height, int rotation) {
+        switch (rotation) {
+            case 90:
+                return new int[]{y, height - 1 - x};
+            case 180:
+                return new int[]{width - 1 - x, height - 1 - y};
+            case 270:
+                return new int[]{width - 1 - y, x};
+            default:
+                return new int[]{x, y};
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.android.xz.opengldemo.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * 视图裁剪、下采样与逐像素拷贝的参考结果比较，视图直接交给转换和旋转时与先拷贝再处理的结果一致
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class Nv21ViewTest {
+
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+
+    private final byte[] mFrame = Nv21RotatorTest.randomFrame(WIDTH, HEIGHT);
+
+    @Test
+    public void wrap_isCompact() {
+        Nv21View view = Nv21View.wrap(mFrame, WIDTH, HEIGHT);
+        assertTrue(view.isCompact());
+        byte[] copy = new byte[view.getFrameSize()];
+        view.copyTo(copy);
+        assertArrayEquals(mFrame, copy);
+    }
+
+    @Test
+    public void crop_matchesNaive() {
+        int[][] crops = {{0, 0, WIDTH, HEIGHT}, {2, 4, 40, 30}, {WIDTH - 10, HEIGHT - 6, 10, 6}, {32, 32, 2, 2}};
+        for (int[] c : crops) {
+            Nv21View view = Nv21View.wrap(mFrame, WIDTH, HEIGHT).crop(c[0], c[1], c[2], c[3]);
+            assertEquals(c[2], view.getWidth());
+            assertEquals(c[3], view.getHeight());
+            byte[] copy = new byte[view.getFrameSize()];
+            view.copyTo(copy);
+            assertArrayEquals(c[0] + "," + c[1] + " " + c[2] + "x" + c[3],
+                    naiveCrop(mFrame, WIDTH, HEIGHT, c[0], c[1], c[2], c[3]), copy);
+        }
+    }
+
+    @Test
+    public void cropOfCrop_isRelative() {
+        Nv21View view = Nv21View.wrap(mFrame, WIDTH, HEIGHT).crop(10, 8, 60, 40).crop(4, 2, 20, 10);
+        byte[] copy = new byte[view.getFrameSize()];
+        view.copyTo(copy);
+        assertArrayEquals(naiveCrop(mFrame, WIDTH, HEIGHT, 14, 10, 20, 10), copy);
+        assertFalse(view.isCompact());
+    }
+
+    @Test
+    public void subsample_matchesNaive() {
+        for (int factor = 1; factor <= 5; factor++) {
+            Nv21View view = Nv21View.wrap(mFrame, WIDTH, HEIGHT).subsample(factor);
+            byte[] copy = new byte[view.getFrameSize()];
+            view.copyTo(copy);
+            assertArrayEquals("factor " + factor, naiveSubsample(mFrame, WIDTH, HEIGHT, factor), copy);
+        }
+    }
+
+    @Test
+    public void paddedRows_copyToCompact() {
+        // 行尾有填充，类似Camera2的Image平面
+        int rowStride = WIDTH + 16;
+        byte[] padded = new byte[rowStride * HEIGHT * 3 / 2];
+        new Random(7).nextBytes(padded);
+        for (int row = 0; row < HEIGHT; row++) {
+            System.arraycopy(mFrame, row * WIDTH, padded, row * rowStride, WIDTH);
+        }
+        int uvOffset = rowStride * HEIGHT;
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            System.arraycopy(mFrame, WIDTH * HEIGHT + row * WIDTH, padded, uvOffset + row * rowStride, WIDTH);
+        }
+        Nv21View view = new Nv21View(padded, WIDTH, HEIGHT, 0, rowStride, 1, uvOffset, rowStride, 2);
+        assertFalse(view.isCompact());
+        byte[] copy = new byte[view.getFrameSize()];
+        view.copyTo(copy);
+        assertArrayEquals(mFrame, copy);
+    }
+
+    @Test
+    public void convertView_matchesConvertCopy() {
+        Nv21View view = Nv21View.wrap(mFrame, WIDTH, HEIGHT).crop(6, 4, 50, 36).subsample(2);
+        byte[] copy = new byte[view.getFrameSize()];
+        view.copyTo(copy);
+        int[] expected = new int[view.getWidth() * view.getHeight()];
+        ImageUtils.nv21ToArgb(copy, view.getWidth(), view.getHeight(), expected);
+        int[] actual = new int[expected.length];
+        ImageUtils.nv21ToArgb(view, actual);
+        assertArrayEquals(expected, actual);
+        new YuvConverter().nv21ToArgb(view, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void rotateView_matchesRotateCopy() {
+        Nv21View view = Nv21View.wrap(mFrame, WIDTH, HEIGHT).crop(2, 6, 42, 34);
+        byte[] copy = new byte[view.getFrameSize()];
+        view.copyTo(copy);
+        Nv21Rotator rotator = new Nv21Rotator();
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            for (boolean mirror : new boolean[]{false, true}) {
+                byte[] expected = Nv21RotatorTest.naiveRotate(copy, view.getWidth(), view.getHeight(), rotation, mirror);
+                byte[] actual = new byte[expected.length];
+                ImageUtils.rotateNv21(view, rotation, mirror, actual);
+                assertArrayEquals("rotation " + rotation + " mirror " + mirror, expected, actual);
+                byte[] pooled = rotator.rotate(view, rotation, mirror);
+                assertArrayEquals("rotator " + rotation + " mirror " + mirror, expected, pooled);
+                rotator.release(pooled);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void crop_rejectsOddOrigin() {
+        Nv21View.wrap(mFrame, WIDTH, HEIGHT).crop(1, 0, 10, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void crop_rejectsOutOfBounds() {
+        Nv21View.wrap(mFrame, WIDTH, HEIGHT).crop(WIDTH - 8, 0, 10, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsViewOutOfBuffer() {
+        new Nv21View(mFrame, WIDTH, HEIGHT, 0, WIDTH, 1, WIDTH * HEIGHT + 2, WIDTH, 2);
+    }
+
+    private static byte[] naiveCrop(byte[] src, int width, int height, int left, int top, int w, int h) {
+        byte[] dst = new byte[w * h * 3 / 2];
+        int d = 0;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                dst[d++] = src[(top + y) * width + left + x];
+            }
+        }
+        for (int y = 0; y < h / 2; y++) {
+            for (int x = 0; x < w; x++) {
+                dst[d++] = src[width * height + (top / 2 + y) * width + left + x];
+            }
+        }
+        return dst;
+    }
+
+    private static byte[] naiveSubsample(byte[] src, int width, int height, int factor) {
+        int w = width / factor & ~1;
+        int h = height / factor & ~1;
+        byte[] dst = new byte[w * h * 3 / 2];
+        int d = 0;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                dst[d++] = src[y * factor * width + x * factor];
+            }
+        }
+        for (int y = 0; y < h / 2; y++) {
+            for (int x = 0; x < w / 2; x++) {
+                int s = width * height + y * factor * width + x * factor * 2;
+                dst[d++] = src[s];
+                dst[d++] = src[s + 1];
+            }
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,108 @@
+package com.android.xz.opengldemo.util;
+
+import android.graphics.ImageFormat;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YUV转RGB的JMH基准测试，单线程{@link ImageUtils}与多条带{@link YuvConverter}
+ * <p>
+ * 默认不运行，执行：./gradlew :app:testReleaseUnitTest --tests '*YuvConversionBenchmark' -Pjmh
+ * 结果在JVM上测得，只用于比较不同实现，和设备上ART的绝对耗时不同。
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class YuvConversionBenchmark {
+
+    @Param({"640x480", "1280x720", "1440x1080"})
+    public String size;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mNv21;
+    private byte[] mYv12;
+    private int[] mArgb;
+    private byte[] mRgba;
+    private YuvConverter mConverter;
+
+    @Setup
+    public void setup() {
+        String[] parts = size.split("x");
+        mWidth = Integer.parseInt(parts[0]);
+        mHeight = Integer.parseInt(parts[1]);
+        Random random = new Random(1);
+        mNv21 = new byte[ImageUtils.getYuvFrameSize(ImageFormat.NV21, mWidth, mHeight)];
+        random.nextBytes(mNv21);
+        mYv12 = new byte[ImageUtils.getYuvFrameSize(ImageFormat.YV12, mWidth, mHeight)];
+        random.nextBytes(mYv12);
+        mArgb = new int[mWidth * mHeight];
+        mRgba = new byte[mWidth * mHeight * 4];
+        mConverter = new YuvConverter();
+    }
+
+    @Benchmark
+    public int[] nv21ToArgb() {
+        ImageUtils.nv21ToArgb(mNv21, mWidth, mHeight, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public byte[] nv21ToRgba() {
+        ImageUtils.nv21ToRgba(mNv21, mWidth, mHeight, mRgba);
+        return mRgba;
+    }
+
+    @Benchmark
+    public int[] yv12ToArgb() {
+        ImageUtils.yv12ToArgb(mYv12, mWidth, mHeight, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public int[] nv21ToArgbStriped() {
+        mConverter.nv21ToArgb(mNv21, mWidth, mHeight, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public byte[] nv21ToRgbaStriped() {
+        mConverter.nv21ToRgba(mNv21, mWidth, mHeight, mRgba);
+        return mRgba;
+    }
+
+    /**
+     * 通过单元测试任务启动，Gradle测试进程的classpath无法传给fork出的JVM，所以在当前进程中运行
+     */
+    @Test
+    public void run() throws RunnerException {
+        Assume.assumeTrue("run with -Pjmh", Boolean.getBoolean("jmh"));
+        new Runner(new OptionsBuilder()
+                .include(YuvConversionBenchmark.class.getName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,157 @@
+package com.android.xz.opengldemo.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.ImageFormat;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 定点转换与浮点BT.601参考实现比较，多条带转换与单线程结果一致
+ *
+ * @author xiaozhi
+ * @since 2024/11/24
+ */
+public class YuvConverterTest {
+
+    // 定点14位的舍入误差
+    private static final int MAX_ERROR = 1;
+    // 宽度100时YV12的跨度需要对齐，与宽度不同
+    private static final int[][] SIZES = {{2, 2}, {100, 36}, {320, 240}};
+
+    private static final ForkJoinPool sPool = new ForkJoinPool(3);
+
+    @AfterClass
+    public static void tearDown() {
+        sPool.shutdown();
+    }
+
+    @Test
+    public void nv21ToArgb_matchesReference() {
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            byte[] nv21 = randomFrame(ImageFormat.NV21, width, height);
+            int[] argb = new int[width * height];
+            ImageUtils.nv21ToArgb(nv21, width, height, argb);
+            int uvOffset = width * height;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int uv = uvOffset + (y / 2) * width + (x / 2) * 2;
+                    assertArgb(reference(nv21[y * width + x], nv21[uv + 1], nv21[uv]), argb[y * width + x], x, y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void yv12ToArgb_matchesReference() {
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            byte[] yv12 = randomFrame(ImageFormat.YV12, width, height);
+            int[] argb = new int[width * height];
+            ImageUtils.yv12ToArgb(yv12, width, height, argb);
+            int yStride = align16(width);
+            int cStride = align16(yStride / 2);
+            int vOffset = yStride * height;
+            int uOffset = vOffset + cStride * height / 2;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int c = (y / 2) * cStride + x / 2;
+                    assertArgb(reference(yv12[y * yStride + x], yv12[uOffset + c], yv12[vOffset + c]),
+                            argb[y * width + x], x, y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nv21ToRgba_matchesArgb() {
+        int width = 100;
+        int height = 36;
+        byte[] nv21 = randomFrame(ImageFormat.NV21, width, height);
+        int[] argb = new int[width * height];
+        byte[] rgba = new byte[width * height * 4];
+        ImageUtils.nv21ToArgb(nv21, width, height, argb);
+        ImageUtils.nv21ToRgba(nv21, width, height, rgba);
+        byte[] expected = new byte[rgba.length];
+        for (int i = 0; i < argb.length; i++) {
+            expected[i * 4] = (byte) (argb[i] >> 16);
+            expected[i * 4 + 1] = (byte) (argb[i] >> 8);
+            expected[i * 4 + 2] = (byte) argb[i];
+            expected[i * 4 + 3] = (byte) (argb[i] >>> 24);
+        }
+        assertArrayEquals(expected, rgba);
+    }
+
+    @Test
+    public void striped_matchesSerial() {
+        YuvConverter converter = new YuvConverter(sPool, 4);
+        // 高度足够分成多条带
+        int width = 320;
+        int height = 240;
+        byte[] nv21 = randomFrame(ImageFormat.NV21, width, height);
+        byte[] yv12 = randomFrame(ImageFormat.YV12, width, height);
+        int[] expected = new int[width * height];
+        int[] actual = new int[width * height];
+
+        ImageUtils.nv21ToArgb(nv21, width, height, expected);
+        converter.nv21ToArgb(nv21, width, height, actual);
+        assertArrayEquals(expected, actual);
+
+        ImageUtils.yv12ToArgb(yv12, width, height, expected);
+        converter.yv12ToArgb(yv12, width, height, actual);
+        assertArrayEquals(expected, actual);
+
+        byte[] expectedRgba = new byte[width * height * 4];
+        byte[] actualRgba = new byte[width * height * 4];
+        ImageUtils.nv21ToRgba(nv21, width, height, expectedRgba);
+        converter.nv21ToRgba(nv21, width, height, actualRgba);
+        assertArrayEquals(expectedRgba, actualRgba);
+    }
+
+    private static byte[] randomFrame(int format, int width, int height) {
+        Random random = new Random(width * 31L + height);
+        byte[] frame = new byte[ImageUtils.getYuvFrameSize(format, width, height)];
+        for (int i = 0; i < frame.length; i++) {
+            // 只取合法范围，范围外的值两边都会截断，比较没有意义
+            frame[i] = (byte) (16 + random.nextInt(240 - 16 + 1));
+        }
+        return frame;
+    }
+
+    private static int align16(int value) {
+        return (value + 15) & ~15;
+    }
+
+    /**
+     * BT.601有限范围浮点转换
+     */
+    private static int reference(byte yByte, byte uByte, byte vByte) {
+        double y = 1.164 * ((yByte & 0xFF) - 16);
+        int u = (uByte & 0xFF) - 128;
+        int v = (vByte & 0xFF) - 128;
+        int r = clamp(y + 1.596 * v);
+        int g = clamp(y - 0.813 * v - 0.391 * u);
+        int b = clamp(y + 2.018 * u);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static void assertArgb(int expected, int actual, int x, int y) {
+        for (int shift = 0; shift <= 24; shift += 8) {
+            int diff = Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF));
+            assertTrue("pixel (" + x + ", " + y + ") expected " + Integer.toHexString(expected)
+                    + " but was " + Integer.toHexString(actual), diff <= MAX_ERROR);
+        }
+    }
+}